@@ -42,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import ca.carleton.gcrc.dbSec.ColumnData;
 import ca.carleton.gcrc.dbSec.impl.ColumnDataUtils;
+import ca.carleton.gcrc.dbSec.impl.ResultSetJsonWriter;
 
 public class AdhocQueries {
 	final private Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -53,6 +54,28 @@ public class AdhocQueries {
 	}
 	
 	public JSONObject performAdhocQueryWithArgs(String sqlStatement, String args, int argsExpected) throws Exception {
+		PreparedStatement stmt = prepareAdhocQuery(sqlStatement, args, argsExpected);
+
+		JSONArray array = ColumnDataUtils.executeStatementToJson(stmt);
+
+		JSONObject result = new JSONObject();
+		result.put("results", array);
+
+		return result;
+	}
+
+	/**
+	 * Performs an adhoc query and returns a writer that produces the
+	 * resulting rows as they are read from the database. The caller must
+	 * write or close the returned writer.
+	 */
+	public ResultSetJsonWriter streamAdhocQueryWithArgs(String sqlStatement, String args, int argsExpected) throws Exception {
+		PreparedStatement stmt = prepareAdhocQuery(sqlStatement, args, argsExpected);
+
+		return ResultSetJsonWriter.executeStatement(stmt);
+	}
+
+	private PreparedStatement prepareAdhocQuery(String sqlStatement, String args, int argsExpected) throws Exception {
 		logger.info("Executing adhoc query: " + sqlStatement + " for arguments: " + args);
 		
 		String[] splitArgs = args.split(",");
@@ -76,12 +99,7 @@ public class AdhocQueries {
 			++index;
 		}
 
-		JSONArray array = ColumnDataUtils.executeStatementToJson(stmt);
-
-		JSONObject result = new JSONObject();
-		result.put("results", array);
-
-		return result;
+		return stmt;
 	}
 
 }
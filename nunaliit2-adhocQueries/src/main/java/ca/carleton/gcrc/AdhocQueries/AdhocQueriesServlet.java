@@ -36,10 +36,13 @@ import ca.carleton.gcrc.AdhocQueriesImpl.AdhocQuerySpecImpl;
 
 import ca.carleton.gcrc.dbSec.ColumnData;
 import ca.carleton.gcrc.dbSec.impl.ColumnDataUtils;
+import ca.carleton.gcrc.dbSec.impl.ResultSetJsonWriter;
 import ca.carleton.gcrc.jdbc.JdbcConnections;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -61,8 +64,6 @@ public class AdhocQueriesServlet extends HttpServlet {
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	private JdbcConnections connections = null;
-	Connection connection = null;
-	AdhocQueries queries = null;
 	
 	public AdhocQueriesServlet() {
 	}
@@ -72,11 +73,9 @@ public class AdhocQueriesServlet extends HttpServlet {
 
 		try {
 			connections = JdbcConnections.connectionsFromServletContext(config.getServletContext());
-			connection = connections.getDb();
 		} catch (Exception e) {
 			throw new ServletException("Error while connecting to database",e);
 		}
-		queries = new AdhocQueries(connection);
 	}
 
 	public void destroy() {
@@ -157,26 +156,38 @@ public class AdhocQueriesServlet extends HttpServlet {
 			throw new Exception("Parameter 'args' provided multiple times");
 		}
 		
-		// Retrieve adhocQuery spec
-		AdhocQuerySpec spec = null;
-		if( null != queryId ) {
-			spec = getQuerySpecFromId( queryId );
+		Connection connection = connections.borrowDb();
+		try {
+			// Retrieve adhocQuery spec
+			AdhocQuerySpec spec = null;
+			if( null != queryId ) {
+				spec = getQuerySpecFromId( connection, queryId );
+				
+			} else if( null != queryLabel ) {
+				spec = getQuerySpecFromLabel( connection, queryLabel );
+				
+			} else {
+				// Should never happen
+				throw new Exception("Can not retrieve adhocQuery. Method is broken.");
+			}
+			logger.info("Using adhocQuery id: "+spec.getId()+"  label: "+spec.getLabel());
 			
-		} else if( null != queryLabel ) {
-			spec = getQuerySpecFromLabel( queryLabel );
+			AdhocQueries queries = new AdhocQueries(connection);
+			ResultSetJsonWriter results = queries.streamAdhocQueryWithArgs(spec.getQueryString(), args[0], spec.getExpectedArgCount());
 			
-		} else {
-			// Should never happen
-			throw new Exception("Can not retrieve adhocQuery. Method is broken.");
+			// Rows are written as they are read from the database
+			try {
+				sendJsonResponse(response, results);
+			} finally {
+				results.close();
+			}
+		} finally {
+			// Return connection to pool
+			connection.close();
 		}
-		logger.info("Using adhocQuery id: "+spec.getId()+"  label: "+spec.getLabel());
-		
-		JSONObject result = queries.performAdhocQueryWithArgs(spec.getQueryString(), args[0], spec.getExpectedArgCount());
-		
-		sendJsonResponse(response, result);
 	}
 	
-	private AdhocQuerySpec getQuerySpecFromId(String id) throws Exception {
+	private AdhocQuerySpec getQuerySpecFromId(Connection connection, String id) throws Exception {
 		PreparedStatement stmt = connection.prepareStatement("SELECT id,label,stmt FROM adhoc_queries WHERE id = ?;");
 				
 		ColumnDataUtils.writeToPreparedStatement(stmt, 1, id, ColumnData.Type.INTEGER); // always integer arg for now
@@ -197,7 +208,7 @@ public class AdhocQueriesServlet extends HttpServlet {
 		return(new AdhocQuerySpecImpl(responseId, responseLabel, qString));
 	}
 	
-	private AdhocQuerySpec getQuerySpecFromLabel(String label) throws Exception {
+	private AdhocQuerySpec getQuerySpecFromLabel(Connection connection, String label) throws Exception {
 		PreparedStatement stmt = connection.prepareStatement("SELECT id,label,stmt FROM adhoc_queries WHERE label = ?;");
 				
 		ColumnDataUtils.writeToPreparedStatement(stmt, 1, label, ColumnData.Type.STRING); // always string label
@@ -235,6 +246,22 @@ public class AdhocQueriesServlet extends HttpServlet {
 		}
 	}
 	
+	protected void sendJsonResponse(HttpServletResponse response, ResultSetJsonWriter results) throws Exception {
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setHeader("Cache-Control", "no-cache");
+		response.setDateHeader("Expires", (new Date()).getTime());
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("utf-8");
+
+		OutputStreamWriter osw = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		Writer writer = new BufferedWriter(osw);
+		writer.write("{\"results\":");
+		results.write(writer);
+		writer.write("}");
+		writer.flush();
+	}
+	
 	protected void sendErrorResponse(HttpServletResponse response, Throwable error) throws ServletException {
 
 		response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
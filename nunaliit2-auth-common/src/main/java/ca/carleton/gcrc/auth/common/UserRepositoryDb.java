@@ -36,6 +36,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 import java.util.Vector;
 
 import javax.servlet.ServletContext;
@@ -56,11 +57,6 @@ public class UserRepositoryDb extends UserRepositoryAbstract implements UserRepo
 	
 	public UserRepositoryDb(ServletContext servletContext) throws ServletException {
 		connections = JdbcConnections.connectionsFromServletContext(servletContext);
-		try {
-			connection = connections.getDb();
-		} catch (Exception e) {
-			throw new ServletException("Unable to get default DB from connections",e);
-		}
 	}
 
 	public UserRepositoryDb(Connection connection) {
@@ -82,6 +78,7 @@ public class UserRepositoryDb extends UserRepositoryAbstract implements UserRepo
 		String sqlQuery = "SELECT "+sqlQueryColumns+" FROM users WHERE email=?;";
 		
 		UserAndPassword userAndPassword = null;
+		Connection connection = borrowConnection();
 		try {
 			PreparedStatement preparedStmt = connection.prepareStatement(sqlQuery);
 			preparedStmt.setString(1, username);
@@ -89,6 +86,8 @@ public class UserRepositoryDb extends UserRepositoryAbstract implements UserRepo
 			userAndPassword = executeStatementToUser(preparedStmt);
 		} catch (Exception sqle) {
 			throw new Exception("SQL query failed - query: "+sqlQuery,sqle);
+		} finally {
+			releaseConnection(connection);
 		}
 
 		// Check password
@@ -104,6 +103,7 @@ public class UserRepositoryDb extends UserRepositoryAbstract implements UserRepo
 
 		String sqlQuery = "SELECT "+sqlQueryColumns+" FROM users WHERE id=?;";
 		
+		Connection connection = borrowConnection();
 		try {
 			PreparedStatement preparedStmt = connection.prepareStatement(sqlQuery);
 			preparedStmt.setInt(1, id);
@@ -113,6 +113,31 @@ public class UserRepositoryDb extends UserRepositoryAbstract implements UserRepo
 				
 		} catch (Exception sqle) {
 			throw new ServletException("SQL query failed - query: "+sqlQuery+" id="+id,sqle);
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Returns the connection given at construction or, when the repository
+	 * was created from a servlet context, a connection borrowed from the pool.
+	 */
+	private Connection borrowConnection() throws Exception {
+		if( null != connection ) {
+			return connection;
+		}
+		try {
+			return connections.borrowDb();
+		} catch (Exception e) {
+			throw new ServletException("Unable to get default DB from connections",e);
+		}
+	}
+
+	private void releaseConnection(Connection borrowed) {
+		if( borrowed != connection ) {
+			try {
+				borrowed.close();
+			} catch (SQLException ignored) { }
 		}
 	}
 
@@ -10,6 +10,10 @@ public interface Attachment {
 
 	String getName();
 	
+	/**
+	 * Returns the content of the attachment. The caller must close the
+	 * returned stream, which might hold a connection to the database.
+	 */
 	InputStream getInputStream() throws Exception;
 
 	String getContentType() throws Exception;
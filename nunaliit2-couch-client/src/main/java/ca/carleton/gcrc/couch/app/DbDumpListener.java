@@ -10,6 +10,18 @@ public interface DbDumpListener {
 
 	void reportStore(String docId);
 
+	/**
+	 * Called when the dump resumes an interrupted run. The documents
+	 * already dumped are not part of the reported document ids.
+	 */
+	void reportResume(int docCount);
+
+	/**
+	 * Called each time a document is stored. With multiple workers, this
+	 * is called from the worker threads.
+	 */
+	void reportProgress(int completed, int total, double docsPerSecond);
+
 	void reportEnd();
 
 }
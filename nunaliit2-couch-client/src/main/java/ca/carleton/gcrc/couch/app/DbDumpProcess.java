@@ -6,21 +6,36 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import ca.carleton.gcrc.couch.app.impl.DbDumpListenerNull;
 import ca.carleton.gcrc.couch.app.impl.DocumentCouchDb;
 import ca.carleton.gcrc.couch.app.impl.DocumentStoreProcessImpl;
+import ca.carleton.gcrc.couch.app.impl.DocumentWorkerPool;
+import ca.carleton.gcrc.couch.app.impl.ProgressJournal;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.utils.Files;
 
+/**
+ * Saves documents from a database to a dump directory. Documents are
+ * fetched and stored by a configurable number of workers.
+ *
+ * While the dump is in progress, a journal in the dump directory records
+ * the documents that are stored. If the dump is interrupted, running it
+ * again with the same dump directory skips those documents. The journal
+ * is removed once the dump completes.
+ */
 public class DbDumpProcess {
 
+	static final public String JOURNAL_NAME = ".dump_journal";
+
 	private CouchDb couchDb = null;
 	private File dumpDir = null;
 	private DocumentStoreProcess storeProcess = new DocumentStoreProcessImpl();
 	private boolean allDocs = false;
 	private Map<String,File> docIdsToFile = new HashMap<String,File>();
 	private DbDumpListener listener = new DbDumpListenerNull();
+	private int workerCount = 1;
 	
 	public DbDumpProcess(CouchDb couchDb, File dumpDir){
 		this.couchDb = couchDb;
@@ -71,6 +86,14 @@ public class DbDumpProcess {
 		this.listener = listener;
 	}
 
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = workerCount;
+	}
+
 	public void dump() throws Exception {
 		if( null == couchDb ) {
 			throw new Exception("On database dump, a database must be specified.");
@@ -82,44 +105,90 @@ public class DbDumpProcess {
 			throw new Exception("On database dump, a store process is required.");
 		}
 		
+		if( workerCount < 1 ){
+			throw new Exception("On database dump, at least one worker is required.");
+		}
+		
 		// Compute docIds
 		List<String> docIds = computeDocIds();
-		listener.reportDocumentIds(docIds);
 		
-		if( docIds.size() > 0 ){
+		if( docIds.size() < 1 ){
+			listener.reportDocumentIds(docIds);
+			
+		} else {
 			// Create dump directory
 			if( false == dumpDir.exists() ) {
 				Files.createDirectory(dumpDir);
 			}
 			
-			// For each document, dump to disk
-			for(String docId : docIds){
-				// Compute directory location
-				File docDir = null;
-				{
-					if( docIdsToFile.containsKey(docId) ){
-						docDir = docIdsToFile.get(docId);
-					}
-					
-					if( null == docDir ) {
-						String name = computeNameFromId(docId);
-						docDir = new File(dumpDir, name);
+			// Skip documents stored by an interrupted dump
+			final ProgressJournal journal = new ProgressJournal(
+				new File(dumpDir, JOURNAL_NAME)
+				,couchDb.getUrl().toExternalForm()
+				);
+			Set<String> completedDocIds = journal.open();
+			try {
+				if( completedDocIds.size() > 0 ){
+					List<String> remainingDocIds = new ArrayList<String>(docIds.size());
+					for(String docId : docIds){
+						if( false == completedDocIds.contains(docId) ){
+							remainingDocIds.add(docId);
+						}
 					}
+					listener.reportResume(docIds.size() - remainingDocIds.size());
+					docIds = remainingDocIds;
 				}
+				listener.reportDocumentIds(docIds);
 				
-				// Fetch document from database
-				listener.reportDownload(docId);
-				Document doc = DocumentCouchDb.documentFromCouchDb(couchDb, docId);
+				// For each document, dump to disk
+				DocumentWorkerPool workerPool = new DocumentWorkerPool(workerCount, docIds.size());
+				workerPool.process(docIds, new DocumentWorkerPool.DocumentTask() {
+					@Override
+					public void process(String docId) throws Exception {
+						dumpDocument(docId);
+					}
+
+					@Override
+					public void completed(String docId, int completed, int total, double docsPerSecond) throws Exception {
+						journal.recordCompleted(docId);
+						listener.reportProgress(completed, total, docsPerSecond);
+					}
+				});
 				
-				// Dump
-				listener.reportStore(docId);
-				storeProcess.store(doc, docDir);
+			} finally {
+				journal.close();
 			}
+			
+			// Dump is complete
+			journal.delete();
 		}
 		
 		listener.reportEnd();
 	}
 	
+	private void dumpDocument(String docId) throws Exception {
+		// Compute directory location
+		File docDir = null;
+		{
+			if( docIdsToFile.containsKey(docId) ){
+				docDir = docIdsToFile.get(docId);
+			}
+			
+			if( null == docDir ) {
+				String name = computeNameFromId(docId);
+				docDir = new File(dumpDir, name);
+			}
+		}
+		
+		// Fetch document from database
+		listener.reportDownload(docId);
+		Document doc = DocumentCouchDb.documentFromCouchDb(couchDb, docId);
+		
+		// Dump
+		listener.reportStore(docId);
+		storeProcess.store(doc, docDir);
+	}
+	
 	private List<String> computeDocIds() throws Exception {
 		if( allDocs ) {
 			// Get all documents from database
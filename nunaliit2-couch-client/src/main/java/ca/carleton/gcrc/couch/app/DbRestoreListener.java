@@ -6,5 +6,17 @@ public interface DbRestoreListener extends DocumentUpdateListener {
 
 	void reportDocumentIds(List<String> docIds);
 	
+	/**
+	 * Called when the restore resumes an interrupted run. The documents
+	 * already restored are not part of the reported document ids.
+	 */
+	void reportResume(int docCount);
+
+	/**
+	 * Called each time a document is processed. With multiple workers, this
+	 * is called from the worker threads.
+	 */
+	void reportProgress(int completed, int total, double docsPerSecond);
+
 	void endRestore();
 }
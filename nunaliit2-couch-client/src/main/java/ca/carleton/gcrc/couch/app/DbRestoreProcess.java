@@ -13,17 +13,45 @@ import java.util.Set;
 
 import ca.carleton.gcrc.couch.app.impl.DbRestoreListenerNull;
 import ca.carleton.gcrc.couch.app.impl.DocumentFile;
+import ca.carleton.gcrc.couch.app.impl.DocumentWorkerPool;
+import ca.carleton.gcrc.couch.app.impl.ProgressJournal;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.fsentry.FSEntry;
 import ca.carleton.gcrc.couch.fsentry.FSEntryFile;
-
+import ca.carleton.gcrc.couch.fsentry.FSEntryNameFilter;
+
+/**
+ * Uploads documents found in a dump directory to a database. Documents are
+ * updated by a configurable number of workers. Design documents are restored
+ * after all other documents.
+ *
+ * While the restore is in progress, a journal in the dump directory records
+ * the documents that are restored. If the restore to the same database is
+ * interrupted, running it again skips those documents. The journal is
+ * removed once the restore completes. When the dump directory is read-only,
+ * the restore runs without a journal.
+ */
 public class DbRestoreProcess {
 
+	static final public String JOURNAL_NAME = ".restore_journal";
+
+	static private FSEntryNameFilter journalFilter = new FSEntryNameFilter() {
+		@Override
+		public boolean accept(FSEntry parent, String name) {
+			if( JOURNAL_NAME.equals(name) 
+			 || DbDumpProcess.JOURNAL_NAME.equals(name) ){
+				return false;
+			}
+			return true;
+		}
+	};
+
 	private CouchDb couchDb = null;
 	private File dumpDir = null;
 	private DbRestoreListener listener = new DbRestoreListenerNull();
 	private boolean allDocs = false;
 	private Set<String> docIds = new HashSet<String>();
+	private int workerCount = 1;
 
 	public DbRestoreProcess(CouchDb couchDb, File dumpDir) throws Exception {
 		this.couchDb = couchDb;
@@ -62,6 +90,14 @@ public class DbRestoreProcess {
 		docIds.add(docId);
 	}
 
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = workerCount;
+	}
+
 	public void restore() throws Exception {
 		if( null == couchDb ) {
 			throw new Exception("On database restore, a database must be specified.");
@@ -72,11 +108,14 @@ public class DbRestoreProcess {
 		if( false == dumpDir.exists() ){
 			throw new Exception("On database restore, the target directory must exist.");
 		}
+		if( workerCount < 1 ){
+			throw new Exception("On database restore, at least one worker is required.");
+		}
 
-		DocumentUpdateProcess updateProcess = new DocumentUpdateProcess(couchDb);
+		final DocumentUpdateProcess updateProcess = new DocumentUpdateProcess(couchDb);
 		updateProcess.setListener(listener);
 		
-		Map<String,FSEntry> documentsToRestore = computeDocIds();
+		final Map<String,FSEntry> documentsToRestore = computeDocIds();
 		
 		// Sort so that design documents are at the end
 		List<String> docIds = new ArrayList<String>( documentsToRestore.keySet() );
@@ -104,28 +143,75 @@ public class DbRestoreProcess {
 			
 		});
 		
-		listener.reportDocumentIds(docIds);
-
-		// Perform document updates
-		for(String docId : docIds){
-			FSEntry entry = documentsToRestore.get(docId);
-			
-			Document doc = null;
-			try {
-				doc = DocumentFile.createDocument(entry);
-				
-			} catch (Exception e) {
-				throw new Exception("Unable to load document from dump: "+docId, e);
+		// Skip documents restored by an interrupted run
+		final ProgressJournal journal = new ProgressJournal(
+			new File(dumpDir, JOURNAL_NAME)
+			,couchDb.getUrl().toExternalForm()
+			);
+		Set<String> completedDocIds = journal.open();
+		try {
+			if( completedDocIds.size() > 0 ){
+				List<String> remainingDocIds = new ArrayList<String>(docIds.size());
+				for(String docId : docIds){
+					if( false == completedDocIds.contains(docId) ){
+						remainingDocIds.add(docId);
+					}
+				}
+				listener.reportResume(docIds.size() - remainingDocIds.size());
+				docIds = remainingDocIds;
 			}
-			
-			try {
-				updateProcess.update(doc);
-				
-			} catch (Exception e) {
-				throw new Exception("Unable to update document to database: "+docId, e);
+			listener.reportDocumentIds(docIds);
+	
+			// Perform document updates. Design documents are updated once all
+			// other documents are restored.
+			List<String> regularDocIds = new ArrayList<String>(docIds.size());
+			List<String> designDocIds = new ArrayList<String>();
+			for(String docId : docIds){
+				if( docId.startsWith("_design/") ){
+					designDocIds.add(docId);
+				} else {
+					regularDocIds.add(docId);
+				}
 			}
+			
+			DocumentWorkerPool.DocumentTask task = new DocumentWorkerPool.DocumentTask() {
+				@Override
+				public void process(String docId) throws Exception {
+					FSEntry entry = documentsToRestore.get(docId);
+					
+					Document doc = null;
+					try {
+						doc = DocumentFile.createDocument(entry);
+						
+					} catch (Exception e) {
+						throw new Exception("Unable to load document from dump: "+docId, e);
+					}
+					
+					try {
+						updateProcess.update(doc);
+						
+					} catch (Exception e) {
+						throw new Exception("Unable to update document to database: "+docId, e);
+					}
+				}
+
+				@Override
+				public void completed(String docId, int completed, int total, double docsPerSecond) throws Exception {
+					journal.recordCompleted(docId);
+					listener.reportProgress(completed, total, docsPerSecond);
+				}
+			};
+			DocumentWorkerPool workerPool = new DocumentWorkerPool(workerCount, docIds.size());
+			workerPool.process(regularDocIds, task);
+			workerPool.process(designDocIds, task);
+			
+		} finally {
+			journal.close();
 		}
 		
+		// Restore is complete
+		journal.delete();
+		
 		listener.endRestore();
 	}
 
@@ -133,7 +219,7 @@ public class DbRestoreProcess {
 		HashMap<String, FSEntry> map = new HashMap<String, FSEntry>();
 		
 		FSEntryFile topDir = new FSEntryFile(dumpDir);
-		for(FSEntry entry : topDir.getChildren()) {
+		for(FSEntry entry : topDir.getChildren(journalFilter)) {
 			try {
 				Document doc = DocumentFile.createDocument(entry);
 				String docId = doc.getId();
@@ -18,6 +18,14 @@ public class DbDumpListenerNull implements DbDumpListener {
 	public void reportStore(String docId) {
 	}
 
+	@Override
+	public void reportResume(int docCount) {
+	}
+
+	@Override
+	public void reportProgress(int completed, int total, double docsPerSecond) {
+	}
+
 	@Override
 	public void reportEnd() {
 	}
@@ -11,6 +11,14 @@ public class DbRestoreListenerNull implements DbRestoreListener {
 	public void reportDocumentIds(List<String> docIds) {
 	}
 
+	@Override
+	public void reportResume(int docCount) {
+	}
+
+	@Override
+	public void reportProgress(int completed, int total, double docsPerSecond) {
+	}
+
 	@Override
 	public void endRestore() {
 	}
@@ -25,6 +25,19 @@ public class DocumentCouchDb implements Document {
 		}
 	}
 
+	/**
+	 * Creates a document from its content, already fetched from
+	 * the database.
+	 */
+	static public DocumentCouchDb documentFromJson(CouchDb couchDb, JSONObject jsonObj) throws Exception {
+		try {
+			DocumentCouchDb doc = new DocumentCouchDb(couchDb, jsonObj);
+			return doc;
+		} catch(Exception e) {
+			throw new Exception("Unable to create document from database content",e);
+		}
+	}
+
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	private CouchDb couchDb;
@@ -44,7 +57,24 @@ public class DocumentCouchDb implements Document {
 			throw new Exception("Unable to access document from database ("+docId+")", e);
 		}
 		
-		// Process attachments
+		processAttachments();
+	}
+	
+	public DocumentCouchDb(CouchDb couchDb, JSONObject jsonObj) throws Exception {
+		if( null == couchDb ){
+			throw new Exception("A valid instance of CouchDb is required for document");
+		}
+		if( null == jsonObj ){
+			throw new Exception("Content is required for document");
+		}
+		this.couchDb = couchDb;
+		this.jsonObj = jsonObj;
+		
+		processAttachments();
+	}
+	
+	private void processAttachments() throws Exception {
+		String docId = getId();
 		JSONObject _attachments = this.jsonObj.optJSONObject("_attachments");
 		if( null != _attachments ){
 			Iterator<?> it = _attachments.keys();
@@ -0,0 +1,134 @@
+package ca.carleton.gcrc.couch.app.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes documents, given by their identifiers, using a number of worker
+ * threads. Progress is counted across all calls to process(), so that a
+ * run made of multiple batches reports a single progression.
+ *
+ * When a document fails, the workers stop taking new documents and the
+ * first error is reported once the documents in progress are done.
+ */
+public class DocumentWorkerPool {
+
+	public interface DocumentTask {
+		/**
+		 * Processes one document. Called concurrently from the worker
+		 * threads.
+		 */
+		void process(String docId) throws Exception;
+
+		/**
+		 * Called after a document is successfully processed.
+		 * @param docId Identifier of the processed document
+		 * @param completed Number of documents completed so far
+		 * @param total Total number of documents expected
+		 * @param docsPerSecond Average throughput since the pool was created
+		 */
+		void completed(String docId, int completed, int total, double docsPerSecond) throws Exception;
+	}
+
+	private int workerCount;
+	private int total;
+	private long startTime;
+	private AtomicInteger completedCount = new AtomicInteger(0);
+
+	public DocumentWorkerPool(int workerCount, int total) throws Exception {
+		if( workerCount < 1 ){
+			throw new Exception("At least one worker is required");
+		}
+		this.workerCount = workerCount;
+		this.total = total;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	public int getCompletedCount() {
+		return completedCount.get();
+	}
+
+	public void process(List<String> docIds, final DocumentTask task) throws Exception {
+		if( docIds.size() < 1 ){
+			return;
+		}
+
+		final Iterator<String> docIdIterator = docIds.iterator();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+
+		int threadCount = Math.min(workerCount, docIds.size());
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(threadCount);
+			for(int i=0; i<threadCount; ++i){
+				futures.add( executor.submit(new Callable<Object>(){
+					@Override
+					public Object call() throws Exception {
+						try {
+							String docId = nextDocId(docIdIterator, failed);
+							while( null != docId ){
+								task.process(docId);
+
+								int completed = completedCount.incrementAndGet();
+								task.completed(docId, completed, total, computeThroughput(completed));
+
+								docId = nextDocId(docIdIterator, failed);
+							}
+						} catch(Exception e) {
+							failed.set(true);
+							throw e;
+						}
+						return null;
+					}
+				}) );
+			}
+
+			Exception error = null;
+			for(Future<Object> future : futures){
+				try {
+					future.get();
+				} catch(ExecutionException e) {
+					if( null == error ){
+						Throwable cause = e.getCause();
+						if( cause instanceof Exception ){
+							error = (Exception)cause;
+						} else {
+							error = new Exception("Error in document worker", cause);
+						}
+					}
+				}
+			}
+			if( null != error ){
+				throw error;
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private String nextDocId(Iterator<String> docIdIterator, AtomicBoolean failed) {
+		synchronized(docIdIterator) {
+			if( failed.get() || false == docIdIterator.hasNext() ){
+				return null;
+			}
+			return docIdIterator.next();
+		}
+	}
+
+	private double computeThroughput(int completed) {
+		long elapsed = System.currentTimeMillis() - startTime;
+		if( elapsed < 1 ){
+			elapsed = 1;
+		}
+		return completed * 1000.0 / elapsed;
+	}
+}
@@ -0,0 +1,187 @@
+package ca.carleton.gcrc.couch.app.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the identifiers of documents that were completely processed by
+ * a dump or restore, so that an interrupted run can resume where it stopped.
+ *
+ * The journal is a text file. The first line identifies the database the
+ * journal applies to. Each following line is a URL encoded document
+ * identifier. A line is accepted only if it is terminated, so that an
+ * identifier partially written when a process is killed is ignored. When
+ * a journal is opened again, it is rewritten with the accepted entries.
+ *
+ * If the journal can not be written, for example when a restore reads
+ * from a read-only dump directory, the process runs without a journal:
+ * entries found are still returned but nothing new is recorded.
+ *
+ * Instances are safe to share between worker threads.
+ */
+public class ProgressJournal {
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private File file;
+	private String target;
+	private Writer writer = null;
+	private boolean disabled = false;
+
+	public ProgressJournal(File file, String target) {
+		this.file = file;
+		this.target = target;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns true if the journal could not be written when opened and
+	 * progress is not being recorded.
+	 */
+	synchronized public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * Opens the journal for recording. If a journal for the same target is
+	 * found, its entries are kept and returned. Otherwise, a new journal is
+	 * started.
+	 * @return Identifiers of documents completed by a previous run
+	 */
+	synchronized public Set<String> open() throws Exception {
+		Set<String> completed = new HashSet<String>();
+		boolean matches = false;
+
+		if( file.exists() ){
+			FileInputStream fis = null;
+			try {
+				fis = new FileInputStream(file);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(fis, "UTF-8"));
+
+				StringBuilder line = new StringBuilder();
+				boolean header = true;
+				int c = reader.read();
+				while( c >= 0 ){
+					if( '\n' == c ){
+						String value = line.toString();
+						line.setLength(0);
+						if( header ){
+							header = false;
+							if( false == target.equals(value) ){
+								logger.info("Ignoring journal for a different database: "+file.getAbsolutePath());
+								break;
+							}
+							matches = true;
+						} else if( value.length() > 0 ) {
+							completed.add( URLDecoder.decode(value, "UTF-8") );
+						}
+					} else {
+						line.append((char)c);
+					}
+					c = reader.read();
+				}
+			} catch(Exception e) {
+				throw new Exception("Unable to read journal: "+file.getAbsolutePath(), e);
+			} finally {
+				if( null != fis ){
+					try {
+						fis.close();
+					} catch(Exception e) {
+						// Ignore
+					}
+				}
+			}
+		}
+
+		if( false == matches ){
+			completed.clear();
+		}
+
+		// Rewrite the journal with the complete entries, dropping a line
+		// left incomplete by a previous run
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(file, false);
+		} catch(Exception e) {
+			logger.warn("Unable to write journal, progress will not be recorded: "+file.getAbsolutePath(), e);
+			disabled = true;
+			return completed;
+		}
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
+			writer.write(target);
+			writer.write('\n');
+			for(String docId : completed){
+				writer.write( URLEncoder.encode(docId, "UTF-8") );
+				writer.write('\n');
+			}
+			writer.flush();
+		} catch(Exception e) {
+			try {
+				fos.close();
+			} catch(Exception e1) {
+				// Ignore
+			}
+			throw new Exception("Unable to open journal: "+file.getAbsolutePath(), e);
+		}
+
+		return completed;
+	}
+
+	/**
+	 * Records that a document was completely processed. The entry is
+	 * flushed before returning.
+	 */
+	synchronized public void recordCompleted(String docId) throws Exception {
+		if( disabled ){
+			return;
+		}
+		if( null == writer ){
+			throw new Exception("Journal is not open: "+file.getAbsolutePath());
+		}
+		writer.write( URLEncoder.encode(docId, "UTF-8") );
+		writer.write('\n');
+		writer.flush();
+	}
+
+	synchronized public void close() {
+		if( null != writer ){
+			try {
+				writer.close();
+			} catch(Exception e) {
+				logger.error("Unable to close journal: "+file.getAbsolutePath(), e);
+			}
+			writer = null;
+		}
+	}
+
+	/**
+	 * Closes and removes the journal. Called once all documents are
+	 * processed.
+	 */
+	synchronized public void delete() {
+		close();
+		if( disabled ){
+			return;
+		}
+		if( file.exists() && false == file.delete() ){
+			logger.error("Unable to delete journal: "+file.getAbsolutePath());
+		}
+	}
+}
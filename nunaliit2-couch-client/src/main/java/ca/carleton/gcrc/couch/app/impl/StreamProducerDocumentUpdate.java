@@ -144,18 +144,21 @@ public class StreamProducerDocumentUpdate implements StreamProducer {
 			for(Attachment attachment : sourceDoc.getAttachments()){
 				if( attachmentNamesToUpload.contains(attachment.getName()) ) {
 					InputStream is = attachment.getInputStream();
-					
-					builder.key( attachment.getName() );
-					builder.object();
-					
-					builder.key("content_type");
-					builder.value( attachment.getContentType() );
-					
-					osw.write(",\"data\":\"");
-					Base64Transcoder.encode(is, osw);
-					osw.write("\"");
-					
-					builder.endObject();
+					try {
+						builder.key( attachment.getName() );
+						builder.object();
+						
+						builder.key("content_type");
+						builder.value( attachment.getContentType() );
+						
+						osw.write(",\"data\":\"");
+						Base64Transcoder.encode(is, osw);
+						osw.write("\"");
+						
+						builder.endObject();
+					} finally {
+						is.close();
+					}
 				}
 			}
 			
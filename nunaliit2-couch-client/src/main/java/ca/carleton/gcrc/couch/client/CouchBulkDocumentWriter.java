@@ -0,0 +1,158 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers documents destined to a database and sends them using
+ * _bulk_docs requests. A batch is sent when the number of buffered
+ * documents reaches the batch size or when the estimated size of the
+ * buffered documents reaches the maximum batch size in bytes.
+ *
+ * Documents that are accepted by the database have their _id and _rev
+ * updated. Documents that are rejected (for example, conflicts) are
+ * reported in the results returned by write() and flush(), and are
+ * also accumulated in getFailures().
+ *
+ * This class is not thread safe.
+ */
+public class CouchBulkDocumentWriter {
+
+	static final public int DEFAULT_BATCH_SIZE = 500;
+	static final public long DEFAULT_MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private CouchDb db;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+	private List<JSONObject> pending = new ArrayList<JSONObject>();
+	private long pendingBytes = 0;
+	private List<CouchBulkResult> failures = new ArrayList<CouchBulkResult>();
+	private int writtenCount = 0;
+	private int requestCount = 0;
+
+	public CouchBulkDocumentWriter(CouchDb db) {
+		this.db = db;
+	}
+
+	public CouchDb getDb() {
+		return db;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+	public void setBatchSize(int batchSize) {
+		if( batchSize < 1 ){
+			batchSize = 1;
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Maximum size, in bytes, of the serialized documents sent in one
+	 * request. A value of zero or less disables this limit, which saves
+	 * serializing each document to estimate its size.
+	 */
+	public long getMaxBatchBytes() {
+		return maxBatchBytes;
+	}
+	public void setMaxBatchBytes(long maxBatchBytes) {
+		this.maxBatchBytes = maxBatchBytes;
+	}
+
+	/**
+	 * Queues a document for writing. If the buffer becomes full, pending
+	 * documents are sent to the database.
+	 * @param doc Document to create, update or delete (_deleted set to true)
+	 * @return Results for the documents sent during this call, or an empty
+	 * list if the document was only buffered.
+	 * @throws Exception If the bulk request fails as a whole
+	 */
+	public List<CouchBulkResult> write(JSONObject doc) throws Exception {
+		List<CouchBulkResult> results = new ArrayList<CouchBulkResult>(0);
+
+		long docBytes = 0;
+		if( maxBatchBytes > 0 ){
+			docBytes = doc.toString().length();
+
+			// Flush first if this document would push the batch over the limit
+			if( pending.size() > 0
+			 && (pendingBytes + docBytes) > maxBatchBytes ){
+				results.addAll( flush() );
+			}
+		}
+
+		pending.add(doc);
+		pendingBytes += docBytes;
+
+		if( pending.size() >= batchSize
+		 || (maxBatchBytes > 0 && pendingBytes >= maxBatchBytes) ){
+			results.addAll( flush() );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Sends all buffered documents to the database.
+	 * @return Results for the documents sent
+	 * @throws Exception If the bulk request fails as a whole
+	 */
+	public List<CouchBulkResult> flush() throws Exception {
+		if( pending.size() < 1 ){
+			return new ArrayList<CouchBulkResult>(0);
+		}
+
+		List<JSONObject> docs = pending;
+		pending = new ArrayList<JSONObject>();
+		pendingBytes = 0;
+
+		List<CouchBulkResult> results = null;
+		try {
+			results = db.bulkDocuments(docs);
+			++requestCount;
+		} catch(Exception e) {
+			throw new Exception("Error while writing a batch of "+docs.size()+" documents",e);
+		}
+
+		int batchFailures = 0;
+		for(CouchBulkResult result : results){
+			if( result.isSuccess() ){
+				++writtenCount;
+			} else {
+				++batchFailures;
+				failures.add(result);
+			}
+		}
+
+		logger.debug("Bulk write of "+docs.size()+" documents. Failures: "+batchFailures);
+
+		return results;
+	}
+
+	public void close() throws Exception {
+		flush();
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	public int getWrittenCount() {
+		return writtenCount;
+	}
+
+	public int getRequestCount() {
+		return requestCount;
+	}
+
+	public List<CouchBulkResult> getFailures() {
+		return failures;
+	}
+}
@@ -0,0 +1,81 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Outcome for one document submitted as part of a _bulk_docs
+ * request. CouchDb reports success or failure for each document
+ * independently, in the order they were submitted.
+ */
+public class CouchBulkResult {
+
+	static public List<CouchBulkResult> parseResponse(JSONArray response) throws Exception {
+		List<CouchBulkResult> results = new ArrayList<CouchBulkResult>(response.length());
+		for(int i=0,e=response.length(); i<e; ++i){
+			JSONObject jsonResult = response.getJSONObject(i);
+			results.add( parseResult(jsonResult) );
+		}
+		return results;
+	}
+
+	static public CouchBulkResult parseResult(JSONObject jsonResult) throws Exception {
+		CouchBulkResult result = new CouchBulkResult();
+		result.setId( jsonResult.optString("id", null) );
+		result.setRev( jsonResult.optString("rev", null) );
+		result.setError( jsonResult.optString("error", null) );
+		result.setReason( jsonResult.optString("reason", null) );
+		return result;
+	}
+
+	private String id = null;
+	private String rev = null;
+	private String error = null;
+	private String reason = null;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getRev() {
+		return rev;
+	}
+	public void setRev(String rev) {
+		this.rev = rev;
+	}
+
+	public String getError() {
+		return error;
+	}
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+	public void setReason(String reason) {
+		this.reason = reason;
+	}
+
+	public boolean isSuccess(){
+		return null == error;
+	}
+
+	public boolean isConflict(){
+		return "conflict".equals(error);
+	}
+
+	public String toString(){
+		if( isSuccess() ){
+			return ""+id+"("+rev+")";
+		}
+		return ""+id+"("+error+"/"+reason+")";
+	}
+}
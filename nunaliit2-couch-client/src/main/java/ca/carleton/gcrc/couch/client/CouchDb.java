@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import java.net.URL;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -38,10 +39,51 @@ public interface CouchDb {
 	String getDocumentRevision(String docId) throws Exception;
 	
 	String getDocumentRevision(JSONObject doc) throws Exception;
+
+	/**
+	 * Fetches the current revision of a number of documents in a single
+	 * request. Documents that are not found or deleted are omitted.
+	 * @param docIds Identifiers of the documents
+	 * @return Map of revisions, keyed by document identifier
+	 * @throws Exception If the request as a whole fails
+	 */
+	Map<String,String> getDocumentRevisions(Collection<String> docIds) throws Exception;
 	
 	void updateDocument(JSONObject doc) throws Exception;
 	
 	void deleteDocument(JSONObject doc) throws Exception;
+
+	/**
+	 * Creates, updates or deletes a number of documents in a single
+	 * request using _bulk_docs. Documents that are accepted have their
+	 * _id and _rev updated.
+	 * @param docs Documents to save. Documents with _deleted set are deleted.
+	 * @return One result per submitted document, in the same order
+	 * @throws Exception If the request as a whole fails
+	 */
+	List<CouchBulkResult> bulkDocuments(List<JSONObject> docs) throws Exception;
+
+	/**
+	 * Fetches a number of documents in a single request using _bulk_get.
+	 * Documents that are not found are omitted from the results.
+	 * @param docIds Identifiers of the documents to fetch
+	 * @return Documents found, in the order requested
+	 * @throws Exception If the request as a whole fails
+	 */
+	List<JSONObject> bulkGetDocuments(List<String> docIds) throws Exception;
+
+	/**
+	 * Fetches the changes made to the database after the given sequence,
+	 * without waiting for new changes.
+	 * @param since Sequence returned by a previous call. If null, no change
+	 * is reported and only the current sequence is returned.
+	 * @param limit Maximum number of changes to report. If the limit is
+	 * reached, the last sequence of the result is the one of the last
+	 * change reported.
+	 * @return Changed documents and the sequence to use for the next call
+	 * @throws Exception If the request fails
+	 */
+	CouchDbChanges getChanges(String since, int limit) throws Exception;
 	
 	void uploadAttachment(JSONObject doc, String name, File file, String contentType) throws Exception;
 	
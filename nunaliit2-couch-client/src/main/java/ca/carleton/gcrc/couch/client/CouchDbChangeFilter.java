@@ -0,0 +1,74 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONObject;
+
+/**
+ * Server-side filter applied to a change feed, so that a listener only
+ * receives changes for the documents it cares about. Either a filter function
+ * from a design document ("design/filter") with optional parameters, or a
+ * selector (CouchDB 2.x and later).
+ */
+public class CouchDbChangeFilter {
+
+	static public CouchDbChangeFilter fromFilterName(String filterName) {
+		CouchDbChangeFilter filter = new CouchDbChangeFilter();
+		filter.filterName = filterName;
+		return filter;
+	}
+
+	static public CouchDbChangeFilter fromSelector(JSONObject selector) {
+		CouchDbChangeFilter filter = new CouchDbChangeFilter();
+		filter.filterName = "_selector";
+		filter.selector = selector;
+		return filter;
+	}
+
+	private String filterName = null;
+	private Map<String,String> parameters = new TreeMap<String,String>();
+	private JSONObject selector = null;
+
+	private CouchDbChangeFilter() {
+	}
+
+	public String getFilterName() {
+		return filterName;
+	}
+
+	public Map<String,String> getParameters() {
+		return parameters;
+	}
+	public void setParameter(String name, String value) {
+		parameters.put(name, value);
+	}
+
+	public JSONObject getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Listeners registered with filters that have the same key share
+	 * the same feed.
+	 */
+	public String getKey() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(filterName);
+		for(Map.Entry<String,String> entry : parameters.entrySet()){
+			sb.append("&");
+			sb.append(entry.getKey());
+			sb.append("=");
+			sb.append(entry.getValue());
+		}
+		if( null != selector ){
+			sb.append(":");
+			sb.append(selector.toString());
+		}
+		return sb.toString();
+	}
+
+	public String toString() {
+		return getKey();
+	}
+}
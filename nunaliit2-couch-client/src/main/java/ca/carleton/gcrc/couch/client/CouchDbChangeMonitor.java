@@ -1,8 +1,38 @@
 package ca.carleton.gcrc.couch.client;
 
+import java.io.File;
+
 public interface CouchDbChangeMonitor {
 
 	void shutdown();
 
 	void addChangeListener(CouchDbChangeListener listener) throws Exception;
+
+	/**
+	 * Adds a listener that receives only the changes selected by the
+	 * given filter. Each distinct filter uses its own feed, which starts
+	 * at the current sequence.
+	 */
+	void addChangeListener(CouchDbChangeListener listener, CouchDbChangeFilter filter) throws Exception;
+
+	/**
+	 * Sets a file where the sequence of the last change reported to listeners
+	 * of the unfiltered feed is saved. When the monitor starts, it resumes
+	 * from the sequence found in this file, so changes made while the monitor
+	 * was not running are reported. Must be called before the feed is
+	 * started.
+	 *
+	 * When a checkpoint file is set, the unfiltered feed does not start when
+	 * listeners are added, but when start() is called. Listeners added before
+	 * that all receive the changes replayed from the checkpoint.
+	 */
+	void setCheckpointFile(File checkpointFile) throws Exception;
+
+	/**
+	 * Starts the unfiltered feed once all listeners known at initialization
+	 * are registered. Without a checkpoint file, the feed starts as soon as
+	 * a listener is added and calling this method is not required. Listeners
+	 * added after this call receive changes from the time they are added.
+	 */
+	void start() throws Exception;
 }
@@ -0,0 +1,63 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Changes reported by a normal (non-continuous) request to the
+ * change feed of a database.
+ */
+public class CouchDbChanges {
+
+	static public CouchDbChanges parseResponse(JSONObject response) throws Exception {
+		CouchDbChanges changes = new CouchDbChanges();
+
+		// In CouchDB 1.x, last_seq is an integer. In CouchDB 2.x, last_seq is a string.
+		Object lastSeqObj = response.opt("last_seq");
+		if( lastSeqObj instanceof String ) {
+			changes.setLastSequence( (String)lastSeqObj );
+		} else if( lastSeqObj instanceof Number ) {
+			changes.setLastSequence( "" + lastSeqObj );
+		} else {
+			throw new Exception("Do not know how to handle parameter 'last_seq' in change feed: "+lastSeqObj);
+		}
+
+		JSONArray results = response.optJSONArray("results");
+		if( null != results ){
+			for(int i=0,e=results.length(); i<e; ++i){
+				JSONObject result = results.getJSONObject(i);
+				String docId = result.optString("id", null);
+				if( null != docId ){
+					changes.getDocIds().add(docId);
+				}
+			}
+		}
+
+		return changes;
+	}
+
+	private String lastSequence = null;
+	private List<String> docIds = new ArrayList<String>();
+
+	/**
+	 * Sequence to use to obtain the changes that follow the ones
+	 * reported here.
+	 */
+	public String getLastSequence() {
+		return lastSequence;
+	}
+	public void setLastSequence(String lastSequence) {
+		this.lastSequence = lastSequence;
+	}
+
+	/**
+	 * Identifiers of the changed documents, in the order reported
+	 * by the change feed.
+	 */
+	public List<String> getDocIds() {
+		return docIds;
+	}
+}
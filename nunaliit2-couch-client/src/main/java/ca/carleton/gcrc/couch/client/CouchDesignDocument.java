@@ -15,6 +15,22 @@ public interface CouchDesignDocument {
 	CouchQueryResults performQuery(CouchQuery query) throws Exception;
 
 	ConnectionStreamResult performQueryRaw(CouchQuery query) throws Exception;
+
+	CouchQueryRowIterator performQueryIterator(CouchQuery query) throws Exception;
+
+	/**
+	 * Iterates over the rows of a view by fetching pages of rows as they
+	 * are needed. Pages are requested using the key and document identifier
+	 * of the last row read, so the cost of each request does not grow with
+	 * the position in the view.
+	 * @param query Query to perform. It is not modified.
+	 * @param pageSize Number of rows requested at a time
+	 * @param prefetch If set, the next page is fetched in the background
+	 * while the rows of the current page are consumed.
+	 * @return Iterator over all rows of the query
+	 * @throws Exception
+	 */
+	CouchQueryRowIterator performQueryPaged(CouchQuery query, int pageSize, boolean prefetch) throws Exception;
 	
 	<T> T performQuery(CouchQuery query, Class<T> expectedClass) throws Exception;
 }
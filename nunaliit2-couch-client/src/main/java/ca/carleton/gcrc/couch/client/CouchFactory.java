@@ -3,6 +3,7 @@ package ca.carleton.gcrc.couch.client;
 import java.net.URL;
 import java.util.Properties;
 
+import ca.carleton.gcrc.couch.client.impl.ConnectionTransportPooled;
 import ca.carleton.gcrc.couch.client.impl.CouchClientImpl;
 import ca.carleton.gcrc.couch.client.impl.CouchContextNull;
 import ca.carleton.gcrc.couch.client.impl.CouchContextUsernamePassword;
@@ -65,6 +66,9 @@ public class CouchFactory {
 			serverVersion = new CouchServerVersionImpl(version, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
 		}
 		
+		// Connection settings are shared by all clients
+		configureTransport(props);
+		
 		// Compute URL
 		URL url = new URL(urlString);
 		
@@ -78,6 +82,52 @@ public class CouchFactory {
 		return client;
 	}
 
+	private void configureTransport(Properties props) throws Exception {
+		ConnectionTransportPooled transport = ConnectionTransportPooled.getDefault();
+		
+		String maxPerHost = props.getProperty("couchdb.connections.maxPerHost");
+		if( null != maxPerHost ) {
+			int max = 0;
+			try {
+				max = Integer.parseInt(maxPerHost.trim());
+			} catch(Exception e) {
+				throw new Exception("Can not parse maximum connections per host: "+maxPerHost, e);
+			}
+			transport.setMaxConnectionsPerHost(max);
+		}
+		
+		// Idle sockets kept alive by the JVM, unless the deployment
+		// configured it explicitly. Does not limit concurrent requests.
+		String keepAlive = props.getProperty("couchdb.connections.keepAlivePerHost");
+		if( null != keepAlive 
+		 && null == System.getProperty(ConnectionTransportPooled.PROPERTY_HTTP_MAX_CONNECTIONS) ) {
+			try {
+				int count = Integer.parseInt(keepAlive.trim());
+				System.setProperty(ConnectionTransportPooled.PROPERTY_HTTP_MAX_CONNECTIONS, ""+count);
+			} catch(Exception e) {
+				throw new Exception("Can not parse keep-alive connections per host: "+keepAlive, e);
+			}
+		}
+		
+		String connectTimeout = props.getProperty("couchdb.connections.connectTimeout");
+		if( null != connectTimeout ) {
+			try {
+				transport.setConnectTimeoutMs( Integer.parseInt(connectTimeout.trim()) );
+			} catch(Exception e) {
+				throw new Exception("Can not parse connect timeout: "+connectTimeout, e);
+			}
+		}
+		
+		String readTimeout = props.getProperty("couchdb.connections.readTimeout");
+		if( null != readTimeout ) {
+			try {
+				transport.setReadTimeoutMs( Integer.parseInt(readTimeout.trim()) );
+			} catch(Exception e) {
+				throw new Exception("Can not parse read timeout: "+readTimeout, e);
+			}
+		}
+	}
+
 	public CouchDb getDb(CouchClient client, String dbName) throws Exception {
 		// Compute URL
 		URL url = new URL(client.getUrl(), dbName+"/");
@@ -15,10 +15,31 @@ public class CouchQuery {
 	private String endKey = null;
 	private String keys = null;
 	private String limit = null;
+	private String skip = null;
+	private String startKeyDocId = null;
+	private String endKeyDocId = null;
 	private String includeDocs = null;
 	private boolean reduce = false;
 	private boolean group = false;
 	
+	public CouchQuery() {
+	}
+	
+	public CouchQuery(CouchQuery source) {
+		this.viewName = source.viewName;
+		this.listName = source.listName;
+		this.startKey = source.startKey;
+		this.endKey = source.endKey;
+		this.keys = source.keys;
+		this.limit = source.limit;
+		this.skip = source.skip;
+		this.startKeyDocId = source.startKeyDocId;
+		this.endKeyDocId = source.endKeyDocId;
+		this.includeDocs = source.includeDocs;
+		this.reduce = source.reduce;
+		this.group = source.group;
+	}
+	
 	public String getViewName() {
 		return viewName;
 	}
@@ -74,6 +95,39 @@ public class CouchQuery {
 		this.limit = JSONSupport.numberToString(limit);
 	}
 	
+	public void clearLimit() {
+		this.limit = null;
+	}
+	
+	public String getSkip() {
+		return skip;
+	}
+	public void setSkip(int skip) throws Exception {
+		this.skip = JSONSupport.numberToString(skip);
+	}
+	public void clearSkip() {
+		this.skip = null;
+	}
+	
+	/**
+	 * Document identifier used to break ties when several rows share
+	 * the start key. Combined with the start key, it allows paging through
+	 * a view without using large skip values.
+	 */
+	public String getStartKeyDocId() {
+		return startKeyDocId;
+	}
+	public void setStartKeyDocId(String startKeyDocId) {
+		this.startKeyDocId = startKeyDocId;
+	}
+	
+	public String getEndKeyDocId() {
+		return endKeyDocId;
+	}
+	public void setEndKeyDocId(String endKeyDocId) {
+		this.endKeyDocId = endKeyDocId;
+	}
+	
 	public String getIncludeDocs() {
 		return includeDocs;
 	}
@@ -0,0 +1,30 @@
+package ca.carleton.gcrc.couch.client;
+
+import org.json.JSONObject;
+
+/**
+ * Iterates over the rows of a view query as they are read from
+ * the server response, without holding all rows in memory. The
+ * iterator must be closed when the caller is done with it, unless
+ * all rows have been consumed.
+ */
+public interface CouchQueryRowIterator {
+
+	/**
+	 * Total number of rows in the view, as reported by the server. Only
+	 * available if the server sent it before the rows, which is the
+	 * case for regular views.
+	 */
+	int getTotal();
+
+	int getOffset();
+
+	boolean hasNext() throws Exception;
+
+	/**
+	 * Returns the next row, or null if all rows have been read.
+	 */
+	JSONObject next() throws Exception;
+
+	void close() throws Exception;
+}
@@ -0,0 +1,30 @@
+package ca.carleton.gcrc.couch.client.impl;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Provides the HTTP connections used to reach the database server. Every
+ * connection obtained from openConnection() must be handed back with
+ * releaseConnection() once the response has been consumed.
+ */
+public interface ConnectionTransport {
+
+	HttpURLConnection openConnection(URL url, String method) throws Exception;
+
+	/**
+	 * Opens a connection that is expected to remain open for a long time,
+	 * such as a continuous change feed. Such a connection is not counted
+	 * against the limits of the transport, but must still be released.
+	 */
+	HttpURLConnection openLongLivedConnection(URL url, String method) throws Exception;
+
+	/**
+	 * Returns a connection to the transport.
+	 * @param conn Connection previously obtained from openConnection()
+	 * @param reusable True if the response was fully consumed and the
+	 * streams closed, in which case the underlying socket can be kept
+	 * alive for a subsequent request. False to close the socket.
+	 */
+	void releaseConnection(HttpURLConnection conn, boolean reusable);
+}
@@ -0,0 +1,277 @@
+package ca.carleton.gcrc.couch.client.impl;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport that keeps sockets alive between requests and can optionally
+ * bound the number of connections opened concurrently to each host.
+ *
+ * Sockets are kept alive by the JVM's HTTP keep-alive cache, as long as
+ * connections are released as reusable (response consumed and streams
+ * closed) instead of being disconnected. The number of idle sockets
+ * retained per host by the JVM is controlled by the system property
+ * http.maxConnections (5 when not set). This only limits the idle sockets
+ * that are kept, not the number of requests in progress.
+ *
+ * The number of concurrent connections per host is not limited by
+ * default. When a limit is set, it should be large: a thread that already
+ * holds a connection to a host, for example while streaming a response,
+ * is never made to wait for a nested request to the same host. Long-lived
+ * connections, such as continuous change feeds, are not counted against
+ * the limit since they would otherwise hold a permit for as long as the
+ * feed is open.
+ */
+public class ConnectionTransportPooled implements ConnectionTransport {
+
+	static final public int DEFAULT_MAX_CONNECTIONS_PER_HOST = 0; // unlimited
+	static final public int DEFAULT_KEEP_ALIVE_CONNECTIONS_PER_HOST = 5;
+	static final public String PROPERTY_HTTP_MAX_CONNECTIONS = "http.maxConnections";
+	static final public int DEFAULT_CONNECT_TIMEOUT_MS = 30 * 1000;
+	static final public int DEFAULT_READ_TIMEOUT_MS = 0;
+	static final public long DEFAULT_ACQUIRE_TIMEOUT_MS = 60 * 1000;
+
+	static private ConnectionTransportPooled g_default = null;
+
+	/**
+	 * Returns the number of idle sockets that the JVM keeps alive for
+	 * each host.
+	 */
+	static public int getKeepAliveConnectionsPerHost() {
+		int max = DEFAULT_KEEP_ALIVE_CONNECTIONS_PER_HOST;
+		try {
+			String value = System.getProperty(PROPERTY_HTTP_MAX_CONNECTIONS);
+			if( null != value ){
+				int parsed = Integer.parseInt(value.trim());
+				if( parsed > 0 ){
+					max = parsed;
+				}
+			}
+		} catch(Exception e) {
+			// Keep JVM default
+		}
+		return max;
+	}
+
+	static synchronized public ConnectionTransportPooled getDefault() {
+		if( null == g_default ){
+			g_default = new ConnectionTransportPooled();
+		}
+		return g_default;
+	}
+
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+	private int readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+	private long acquireTimeoutMs = DEFAULT_ACQUIRE_TIMEOUT_MS;
+	private Map<String,Semaphore> permitsByHost = new HashMap<String,Semaphore>();
+	private Map<HttpURLConnection,Semaphore> permitsByConnection = new HashMap<HttpURLConnection,Semaphore>();
+	private Map<HttpURLConnection,Thread> holderByConnection = new HashMap<HttpURLConnection,Thread>();
+	private Map<Thread,Integer> heldCountByThread = new HashMap<Thread,Integer>();
+	private AtomicLong requestCount = new AtomicLong(0);
+	private AtomicLong discardedCount = new AtomicLong(0);
+	private AtomicLong acquireTimeoutCount = new AtomicLong(0);
+	private AtomicLong totalWaitNanos = new AtomicLong(0);
+	private AtomicInteger activeConnections = new AtomicInteger(0);
+	private AtomicInteger peakActiveConnections = new AtomicInteger(0);
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+	/**
+	 * Sets the number of connections that can be opened concurrently
+	 * to a host. A value of zero or less, the default, removes the limit.
+	 * Only affects hosts that have not been contacted yet.
+	 */
+	public synchronized void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getConnectTimeoutMs() {
+		return connectTimeoutMs;
+	}
+	public void setConnectTimeoutMs(int connectTimeoutMs) {
+		this.connectTimeoutMs = connectTimeoutMs;
+	}
+
+	public int getReadTimeoutMs() {
+		return readTimeoutMs;
+	}
+	public void setReadTimeoutMs(int readTimeoutMs) {
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	public long getAcquireTimeoutMs() {
+		return acquireTimeoutMs;
+	}
+	public void setAcquireTimeoutMs(long acquireTimeoutMs) {
+		this.acquireTimeoutMs = acquireTimeoutMs;
+	}
+
+	@Override
+	public HttpURLConnection openConnection(URL url, String method) throws Exception {
+		return openConnection(url, method, getPermits(url));
+	}
+
+	@Override
+	public HttpURLConnection openLongLivedConnection(URL url, String method) throws Exception {
+		return openConnection(url, method, null);
+	}
+
+	private HttpURLConnection openConnection(URL url, String method, Semaphore permits) throws Exception {
+		Thread thread = Thread.currentThread();
+		if( null != permits && isHoldingPermit(thread) ){
+			// Waiting here could deadlock a thread that streams a response
+			// while it performs nested requests
+			permits = null;
+		}
+
+		if( null != permits ){
+			long start = System.nanoTime();
+			boolean acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+			totalWaitNanos.addAndGet(System.nanoTime() - start);
+			if( false == acquired ){
+				acquireTimeoutCount.incrementAndGet();
+				throw new Exception("Timed out waiting for a connection to "+getHostKey(url));
+			}
+		}
+
+		HttpURLConnection conn = null;
+		try {
+			conn = (HttpURLConnection)url.openConnection();
+			conn.setRequestMethod(method);
+			conn.setConnectTimeout(connectTimeoutMs);
+			conn.setReadTimeout(readTimeoutMs);
+			conn.setUseCaches(false);
+		} catch(Exception e) {
+			if( null != permits ){
+				permits.release();
+			}
+			throw e;
+		}
+
+		// Track every connection, even without a permit, so that a
+		// connection released twice is only accounted for once
+		synchronized(this) {
+			permitsByConnection.put(conn, permits);
+			if( null != permits ){
+				holderByConnection.put(conn, thread);
+				Integer count = heldCountByThread.get(thread);
+				heldCountByThread.put(thread, null == count ? 1 : count + 1);
+			}
+		}
+
+		requestCount.incrementAndGet();
+		int active = activeConnections.incrementAndGet();
+		int peak = peakActiveConnections.get();
+		while( active > peak ){
+			if( peakActiveConnections.compareAndSet(peak, active) ){
+				break;
+			}
+			peak = peakActiveConnections.get();
+		}
+
+		return conn;
+	}
+
+	@Override
+	public void releaseConnection(HttpURLConnection conn, boolean reusable) {
+		Semaphore permits = null;
+		synchronized(this) {
+			if( false == permitsByConnection.containsKey(conn) ){
+				// Already released
+				return;
+			}
+			permits = permitsByConnection.remove(conn);
+			Thread thread = holderByConnection.remove(conn);
+			if( null != thread ){
+				Integer count = heldCountByThread.get(thread);
+				if( null == count || count <= 1 ){
+					heldCountByThread.remove(thread);
+				} else {
+					heldCountByThread.put(thread, count - 1);
+				}
+			}
+		}
+
+		if( false == reusable ){
+			discardedCount.incrementAndGet();
+			try {
+				conn.disconnect();
+			} catch(Exception e) {
+				// Ignore
+			}
+		}
+
+		activeConnections.decrementAndGet();
+
+		if( null != permits ){
+			permits.release();
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getDiscardedCount() {
+		return discardedCount.get();
+	}
+
+	public long getAcquireTimeoutCount() {
+		return acquireTimeoutCount.get();
+	}
+
+	public long getTotalWaitMs() {
+		return TimeUnit.NANOSECONDS.toMillis( totalWaitNanos.get() );
+	}
+
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	public int getPeakActiveConnections() {
+		return peakActiveConnections.get();
+	}
+
+	public String toString() {
+		return "requests: "+getRequestCount()
+			+" active: "+getActiveConnections()
+			+" peak: "+getPeakActiveConnections()
+			+" discarded: "+getDiscardedCount()
+			+" wait(ms): "+getTotalWaitMs()
+			+" timeouts: "+getAcquireTimeoutCount();
+	}
+
+	private synchronized boolean isHoldingPermit(Thread thread) {
+		return heldCountByThread.containsKey(thread);
+	}
+
+	private synchronized Semaphore getPermits(URL url) {
+		if( maxConnectionsPerHost <= 0 ){
+			return null;
+		}
+
+		String hostKey = getHostKey(url);
+		Semaphore permits = permitsByHost.get(hostKey);
+		if( null == permits ){
+			permits = new Semaphore(maxConnectionsPerHost, true);
+			permitsByHost.put(hostKey, permits);
+		}
+		return permits;
+	}
+
+	private String getHostKey(URL url) {
+		int port = url.getPort();
+		if( port < 0 ){
+			port = url.getDefaultPort();
+		}
+		return url.getProtocol()+"://"+url.getHost()+":"+port;
+	}
+}
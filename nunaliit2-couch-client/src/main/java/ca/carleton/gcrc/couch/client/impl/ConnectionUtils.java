@@ -1,9 +1,11 @@
 package ca.carleton.gcrc.couch.client.impl;
 
+import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -25,14 +27,10 @@ public class ConnectionUtils {
 			encoding = "UTF-8";
 		}
 		
-		InputStreamReader isr = new InputStreamReader(contentStream, encoding);
-		StringWriter sw = new StringWriter();
-		
-		StreamUtils.copyStream(isr, sw);
-
-		sw.flush();
-		
-		JSONTokener jsonTokener = new JSONTokener(sw.toString());
+		// Tokenize directly from the stream instead of copying the
+		// whole response in memory first
+		Reader reader = new BufferedReader( new InputStreamReader(contentStream, encoding) );
+		JSONTokener jsonTokener = new JSONTokener(reader);
 		Object obj = jsonTokener.nextValue();
 		
 		return obj;
@@ -81,30 +79,20 @@ public class ConnectionUtils {
 	static public <T> T getJsonResource(CouchContext ctxt, URL url, Class<T> clazz) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("GET");
-		context.adjustConnection(conn);
-		conn.setDoOutput(false);
-		conn.setDoInput(true);
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, "GET");
+		boolean reusable = false;
 		try {
+			conn.setDoOutput(false);
+			conn.setDoInput(true);
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			T result = getJsonFromConnection(conn, clazz);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		T result = getJsonFromInputStream(contentStream, contentEncoding, clazz);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public JSONObject getJsonResource(CouchContext ctxt, URL url) throws Exception {
@@ -112,160 +100,103 @@ public class ConnectionUtils {
 	}
 
 	static public JSONObject putJsonResource(CouchContext ctxt, URL url, JSONObject jsonObj) throws Exception {
-		CouchContextBase context = CouchContextBase.getBase(ctxt);
-		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("PUT");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		if( null == jsonObj ) {
-			conn.setDoOutput(false);
-		} else {
-			conn.setDoOutput(true);
-			conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-			OutputStream os = conn.getOutputStream();
-			OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
-			jsonObj.write(osw);
-			osw.flush();
-			os.close();
-		}
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
-		try {
-			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
-		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
+		return sendJsonResource(ctxt, url, "PUT", jsonObj, JSONObject.class);
 	}
 
 	static public JSONObject postJsonResource(CouchContext ctxt, URL url, JSONObject jsonObj) throws Exception {
+		return postJsonResource(ctxt, url, jsonObj, JSONObject.class);
+	}
+
+	static public <T> T postJsonResource(CouchContext ctxt, URL url, JSONObject jsonObj, Class<T> clazz) throws Exception {
+		return sendJsonResource(ctxt, url, "POST", jsonObj, clazz);
+	}
+
+	static private <T> T sendJsonResource(CouchContext ctxt, URL url, String method, JSONObject jsonObj, Class<T> clazz) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("POST");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		if( null == jsonObj ) {
-			conn.setDoOutput(false);
-		} else {
-			conn.setDoOutput(true);
-			conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-			OutputStream os = conn.getOutputStream();
-			OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
-			jsonObj.write(osw);
-			osw.flush();
-			os.close();
-		}
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, method);
+		boolean reusable = false;
 		try {
-			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
+			conn.setDoInput(true);
+			if( null == jsonObj ) {
+				conn.setDoOutput(false);
+			} else {
+				conn.setDoOutput(true);
+				conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+				OutputStream os = conn.getOutputStream();
+				OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
+				jsonObj.write(osw);
+				osw.flush();
+				os.close();
 			}
-			throw e;
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+			checkResponseForError(conn);
+			T result = getJsonFromConnection(conn, clazz);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public JSONObject postForm(CouchContext ctxt, URL url, Map<String,String> form) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("POST");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		if( null == form ) {
-			conn.setDoOutput(false);
-		} else {
-			conn.setDoOutput(true);
-			conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
-			OutputStream os = conn.getOutputStream();
-			OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
-			boolean first = true;
-			for(String key : form.keySet()){
-				String value = form.get(key);
-				if( first ) {
-					first = false;
-				} else {
-					osw.write("&");
+		HttpURLConnection conn = openConnection(context, url, "POST");
+		boolean reusable = false;
+		try {
+			conn.setDoInput(true);
+			if( null == form ) {
+				conn.setDoOutput(false);
+			} else {
+				conn.setDoOutput(true);
+				conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
+				OutputStream os = conn.getOutputStream();
+				OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
+				boolean first = true;
+				for(String key : form.keySet()){
+					String value = form.get(key);
+					if( first ) {
+						first = false;
+					} else {
+						osw.write("&");
+					}
+					osw.write( URLEncoder.encode(key, "UTF-8") );
+					osw.write("=");
+					osw.write( URLEncoder.encode(value, "UTF-8") );
 				}
-				osw.write( URLEncoder.encode(key, "UTF-8") );
-				osw.write("=");
-				osw.write( URLEncoder.encode(value, "UTF-8") );
+				osw.flush();
+				os.close();
 			}
-			osw.flush();
-			os.close();
-		}
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
-		try {
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			JSONObject result = getJsonFromConnection(conn, JSONObject.class);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public JSONObject deleteJsonResource(CouchContext ctxt, URL url) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("DELETE");
-		context.adjustConnection(conn);
-		conn.setDoOutput(false);
-		conn.setDoInput(true);
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, "DELETE");
+		boolean reusable = false;
 		try {
+			conn.setDoOutput(false);
+			conn.setDoInput(true);
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			JSONObject result = getJsonFromConnection(conn, JSONObject.class);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public JSONObject putStreamResource(CouchContext ctxt, URL url, InputStream is, String contentType, long size) throws Exception {
@@ -275,37 +206,27 @@ public class ConnectionUtils {
 			contentType = "application/binary";
 		}
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("PUT");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		conn.setDoOutput(true);
-		conn.setRequestProperty("Content-Type", contentType);
-		OutputStream os = conn.getOutputStream();
-		
-		StreamUtils.copyStream(is, os);
-
-		os.flush();
-		os.close();
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, "PUT");
+		boolean reusable = false;
 		try {
+			conn.setDoInput(true);
+			conn.setDoOutput(true);
+			conn.setRequestProperty("Content-Type", contentType);
+			OutputStream os = conn.getOutputStream();
+			
+			StreamUtils.copyStream(is, os);
+	
+			os.flush();
+			os.close();
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			JSONObject result = getJsonFromConnection(conn, JSONObject.class);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public JSONObject putStreamResource(
@@ -320,94 +241,137 @@ public class ConnectionUtils {
 			contentType = "application/binary";
 		}
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("PUT");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		conn.setDoOutput(true);
-		conn.setRequestProperty("Content-Type", contentType);
-		OutputStream os = conn.getOutputStream();
-		conn.connect();
-		producer.produce(os);
-		os.flush();
-		os.close();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, "PUT");
+		boolean reusable = false;
 		try {
+			conn.setDoInput(true);
+			conn.setDoOutput(true);
+			conn.setRequestProperty("Content-Type", contentType);
+			OutputStream os = conn.getOutputStream();
+			conn.connect();
+			producer.produce(os);
+			os.flush();
+			os.close();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			JSONObject result = getJsonFromConnection(conn, JSONObject.class);
+			reusable = true;
+			return result;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
-		JSONObject result = getJsonFromInputStream(contentStream, contentEncoding, JSONObject.class);
-		contentStream.close();
-		conn.disconnect();
-
-		return result;
 	}
 
 	static public String getStreamResource(CouchContext ctxt, URL url, OutputStream outputStream) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
 		
-		String contentType = null;
-		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("GET");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		conn.setDoOutput(false);
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, "GET");
+		boolean reusable = false;
 		try {
+			conn.setDoInput(true);
+			conn.setDoOutput(false);
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
-		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
-			throw e;
+			String contentType = conn.getContentType();
+			InputStream contentStream = conn.getInputStream();
+	
+			StreamUtils.copyStream(contentStream, outputStream);
+	
+			contentStream.close();
+			reusable = true;
+			return contentType;
+		} finally {
+			context.getTransport().releaseConnection(conn, reusable);
 		}
-		contentType = conn.getContentType();
-		//String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
+	}
+
+	/**
+	 * Performs a GET request and returns the response stream. The connection
+	 * is returned to the transport when the caller closes the stream or
+	 * reads it to the end.
+	 */
+	static public ConnectionStreamResult getStreamResource(CouchContext ctxt, URL url) throws Exception {
+		return openStreamResource(ctxt, url, "GET", null, -1, false);
+	}
 
-		StreamUtils.copyStream(contentStream, outputStream);
+	/**
+	 * Performs a GET request and returns the response stream. Reads from
+	 * the stream fail if no data is received within the given timeout.
+	 */
+	static public ConnectionStreamResult getStreamResource(CouchContext ctxt, URL url, int readTimeoutMs) throws Exception {
+		return openStreamResource(ctxt, url, "GET", null, readTimeoutMs, false);
+	}
 
-		contentStream.close();
-		conn.disconnect();
+	/**
+	 * Performs a POST request with a JSON body and returns the response
+	 * stream. Reads from the stream fail if no data is received within the
+	 * given timeout. A negative timeout keeps the transport default.
+	 */
+	static public ConnectionStreamResult postJsonStreamResource(CouchContext ctxt, URL url, JSONObject jsonObj, int readTimeoutMs) throws Exception {
+		return openStreamResource(ctxt, url, "POST", jsonObj, readTimeoutMs, false);
+	}
 
-		return contentType;
+	/**
+	 * Performs a GET request for a feed that remains open for a long
+	 * time, such as a continuous change feed. The connection is not counted
+	 * against the connection limit of the transport.
+	 */
+	static public ConnectionStreamResult getFeedResource(CouchContext ctxt, URL url, int readTimeoutMs) throws Exception {
+		return openStreamResource(ctxt, url, "GET", null, readTimeoutMs, true);
 	}
 
-	static public ConnectionStreamResult getStreamResource(CouchContext ctxt, URL url) throws Exception {
+	/**
+	 * Performs a POST request with a JSON body for a feed that remains open
+	 * for a long time. The connection is not counted against the connection
+	 * limit of the transport.
+	 */
+	static public ConnectionStreamResult postJsonFeedResource(CouchContext ctxt, URL url, JSONObject jsonObj, int readTimeoutMs) throws Exception {
+		return openStreamResource(ctxt, url, "POST", jsonObj, readTimeoutMs, true);
+	}
+
+	static private ConnectionStreamResult openStreamResource(
+			CouchContext ctxt
+			,URL url
+			,String method
+			,JSONObject jsonObj
+			,int readTimeoutMs
+			,boolean longLived
+			) throws Exception {
 		CouchContextBase context = CouchContextBase.getBase(ctxt);
+		ConnectionTransport transport = context.getTransport();
 		
-		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
-		conn.setRequestMethod("GET");
-		context.adjustConnection(conn);
-		conn.setDoInput(true);
-		conn.setDoOutput(false);
-		conn.connect();
-		updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
+		HttpURLConnection conn = openConnection(context, url, method, longLived);
 		try {
+			if( readTimeoutMs >= 0 ){
+				conn.setReadTimeout(readTimeoutMs);
+			}
+			conn.setDoInput(true);
+			if( null == jsonObj ) {
+				conn.setDoOutput(false);
+			} else {
+				conn.setDoOutput(true);
+				conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+				OutputStream os = conn.getOutputStream();
+				OutputStreamWriter osw = new OutputStreamWriter(os, "UTF-8");
+				jsonObj.write(osw);
+				osw.flush();
+				os.close();
+			}
+			conn.connect();
+			updateContextFromHeaderFields(ctxt,conn.getHeaderFields());
 			checkResponseForError(conn);
 		} catch(Exception e) {
-			try {
-				conn.disconnect();
-			} catch(Exception e2) {
-				// Ignore
-			}
+			transport.releaseConnection(conn, false);
 			throw e;
 		}
 		String contentType = conn.getContentType();
 		String contentEncoding = conn.getContentEncoding();
-		InputStream contentStream = conn.getInputStream();
+		InputStream contentStream = new InputStreamWithConnection(
+				conn.getInputStream()
+				,conn
+				,transport
+				);
 		
 		ConnectionStreamResult result = new ConnectionStreamResult();
 		result.setContentType(contentType);
@@ -417,6 +381,37 @@ public class ConnectionUtils {
 		return result;
 	}
 	
+	static private HttpURLConnection openConnection(CouchContextBase context, URL url, String method) throws Exception {
+		return openConnection(context, url, method, false);
+	}
+	
+	static private HttpURLConnection openConnection(CouchContextBase context, URL url, String method, boolean longLived) throws Exception {
+		ConnectionTransport transport = context.getTransport();
+		HttpURLConnection conn = null;
+		if( longLived ){
+			conn = transport.openLongLivedConnection(url, method);
+		} else {
+			conn = transport.openConnection(url, method);
+		}
+		try {
+			context.adjustConnection(conn);
+		} catch(Exception e) {
+			transport.releaseConnection(conn, false);
+			throw e;
+		}
+		return conn;
+	}
+	
+	static private <T> T getJsonFromConnection(HttpURLConnection conn, Class<T> clazz) throws Exception {
+		String contentEncoding = conn.getContentEncoding();
+		InputStream contentStream = conn.getInputStream();
+		try {
+			return getJsonFromInputStream(contentStream, contentEncoding, clazz);
+		} finally {
+			contentStream.close();
+		}
+	}
+	
 	/**
 	 * Analyze a CouchDb response and raises an exception if an error was returned
 	 * in the response.
@@ -13,5 +13,22 @@ public abstract class CouchContextBase implements CouchContext {
 		throw new Exception("Does not implement CouchContextBase: "+context.getClass().getName());
 	}
 	
+	private ConnectionTransport transport = null;
+	
 	abstract public void adjustConnection(HttpURLConnection conn) throws Exception;
+
+	/**
+	 * Returns the transport used to obtain connections for this context. Unless
+	 * one was specifically set, contexts share the default pooled transport.
+	 */
+	public ConnectionTransport getTransport() {
+		if( null == transport ){
+			return ConnectionTransportPooled.getDefault();
+		}
+		return transport;
+	}
+
+	public void setTransport(ConnectionTransport transport) {
+		this.transport = transport;
+	}
 }
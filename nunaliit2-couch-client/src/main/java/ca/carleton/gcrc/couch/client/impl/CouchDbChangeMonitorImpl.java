@@ -1,7 +1,13 @@
 package ca.carleton.gcrc.couch.client.impl;
 
+import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import ca.carleton.gcrc.couch.client.CouchDbChangeFilter;
 import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
 import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
 
@@ -9,32 +15,91 @@ public class CouchDbChangeMonitorImpl implements CouchDbChangeMonitor {
 
 	private CouchDbImpl couchDb;
 	private URL changeUrl;
+	private File checkpointFile = null;
 	private CouchDbChangeMonitorThread thread = null;
+	private List<CouchDbChangeListener> pendingListeners = new ArrayList<CouchDbChangeListener>();
+	private boolean started = false;
+	private Map<String,CouchDbChangeMonitorThread> filteredThreads = new HashMap<String,CouchDbChangeMonitorThread>();
 	private boolean shuttingDown = false;
-	
+
 	public CouchDbChangeMonitorImpl(CouchDbImpl couchDb) {
 		this.couchDb = couchDb;
 	}
-	
+
 	@Override
 	synchronized public void shutdown() {
+		shuttingDown = true;
+		pendingListeners.clear();
 		if( null != thread ){
 			thread.shutdown();
 			thread = null;
-			shuttingDown = true;
+		}
+		for(CouchDbChangeMonitorThread filteredThread : filteredThreads.values()){
+			filteredThread.shutdown();
+		}
+		filteredThreads.clear();
+	}
+
+	@Override
+	synchronized public void setCheckpointFile(File checkpointFile) throws Exception {
+		if( null != thread ){
+			throw new Exception("Checkpoint file must be set before the change feed is started");
+		}
+		this.checkpointFile = checkpointFile;
+	}
+
+	@Override
+	synchronized public void start() throws Exception {
+		started = true;
+		if( !shuttingDown && pendingListeners.size() > 0 ) {
+			startThread();
 		}
 	}
 
 	@Override
 	synchronized public void addChangeListener(CouchDbChangeListener listener) throws Exception {
 		if( !shuttingDown  ) {
-			if( null == thread ){
-				thread = new CouchDbChangeMonitorThread(couchDb.getContext(), getChangeUrl());
-				thread.start();
+			if( null != thread ){
+				thread.addChangeListener(listener);
+			} else {
+				pendingListeners.add(listener);
+
+				// With a checkpoint, wait for start() so that every listener
+				// sees the changes replayed from the checkpoint
+				if( started || null == checkpointFile ){
+					startThread();
+				}
 			}
-		
+		}
+	}
+
+	private void startThread() throws Exception {
+		thread = new CouchDbChangeMonitorThread(couchDb.getContext(), getChangeUrl(), null, checkpointFile);
+		for(CouchDbChangeListener listener : pendingListeners){
 			thread.addChangeListener(listener);
 		}
+		pendingListeners.clear();
+		thread.start();
+	}
+
+	@Override
+	synchronized public void addChangeListener(CouchDbChangeListener listener, CouchDbChangeFilter filter) throws Exception {
+		if( null == filter ){
+			addChangeListener(listener);
+			return;
+		}
+
+		if( !shuttingDown  ) {
+			String key = filter.getKey();
+			CouchDbChangeMonitorThread filteredThread = filteredThreads.get(key);
+			if( null == filteredThread ){
+				filteredThread = new CouchDbChangeMonitorThread(couchDb.getContext(), getChangeUrl(), filter, null);
+				filteredThread.start();
+				filteredThreads.put(key, filteredThread);
+			}
+
+			filteredThread.addChangeListener(listener);
+		}
 	}
 
 	synchronized private URL getChangeUrl() throws Exception {
@@ -1,8 +1,16 @@
 package ca.carleton.gcrc.couch.client.impl;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.json.JSONArray;
@@ -11,60 +19,115 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.carleton.gcrc.couch.client.CouchContext;
+import ca.carleton.gcrc.couch.client.CouchDbChangeFilter;
 import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
 
+/**
+ * Follows the change feed of a database using a continuous feed. Each line
+ * received from the server is a change, except for empty lines which are
+ * heartbeats sent while the database is idle. If the connection is lost,
+ * the feed is reopened from the last sequence received, waiting longer
+ * after each consecutive failure.
+ */
 public class CouchDbChangeMonitorThread extends Thread {
-	
-	static final public int LONG_POLL_TIMEOUT_MS = 30 * 1000; // 30 seconds
+
+	static final public int HEARTBEAT_MS = 10 * 1000; // 10 seconds
+	static final public int READ_TIMEOUT_MS = 3 * HEARTBEAT_MS;
+	static final public int MIN_BACKOFF_MS = 1000; // 1 second
+	static final public int MAX_BACKOFF_MS = 60 * 1000; // 1 minute
+	static final public int CHECKPOINT_INTERVAL_MS = 5 * 1000; // 5 seconds
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
-	
+
 	private boolean isShuttingDown = false;
 	private CouchContext context;
 	private URL changeUrl;
-	private String lastSequence;
+	private CouchDbChangeFilter filter;
+	private File checkpointFile;
+	private volatile String lastSequence;
+	private String checkpointSequence;
+	private long lastCheckpointTime = 0;
+	private int consecutiveErrors = 0;
+	private InputStream currentStream = null;
 	private List<CouchDbChangeListener> listeners = new Vector<CouchDbChangeListener>();
-	
+
 	public CouchDbChangeMonitorThread(CouchContext context, URL changeUrl) throws Exception {
+		this(context, changeUrl, null, null);
+	}
+
+	public CouchDbChangeMonitorThread(
+			CouchContext context
+			,URL changeUrl
+			,CouchDbChangeFilter filter
+			,File checkpointFile
+			) throws Exception {
 		this.context = context;
 		this.changeUrl = changeUrl;
+		this.filter = filter;
+		this.checkpointFile = checkpointFile;
 
-		// Compute last sequence
-		List<UrlParameter> parameters = new ArrayList<UrlParameter>(3);
-		parameters.add( new UrlParameter("limit","1") );
-		parameters.add( new UrlParameter("descending","true") );
-		parameters.add( new UrlParameter("feed","normal") );
-		URL effectiveUrl = ConnectionUtils.computeUrlWithParameters(changeUrl, parameters);
-		
-		JSONObject response = ConnectionUtils.getJsonResource(context, effectiveUrl);
-		
-		ConnectionUtils.captureReponseErrors(response, "Error while fetching changes: ");
-		
-		// In CouchDB 1.x, last_seq is an integer. In CouchDB 2.x, last_seq is a string.
-		// lastSequence = response.getLong("last_seq");
-		Object lastSeqObj = response.get("last_seq");
-		lastSequence = convertLastSeqObj(lastSeqObj);
+		if( null != checkpointFile ) {
+			lastSequence = readCheckpoint();
+			checkpointSequence = lastSequence;
+		}
+
+		if( null == lastSequence ) {
+			lastSequence = fetchCurrentSequence();
+		}
 	}
-	
+
 	public void shutdown() {
-		
+
 		logger.info("Shutting down database change monitor thread");
 
+		InputStream stream = null;
 		synchronized(this) {
 			isShuttingDown = true;
+			stream = currentStream;
 			this.notifyAll();
 		}
+
+		// Unblock the thread if it is waiting on the feed
+		if( null != stream ) {
+			try {
+				stream.close();
+			} catch(Exception e) {
+				// Ignore
+			}
+		}
+	}
+
+	/**
+	 * Returns the time to wait before reopening the feed, doubling with
+	 * each consecutive error up to a maximum.
+	 */
+	static public int computeBackoffMs(int consecutiveErrors) {
+		if( consecutiveErrors < 1 ) {
+			return 0;
+		}
+		if( consecutiveErrors >= 16 ) {
+			return MAX_BACKOFF_MS;
+		}
+		return Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << (consecutiveErrors - 1));
+	}
+
+	/**
+	 * Returns the sequence from which the feed is followed: the sequence
+	 * of the last change received.
+	 */
+	public String getLastSequence() {
+		return lastSequence;
 	}
-	
+
 	synchronized public void addChangeListener(CouchDbChangeListener listener){
 		listeners.add(listener);
 	}
-	
+
 	@Override
 	public void run() {
-		
+
 		logger.info("Start database change monitor thread");
-		
+
 		boolean done = false;
 		do {
 			synchronized(this) {
@@ -75,74 +138,152 @@ public class CouchDbChangeMonitorThread extends Thread {
 			}
 		} while( false == done );
 
+		saveCheckpoint(true);
+
 		logger.info("Database change monitor exiting");
 	}
-	
+
 	private void activity() {
-		JSONObject changesDoc = null;
 		try {
-			changesDoc = getChanges();
+			followChanges();
 		} catch (Exception e) {
-			logger.error("Error accessing database changes",e);
-			waitMillis(60 * 1000); // wait a minute
-			return;
+			if( isShuttingDown() ) {
+				return;
+			}
+
+			++consecutiveErrors;
+			int backoffMs = computeBackoffMs(consecutiveErrors);
+
+			logger.error("Error accessing database changes (retry in "+backoffMs+"ms)",e);
+			saveCheckpoint(true);
+			waitMillis(backoffMs);
+		}
+	}
+
+	/**
+	 * Opens a continuous feed and reports changes until the feed is closed
+	 * by the server or the thread is shut down.
+	 */
+	private void followChanges() throws Exception {
+		List<UrlParameter> parameters = new ArrayList<UrlParameter>(6);
+		parameters.add( new UrlParameter("since",""+lastSequence) );
+		parameters.add( new UrlParameter("feed","continuous") );
+		parameters.add( new UrlParameter("heartbeat",""+HEARTBEAT_MS) );
+
+		JSONObject body = null;
+		if( null != filter ) {
+			parameters.add( new UrlParameter("filter",filter.getFilterName()) );
+			for(Map.Entry<String,String> entry : filter.getParameters().entrySet()){
+				parameters.add( new UrlParameter(entry.getKey(),entry.getValue()) );
+			}
+			if( null != filter.getSelector() ) {
+				body = new JSONObject();
+				body.put("selector", filter.getSelector());
+			}
+		}
+		URL effectiveUrl = ConnectionUtils.computeUrlWithParameters(changeUrl, parameters);
+
+		ConnectionStreamResult response = null;
+		if( null == body ) {
+			response = ConnectionUtils.getFeedResource(context, effectiveUrl, READ_TIMEOUT_MS);
+		} else {
+			response = ConnectionUtils.postJsonFeedResource(context, effectiveUrl, body, READ_TIMEOUT_MS);
+		}
+
+		InputStream is = response.getInputStream();
+		synchronized(this) {
+			if( isShuttingDown ) {
+				is.close();
+				return;
+			}
+			currentStream = is;
 		}
 
-		// Check for work
-		if( null != changesDoc ){
-			JSONArray results = changesDoc.optJSONArray("results");
-			if( null != results ){
-				for(int i=0; i<results.length(); ++i){
-					JSONObject changeObj = results.optJSONObject(i);
-					if( null != changeObj ){
+		try {
+			BufferedReader reader = new BufferedReader( new InputStreamReader(is, "UTF-8") );
+
+			String line = reader.readLine();
+			while( null != line ) {
+				consecutiveErrors = 0;
+
+				if( isShuttingDown() ) {
+					return;
+				}
+
+				line = line.trim();
+				if( line.length() > 0 ) {
+					JSONObject changeObj = new JSONObject(line);
+
+					if( changeObj.has("last_seq") ) {
+						// Server is closing the feed
+						lastSequence = convertLastSeqObj( changeObj.get("last_seq") );
+					} else {
 						try {
 							reportChanges(changeObj);
 						} catch (Exception e) {
 							logger.error("Error interpreting database changes",e);
 						}
+
+						Object seqObj = changeObj.opt("seq");
+						if( null != seqObj ) {
+							lastSequence = convertLastSeqObj(seqObj);
+						}
 					}
 				}
+
+				saveCheckpoint(false);
+
+				line = reader.readLine();
+			}
+
+		} finally {
+			synchronized(this) {
+				currentStream = null;
+			}
+			try {
+				is.close();
+			} catch(Exception e) {
+				// Ignore
 			}
 		}
 	}
-	
-	private JSONObject getChanges() throws Exception {
+
+	private String fetchCurrentSequence() throws Exception {
 		List<UrlParameter> parameters = new ArrayList<UrlParameter>(3);
-		parameters.add( new UrlParameter("since",""+lastSequence) );
-		parameters.add( new UrlParameter("feed","longpoll") );
-		parameters.add( new UrlParameter("timeout",""+LONG_POLL_TIMEOUT_MS) );
+		parameters.add( new UrlParameter("limit","1") );
+		parameters.add( new UrlParameter("descending","true") );
+		parameters.add( new UrlParameter("feed","normal") );
 		URL effectiveUrl = ConnectionUtils.computeUrlWithParameters(changeUrl, parameters);
-		
+
 		JSONObject response = ConnectionUtils.getJsonResource(context, effectiveUrl);
-		
+
 		ConnectionUtils.captureReponseErrors(response, "Error while fetching changes: ");
-		
+
+		// In CouchDB 1.x, last_seq is an integer. In CouchDB 2.x, last_seq is a string.
 		Object lastSeqObj = response.get("last_seq");
-		lastSequence = convertLastSeqObj(lastSeqObj);
-		
-		return response;
+		return convertLastSeqObj(lastSeqObj);
 	}
-	
+
 	private void reportChanges(JSONObject changeObj) throws Exception {
 		String docId = changeObj.getString("id");
 		boolean deleted = changeObj.optBoolean("deleted", false);
 		JSONArray changes = changeObj.getJSONArray("changes");
 		JSONObject change = changes.getJSONObject(0);
 		String rev = change.getString("rev");
-		
+
 		CouchDbChangeListener.Type type = CouchDbChangeListener.Type.DOC_UPDATED;
 		if( deleted ) {
 			type = CouchDbChangeListener.Type.DOC_DELETED;
-		
+
 		} else if( rev.startsWith("1-") ) {
 			type = CouchDbChangeListener.Type.DOC_CREATED;
 		}
-		
+
 		List<CouchDbChangeListener> copyListeners = new Vector<CouchDbChangeListener>();
 		synchronized (this) {
 			copyListeners.addAll(listeners);
 		}
-		
+
 		for(CouchDbChangeListener listener : copyListeners){
 			try {
 				listener.change(type, docId, rev, changeObj, null);
@@ -153,12 +294,101 @@ public class CouchDbChangeMonitorThread extends Thread {
 		}
 	}
 
+	private String readCheckpoint() {
+		if( false == checkpointFile.exists() ) {
+			return null;
+		}
+
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(checkpointFile);
+			BufferedReader reader = new BufferedReader( new InputStreamReader(fis, "UTF-8") );
+			String line = reader.readLine();
+			if( null != line ) {
+				line = line.trim();
+				if( line.length() > 0 ) {
+					logger.info("Resuming database changes from checkpoint: "+line);
+					return line;
+				}
+			}
+		} catch(Exception e) {
+			logger.error("Unable to read change feed checkpoint: "+checkpointFile.getAbsolutePath(),e);
+		} finally {
+			if( null != fis ) {
+				try {
+					fis.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Saves the last sequence to the checkpoint file, if one is configured.
+	 * Unless forced, the file is written at most once per interval.
+	 */
+	private void saveCheckpoint(boolean force) {
+		if( null == checkpointFile
+		 || null == lastSequence
+		 || lastSequence.equals(checkpointSequence) ) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if( false == force
+		 && (now - lastCheckpointTime) < CHECKPOINT_INTERVAL_MS ) {
+			return;
+		}
+
+		// Write to a temporary file and rename so that a crash never
+		// leaves a partial checkpoint
+		File tempFile = new File(checkpointFile.getParentFile(), checkpointFile.getName()+".tmp");
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(tempFile);
+			OutputStreamWriter osw = new OutputStreamWriter(fos, "UTF-8");
+			osw.write(lastSequence);
+			osw.write("\n");
+			osw.flush();
+			fos.close();
+			fos = null;
+
+			if( checkpointFile.exists() ) {
+				checkpointFile.delete();
+			}
+			if( false == tempFile.renameTo(checkpointFile) ) {
+				throw new Exception("Unable to rename "+tempFile.getAbsolutePath());
+			}
+
+			checkpointSequence = lastSequence;
+			lastCheckpointTime = now;
+
+		} catch(Exception e) {
+			logger.error("Unable to save change feed checkpoint: "+checkpointFile.getAbsolutePath(),e);
+		} finally {
+			if( null != fos ) {
+				try {
+					fos.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	synchronized private boolean isShuttingDown() {
+		return isShuttingDown;
+	}
+
 	private boolean waitMillis(int millis) {
 		synchronized(this) {
 			if( true == isShuttingDown ) {
 				return false;
 			}
-			
+
 			try {
 				this.wait(millis);
 			} catch (InterruptedException e) {
@@ -166,10 +396,10 @@ public class CouchDbChangeMonitorThread extends Thread {
 				return false;
 			}
 		}
-		
+
 		return true;
 	}
-	
+
 	/**
 	 * Converts the object "last_seq" found in the change feed to a String.
 	 * In CouchDB 1.x, last_seq is an integer. In CouchDB 2.x, last_seq is a string.
@@ -8,19 +8,24 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import ca.carleton.gcrc.couch.client.CouchBulkResult;
 import ca.carleton.gcrc.couch.client.CouchClient;
 import ca.carleton.gcrc.couch.client.CouchContext;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
+import ca.carleton.gcrc.couch.client.CouchDbChanges;
 import ca.carleton.gcrc.couch.client.CouchDbSecurityDocument;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchDocumentOptions;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
 
 public class CouchDbImpl implements CouchDb {
 
@@ -60,22 +65,27 @@ public class CouchDbImpl implements CouchDb {
 	@Override
 	public Collection<String> getAllDocIds() throws Exception {
 		URL requestUrl = new URL(url, "_all_docs?include_docs=false");
-		JSONObject response = ConnectionUtils.getJsonResource(getContext(), requestUrl);
-		
-		ConnectionUtils.captureReponseErrors(response, "Error while fetching all doc ids: ");
+		ConnectionStreamResult response = ConnectionUtils.getStreamResource(getContext(), requestUrl);
 		
+		// Read rows one at a time, retaining only the identifiers
 		List<String> result = new Vector<String>();
-		
+		CouchQueryRowIterator rows = new CouchQueryRowIteratorImpl(
+				response.getInputStream()
+				,response.getContentEncoding()
+				);
 		try {
-			JSONArray rows = response.getJSONArray("rows");
-			for(int loop=0,e=rows.length(); loop<e; ++loop){
-				JSONObject row = rows.getJSONObject(loop);
+			JSONObject row = rows.next();
+			while( null != row ){
 				String docId = row.getString("id");
 				result.add(docId);
+				
+				row = rows.next();
 			}
 			
 		} catch(Exception e) {
 			throw new Exception("Error while interpreting the _all_docs response",e);
+		} finally {
+			rows.close();
 		}
 
 		return result;
@@ -250,6 +260,51 @@ public class CouchDbImpl implements CouchDb {
 		return getDocumentRevision(docId);
 	}
 
+	@Override
+	public Map<String,String> getDocumentRevisions(Collection<String> docIds) throws Exception {
+		Map<String,String> revisions = new HashMap<String,String>();
+		if( null == docIds || docIds.size() < 1 ){
+			return revisions;
+		}
+
+		URL effectiveUrl = new URL(url, "_all_docs");
+
+		JSONObject request = new JSONObject();
+		{
+			JSONArray keys = new JSONArray();
+			for(String docId : docIds){
+				keys.put(docId);
+			}
+			request.put("keys", keys);
+		}
+
+		JSONObject response = ConnectionUtils.postJsonResource(getContext(), effectiveUrl, request);
+		
+		ConnectionUtils.captureReponseErrors(response, "Error while fetching revisions: ");
+		
+		try {
+			JSONArray rows = response.getJSONArray("rows");
+			for(int i=0,e=rows.length(); i<e; ++i){
+				JSONObject row = rows.getJSONObject(i);
+				String docId = row.optString("id", null);
+				JSONObject value = row.optJSONObject("value");
+				if( null != docId 
+				 && null != value 
+				 && false == value.optBoolean("deleted", false) ){
+					String rev = value.optString("rev", null);
+					if( null != rev ){
+						revisions.put(docId, rev);
+					}
+				}
+			}
+			
+		} catch(Exception e) {
+			throw new Exception("Error while interpreting the _all_docs response",e);
+		}
+		
+		return revisions;
+	}
+
 	@Override
 	public Collection<JSONObject> getDocuments(List<String> docIds) throws Exception {
 		return getDocuments(docIds, null);
@@ -376,6 +431,150 @@ public class CouchDbImpl implements CouchDb {
 		ConnectionUtils.captureReponseErrors(response, "Error while deleting "+docId+": ");
 	}
 
+	@Override
+	public List<CouchBulkResult> bulkDocuments(List<JSONObject> docs) throws Exception {
+		if( null == docs || docs.size() < 1 ){
+			return new ArrayList<CouchBulkResult>(0);
+		}
+
+		URL effectiveUrl = new URL(url, "_bulk_docs");
+
+		JSONObject request = new JSONObject();
+		{
+			JSONArray jsonDocs = new JSONArray();
+			for(JSONObject doc : docs){
+				jsonDocs.put(doc);
+			}
+			request.put("docs", jsonDocs);
+		}
+
+		JSONArray response = ConnectionUtils.postJsonResource(getContext(), effectiveUrl, request, JSONArray.class);
+
+		// Parse response
+		List<CouchBulkResult> results = null;
+		try {
+			results = CouchBulkResult.parseResponse(response);
+		} catch(Exception e) {
+			throw new Exception("Error parsing _bulk_docs response",e);
+		}
+		
+		if( results.size() != docs.size() ){
+			throw new Exception("Unexpected number of results from _bulk_docs. Expected "
+					+docs.size()+", received "+results.size());
+		}
+		
+		// Update accepted documents
+		for(int i=0,e=docs.size(); i<e; ++i){
+			JSONObject doc = docs.get(i);
+			CouchBulkResult result = results.get(i);
+			if( result.isSuccess() ){
+				if( null != result.getId() ){
+					doc.put("_id", result.getId());
+				}
+				if( null != result.getRev() ){
+					doc.put("_rev", result.getRev());
+				}
+			}
+		}
+
+		return results;
+	}
+
+	@Override
+	public List<JSONObject> bulkGetDocuments(List<String> docIds) throws Exception {
+		if( null == docIds || docIds.size() < 1 ){
+			return new ArrayList<JSONObject>(0);
+		}
+
+		URL effectiveUrl = new URL(url, "_bulk_get");
+
+		JSONObject request = new JSONObject();
+		{
+			JSONArray jsonDocs = new JSONArray();
+			for(String docId : docIds){
+				JSONObject jsonDoc = new JSONObject();
+				jsonDoc.put("id", docId);
+				jsonDocs.put(jsonDoc);
+			}
+			request.put("docs", jsonDocs);
+		}
+		
+		JSONObject response = null;
+		try {
+			response = ConnectionUtils.postJsonResource(getContext(), effectiveUrl, request);
+		} catch(CouchDbException e) {
+			// Servers prior to 2.0 do not support _bulk_get. Fall back
+			// on posting the keys to _all_docs.
+			int code = e.getReturnCode();
+			if( 400 == code || 404 == code || 405 == code ){
+				return bulkGetDocumentsFromAllDocs(docIds);
+			}
+			throw e;
+		}
+
+		ConnectionUtils.captureReponseErrors(response, "Error while fetching documents in bulk: ");
+
+		List<JSONObject> result = new ArrayList<JSONObject>(docIds.size());
+		try {
+			JSONArray results = response.getJSONArray("results");
+			for(int i=0,e=results.length(); i<e; ++i){
+				JSONObject jsonResult = results.getJSONObject(i);
+				JSONArray jsonDocs = jsonResult.optJSONArray("docs");
+				if( null != jsonDocs ){
+					for(int j=0,f=jsonDocs.length(); j<f; ++j){
+						JSONObject jsonDoc = jsonDocs.getJSONObject(j);
+						JSONObject doc = jsonDoc.optJSONObject("ok");
+						if( null != doc ){
+							result.add(doc);
+						}
+					}
+				}
+			}
+			
+		} catch(Exception e) {
+			throw new Exception("Error while interpreting the _bulk_get response",e);
+		}
+
+		return result;
+	}
+
+	private List<JSONObject> bulkGetDocumentsFromAllDocs(List<String> docIds) throws Exception {
+		URL effectiveUrl = ConnectionUtils.computeUrlWithParameter(
+				new URL(url, "_all_docs")
+				,new UrlParameter("include_docs","true")
+				);
+
+		JSONObject request = new JSONObject();
+		{
+			JSONArray keys = new JSONArray();
+			for(String docId : docIds){
+				keys.put(docId);
+			}
+			request.put("keys", keys);
+		}
+
+		JSONObject response = ConnectionUtils.postJsonResource(getContext(), effectiveUrl, request);
+		
+		ConnectionUtils.captureReponseErrors(response, "Error while fetching documents in bulk: ");
+		
+		List<JSONObject> result = new ArrayList<JSONObject>(docIds.size());
+		try {
+			JSONArray rows = response.getJSONArray("rows");
+			for(int loop=0,e=rows.length(); loop<e; ++loop){
+				JSONObject row = rows.getJSONObject(loop);
+				JSONObject doc = row.optJSONObject("doc");
+				if( null != doc ) {
+					result.add(doc);
+				}
+			}
+			
+		} catch(Exception e) {
+			throw new Exception("Error while interpreting the _all_docs response",e);
+		}
+
+		return result;
+	}
+
 	@Override
 	public CouchDesignDocument getDesignDocument(String ddName) throws Exception {
 		URL effectiveUrl = new URL(url, "_design/"+URLEncoder.encode(ddName,"UTF-8")+"/");
@@ -384,6 +583,31 @@ public class CouchDbImpl implements CouchDb {
 		return dd;
 	}
 
+	@Override
+	public CouchDbChanges getChanges(String since, int limit) throws Exception {
+		List<UrlParameter> parameters = new ArrayList<UrlParameter>(4);
+		parameters.add( new UrlParameter("feed","normal") );
+		if( null == since ){
+			// Only the last change is needed to learn the current sequence
+			parameters.add( new UrlParameter("descending","true") );
+			parameters.add( new UrlParameter("limit","1") );
+		} else {
+			parameters.add( new UrlParameter("since",since) );
+			parameters.add( new UrlParameter("limit",""+limit) );
+		}
+		URL effectiveUrl = ConnectionUtils.computeUrlWithParameters(new URL(url, "_changes"), parameters);
+
+		JSONObject response = ConnectionUtils.getJsonResource(getContext(), effectiveUrl);
+
+		ConnectionUtils.captureReponseErrors(response, "Error while fetching changes: ");
+
+		CouchDbChanges changes = CouchDbChanges.parseResponse(response);
+		if( null == since ){
+			changes.getDocIds().clear();
+		}
+		return changes;
+	}
+
 	@Override
 	public void uploadAttachment(
 		JSONObject doc
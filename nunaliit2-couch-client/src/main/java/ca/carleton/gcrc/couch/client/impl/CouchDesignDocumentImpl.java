@@ -11,6 +11,7 @@ import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
 import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
 
 public class CouchDesignDocumentImpl implements CouchDesignDocument {
 
@@ -69,6 +70,28 @@ public class CouchDesignDocumentImpl implements CouchDesignDocument {
 		return response;
 	}
 
+	@Override
+	public CouchQueryRowIterator performQueryIterator(CouchQuery query) throws Exception {
+		ConnectionStreamResult response = performQueryRaw(query);
+		
+		return new CouchQueryRowIteratorImpl(
+				response.getInputStream()
+				,response.getContentEncoding()
+				);
+	}
+
+	@Override
+	public CouchQueryRowIterator performQueryPaged(CouchQuery query, int pageSize, boolean prefetch) throws Exception {
+		if( null == query ) {
+			throw new Exception("Must provide a query object during a query");
+		}
+		if( null == query.getViewName() ) {
+			throw new Exception("Must specify a view name during a query");
+		}
+		
+		return new CouchQueryPagedRowIterator(this, query, pageSize, prefetch);
+	}
+
 	@Override
 	public <T> T performQuery(CouchQuery query, Class<T> expectedClass) throws Exception {
 		if( null == query ) {
@@ -110,9 +133,18 @@ public class CouchDesignDocumentImpl implements CouchDesignDocument {
 			if( null != query.getKeys() ) {
 				parameters.add( new UrlParameter("keys", query.getKeys()) );
 			}
+			if( null != query.getStartKeyDocId() ) {
+				parameters.add( new UrlParameter("startkey_docid", query.getStartKeyDocId()) );
+			}
+			if( null != query.getEndKeyDocId() ) {
+				parameters.add( new UrlParameter("endkey_docid", query.getEndKeyDocId()) );
+			}
 			if( null != query.getLimit() ) {
 				parameters.add( new UrlParameter("limit", query.getLimit()) );
 			}
+			if( null != query.getSkip() ) {
+				parameters.add( new UrlParameter("skip", query.getSkip()) );
+			}
 			if( null != query.getIncludeDocs() ) {
 				parameters.add( new UrlParameter("include_docs", query.getIncludeDocs()) );
 			}
@@ -0,0 +1,244 @@
+package ca.carleton.gcrc.couch.client.impl;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.client.CouchDesignDocument;
+import ca.carleton.gcrc.couch.client.CouchQuery;
+import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
+
+/**
+ * Iterates over the rows of a view, one page at a time. Each page after
+ * the first one starts at the key and document id of the last row
+ * received, skipping the rows already received with that same key and
+ * document id. A view can emit several rows with the same key for the
+ * same document.
+ *
+ * Queries that specify keys are not paged since the view can not be
+ * restarted in the middle of a key list. They are fetched as one page.
+ */
+public class CouchQueryPagedRowIterator implements CouchQueryRowIterator {
+
+	static final public int DEFAULT_PAGE_SIZE = 1000;
+
+	static private class Page {
+		public List<JSONObject> rows;
+		public int requested;
+		public int total;
+		public int offset;
+	}
+	
+	private CouchDesignDocument designDoc;
+	private CouchQuery baseQuery;
+	private int pageSize;
+	private boolean prefetch;
+	private boolean paged;
+	private int remaining = -1;
+	private int total = 0;
+	private int offset = 0;
+	private List<JSONObject> currentRows = null;
+	private int currentIndex = 0;
+	private JSONObject lastRow = null;
+	// Number of rows received that share the key and id of the last row
+	private int lastRunLength = 0;
+	private boolean lastPage = false;
+	private boolean closed = false;
+	private FutureTask<Page> pendingPage = null;
+
+	public CouchQueryPagedRowIterator(
+			CouchDesignDocument designDoc
+			,CouchQuery query
+			,int pageSize
+			,boolean prefetch
+			) throws Exception {
+		this.designDoc = designDoc;
+		this.baseQuery = new CouchQuery(query);
+		this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+		this.prefetch = prefetch;
+		this.paged = (null == query.getKeys());
+		
+		// An overall limit on the query is enforced across pages
+		if( null != query.getLimit() ){
+			remaining = Integer.parseInt(query.getLimit());
+			baseQuery.clearLimit();
+		}
+
+		// First page is fetched right away so that the total is known
+		Page page = fetchPage( computePageQuery() );
+		total = page.total;
+		offset = page.offset;
+		acceptPage(page);
+	}
+
+	@Override
+	public int getTotal() {
+		return total;
+	}
+
+	@Override
+	public int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public boolean hasNext() throws Exception {
+		while( false == closed 
+		 && currentIndex >= currentRows.size() ){
+			if( lastPage ){
+				close();
+				return false;
+			}
+			
+			Page page = null;
+			if( null != pendingPage ){
+				try {
+					page = pendingPage.get();
+				} catch(ExecutionException e) {
+					close();
+					throw new Exception("Error while prefetching page of view results",e.getCause());
+				} finally {
+					pendingPage = null;
+				}
+			} else {
+				page = fetchPage( computePageQuery() );
+			}
+			acceptPage(page);
+		}
+		
+		return false == closed;
+	}
+
+	@Override
+	public JSONObject next() throws Exception {
+		JSONObject row = null;
+		if( hasNext() ){
+			row = currentRows.get(currentIndex);
+			++currentIndex;
+		}
+		return row;
+	}
+
+	@Override
+	public void close() throws Exception {
+		closed = true;
+		
+		// A page being prefetched is left to complete and is discarded
+		if( null != pendingPage ){
+			pendingPage.cancel(false);
+			pendingPage = null;
+		}
+	}
+	
+	private CouchQuery computePageQuery() throws Exception {
+		CouchQuery pageQuery = new CouchQuery(baseQuery);
+		
+		if( paged ){
+			int limit = pageSize;
+			if( remaining >= 0 && remaining < limit ){
+				limit = remaining;
+			}
+			pageQuery.setLimit(limit);
+			
+			if( null != lastRow ){
+				pageQuery.setStartKey( lastRow.opt("key") );
+				pageQuery.setStartKeyDocId( lastRow.optString("id", null) );
+				pageQuery.setSkip(lastRunLength);
+			}
+		} else if( remaining >= 0 ) {
+			pageQuery.setLimit(remaining);
+		}
+		
+		return pageQuery;
+	}
+	
+	static private boolean sameKeyAndId(JSONObject row1, JSONObject row2) {
+		String id1 = row1.optString("id", null);
+		String id2 = row2.optString("id", null);
+		if( null == id1 ? null != id2 : false == id1.equals(id2) ){
+			return false;
+		}
+		return sameValue(row1.opt("key"), row2.opt("key"));
+	}
+
+	static private boolean sameValue(Object value1, Object value2) {
+		if( null == value1 || JSONObject.NULL.equals(value1) ){
+			return null == value2 || JSONObject.NULL.equals(value2);
+		}
+		if( value1 instanceof JSONObject ){
+			return ((JSONObject)value1).similar(value2);
+		}
+		if( value1 instanceof JSONArray ){
+			return ((JSONArray)value1).similar(value2);
+		}
+		return value1.equals(value2);
+	}
+	
+	private Page fetchPage(CouchQuery pageQuery) throws Exception {
+		CouchQueryResults results = designDoc.performQuery(pageQuery);
+		
+		Page page = new Page();
+		page.rows = results.getRows();
+		page.requested = pageSize;
+		page.total = results.getTotal();
+		page.offset = results.getOffset();
+		if( null != pageQuery.getLimit() ){
+			page.requested = Integer.parseInt(pageQuery.getLimit());
+		}
+		return page;
+	}
+	
+	private void acceptPage(Page page) throws Exception {
+		currentRows = page.rows;
+		currentIndex = 0;
+		
+		if( false == paged 
+		 || page.rows.size() < page.requested ){
+			lastPage = true;
+		}
+		
+		int size = page.rows.size();
+		if( size > 0 ){
+			JSONObject previousRow = lastRow;
+			lastRow = page.rows.get(size - 1);
+
+			int run = 1;
+			while( run < size 
+			 && sameKeyAndId(page.rows.get(size - 1 - run), lastRow) ){
+				++run;
+			}
+			if( run == size 
+			 && null != previousRow 
+			 && sameKeyAndId(previousRow, lastRow) ){
+				// The whole page continues the run that ended the previous page
+				run += lastRunLength;
+			}
+			lastRunLength = run;
+		}
+		
+		if( remaining >= 0 ){
+			remaining -= page.rows.size();
+			if( remaining <= 0 ){
+				lastPage = true;
+			}
+		}
+		
+		if( prefetch && false == lastPage ){
+			final CouchQuery nextQuery = computePageQuery();
+			pendingPage = new FutureTask<Page>(new Callable<Page>(){
+				@Override
+				public Page call() throws Exception {
+					return fetchPage(nextQuery);
+				}
+			});
+			Thread thread = new Thread(pendingPage, "CouchDb view prefetch");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
@@ -19,7 +19,9 @@ public class CouchQueryResultsImpl implements CouchQueryResults {
 	public CouchQueryResultsImpl(JSONObject top) throws Exception {
 		this.top = top;
 		
-		if( JSONSupport.containsKey(top,"total") ) {
+		if( JSONSupport.containsKey(top,"total_rows") ) {
+			total = top.getInt("total_rows");
+		} else if( JSONSupport.containsKey(top,"total") ) {
 			total = top.getInt("total");
 		}
 		if( JSONSupport.containsKey(top,"offset") ) {
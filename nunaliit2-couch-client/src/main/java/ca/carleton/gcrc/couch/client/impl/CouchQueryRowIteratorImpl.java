@@ -0,0 +1,148 @@
+package ca.carleton.gcrc.couch.client.impl;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
+
+/**
+ * Pull parser for view results. The members of the top object are
+ * parsed as they are encountered, except for the "rows" array which
+ * is returned one element at a time.
+ */
+public class CouchQueryRowIteratorImpl implements CouchQueryRowIterator {
+
+	private Reader reader;
+	private JSONTokener tokener;
+	private JSONObject header = new JSONObject();
+	private boolean inRows = false;
+	private boolean done = false;
+	private JSONObject nextRow = null;
+
+	public CouchQueryRowIteratorImpl(InputStream is, String encoding) throws Exception {
+		if( null == encoding ) {
+			encoding = "UTF-8";
+		}
+		
+		reader = new BufferedReader( new InputStreamReader(is, encoding) );
+		tokener = new JSONTokener(reader);
+		
+		try {
+			char c = tokener.nextClean();
+			if( '{' != c ){
+				throw new Exception("Query results should start with '{'");
+			}
+			
+			readMembers();
+		} catch(Exception e) {
+			close();
+			throw new Exception("Error while parsing beginning of query results",e);
+		}
+	}
+	
+	@Override
+	public int getTotal() {
+		return header.optInt("total_rows", 0);
+	}
+
+	@Override
+	public int getOffset() {
+		return header.optInt("offset", 0);
+	}
+
+	@Override
+	public boolean hasNext() throws Exception {
+		if( null == nextRow && inRows ){
+			try {
+				nextRow = readRow();
+			} catch(Exception e) {
+				close();
+				throw new Exception("Error while parsing row from query results",e);
+			}
+		}
+		return null != nextRow;
+	}
+
+	@Override
+	public JSONObject next() throws Exception {
+		JSONObject row = null;
+		if( hasNext() ){
+			row = nextRow;
+			nextRow = null;
+		}
+		return row;
+	}
+
+	@Override
+	public void close() throws Exception {
+		inRows = false;
+		nextRow = null;
+		if( false == done ){
+			done = true;
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads members of the top object until the beginning of the rows
+	 * array or the end of the object.
+	 */
+	private void readMembers() throws Exception {
+		while( true ){
+			char c = tokener.nextClean();
+			if( 0 == c || '}' == c ){
+				if( '}' == c ){
+					// Reach the end of the response so that the connection
+					// can be reused
+					tokener.nextClean();
+				}
+				close();
+				return;
+			} else if( ',' == c ){
+				continue;
+			} else if( '"' != c ){
+				throw tokener.syntaxError("Expected member name in query results");
+			}
+			
+			String key = tokener.nextString('"');
+			if( ':' != tokener.nextClean() ){
+				throw tokener.syntaxError("Expected ':' after member name in query results");
+			}
+			
+			if( "rows".equals(key) ){
+				if( '[' != tokener.nextClean() ){
+					throw tokener.syntaxError("Expected '[' for rows in query results");
+				}
+				inRows = true;
+				return;
+			}
+			
+			header.put(key, tokener.nextValue());
+		}
+	}
+	
+	private JSONObject readRow() throws Exception {
+		char c = tokener.nextClean();
+		if( ',' == c ){
+			c = tokener.nextClean();
+		}
+		
+		if( ']' == c ){
+			inRows = false;
+			readMembers();
+			return null;
+		}
+		
+		tokener.back();
+		Object value = tokener.nextValue();
+		if( value instanceof JSONObject ){
+			return (JSONObject)value;
+		}
+		throw tokener.syntaxError("Expected object for row in query results");
+	}
+}
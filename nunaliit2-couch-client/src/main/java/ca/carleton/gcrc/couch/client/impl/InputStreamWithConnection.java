@@ -4,20 +4,83 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 
+/**
+ * Wraps the response stream of a connection. The connection is handed
+ * back to the transport when the stream is closed, or as soon as the
+ * end of the stream is reached, whichever comes first. A connection
+ * closed before the end of the stream is discarded, since the remainder
+ * of the response would otherwise be left on the socket.
+ */
 public class InputStreamWithConnection extends InputStreamWrapper {
 
 	private HttpURLConnection conn;
+	private ConnectionTransport transport;
+	private boolean released = false;
 	
 	public InputStreamWithConnection(InputStream wrapped, HttpURLConnection conn) {
+		this(wrapped, conn, null);
+	}
+	
+	public InputStreamWithConnection(InputStream wrapped, HttpURLConnection conn, ConnectionTransport transport) {
 		super(wrapped);
 		
 		this.conn = conn;
+		this.transport = transport;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if( b < 0 ){
+			release(true);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count = super.read(b, off, len);
+		if( count < 0 ){
+			release(true);
+		}
+		return count;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
 	}
 
 	@Override
 	public void close() throws IOException {
-		super.close();
-		
-		conn.disconnect();
+		if( released ){
+			return;
+		}
+		try {
+			super.close();
+		} finally {
+			release(false);
+		}
+	}
+	
+	private void release(boolean reusable) throws IOException {
+		if( released ){
+			return;
+		}
+		released = true;
+
+		try {
+			if( reusable ){
+				// Closing the response stream is what allows the socket
+				// to return to the keep-alive cache
+				super.close();
+			}
+		} finally {
+			if( null == transport ){
+				conn.disconnect();
+			} else {
+				transport.releaseConnection(conn, reusable);
+			}
+		}
 	}
 }
@@ -8,7 +8,7 @@ public class InputStreamWrapper extends InputStream {
 	private InputStream wrapped;
 	
 	public InputStreamWrapper(InputStream wrapped){
-		
+		this.wrapped = wrapped;
 	}
 	
 	@Override
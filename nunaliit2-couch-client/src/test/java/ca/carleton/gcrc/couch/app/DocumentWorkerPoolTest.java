@@ -0,0 +1,75 @@
+package ca.carleton.gcrc.couch.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.carleton.gcrc.couch.app.impl.DocumentWorkerPool;
+import junit.framework.TestCase;
+
+public class DocumentWorkerPoolTest extends TestCase {
+
+	public void testProcess() throws Exception {
+		List<String> docIds = new ArrayList<String>();
+		for(int i=0; i<500; ++i){
+			docIds.add("doc"+i);
+		}
+
+		final Set<String> processed = Collections.synchronizedSet(new HashSet<String>());
+		final Set<String> completed = Collections.synchronizedSet(new HashSet<String>());
+		DocumentWorkerPool pool = new DocumentWorkerPool(4, docIds.size() + 1);
+		DocumentWorkerPool.DocumentTask task = new DocumentWorkerPool.DocumentTask() {
+			@Override
+			public void process(String docId) throws Exception {
+				processed.add(docId);
+			}
+
+			@Override
+			public void completed(String docId, int count, int total, double docsPerSecond) throws Exception {
+				completed.add(docId);
+			}
+		};
+		pool.process(docIds, task);
+		pool.process(Collections.singletonList("_design/atlas"), task);
+
+		if( 501 != processed.size() || 501 != completed.size() ){
+			fail("Unexpected number of processed documents: "+processed.size());
+		}
+		if( 501 != pool.getCompletedCount() ){
+			fail("Unexpected completed count: "+pool.getCompletedCount());
+		}
+	}
+
+	public void testError() throws Exception {
+		List<String> docIds = new ArrayList<String>();
+		for(int i=0; i<100; ++i){
+			docIds.add("doc"+i);
+		}
+
+		DocumentWorkerPool pool = new DocumentWorkerPool(3, docIds.size());
+		try {
+			pool.process(docIds, new DocumentWorkerPool.DocumentTask() {
+				@Override
+				public void process(String docId) throws Exception {
+					if( "doc10".equals(docId) ){
+						throw new Exception("Failure on "+docId);
+					}
+				}
+
+				@Override
+				public void completed(String docId, int count, int total, double docsPerSecond) throws Exception {
+				}
+			});
+			fail("Error expected");
+		} catch(Exception e) {
+			if( false == "Failure on doc10".equals(e.getMessage()) ){
+				fail("Unexpected error: "+e.getMessage());
+			}
+		}
+		if( pool.getCompletedCount() >= 100 ){
+			fail("Workers should stop after an error");
+		}
+	}
+}
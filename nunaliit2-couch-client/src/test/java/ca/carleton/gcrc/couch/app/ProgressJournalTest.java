@@ -0,0 +1,115 @@
+package ca.carleton.gcrc.couch.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Set;
+
+import ca.carleton.gcrc.couch.app.impl.ProgressJournal;
+import ca.carleton.gcrc.couch.client.TestSupport;
+import junit.framework.TestCase;
+
+public class ProgressJournalTest extends TestCase {
+
+	static private File getJournalFile(String name) throws Exception {
+		File testDir = TestSupport.getTestRunDir();
+		File file = new File(testDir, name);
+		if( file.exists() ){
+			file.delete();
+		}
+		return file;
+	}
+
+	public void testResume() throws Exception {
+		File file = getJournalFile("testResume.journal");
+
+		ProgressJournal journal = new ProgressJournal(file, "db1");
+		Set<String> completed = journal.open();
+		if( completed.size() != 0 ){
+			fail("New journal should be empty");
+		}
+		journal.recordCompleted("doc1");
+		journal.recordCompleted("_design/atlas");
+		journal.recordCompleted("doc with\nnew line");
+		journal.close();
+
+		journal = new ProgressJournal(file, "db1");
+		completed = journal.open();
+		journal.recordCompleted("doc2");
+		journal.close();
+		if( completed.size() != 3
+		 || false == completed.contains("_design/atlas")
+		 || false == completed.contains("doc with\nnew line") ){
+			fail("Unexpected completed documents: "+completed);
+		}
+
+		journal = new ProgressJournal(file, "db1");
+		completed = journal.open();
+		if( completed.size() != 4 || false == completed.contains("doc2") ){
+			fail("Unexpected completed documents: "+completed);
+		}
+
+		journal.delete();
+		if( file.exists() ){
+			fail("Journal should be deleted");
+		}
+	}
+
+	public void testIncompleteLine() throws Exception {
+		File file = getJournalFile("testIncompleteLine.journal");
+
+		FileOutputStream fos = new FileOutputStream(file);
+		fos.write("db1\ndoc1\ndoc12".getBytes("UTF-8"));
+		fos.close();
+
+		ProgressJournal journal = new ProgressJournal(file, "db1");
+		Set<String> completed = journal.open();
+		journal.recordCompleted("doc3");
+		journal.close();
+		if( completed.size() != 1 || false == completed.contains("doc1") ){
+			fail("Unexpected completed documents: "+completed);
+		}
+
+		journal = new ProgressJournal(file, "db1");
+		completed = journal.open();
+		journal.close();
+		if( completed.size() != 2 || false == completed.contains("doc3") ){
+			fail("Unexpected completed documents: "+completed);
+		}
+	}
+
+	public void testDifferentTarget() throws Exception {
+		File file = getJournalFile("testDifferentTarget.journal");
+
+		ProgressJournal journal = new ProgressJournal(file, "db1");
+		journal.open();
+		journal.recordCompleted("doc1");
+		journal.close();
+
+		journal = new ProgressJournal(file, "db2");
+		Set<String> completed = journal.open();
+		journal.close();
+		if( completed.size() != 0 ){
+			fail("Journal of a different database should be ignored");
+		}
+	}
+
+	public void testNotWritable() throws Exception {
+		// A journal in a missing directory can not be written
+		File dir = getJournalFile("testNotWritable");
+		File file = new File(dir, "journal");
+
+		ProgressJournal journal = new ProgressJournal(file, "db1");
+		Set<String> completed = journal.open();
+		if( completed.size() != 0 ){
+			fail("Journal that can not be written should be empty");
+		}
+		if( false == journal.isDisabled() ){
+			fail("Journal that can not be written should be disabled");
+		}
+		journal.recordCompleted("doc1");
+		journal.delete();
+		if( file.exists() ){
+			fail("Journal should not be created");
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import ca.carleton.gcrc.couch.client.impl.ConnectionTransportPooled;
+import ca.carleton.gcrc.couch.client.impl.InputStreamWithConnection;
+
+public class ConnectionTransportPooledTest extends TestCase {
+
+	public void testMaxConnectionsPerHost() throws Exception {
+		ConnectionTransportPooled transport = new ConnectionTransportPooled();
+		transport.setMaxConnectionsPerHost(1);
+		transport.setAcquireTimeoutMs(10);
+		
+		URL url1 = new URL("http://127.0.0.1:5984/db/doc1");
+		URL url2 = new URL("http://127.0.0.1:5984/db/doc2");
+		URL otherHost = new URL("http://localhost:5984/db/doc1");
+		
+		HttpURLConnection conn1 = transport.openConnection(url1, "GET");
+		
+		// Second connection to same host, from another thread, must time out
+		if( null == openInOtherThread(transport, url2) ){
+			fail("Expected a timeout while waiting for a connection");
+		}
+		if( 1 != transport.getAcquireTimeoutCount() ){
+			fail("Unexpected timeout count: "+transport.getAcquireTimeoutCount());
+		}
+		
+		// A different host has its own limit
+		if( null != openInOtherThread(transport, otherHost) ){
+			fail("A different host should have its own limit");
+		}
+		
+		// Releasing twice is accounted for only once
+		transport.releaseConnection(conn1, true);
+		transport.releaseConnection(conn1, true);
+		if( 0 != transport.getActiveConnections() ){
+			fail("Unexpected active connections: "+transport.getActiveConnections());
+		}
+		
+		HttpURLConnection conn2 = transport.openConnection(url2, "GET");
+		transport.releaseConnection(conn2, false);
+		
+		if( 3 != transport.getRequestCount() ){
+			fail("Unexpected request count: "+transport.getRequestCount());
+		}
+		if( 1 != transport.getDiscardedCount() ){
+			fail("Unexpected discarded count: "+transport.getDiscardedCount());
+		}
+		if( 2 != transport.getPeakActiveConnections() ){
+			fail("Unexpected peak: "+transport.getPeakActiveConnections());
+		}
+	}
+
+	/**
+	 * Opens and releases a connection from a different thread.
+	 * @return The error encountered, or null if successful
+	 */
+	static private Exception openInOtherThread(final ConnectionTransportPooled transport, final URL url) throws Exception {
+		final Exception[] errors = new Exception[1];
+		Thread other = new Thread(){
+			@Override
+			public void run() {
+				try {
+					HttpURLConnection conn = transport.openConnection(url, "GET");
+					Thread.sleep(20);
+					transport.releaseConnection(conn, true);
+				} catch(Exception e) {
+					errors[0] = e;
+				}
+			}
+		};
+		other.start();
+		other.join();
+		return errors[0];
+	}
+
+	public void testUnlimitedByDefault() throws Exception {
+		ConnectionTransportPooled transport = new ConnectionTransportPooled();
+		transport.setAcquireTimeoutMs(10);
+		
+		URL url = new URL("http://127.0.0.1:5984/db/doc1");
+		HttpURLConnection[] conns = new HttpURLConnection[20];
+		for(int i=0; i<conns.length; ++i){
+			conns[i] = transport.openConnection(url, "GET");
+		}
+		for(HttpURLConnection conn : conns){
+			transport.releaseConnection(conn, true);
+		}
+		
+		if( 0 != transport.getAcquireTimeoutCount() ){
+			fail("Unexpected timeout count: "+transport.getAcquireTimeoutCount());
+		}
+	}
+
+	public void testNestedRequest() throws Exception {
+		ConnectionTransportPooled transport = new ConnectionTransportPooled();
+		transport.setMaxConnectionsPerHost(1);
+		transport.setAcquireTimeoutMs(10);
+		
+		URL url = new URL("http://127.0.0.1:5984/db/doc1");
+		
+		// A thread streaming a response is not blocked by its own
+		// nested requests
+		HttpURLConnection streaming = transport.openConnection(url, "GET");
+		HttpURLConnection nested = transport.openConnection(url, "GET");
+		transport.releaseConnection(nested, true);
+		
+		// Other threads still wait for the permit
+		if( null == openInOtherThread(transport, url) ){
+			fail("Other thread should wait for the permit");
+		}
+		
+		transport.releaseConnection(streaming, true);
+		if( 0 != transport.getActiveConnections() ){
+			fail("Unexpected active connections: "+transport.getActiveConnections());
+		}
+	}
+
+	public void testLongLivedConnection() throws Exception {
+		ConnectionTransportPooled transport = new ConnectionTransportPooled();
+		transport.setMaxConnectionsPerHost(1);
+		transport.setAcquireTimeoutMs(10);
+		
+		URL url = new URL("http://127.0.0.1:5984/db/doc1");
+		URL feedUrl = new URL("http://127.0.0.1:5984/db/_changes");
+		
+		// A feed does not use up the only permit
+		HttpURLConnection feed = transport.openLongLivedConnection(feedUrl, "GET");
+		HttpURLConnection conn = transport.openConnection(url, "GET");
+		if( 2 != transport.getActiveConnections() ){
+			fail("Unexpected active connections: "+transport.getActiveConnections());
+		}
+		transport.releaseConnection(conn, true);
+		transport.releaseConnection(feed, false);
+
+		if( 0 != transport.getActiveConnections() ){
+			fail("Unexpected active connections: "+transport.getActiveConnections());
+		}
+		if( 0 != transport.getAcquireTimeoutCount() ){
+			fail("Unexpected timeout count: "+transport.getAcquireTimeoutCount());
+		}
+	}
+	
+	public void testStreamRelease() throws Exception {
+		ConnectionTransportPooled transport = new ConnectionTransportPooled();
+		transport.setMaxConnectionsPerHost(1);
+		transport.setAcquireTimeoutMs(10);
+		
+		URL url = new URL("http://127.0.0.1:5984/db/doc1");
+		byte[] content = "{\"a\":1}".getBytes("UTF-8");
+
+		// Stream read to the end: connection is reusable
+		{
+			HttpURLConnection conn = transport.openConnection(url, "GET");
+			InputStream is = new InputStreamWithConnection(new ByteArrayInputStream(content), conn, transport);
+			while( is.read() >= 0 ){
+			}
+			if( 0 != transport.getActiveConnections() ){
+				fail("Connection should be released at end of stream");
+			}
+			is.close();
+		}
+		if( 0 != transport.getDiscardedCount() ){
+			fail("Unexpected discarded count: "+transport.getDiscardedCount());
+		}
+
+		// Stream closed early: connection is discarded
+		{
+			HttpURLConnection conn = transport.openConnection(url, "GET");
+			InputStream is = new InputStreamWithConnection(new ByteArrayInputStream(content), conn, transport);
+			is.read();
+			is.close();
+		}
+		if( 1 != transport.getDiscardedCount() ){
+			fail("Unexpected discarded count: "+transport.getDiscardedCount());
+		}
+		if( 0 != transport.getActiveConnections() ){
+			fail("Unexpected active connections: "+transport.getActiveConnections());
+		}
+	}
+}
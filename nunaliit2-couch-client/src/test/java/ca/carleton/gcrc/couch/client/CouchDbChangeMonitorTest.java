@@ -0,0 +1,213 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.client.impl.CouchClientImpl;
+import ca.carleton.gcrc.couch.client.impl.CouchContextNull;
+import ca.carleton.gcrc.couch.client.impl.CouchDbImpl;
+import ca.carleton.gcrc.couch.client.impl.CouchDbChangeMonitorThread;
+import ca.carleton.gcrc.utils.TextFileUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class CouchDbChangeMonitorTest extends TestCase {
+
+	/**
+	 * Change feed that fails the first request, then reports one change
+	 * and closes the feed.
+	 */
+	static class ChangeFeedHandler implements HttpHandler {
+		public List<String> queries = new Vector<String>();
+
+		@Override
+		public void handle(HttpExchange exchange) {
+			try {
+				queries.add( exchange.getRequestURI().getQuery() );
+
+				if( queries.size() < 2 ){
+					exchange.sendResponseHeaders(500, -1);
+				} else {
+					String content =
+						"{\"seq\":\"43-b\",\"id\":\"doc1\",\"changes\":[{\"rev\":\"2-a\"}]}\n"
+						+"{\"last_seq\":\"43-b\"}\n";
+					byte[] bytes = content.getBytes("UTF-8");
+					exchange.getResponseHeaders().add("Content-Type", "application/json");
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream os = exchange.getResponseBody();
+					os.write(bytes);
+					os.close();
+				}
+			} catch(Exception e) {
+				// Reported by the test
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	static private File createTempDir(String name) throws Exception {
+		File dir = File.createTempFile(name, "");
+		if( false == dir.delete() || false == dir.mkdir() ){
+			throw new Exception("Unable to create temporary directory: "+dir.getAbsolutePath());
+		}
+		return dir;
+	}
+
+	public void testBackoff() throws Exception {
+		if( CouchDbChangeMonitorThread.MIN_BACKOFF_MS != CouchDbChangeMonitorThread.computeBackoffMs(1) ){
+			fail("Unexpected first backoff: "+CouchDbChangeMonitorThread.computeBackoffMs(1));
+		}
+		if( 2 * CouchDbChangeMonitorThread.MIN_BACKOFF_MS != CouchDbChangeMonitorThread.computeBackoffMs(2) ){
+			fail("Unexpected second backoff: "+CouchDbChangeMonitorThread.computeBackoffMs(2));
+		}
+		int previous = 0;
+		for(int errors=1; errors<100; ++errors){
+			int backoff = CouchDbChangeMonitorThread.computeBackoffMs(errors);
+			if( backoff < previous || backoff > CouchDbChangeMonitorThread.MAX_BACKOFF_MS ){
+				fail("Unexpected backoff after "+errors+" errors: "+backoff);
+			}
+			previous = backoff;
+		}
+		if( CouchDbChangeMonitorThread.MAX_BACKOFF_MS != previous ){
+			fail("Backoff should reach maximum: "+previous);
+		}
+	}
+
+	public void testResumeFromCheckpoint() throws Exception {
+		File dir = createTempDir("changes");
+		File checkpointFile = new File(dir, "db.seq");
+		TextFileUtils.writeTextFile(checkpointFile, "42-a\n");
+
+		ChangeFeedHandler handler = new ChangeFeedHandler();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/db/_changes", handler);
+		server.start();
+		try {
+			URL changeUrl = new URL("http://127.0.0.1:"+server.getAddress().getPort()+"/db/_changes");
+			CouchDbChangeMonitorThread thread = new CouchDbChangeMonitorThread(
+					new CouchContextNull(), changeUrl, null, checkpointFile);
+			if( false == "42-a".equals(thread.getLastSequence()) ){
+				fail("Sequence should be read from checkpoint: "+thread.getLastSequence());
+			}
+
+			final List<String> docIds = new Vector<String>();
+			thread.addChangeListener(new CouchDbChangeListener() {
+				@Override
+				public void change(Type type, String docId, String rev, JSONObject rawChange, JSONObject doc) {
+					docIds.add(docId);
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+
+			// First request fails, the feed is reopened after a backoff
+			long end = System.currentTimeMillis() + 10000;
+			while( docIds.size() < 1 && System.currentTimeMillis() < end ){
+				Thread.sleep(50);
+			}
+			thread.shutdown();
+			thread.join(10000);
+
+			if( 1 != docIds.size() || false == "doc1".equals(docIds.get(0)) ){
+				fail("Unexpected changes: "+docIds);
+			}
+			if( false == handler.queries.get(0).contains("since=42-a")
+			 || false == handler.queries.get(1).contains("since=42-a") ){
+				fail("Feed should resume from checkpoint: "+handler.queries);
+			}
+
+			String saved = TextFileUtils.readTextFile(checkpointFile).trim();
+			if( false == "43-b".equals(saved) ){
+				fail("Unexpected checkpoint: "+saved);
+			}
+
+		} finally {
+			server.stop(0);
+			checkpointFile.delete();
+			dir.delete();
+		}
+	}
+
+	public void testListenersSeeReplayedChanges() throws Exception {
+		File dir = createTempDir("changes");
+		File checkpointFile = new File(dir, "db.seq");
+		TextFileUtils.writeTextFile(checkpointFile, "42-a\n");
+
+		ChangeFeedHandler handler = new ChangeFeedHandler();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/db/_changes", handler);
+		server.start();
+		CouchDbChangeMonitor monitor = null;
+		try {
+			URL serverUrl = new URL("http://127.0.0.1:"+server.getAddress().getPort()+"/");
+			CouchClient client = new CouchClientImpl(new CouchContextNull(), serverUrl);
+			CouchDb couchDb = new CouchDbImpl(client, new URL(serverUrl, "db/"));
+			monitor = couchDb.getChangeMonitor();
+			monitor.setCheckpointFile(checkpointFile);
+
+			final List<String> firstDocIds = new Vector<String>();
+			monitor.addChangeListener(new CouchDbChangeListener() {
+				@Override
+				public void change(Type type, String docId, String rev, JSONObject rawChange, JSONObject doc) {
+					firstDocIds.add(docId);
+				}
+			});
+
+			final List<String> secondDocIds = new Vector<String>();
+			monitor.addChangeListener(new CouchDbChangeListener() {
+				@Override
+				public void change(Type type, String docId, String rev, JSONObject rawChange, JSONObject doc) {
+					secondDocIds.add(docId);
+				}
+			});
+
+			Thread.sleep(100);
+			if( handler.queries.size() > 0 ){
+				fail("Feed should wait for start()");
+			}
+
+			monitor.start();
+			try {
+				monitor.setCheckpointFile(checkpointFile);
+				fail("Checkpoint can not change once the feed is started");
+			} catch(Exception e) {
+				// OK
+			}
+
+			long end = System.currentTimeMillis() + 10000;
+			while( (firstDocIds.size() < 1 || secondDocIds.size() < 1) 
+			 && System.currentTimeMillis() < end ){
+				Thread.sleep(50);
+			}
+
+			if( 1 != firstDocIds.size() || false == "doc1".equals(firstDocIds.get(0)) ){
+				fail("Unexpected changes for first listener: "+firstDocIds);
+			}
+			if( 1 != secondDocIds.size() || false == "doc1".equals(secondDocIds.get(0)) ){
+				fail("Unexpected changes for second listener: "+secondDocIds);
+			}
+			if( false == handler.queries.get(0).contains("since=42-a") ){
+				fail("Feed should resume from checkpoint: "+handler.queries);
+			}
+
+		} finally {
+			if( null != monitor ){
+				monitor.shutdown();
+			}
+			server.stop(0);
+			checkpointFile.delete();
+			dir.delete();
+		}
+	}
+}
@@ -267,6 +267,99 @@ public class CouchDbTest extends TestCase {
 		}
 	}
 	
+	public void testBulkDocuments() throws Exception {
+		CouchDb db = TestSupport.getTestCouchDb();
+		if( null != db ) {
+			String docId1 = "testBulkDocuments1";
+			String docId2 = "testBulkDocuments2";
+			
+			CouchBulkDocumentWriter writer = new CouchBulkDocumentWriter(db);
+			writer.setBatchSize(1);
+			{
+				JSONObject doc = new JSONObject();
+				doc.put("_id",docId1);
+				doc.put("test", docId1);
+				
+				writer.write(doc);
+			}
+			{
+				JSONObject doc = new JSONObject();
+				doc.put("_id",docId2);
+				doc.put("test", docId2);
+				
+				writer.write(doc);
+			}
+			writer.close();
+			
+			if( 2 != writer.getWrittenCount() ){
+				fail("Unexpected number of documents written: "+writer.getWrittenCount());
+			}
+			if( 2 != writer.getRequestCount() ){
+				fail("Unexpected number of requests: "+writer.getRequestCount());
+			}
+			
+			// Writing a stale revision must report a conflict
+			{
+				JSONObject doc = new JSONObject();
+				doc.put("_id",docId1);
+				doc.put("test", "conflict");
+				
+				List<JSONObject> docs = new Vector<JSONObject>();
+				docs.add(doc);
+				List<CouchBulkResult> results = db.bulkDocuments(docs);
+				if( 1 != results.size() ){
+					fail("Unexpected number of results: "+results.size());
+				} else if( false == results.get(0).isConflict() ){
+					fail("Expected conflict: "+results.get(0));
+				}
+			}
+			
+			List<String> docIds = new Vector<String>();
+			docIds.add(docId1);
+			docIds.add("testBulkDocumentsMissing");
+			docIds.add(docId2);
+			List<JSONObject> docs = db.bulkGetDocuments(docIds);
+			
+			if( 2 != docs.size() ){
+				fail("Inconsistent number of documents returned: "+docs.size());
+			} else {
+				if( false == docId1.equals(docs.get(0).getString("_id")) ){
+					fail("Unexpected first document: "+docs.get(0));
+				}
+				if( false == docId2.equals(docs.get(1).getString("_id")) ){
+					fail("Unexpected second document: "+docs.get(1));
+				}
+			}
+		}
+	}
+	
+	public void testGetChanges() throws Exception {
+		CouchDb db = TestSupport.getTestCouchDb();
+		if( null != db ) {
+			String docId = "testGetChanges";
+
+			String sequence = db.getChanges(null, 0).getLastSequence();
+			if( null == sequence ){
+				fail("Current sequence not reported");
+			}
+
+			JSONObject doc = new JSONObject();
+			doc.put("_id",docId);
+			doc.put("test", docId);
+			db.createDocument(doc);
+
+			CouchDbChanges changes = db.getChanges(sequence, 100);
+			if( false == changes.getDocIds().contains(docId) ){
+				fail("Change not reported: "+changes.getDocIds());
+			}
+
+			changes = db.getChanges(changes.getLastSequence(), 100);
+			if( 0 != changes.getDocIds().size() ){
+				fail("Unexpected changes: "+changes.getDocIds());
+			}
+		}
+	}
+
 	public void testUpdateDocument() throws Exception {
 		CouchDb db = TestSupport.getTestCouchDb();
 		if( null != db ) {
@@ -0,0 +1,229 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.client.impl.ConnectionStreamResult;
+import ca.carleton.gcrc.couch.client.impl.CouchQueryPagedRowIterator;
+import ca.carleton.gcrc.couch.client.impl.CouchQueryResultsImpl;
+
+public class CouchQueryPagedRowIteratorTest extends TestCase {
+
+	/**
+	 * View where rows are sorted by key, then id. Several rows share
+	 * the same key.
+	 */
+	static class MockDesignDocument implements CouchDesignDocument {
+		
+		public List<JSONObject> rows = new ArrayList<JSONObject>();
+		public int queryCount = 0;
+		
+		public MockDesignDocument() {
+		}
+
+		public MockDesignDocument(int count) throws Exception {
+			for(int i=0; i<count; ++i){
+				JSONObject row = new JSONObject();
+				row.put("id", String.format("doc%03d", i));
+				row.put("key", i / 3);
+				row.put("value", i);
+				rows.add(row);
+			}
+		}
+
+		@Override
+		public CouchQueryResults performQuery(CouchQuery query) throws Exception {
+			++queryCount;
+			
+			int index = 0;
+			if( null != query.getStartKey() ){
+				int startKey = Integer.parseInt(query.getStartKey());
+				String startId = query.getStartKeyDocId();
+				while( index < rows.size() ){
+					JSONObject row = rows.get(index);
+					int key = row.getInt("key");
+					if( key > startKey ) break;
+					if( key == startKey 
+					 && (null == startId || row.getString("id").compareTo(startId) >= 0) ) break;
+					++index;
+				}
+			}
+			if( null != query.getSkip() ){
+				index += Integer.parseInt(query.getSkip());
+			}
+			int limit = rows.size();
+			if( null != query.getLimit() ){
+				limit = Integer.parseInt(query.getLimit());
+			}
+			
+			JSONArray jsonRows = new JSONArray();
+			while( index < rows.size() && jsonRows.length() < limit ){
+				jsonRows.put( rows.get(index) );
+				++index;
+			}
+			
+			JSONObject top = new JSONObject();
+			top.put("total_rows", rows.size());
+			top.put("offset", 0);
+			top.put("rows", jsonRows);
+			return new CouchQueryResultsImpl(top);
+		}
+
+		@Override
+		public CouchContext getContext() {
+			return null;
+		}
+
+		@Override
+		public CouchDb getDatabase() {
+			return null;
+		}
+
+		@Override
+		public URL getUrl() {
+			return null;
+		}
+
+		@Override
+		public ConnectionStreamResult performQueryRaw(CouchQuery query) throws Exception {
+			throw new Exception("Not implemented");
+		}
+
+		@Override
+		public CouchQueryRowIterator performQueryIterator(CouchQuery query) throws Exception {
+			throw new Exception("Not implemented");
+		}
+
+		@Override
+		public CouchQueryRowIterator performQueryPaged(CouchQuery query, int pageSize, boolean prefetch) throws Exception {
+			return new CouchQueryPagedRowIterator(this, query, pageSize, prefetch);
+		}
+
+		@Override
+		public <T> T performQuery(CouchQuery query, Class<T> expectedClass) throws Exception {
+			throw new Exception("Not implemented");
+		}
+	}
+	
+	static private List<JSONObject> readAll(CouchQueryRowIterator it) throws Exception {
+		List<JSONObject> rows = new ArrayList<JSONObject>();
+		JSONObject row = it.next();
+		while( null != row ){
+			rows.add(row);
+			row = it.next();
+		}
+		it.close();
+		return rows;
+	}
+	
+	private void checkAllRows(int count, int pageSize, boolean prefetch) throws Exception {
+		MockDesignDocument dd = new MockDesignDocument(count);
+		CouchQuery query = new CouchQuery();
+		query.setViewName("test");
+		
+		List<JSONObject> rows = readAll( dd.performQueryPaged(query, pageSize, prefetch) );
+		
+		if( count != rows.size() ){
+			fail("Unexpected number of rows: "+rows.size()+" expected: "+count);
+		}
+		for(int i=0; i<count; ++i){
+			if( i != rows.get(i).getInt("value") ){
+				fail("Unexpected row at "+i+": "+rows.get(i));
+			}
+		}
+		if( null != query.getLimit() ){
+			fail("Query should not be modified");
+		}
+	}
+
+	public void testPages() throws Exception {
+		checkAllRows(10, 4, false);
+		checkAllRows(12, 4, false);
+		checkAllRows(0, 4, false);
+		checkAllRows(5, 100, false);
+	}
+
+	public void testPrefetch() throws Exception {
+		checkAllRows(10, 4, true);
+		checkAllRows(100, 7, true);
+	}
+
+	/**
+	 * A view can emit several rows with the same key for the same document.
+	 * Runs of such rows cross page boundaries and some are longer than
+	 * a page.
+	 */
+	public void testDuplicateKeyAndId() throws Exception {
+		int[] runs = new int[]{1, 3, 2, 7, 1, 5, 4, 10, 1, 2};
+		
+		MockDesignDocument dd = new MockDesignDocument();
+		int value = 0;
+		for(int i=0; i<runs.length; ++i){
+			for(int j=0; j<runs[i]; ++j){
+				JSONObject row = new JSONObject();
+				row.put("id", String.format("doc%03d", i));
+				row.put("key", i / 2);
+				row.put("value", value);
+				dd.rows.add(row);
+				++value;
+			}
+		}
+		int count = dd.rows.size();
+
+		int[] pageSizes = new int[]{1, 2, 3, 4, 5, 10, 100};
+		for(int pageSize : pageSizes){
+			for(int p=0; p<2; ++p){
+				boolean prefetch = (p > 0);
+				CouchQuery query = new CouchQuery();
+				query.setViewName("test");
+				CouchQueryRowIterator it = dd.performQueryPaged(query, pageSize, prefetch);
+
+				List<JSONObject> rows = new ArrayList<JSONObject>();
+				JSONObject row = it.next();
+				while( null != row ){
+					rows.add(row);
+					if( rows.size() > count ){
+						fail("Rows repeated with page size "+pageSize);
+					}
+					row = it.next();
+				}
+				it.close();
+
+				if( count != rows.size() ){
+					fail("Unexpected number of rows with page size "+pageSize+": "+rows.size());
+				}
+				for(int i=0; i<count; ++i){
+					if( i != rows.get(i).getInt("value") ){
+						fail("Unexpected row at "+i+" with page size "+pageSize+": "+rows.get(i));
+					}
+				}
+			}
+		}
+	}
+
+	public void testLimit() throws Exception {
+		MockDesignDocument dd = new MockDesignDocument(20);
+		CouchQuery query = new CouchQuery();
+		query.setViewName("test");
+		query.setLimit(9);
+		
+		CouchQueryRowIterator it = dd.performQueryPaged(query, 4, false);
+		if( 20 != it.getTotal() ){
+			fail("Unexpected total: "+it.getTotal());
+		}
+		List<JSONObject> rows = readAll(it);
+		
+		if( 9 != rows.size() ){
+			fail("Unexpected number of rows: "+rows.size());
+		}
+		if( 3 != dd.queryCount ){
+			fail("Unexpected number of queries: "+dd.queryCount);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package ca.carleton.gcrc.couch.client;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.client.impl.CouchQueryRowIteratorImpl;
+
+public class CouchQueryRowIteratorTest extends TestCase {
+	
+	static private CouchQueryRowIterator iteratorFromString(String s) throws Exception {
+		ByteArrayInputStream bais = new ByteArrayInputStream(s.getBytes("UTF-8"));
+		return new CouchQueryRowIteratorImpl(bais, "UTF-8");
+	}
+
+	public void testRows() throws Exception {
+		CouchQueryRowIterator it = iteratorFromString(
+			"{\"total_rows\":3,\"offset\":1,\"rows\":[\r\n"
+			+"{\"id\":\"a\",\"key\":1,\"value\":null},\r\n"
+			+"{\"id\":\"b\",\"key\":[2,\"x\"],\"value\":{\"v\":\"]\"}}\r\n"
+			+"]}\n"
+		);
+		
+		if( 3 != it.getTotal() ){
+			fail("Unexpected total: "+it.getTotal());
+		}
+		if( 1 != it.getOffset() ){
+			fail("Unexpected offset: "+it.getOffset());
+		}
+		
+		JSONObject row1 = it.next();
+		if( null == row1 || false == "a".equals(row1.getString("id")) ){
+			fail("Unexpected first row: "+row1);
+		}
+		if( false == it.hasNext() ){
+			fail("Expected a second row");
+		}
+		JSONObject row2 = it.next();
+		if( null == row2 || false == "b".equals(row2.getString("id")) ){
+			fail("Unexpected second row: "+row2);
+		}
+		if( it.hasNext() ){
+			fail("Expected end of rows");
+		}
+		if( null != it.next() ){
+			fail("Expected null after end of rows");
+		}
+		it.close();
+	}
+
+	public void testNoRows() throws Exception {
+		CouchQueryRowIterator it = iteratorFromString("{\"total_rows\":0,\"offset\":0,\"rows\":[]}");
+		
+		if( it.hasNext() ){
+			fail("Expected no rows");
+		}
+		it.close();
+	}
+
+	public void testMembersAfterRows() throws Exception {
+		CouchQueryRowIterator it = iteratorFromString("{\"rows\":[{\"key\":null,\"value\":4}],\"total_rows\":5}");
+		
+		int count = 0;
+		while( it.hasNext() ){
+			it.next();
+			++count;
+		}
+		if( 1 != count ){
+			fail("Unexpected number of rows: "+count);
+		}
+		if( 5 != it.getTotal() ){
+			fail("Unexpected total: "+it.getTotal());
+		}
+	}
+}
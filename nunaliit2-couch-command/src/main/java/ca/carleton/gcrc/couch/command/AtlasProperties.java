@@ -91,6 +91,24 @@ public class AtlasProperties {
 			}
 		}
 
+		// In-memory date index
+		{
+			String enabledString = props.getProperty("date.index.memory.enabled","false");
+			boolean enabled = Boolean.parseBoolean(enabledString);
+			if( enabled ){
+				atlasProps.setDateInMemoryIndexEnabled(enabled);
+			}
+		}
+
+		// Geometry cache saved to disk
+		{
+			String enabledString = props.getProperty("geometry.cache.spill.enabled","false");
+			boolean enabled = Boolean.parseBoolean(enabledString);
+			if( enabled ){
+				atlasProps.setGeometryCacheSpillEnabled(enabled);
+			}
+		}
+
 		// Google Map API Key
 		{
 			String key = props.getProperty("google.mapapi.key","");
@@ -288,6 +306,8 @@ public class AtlasProperties {
 	private boolean restricted = false;
 	private byte[] serverKey = null;
 	private boolean geometrySimplificationDisabled = false;
+	private boolean dateInMemoryIndexEnabled = false;
+	private boolean geometryCacheSpillEnabled = false;
 	private String googleMapApiKey;
 
 	public String getAtlasName() {
@@ -368,6 +388,22 @@ public class AtlasProperties {
 		this.geometrySimplificationDisabled = geometrySimplificationDisabled;
 	}
 
+	public boolean isDateInMemoryIndexEnabled() {
+		return dateInMemoryIndexEnabled;
+	}
+
+	public void setDateInMemoryIndexEnabled(boolean dateInMemoryIndexEnabled) {
+		this.dateInMemoryIndexEnabled = dateInMemoryIndexEnabled;
+	}
+
+	public boolean isGeometryCacheSpillEnabled() {
+		return geometryCacheSpillEnabled;
+	}
+
+	public void setGeometryCacheSpillEnabled(boolean geometryCacheSpillEnabled) {
+		this.geometryCacheSpillEnabled = geometryCacheSpillEnabled;
+	}
+
 	public String getGoogleMapApiKey() {
 		return googleMapApiKey;
 	}
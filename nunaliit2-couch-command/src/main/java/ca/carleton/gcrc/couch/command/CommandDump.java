@@ -52,6 +52,7 @@ public class CommandDump implements Command {
 				,Options.OPTION_LAYER
 				,Options.OPTION_SKELETON
 				,Options.OPTION_OVERWRITE_DOCS
+				,Options.OPTION_WORKERS
 			};
 	}
 
@@ -73,6 +74,9 @@ public class CommandDump implements Command {
 		ps.println("is invoked without specifying any document, then all documents");
 		ps.println("found in the database are dumped.");
 		ps.println();
+		ps.println("If a dump is interrupted, running it again with the same --dump-dir");
+		ps.println("skips the documents that were already saved.");
+		ps.println();
 		ps.println("Command Syntax:");
 		ps.println("  nunaliit dump <options>");
 		ps.println();
@@ -101,6 +105,10 @@ public class CommandDump implements Command {
 		ps.println("    over-writing the files found there. This option includes the "+Options.OPTION_SKELETON);
 		ps.println("    option, as well.");
 		ps.println();
+		ps.println("  "+Options.OPTION_WORKERS+" <count>");
+		ps.println("    Number of documents fetched from the database at the same time.");
+		ps.println("    Defaults to 1.");
+		ps.println();
 		CommandHelp.reportGlobalOptions(ps,getExpectedOptions());
 	}
 
@@ -246,6 +254,9 @@ public class CommandDump implements Command {
 			storeProcess.addKeyToIgnore("nunaliit_last_updated");
 			dumpProcess.setStoreProcess(storeProcess);
 		}
+		if( null != options.getWorkers() ){
+			dumpProcess.setWorkerCount( options.getWorkers().intValue() );
+		}
 		dumpProcess.setListener(listener);
 		dumpProcess.dump();
 	}
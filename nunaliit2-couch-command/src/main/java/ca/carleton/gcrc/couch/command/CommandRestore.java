@@ -36,6 +36,7 @@ public class CommandRestore implements Command {
 				Options.OPTION_ATLAS_DIR
 				,Options.OPTION_DUMP_DIR
 				,Options.OPTION_DOC_ID
+				,Options.OPTION_WORKERS
 			};
 	}
 
@@ -52,6 +53,9 @@ public class CommandRestore implements Command {
 		ps.println("obtained using the dump command, to the database associated with the");
 		ps.println("atlas.");
 		ps.println();
+		ps.println("If a restore is interrupted, running it again with the same --dump-dir");
+		ps.println("skips the documents that were already restored.");
+		ps.println();
 		ps.println("Command Syntax:");
 		ps.println("  nunaliit restore <options>");
 		ps.println();
@@ -65,6 +69,10 @@ public class CommandRestore implements Command {
 		ps.println("    multiple documents in the restore process. If  this option is not ");
 		ps.println("    used, all documents are restored.");
 		ps.println();
+		ps.println("  "+Options.OPTION_WORKERS+" <count>");
+		ps.println("    Number of documents updated in the database at the same time.");
+		ps.println("    Defaults to 1.");
+		ps.println();
 		CommandHelp.reportGlobalOptions(ps,getExpectedOptions());
 	}
 
@@ -113,6 +121,9 @@ public class CommandRestore implements Command {
 				restoreProcess.addDocId(docId);
 			}
 		}
+		if( null != options.getWorkers() ){
+			restoreProcess.setWorkerCount( options.getWorkers().intValue() );
+		}
 		restoreProcess.restore();
 	}
 
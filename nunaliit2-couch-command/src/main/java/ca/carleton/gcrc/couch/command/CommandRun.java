@@ -187,8 +187,9 @@ public class CommandRun implements Command {
         }
 
         // Servlet for configuration
+        ConfigServlet configServlet = new ConfigServlet();
         {
-        	ServletHolder servletHolder = new ServletHolder(new ConfigServlet());
+        	ServletHolder servletHolder = new ServletHolder(configServlet);
         	servletHolder.setInitParameter("atlasDir", atlasDir.getAbsolutePath());
         	servletHolder.setInitParameter("installDir", gs.getInstallDir().getAbsolutePath());
         	servletHolder.setInitOrder(1);
@@ -261,6 +262,11 @@ public class CommandRun implements Command {
 
 		// Start server
 		server.start();
+		
+		// All servlets are initialized: listeners of database changes are
+		// registered and the change feeds can start
+		configServlet.startChangeMonitors();
+		
 		server.join();
 	}
 
@@ -40,6 +40,7 @@ public class Options {
 	static final public String OPTION_SCHEMA = "--schema";
 	static final public String OPTION_LAYER = "--layer";
 	static final public String OPTION_NAME = "--name";
+	static final public String OPTION_WORKERS = "--workers";
 
 	static final public String OPTION_SET_LOGGER = "--set-logger";
 	static final public String OPTION_DEBUG = "--debug";
@@ -70,6 +71,7 @@ public class Options {
 	private Set<String> layerNames = new HashSet<String>();
 	private Set<String> docIds = new HashSet<String>();
 	private String name;
+	private Integer workers;
 	
 	public Options() {
 		arguments = new Vector<String>();
@@ -239,6 +241,25 @@ public class Options {
 
 					name = argumentStack.pop();
 
+				} else if( OPTION_WORKERS.equals(arg) ){
+					if( argumentStack.size() < 1 ){
+						throw new Exception(OPTION_WORKERS+" option requires a number of workers");
+					}
+					
+					if( null != workers ){
+						throw new Exception("Option "+OPTION_WORKERS+" can be specified only once");
+					}
+
+					String workersStr = argumentStack.pop();
+					try {
+						workers = Integer.parseInt(workersStr);
+					} catch(Exception e) {
+						throw new Exception("Invalid value for option "+OPTION_WORKERS+": "+workersStr,e);
+					}
+					if( workers.intValue() < 1 ){
+						throw new Exception("Option "+OPTION_WORKERS+" requires at least one worker");
+					}
+
 				} else {
 					throw new Exception("Unrecognized option: "+arg);
 				}
@@ -311,6 +332,9 @@ public class Options {
 		if( null != name && false == expected.contains(OPTION_NAME)){
 			throw new Exception("Unexpected option: "+OPTION_NAME);
 		}
+		if( null != workers && false == expected.contains(OPTION_WORKERS)){
+			throw new Exception("Unexpected option: "+OPTION_WORKERS);
+		}
 	}
 
 	public List<String> getArguments() {
@@ -373,6 +397,10 @@ public class Options {
 		return name;
 	}
 	
+	public Integer getWorkers() {
+		return workers;
+	}
+	
 	public Set<String> getSchemaNames() {
 		return schemaNames;
 	}
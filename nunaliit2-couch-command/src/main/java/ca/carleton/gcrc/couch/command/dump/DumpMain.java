@@ -98,6 +98,7 @@ public class DumpMain {
 			}
 		}
 		dumpProcess.setListener(listener);
+		dumpProcess.setWorkerCount( dumpSettings.getWorkerCount() );
 		dumpProcess.dump();
 	}
 	
@@ -140,5 +141,9 @@ public class DumpMain {
 		ps.println("    If this option is not specified, then all documents are selected.");
 		ps.println("    for dump or restore. If this option is specified once or multiple");
 		ps.println("    times, then only the requested documents are selected.");
+		ps.println();
+		ps.println("--workers <count>");
+		ps.println("    Number of documents fetched from the database at the same time.");
+		ps.println("    Defaults to 1.");
 	}
 }
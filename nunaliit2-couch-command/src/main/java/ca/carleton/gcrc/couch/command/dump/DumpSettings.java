@@ -39,6 +39,7 @@ public class DumpSettings {
 	private String user = null;
 	private String password = null;
 	private String dbName = null;
+	private int workerCount = 1;
 
 	public DumpSettings(Type opType) throws Exception {
 		this.opType  = opType;
@@ -129,6 +130,24 @@ public class DumpSettings {
 
 				setDbName( argumentStack.pop() );
 				
+			} else if( "--workers".equals(optionName) ){
+				argumentStack.pop();
+				if( argumentStack.size() < 1 ){
+					throw new Exception("--workers option requires a number of workers");
+				}
+
+				String workersStr = argumentStack.pop();
+				int workers = 0;
+				try {
+					workers = Integer.parseInt(workersStr);
+				} catch(Exception e) {
+					throw new Exception("Invalid value for option --workers: "+workersStr,e);
+				}
+				if( workers < 1 ){
+					throw new Exception("--workers option requires at least one worker");
+				}
+				setWorkerCount(workers);
+				
 			} else if( "--help".equals(optionName) ){
 					argumentStack.pop();
 					setHelpRequested(true);
@@ -333,6 +352,13 @@ public class DumpSettings {
 		return docIds;
 	}
 
+	public int getWorkerCount() {
+		return workerCount;
+	}
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = workerCount;
+	}
+
 	public String getServer() {
 		return server;
 	}
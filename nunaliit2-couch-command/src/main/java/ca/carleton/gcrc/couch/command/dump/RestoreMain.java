@@ -99,6 +99,7 @@ public class RestoreMain {
 				restoreProcess.addDocId(docId);
 			}
 		}
+		restoreProcess.setWorkerCount( dumpSettings.getWorkerCount() );
 		restoreProcess.restore();
 	}
 	
@@ -143,5 +144,9 @@ public class RestoreMain {
 		ps.println("    If this option is not specified, then all documents are selected.");
 		ps.println("    for restore. If this option is specified once or multiple");
 		ps.println("    times, then only the requested documents are selected.");
+		ps.println();
+		ps.println("--workers <count>");
+		ps.println("    Number of documents updated in the database at the same time.");
+		ps.println("    Defaults to 1.");
 	}
 }
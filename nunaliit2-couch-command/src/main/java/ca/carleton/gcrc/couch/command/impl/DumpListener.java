@@ -7,6 +7,8 @@ import ca.carleton.gcrc.couch.app.DbDumpListener;
 
 public class DumpListener implements DbDumpListener {
 
+	static final private int PROGRESS_INTERVAL = 100;
+
 	private PrintStream os;
 	private int total = 0;
 	private int count = 0;
@@ -16,25 +18,37 @@ public class DumpListener implements DbDumpListener {
 	}
 
 	@Override
-	public void reportDocumentIds(List<String> docIds) {
+	synchronized public void reportDocumentIds(List<String> docIds) {
 		total = docIds.size();
 		count = 0;
 		os.println("Number of documents in dump: "+total);
 	}
 
 	@Override
-	public void reportDownload(String docId) {
+	synchronized public void reportDownload(String docId) {
 		++count;
 		os.println("Downloading "+count+" of "+total+" ("+docId+")");
 	}
 
 	@Override
-	public void reportStore(String docId) {
+	synchronized public void reportStore(String docId) {
 		os.println("Storing "+count+" of "+total+" ("+docId+")");
 	}
 
 	@Override
-	public void reportEnd() {
+	synchronized public void reportResume(int docCount) {
+		os.println("Resuming interrupted run. Skipping "+docCount+" document(s) already processed");
+	}
+
+	@Override
+	synchronized public void reportProgress(int completed, int total, double docsPerSecond) {
+		if( completed % PROGRESS_INTERVAL == 0 || completed == total ) {
+			os.println(String.format("Completed %d of %d (%.1f documents/s)", completed, total, docsPerSecond));
+		}
+	}
+
+	@Override
+	synchronized public void reportEnd() {
 		os.println("Dump completed");
 	}
 
@@ -8,6 +8,8 @@ import ca.carleton.gcrc.couch.app.Document;
 
 public class RestoreListener implements DbRestoreListener {
 
+	static final private int PROGRESS_INTERVAL = 100;
+
 	private PrintStream os;
 	private int total = 0;
 	private int count = 0;
@@ -18,7 +20,7 @@ public class RestoreListener implements DbRestoreListener {
 	}
 
 	@Override
-	public void reportDocumentIds(List<String> docIds) {
+	synchronized public void reportDocumentIds(List<String> docIds) {
 		count = 0;
 		skipped = 0;
 		total = docIds.size();
@@ -26,7 +28,7 @@ public class RestoreListener implements DbRestoreListener {
 	}
 
 	@Override
-	public void updatingDocument(Phase phase, Document doc) {
+	synchronized public void updatingDocument(Phase phase, Document doc) {
 		if( phase == Phase.BEFORE ) {
 			++count;
 			os.println("Restoring "+count+" of "+total+" ("+doc.getId()+")");
@@ -34,21 +36,33 @@ public class RestoreListener implements DbRestoreListener {
 	}
 	
 	@Override
-	public void documentSkippedBecauseModified(Document doc) {
+	synchronized public void documentSkippedBecauseModified(Document doc) {
 		++count;
 		++skipped;
 		os.println("Can not restore "+doc.getId()+" because the document was modified in the database");
 	}
 
 	@Override
-	public void documentSkippedBecauseUnchanged(Document doc) {
+	synchronized public void documentSkippedBecauseUnchanged(Document doc) {
 		++count;
 		os.println("Not restoring "+count+" of "+total+" ("+doc.getId()+") because it is unchanged");
 	}
 
 
 	@Override
-	public void endRestore() {
+	synchronized public void reportResume(int docCount) {
+		os.println("Resuming interrupted run. Skipping "+docCount+" document(s) already processed");
+	}
+
+	@Override
+	synchronized public void reportProgress(int completed, int total, double docsPerSecond) {
+		if( completed % PROGRESS_INTERVAL == 0 || completed == total ) {
+			os.println(String.format("Completed %d of %d (%.1f documents/s)", completed, total, docsPerSecond));
+		}
+	}
+
+	@Override
+	synchronized public void endRestore() {
 		os.println("Restore completed");
 		if( skipped > 0 ) {
 			os.println("*** "+skipped+" document(s) not restored");
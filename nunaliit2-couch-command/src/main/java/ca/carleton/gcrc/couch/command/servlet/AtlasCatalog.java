@@ -0,0 +1,353 @@
+package ca.carleton.gcrc.couch.command.servlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.carleton.gcrc.couch.client.CouchClient;
+import ca.carleton.gcrc.couch.client.CouchDb;
+import ca.carleton.gcrc.couch.client.CouchDbChanges;
+import ca.carleton.gcrc.couch.client.CouchDesignDocument;
+import ca.carleton.gcrc.couch.client.CouchQuery;
+import ca.carleton.gcrc.couch.client.CouchQueryResults;
+
+/**
+ * Cache of the atlases found on the server and of the roles they define.
+ *
+ * For each database, the sequence of its change feed is remembered. When
+ * the database is consulted again, only the changes made since are
+ * requested. The atlas design document is fetched again only if it is
+ * part of the changes, and the roles are computed again only if the
+ * database changed. Databases that are not atlases are remembered as
+ * such until an atlas design document is created in them.
+ *
+ * Databases are consulted concurrently.
+ */
+public class AtlasCatalog {
+
+	static final public int DEFAULT_THREAD_COUNT = 8;
+
+	static final private String ATLAS_DESIGN_ID = "_design/atlas";
+
+	// Past this number of changes, a database is loaded again instead
+	// of inspecting each change
+	static final private int CHANGE_LIMIT = 1000;
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private CouchClient couchClient;
+	private int threadCount = DEFAULT_THREAD_COUNT;
+	private Map<String,Entry> entriesByName = new HashMap<String,Entry>();
+
+	public AtlasCatalog(CouchClient couchClient){
+		this.couchClient = couchClient;
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Returns information about an atlas.
+	 * @throws Exception If the database is not an atlas
+	 */
+	public AtlasInfo getAtlasInfo(String databaseName) throws Exception {
+		AtlasInfo info = getEntry(databaseName).getAtlasInfo();
+		if( null == info ){
+			throw new Exception("Database is not an atlas: "+databaseName);
+		}
+		return info;
+	}
+
+	public Set<String> getAtlasRoles(String databaseName) throws Exception {
+		Set<String> roles = getEntry(databaseName).getRoles();
+		if( null == roles ){
+			throw new Exception("Database is not an atlas: "+databaseName);
+		}
+		return roles;
+	}
+
+	/**
+	 * Returns the atlases found on the server, in the order the databases
+	 * are listed. Databases that can not be consulted are omitted.
+	 */
+	public List<AtlasInfo> getAtlases() throws Exception {
+		List<AtlasInfo> result = new ArrayList<AtlasInfo>();
+
+		List<Future<Object>> futures = consultDatabases(new EntryTask(){
+			@Override
+			public Object perform(Entry entry) throws Exception {
+				return entry.getAtlasInfo();
+			}
+		});
+		for(Future<Object> future : futures){
+			AtlasInfo info = (AtlasInfo)getIgnoringError(future);
+			if( null != info ){
+				result.add(info);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the roles defined by all atlases found on the server.
+	 * Databases that can not be consulted are omitted.
+	 */
+	public Set<String> getServerRoles() throws Exception {
+		Set<String> roles = new HashSet<String>();
+
+		List<Future<Object>> futures = consultDatabases(new EntryTask(){
+			@Override
+			public Object perform(Entry entry) throws Exception {
+				return entry.getRoles();
+			}
+		});
+		for(Future<Object> future : futures){
+			@SuppressWarnings("unchecked")
+			Set<String> atlasRoles = (Set<String>)getIgnoringError(future);
+			if( null != atlasRoles ){
+				roles.addAll(atlasRoles);
+			}
+		}
+
+		return roles;
+	}
+
+	private interface EntryTask {
+		Object perform(Entry entry) throws Exception;
+	}
+
+	/**
+	 * Performs a task on each database of the server, concurrently. Entries
+	 * for databases that no longer exist are dropped.
+	 * @return One future per database, in the order the databases are listed
+	 */
+	private List<Future<Object>> consultDatabases(final EntryTask task) throws Exception {
+		List<String> databaseNames = couchClient.listDatabases();
+
+		List<Entry> entries = new ArrayList<Entry>(databaseNames.size());
+		synchronized(this){
+			Map<String,Entry> current = new HashMap<String,Entry>();
+			for(String databaseName : databaseNames){
+				if( databaseName.length() > 0
+				 && databaseName.charAt(0) != '_' ){
+					Entry entry = entriesByName.get(databaseName);
+					if( null == entry ){
+						entry = new Entry(databaseName);
+					}
+					current.put(databaseName, entry);
+					entries.add(entry);
+				}
+			}
+			entriesByName = current;
+		}
+
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(entries.size());
+		if( entries.size() < 1 ){
+			return futures;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool( Math.max(1, Math.min(threadCount, entries.size())) );
+		try {
+			for(final Entry entry : entries){
+				futures.add( executor.submit(new Callable<Object>(){
+					@Override
+					public Object call() throws Exception {
+						return task.perform(entry);
+					}
+				}) );
+			}
+
+			// Wait for all databases
+			for(Future<Object> future : futures){
+				try {
+					future.get();
+				} catch(ExecutionException e) {
+					// Reported when the results are read
+				}
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return futures;
+	}
+
+	private Object getIgnoringError(Future<Object> future) throws Exception {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			logger.debug("Unable to consult database", e.getCause());
+			return null;
+		}
+	}
+
+	synchronized private Entry getEntry(String databaseName) {
+		Entry entry = entriesByName.get(databaseName);
+		if( null == entry ){
+			entry = new Entry(databaseName);
+			entriesByName.put(databaseName, entry);
+		}
+		return entry;
+	}
+
+	private class Entry {
+		private String databaseName;
+		private String sequence = null;
+		private AtlasInfo atlasInfo = null;
+		private Set<String> roles = null;
+
+		public Entry(String databaseName){
+			this.databaseName = databaseName;
+		}
+
+		/**
+		 * Returns null if the database is not an atlas
+		 */
+		synchronized public AtlasInfo getAtlasInfo() throws Exception {
+			refresh();
+			return atlasInfo;
+		}
+
+		/**
+		 * Returns null if the database is not an atlas
+		 */
+		synchronized public Set<String> getRoles() throws Exception {
+			refresh();
+			if( null == atlasInfo ){
+				return null;
+			}
+			if( null == roles ){
+				CouchDb db = couchClient.getDatabase(databaseName);
+				roles = Collections.unmodifiableSet( computeRoles(db, atlasInfo) );
+			}
+			return roles;
+		}
+
+		private void refresh() throws Exception {
+			try {
+				CouchDb db = couchClient.getDatabase(databaseName);
+
+				if( null != sequence ){
+					CouchDbChanges changes = db.getChanges(sequence, CHANGE_LIMIT);
+					if( changes.getDocIds().size() < CHANGE_LIMIT ){
+						if( changes.getDocIds().size() > 0 ){
+							if( changes.getDocIds().contains(ATLAS_DESIGN_ID) ){
+								atlasInfo = fetchAtlasInfo(db, databaseName);
+							}
+							roles = null;
+						}
+						sequence = changes.getLastSequence();
+						return;
+					}
+				}
+
+				// Load. The sequence is obtained first so that changes made
+				// while loading are seen on the next refresh.
+				String currentSequence = db.getChanges(null, 0).getLastSequence();
+				atlasInfo = fetchAtlasInfo(db, databaseName);
+				roles = null;
+				sequence = currentSequence;
+
+			} catch(Exception e) {
+				sequence = null;
+				atlasInfo = null;
+				roles = null;
+				throw new Exception("Unable to refresh atlas information for: "+databaseName, e);
+			}
+		}
+	}
+
+	/**
+	 * Returns null if the database is not an atlas
+	 */
+	static private AtlasInfo fetchAtlasInfo(CouchDb db, String databaseName) throws Exception {
+		if( false == db.documentExists(ATLAS_DESIGN_ID) ){
+			return null;
+		}
+
+		JSONObject atlasDesign = db.getDocument(ATLAS_DESIGN_ID);
+		JSONObject nunaliit = atlasDesign.optJSONObject("nunaliit");
+		if( null == nunaliit ){
+			return null;
+		}
+		String atlasName = nunaliit.getString("name");
+		boolean restricted = nunaliit.optBoolean("restricted",false);
+		String submissionDbName = nunaliit.optString("submissionDbName",null);
+		boolean submissionDbEnabled = nunaliit.optBoolean("submissionDbEnabled",false);
+
+		AtlasInfo info = new AtlasInfo(databaseName, atlasName, restricted);
+		info.setSubmissionDbName(submissionDbName);
+		info.setSubmissionDbEnabled(submissionDbEnabled);
+
+		return info;
+	}
+
+	static private Set<String> computeRoles(CouchDb atlasDb, AtlasInfo atlasInfo) throws Exception {
+		Set<String> roles = new HashSet<String>();
+
+		roles.add(atlasInfo.getAtlasName() + "_administrator");
+		roles.add(atlasInfo.getAtlasName() + "_vetter");
+
+		if( atlasInfo.isRestricted() ){
+			roles.add(atlasInfo.getAtlasName() + "_user");
+		}
+
+		CouchDesignDocument atlasDesign = atlasDb.getDesignDocument("atlas");
+
+		// Roles from layer definitions
+		{
+			CouchQuery query = new CouchQuery();
+			query.setViewName("layer-definitions");
+			CouchQueryResults queryResults = atlasDesign.performQuery(query);
+			for(JSONObject row : queryResults.getRows()){
+				String layerId = row.getString("key");
+				if( "public".equals(layerId) ) {
+					// Do not include public layer
+				} else if( null != layerId && layerId.startsWith("public_") ) {
+					// Do not include public layers
+				} else {
+					String layerRole = atlasInfo.getAtlasName() + "_layer_" + layerId;
+					roles.add(layerRole);
+				}
+			}
+		}
+
+		// Roles from layers in use
+		{
+			CouchQuery query = new CouchQuery();
+			query.setViewName("layers");
+			query.setReduce(true);
+			query.setGrouping(true);
+			CouchQueryResults queryResults = atlasDesign.performQuery(query);
+			for(JSONObject row : queryResults.getRows()){
+				String layerId = row.getString("key");
+				if( false == "public".equals(layerId) ) {
+					String layerRole = atlasInfo.getAtlasName() + "_layer_" + layerId;
+					roles.add(layerRole);
+				}
+			}
+		}
+
+		return roles;
+	}
+}
@@ -66,6 +66,7 @@ import ca.carleton.gcrc.couch.utils.CouchDbTemplateMailMessageGenerator;
 import ca.carleton.gcrc.json.servlet.JsonServlet;
 import ca.carleton.gcrc.mail.MailDelivery;
 import ca.carleton.gcrc.mail.MailDeliveryImpl;
+import ca.carleton.gcrc.mail.MailDeliveryOutbox;
 import ca.carleton.gcrc.mail.MailDeliveryNull;
 import ca.carleton.gcrc.mail.MailServiceRecipients;
 import ca.carleton.gcrc.mail.MailServletConfiguration;
@@ -113,6 +114,7 @@ public class ConfigServlet extends JsonServlet {
 	private MailNotification mailNotification = null;
 	private SubmissionMailNotifier submissionNotifier = null;
 	private MailVetterDailyNotificationTask vetterDailyTask = null;
+	private MailDeliveryOutbox mailOutbox = null;
 	private ConfigServletActions actions = null;
 	private SecureRandom rng = null;
 	
@@ -432,6 +434,53 @@ public class ConfigServlet extends JsonServlet {
 			}
 			logger.info("Submission database configured: "+submissionDb.getUrl());
 		}
+		
+		// Change monitors resume from the last change seen before a restart.
+		// The feeds start in startChangeMonitors(), once all servlets have
+		// registered their listeners.
+		File changesDir = new File(atlasDir, "changes");
+		if( false == changesDir.exists() ){
+			changesDir.mkdirs();
+		}
+		if( changesDir.isDirectory() ){
+			setChangeCheckpoint(documentDatabase, new File(changesDir, documentDatabaseName+".seq"));
+			setChangeCheckpoint(userDb, new File(changesDir, "_users.seq"));
+			if( null != submissionDb ){
+				setChangeCheckpoint(submissionDb, new File(changesDir, atlasProperties.getCouchDbSubmissionDbName()+".seq"));
+			}
+		} else {
+			logger.error("Unable to create directory for database change checkpoints: "+changesDir.getAbsolutePath());
+		}
+	}
+	
+	/**
+	 * Starts the change feeds of the databases. Must be called after all
+	 * servlets are initialized, so that every listener registered during
+	 * initialization receives the changes replayed from the checkpoints.
+	 */
+	public void startChangeMonitors() {
+		startChangeMonitor(documentDatabase);
+		startChangeMonitor(userDb);
+		startChangeMonitor(submissionDb);
+	}
+
+	private void startChangeMonitor(CouchDb couchDb) {
+		if( null == couchDb ){
+			return;
+		}
+		try {
+			couchDb.getChangeMonitor().start();
+		} catch(Exception e) {
+			logger.error("Unable to start change monitor for database "+couchDb.getUrl(),e);
+		}
+	}
+
+	private void setChangeCheckpoint(CouchDb couchDb, File checkpointFile) {
+		try {
+			couchDb.getChangeMonitor().setCheckpointFile(checkpointFile);
+		} catch(Exception e) {
+			logger.error("Unable to set change checkpoint for database "+couchDb.getUrl(),e);
+		}
 	}
 
 	private void initServerDesignDocument(ServletContext servletContext) throws ServletException {
@@ -512,12 +561,23 @@ public class ConfigServlet extends JsonServlet {
 				MailNotificationImpl mail = null;
 				SubmissionMailNotifierImpl submissionNotifier = null;
 				
-				// Mail delivery
+				// Mail delivery. Messages are queued in an outbox and sent
+				// by a separate thread.
 				{
 					MailDeliveryImpl mailDeliveryImpl = new MailDeliveryImpl();
 					mailDeliveryImpl.setMailProperties(props);
-					servletContext.setAttribute(MailDelivery.ConfigAttributeName_MailDelivery, mailDeliveryImpl);
-					mailDelivery = mailDeliveryImpl;
+
+					File outboxDir = new File(atlasDir, "mail_outbox");
+					try {
+						mailOutbox = new MailDeliveryOutbox(mailDeliveryImpl, outboxDir);
+					} catch(Exception e) {
+						logger.error("Unable to use mail outbox directory. Queued messages are kept in memory only.", e);
+						mailOutbox = new MailDeliveryOutbox(mailDeliveryImpl, null);
+					}
+					mailOutbox.start();
+
+					servletContext.setAttribute(MailDelivery.ConfigAttributeName_MailDelivery, mailOutbox);
+					mailDelivery = mailOutbox;
 				}
 
 				mail = new MailNotificationImpl(
@@ -742,6 +802,7 @@ public class ConfigServlet extends JsonServlet {
 			config.setCouchDb(couchDb);
 			CouchDesignDocument atlasDesign = couchDb.getDesignDocument("atlas");
 			config.setAtlasDesignDocument(atlasDesign);
+			config.setInMemoryIndex( atlasProperties.isDateInMemoryIndexEnabled() );
 			servletContext.setAttribute(DateServletConfiguration.CONFIGURATION_KEY, config);
 
 		} catch(Exception e) {
@@ -756,6 +817,9 @@ public class ConfigServlet extends JsonServlet {
 			SimplifiedGeometryServletConfiguration config = new SimplifiedGeometryServletConfiguration();
 			CouchDb couchDb = couchDd.getDatabase();
 			config.setCouchDb(couchDb);
+			if( atlasProperties.isGeometryCacheSpillEnabled() ){
+				config.setCacheSpillDir( new File(atlasDir, "geometry_cache") );
+			}
 			servletContext.setAttribute(SimplifiedGeometryServletConfiguration.CONFIGURATION_KEY, config);
 
 		} catch(Exception e) {
@@ -861,6 +925,14 @@ public class ConfigServlet extends JsonServlet {
 		} catch (Exception e) {
 			logger.error("Unable to shutdown daily vetter notifications", e);
 		}
+
+		try {
+			if( null != mailOutbox ){
+				mailOutbox.stopTimeoutMillis(5*1000); // 5 seconds
+			}
+		} catch (Exception e) {
+			logger.error("Unable to shutdown mail outbox", e);
+		}
 		
 		try {
 			documentDatabase.getChangeMonitor().shutdown();
@@ -16,7 +16,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.carleton.gcrc.couch.date.impl.DateRobotThread;
+import ca.carleton.gcrc.couch.date.impl.DateSource;
 import ca.carleton.gcrc.couch.date.impl.DateSourceCouchWithCluster;
+import ca.carleton.gcrc.couch.date.impl.DateSourceInMemory;
 import ca.carleton.gcrc.couch.date.impl.NowReference;
 import ca.carleton.gcrc.couch.date.impl.TimeInterval;
 import ca.carleton.gcrc.json.servlet.JsonServlet;
@@ -45,17 +47,29 @@ public class DateServlet extends JsonServlet {
 		if( configurationObj instanceof DateServletConfiguration ){
 			configuration = (DateServletConfiguration)configurationObj;
 
-			DateSourceCouchWithCluster dateSource;
+			DateSourceCouchWithCluster clusterDateSource;
 			try {
-				dateSource = new DateSourceCouchWithCluster(configuration.getAtlasDesignDocument());
+				clusterDateSource = new DateSourceCouchWithCluster(configuration.getAtlasDesignDocument());
 			} catch (Exception e) {
 				throw new ServletException("Unable to create date source",e);
 			}
 			
+			// The in-memory index needs the change feed to stay current. The
+			// cluster tree is still maintained by the robot, for other clients
+			// of the date-index view.
+			DateSource dateSource = clusterDateSource;
+			if( configuration.isInMemoryIndex() ){
+				try {
+					dateSource = new DateSourceInMemory(configuration.getAtlasDesignDocument());
+				} catch (Exception e) {
+					logger.error("Unable to create in-memory date index. Using cluster tree.",e);
+				}
+			}
+			
 			actions = new DateServiceActions(dateSource);
 			
 			try {
-				robot = new DateRobotThread(configuration.getAtlasDesignDocument(), dateSource.getClusterTree());
+				robot = new DateRobotThread(configuration.getAtlasDesignDocument(), clusterDateSource.getClusterTree());
 				robot.start();
 			} catch (Exception e) {
 				throw new ServletException("Unable to start date robot",e);
@@ -9,6 +9,7 @@ public class DateServletConfiguration {
 
 	private CouchDb couchDb;
 	private CouchDesignDocument atlasDesignDocument;
+	private boolean inMemoryIndex = false;
 	
 	public CouchDb getCouchDb() {
 		return couchDb;
@@ -23,4 +24,16 @@ public class DateServletConfiguration {
 	public void setAtlasDesignDocument(CouchDesignDocument atlasDesign) {
 		this.atlasDesignDocument = atlasDesign;
 	}
+	
+	/**
+	 * When set, date searches are answered from an index held in memory
+	 * and kept current from the change feed, instead of querying the
+	 * date-index view on each request.
+	 */
+	public boolean isInMemoryIndex() {
+		return inMemoryIndex;
+	}
+	public void setInMemoryIndex(boolean inMemoryIndex) {
+		this.inMemoryIndex = inMemoryIndex;
+	}
 }
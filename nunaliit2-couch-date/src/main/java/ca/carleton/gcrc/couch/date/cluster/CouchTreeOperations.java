@@ -13,12 +13,15 @@ import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
 import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
 import ca.carleton.gcrc.couch.date.impl.TimeInterval;
 import ca.carleton.gcrc.couch.utils.CouchNunaliitUtils;
 
 public class CouchTreeOperations implements TreeOperations {
 	
 	final static public String DATE_CLUSTER_DOC_ID = "org.nunaliit.date_clusters";
+	
+	final static public int DATE_INDEX_PAGE_SIZE = 2000;
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -35,29 +38,36 @@ public class CouchTreeOperations implements TreeOperations {
 		CouchQuery query = new CouchQuery();
 		query.setViewName("date-index");
 		query.setReduce(false);
-		CouchQueryResults result = atlasDesign.performQuery(query);
-		for(JSONObject row : result.getRows()){
-			String docId = row.getString("id");
-			Integer clusterId = null;
-			{
-				Object indexObj = row.get("key");
-				if( JSONObject.NULL.equals(indexObj) ){
-					indexObj = null;
-				}
-				if( null != indexObj ){
-					clusterId = row.getInt("key");
+		CouchQueryRowIterator rows = atlasDesign.performQueryPaged(query, DATE_INDEX_PAGE_SIZE, true);
+		try {
+			JSONObject row = rows.next();
+			while( null != row ){
+				String docId = row.getString("id");
+				Integer clusterId = null;
+				{
+					Object indexObj = row.get("key");
+					if( JSONObject.NULL.equals(indexObj) ){
+						indexObj = null;
+					}
+					if( null != indexObj ){
+						clusterId = row.getInt("key");
+					}
 				}
-			}
 
-			JSONObject jsonInterval = row.getJSONObject("value");
-			TimeInterval timeInterval = TimeInterval.fromJson(jsonInterval);
+				JSONObject jsonInterval = row.getJSONObject("value");
+				TimeInterval timeInterval = TimeInterval.fromJson(jsonInterval);
 			
-			CouchTreeElement element = new CouchTreeElement(
-					docId, 
-					clusterId, 
-					timeInterval
-					);
-			elements.add(element);
+				CouchTreeElement element = new CouchTreeElement(
+						docId, 
+						clusterId, 
+						timeInterval
+						);
+				elements.add(element);
+			
+				row = rows.next();
+			}
+		} finally {
+			rows.close();
 		}
 		
 		return elements;
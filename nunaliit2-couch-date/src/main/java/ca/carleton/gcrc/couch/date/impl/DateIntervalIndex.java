@@ -0,0 +1,213 @@
+package ca.carleton.gcrc.couch.date.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable index of the date intervals found in documents. The intervals
+ * are held in primitive arrays sorted by their lower bound. Intervals are
+ * grouped in blocks and the largest upper bound of each block is kept, so
+ * that a search skips the blocks that end before the searched interval.
+ *
+ * Ongoing intervals (bounded by now) are stored with an upper bound of
+ * Long.MAX_VALUE and tested against the now reference during a search.
+ *
+ * An index is never modified. Changes produce a new index, so that
+ * searches can be performed concurrently without locking. Only the
+ * changed intervals are sorted; they are merged with the arrays of the
+ * current index.
+ */
+public class DateIntervalIndex {
+
+	static final private int BLOCK_SIZE = 64;
+
+	static private Comparator<DocumentWithInterval> minComparator = new Comparator<DocumentWithInterval>(){
+		@Override
+		public int compare(DocumentWithInterval d1, DocumentWithInterval d2) {
+			long min1 = d1.getInterval().getMin();
+			long min2 = d2.getInterval().getMin();
+			if( min1 < min2 ) return -1;
+			if( min1 > min2 ) return 1;
+			return 0;
+		}
+	};
+
+	private int size;
+	private String[] docIds;
+	private long[] mins;
+	private long[] maxs;
+	private boolean[] ongoings;
+	private long[] blockMaxs;
+
+	public DateIntervalIndex(Collection<DocumentWithInterval> documentWithIntervals) throws Exception {
+		DocumentWithInterval[] sorted = documentWithIntervals.toArray(
+				new DocumentWithInterval[documentWithIntervals.size()]);
+		Arrays.sort(sorted, minComparator);
+
+		size = sorted.length;
+		docIds = new String[size];
+		mins = new long[size];
+		maxs = new long[size];
+		ongoings = new boolean[size];
+		for(int i=0; i<size; ++i){
+			TimeInterval interval = sorted[i].getInterval();
+			docIds[i] = sorted[i].getDocId();
+			mins[i] = interval.getMin();
+			if( interval.isOngoing() ){
+				ongoings[i] = true;
+				maxs[i] = Long.MAX_VALUE;
+			} else {
+				maxs[i] = interval.getMax(null);
+			}
+		}
+
+		computeBlockMaxs();
+	}
+
+	private DateIntervalIndex(int size, String[] docIds, long[] mins, long[] maxs, boolean[] ongoings) {
+		this.size = size;
+		this.docIds = docIds;
+		this.mins = mins;
+		this.maxs = maxs;
+		this.ongoings = ongoings;
+
+		computeBlockMaxs();
+	}
+
+	private void computeBlockMaxs() {
+		blockMaxs = new long[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		for(int b=0; b<blockMaxs.length; ++b){
+			long blockMax = Long.MIN_VALUE;
+			for(int i=b*BLOCK_SIZE, e=Math.min(size, (b+1)*BLOCK_SIZE); i<e; ++i){
+				if( maxs[i] > blockMax ){
+					blockMax = maxs[i];
+				}
+			}
+			blockMaxs[b] = blockMax;
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns a new index where the intervals of the given documents are
+	 * replaced.
+	 * @param changedDocIds Documents for which the intervals are removed
+	 * @param added Intervals to add to the new index
+	 */
+	public DateIntervalIndex update(Set<String> changedDocIds, List<DocumentWithInterval> added) throws Exception {
+		DocumentWithInterval[] sortedAdded = added.toArray(
+				new DocumentWithInterval[added.size()]);
+		Arrays.sort(sortedAdded, minComparator);
+
+		int capacity = size + sortedAdded.length;
+		String[] newDocIds = new String[capacity];
+		long[] newMins = new long[capacity];
+		long[] newMaxs = new long[capacity];
+		boolean[] newOngoings = new boolean[capacity];
+
+		// Merge the current arrays, without the changed documents, with the
+		// added intervals. Both are already sorted by lower bound.
+		int newSize = 0;
+		int i = 0;
+		int a = 0;
+		while( i < size || a < sortedAdded.length ){
+			if( i < size && changedDocIds.contains(docIds[i]) ){
+				++i;
+
+			} else if( a >= sortedAdded.length 
+			 || (i < size && mins[i] <= sortedAdded[a].getInterval().getMin()) ){
+				newDocIds[newSize] = docIds[i];
+				newMins[newSize] = mins[i];
+				newMaxs[newSize] = maxs[i];
+				newOngoings[newSize] = ongoings[i];
+				++newSize;
+				++i;
+
+			} else {
+				TimeInterval interval = sortedAdded[a].getInterval();
+				newDocIds[newSize] = sortedAdded[a].getDocId();
+				newMins[newSize] = interval.getMin();
+				if( interval.isOngoing() ){
+					newOngoings[newSize] = true;
+					newMaxs[newSize] = Long.MAX_VALUE;
+				} else {
+					newMaxs[newSize] = interval.getMax(null);
+				}
+				++newSize;
+				++a;
+			}
+		}
+
+		return new DateIntervalIndex(newSize, newDocIds, newMins, newMaxs, newOngoings);
+	}
+
+	public List<DocumentWithInterval> getAllDateIntervals() throws Exception {
+		List<DocumentWithInterval> result = new ArrayList<DocumentWithInterval>(size);
+		for(int i=0; i<size; ++i){
+			result.add( new DocumentWithInterval(docIds[i], getInterval(i)) );
+		}
+		return result;
+	}
+
+	public DateSource.SearchResults getDateIntervalsIntersectingWith(TimeInterval interval, NowReference now) throws Exception {
+		DateSource.SearchResults results = new DateSource.SearchResults();
+		results.documentWithIntervals = new ArrayList<DocumentWithInterval>();
+
+		long min = interval.getMin();
+		long max = interval.getMax(now);
+		long nowTime = now.getTime();
+
+		// Intervals starting after the searched interval can not intersect
+		int end = upperBound(max);
+
+		for(int b=0; b*BLOCK_SIZE < end; ++b){
+			if( blockMaxs[b] < min ){
+				// All intervals in this block end before the searched interval
+				continue;
+			}
+
+			for(int i=b*BLOCK_SIZE, e=Math.min(end, (b+1)*BLOCK_SIZE); i<e; ++i){
+				results.intervalCount++;
+				long docMax = ongoings[i] ? nowTime : maxs[i];
+				if( docMax >= min ){
+					results.documentWithIntervals.add( new DocumentWithInterval(docIds[i], getInterval(i)) );
+					results.intervalMatched++;
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Returns the index of the first interval with a lower bound greater
+	 * than the given value
+	 */
+	private int upperBound(long value){
+		int low = 0;
+		int high = size;
+		while( low < high ){
+			int mid = (low + high) >>> 1;
+			if( mins[mid] <= value ){
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private TimeInterval getInterval(int i) throws Exception {
+		if( ongoings[i] ){
+			return new TimeInterval(mins[i], (NowReference)null);
+		}
+		return new TimeInterval(mins[i], maxs[i]);
+	}
+}
@@ -13,13 +13,13 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.carleton.gcrc.couch.client.CouchBulkResult;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
 import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
 import ca.carleton.gcrc.couch.client.CouchQueryResults;
-import ca.carleton.gcrc.couch.client.impl.CouchDbException;
 import ca.carleton.gcrc.couch.date.cluster.CouchTreeOperations;
 import ca.carleton.gcrc.couch.date.cluster.Tree;
 import ca.carleton.gcrc.couch.date.cluster.TreeElement;
@@ -34,16 +34,18 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 	static final public int DELAY_NO_WORK_MONITOR = 60 * 1000; // 1 minute
 	static final public int DELAY_ERROR = 60 * 1000; // 1 minute
 	static final public int DELAY_CLEAR_OLD_ERRORS = 5 * 60 * 1000; // 5 minutes
+	static final public int DEFAULT_BATCH_SIZE = 100; // view rows per batch
 	
 	static public class Work {
 		public enum Type {
-			PROCESS_DOC
+			PROCESS_DOCS
 			,RELOAD_TREE
 			,TRIM_LEGACY_NODES
 		};
 		
 		public Type type;
-		public String docId;
+		public List<JSONObject> docs;
+		public long fetchTimeInMs = 0;
 	}
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -54,6 +56,7 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 	private Tree clusterTree;
 	private boolean reloadTree = false;
 	private int noWorkDelayInMs = DELAY_NO_WORK_POLLING;
+	private int batchSize = DEFAULT_BATCH_SIZE;
 	
 	public DateRobotThread(CouchDesignDocument atlasDesign, Tree clusterTree) throws Exception {
 		this.atlasDesign = atlasDesign;
@@ -67,6 +70,19 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 		}
 	}
 	
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of rows of the date-index view fetched at once. The
+	 * documents of those rows are indexed together: the cluster tree is
+	 * saved once and the documents are updated in bulk.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 	public void shutdown() {
 		
 		logger.info("Shutting down date worker thread");
@@ -157,64 +173,62 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 			allWork.add(work);
 
 		} else {
-			Set<String> docIds = new HashSet<String>();
+			// Check for work: un-indexed date intervals and intervals in
+			// legacy nodes. The documents are fetched along with the view
+			// rows, one batch at a time.
+			JSONArray keys = new JSONArray();
+			keys.put(JSONObject.NULL);
+			for(TreeNode legacyNode : clusterTree.getLegacyNodes()){
+				keys.put(legacyNode.getClusterId());
+			}
 
-			// Check for work: all un-indexed date intervals
-			{
+			long start = System.currentTimeMillis();
+			Set<String> docIds = new HashSet<String>();
+			List<JSONObject> docs = new ArrayList<JSONObject>();
+			int skip = 0;
+			boolean done = false;
+			while( false == done && docs.size() < 1 ){
 				CouchQuery query = new CouchQuery();
 				query.setViewName("date-index");
 				query.setReduce(false);
-				
-				JSONArray keys = new JSONArray();
-				keys.put(JSONObject.NULL);
+				query.setIncludeDocs(true);
 				query.setKeys(keys);
+				query.setLimit(batchSize);
+				if( skip > 0 ){
+					query.setSkip(skip);
+				}
 		
 				CouchQueryResults results = atlasDesign.performQuery(query);
+				List<JSONObject> rows = results.getRows();
 				synchronized(this) { // protect docsInError
-					for(JSONObject row : results.getRows()) {
-						String id = row.optString("id");
+					for(JSONObject row : rows) {
+						String id = row.optString("id", null);
+						JSONObject doc = row.optJSONObject("doc");
 						if( null != id 
+						 && null != doc
+						 && false == docIds.contains(id)
 						 && false == docsInError.isDocumentInError(id) ) {
 							// Found some work
 							docIds.add(id);
+							docs.add(doc);
 						}
 					}
 				}
-			}
-
-			// Check for work: all legacy nodes
-			{
-				List<TreeNode> legacyNodes = clusterTree.getLegacyNodes();
-				if( legacyNodes.size() > 0 ){
-					JSONArray keys = new JSONArray();
-					for(TreeNode legacyNode : legacyNodes){
-						keys.put(legacyNode.getClusterId());
-					}
 
-					CouchQuery query = new CouchQuery();
-					query.setViewName("date-index");
-					query.setReduce(false);
-					query.setReduce(false);
-					query.setKeys(keys);
-			
-					CouchQueryResults results = atlasDesign.performQuery(query);
-					synchronized(this) { // protect docsInError
-						for(JSONObject row : results.getRows()) {
-							String id = row.optString("id");
-							if( null != id 
-							 && false == docsInError.isDocumentInError(id) ) {
-								// Found some work
-								docIds.add(id);
-							}
-						}
-					}
+				// When a full page contains only documents in error, look
+				// at the next page
+				if( rows.size() < batchSize ){
+					done = true;
+				} else {
+					skip += rows.size();
 				}
 			}
 			
-			for(String docId : docIds){
+			if( docs.size() > 0 ){
 				Work work = new Work();
-				work.type = Work.Type.PROCESS_DOC;
-				work.docId = docId;
+				work.type = Work.Type.PROCESS_DOCS;
+				work.docs = docs;
+				work.fetchTimeInMs = System.currentTimeMillis() - start;
 				allWork.add(work);
 			}
 		}
@@ -232,32 +246,8 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 	}
 	
 	public void performWork(Work work) throws Exception {
-		if( Work.Type.PROCESS_DOC == work.type ){
-			try {
-				performProcessDocument(work.docId);
-			} catch(Exception e) {
-				boolean shouldErrorBeTakenIntoAccount = true;
-				for(Throwable t : errorAndCausesAsList(e)){
-					if( t instanceof CouchDbException ){
-						CouchDbException couchDbException = (CouchDbException)t;
-						if( 409 == couchDbException.getReturnCode() ){
-							// This is a conflict error in CouchDb. Somebody is updating the document
-							// at the same time. Just retry the worl
-							shouldErrorBeTakenIntoAccount = false;
-						}
-					}
-				}
-				
-				if( shouldErrorBeTakenIntoAccount ){
-					synchronized(this) {
-						docsInError.addDocumentInError(work.docId);
-					}
-				} else {
-					logger.info("Previous error for "+work.docId+" will be ignored. Should retry shortly.");
-				}
-
-				throw e;
-			}
+		if( Work.Type.PROCESS_DOCS == work.type ){
+			performProcessDocuments(work.docs, work.fetchTimeInMs);
 			
 		} else if( Work.Type.RELOAD_TREE == work.type ) {
 			performReloadTree();
@@ -270,45 +260,108 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 		}
 	}
 	
-	public void performProcessDocument(String docId) throws Exception {
-		// Get submission document
-		CouchDb db = atlasDesign.getDatabase();
-		JSONObject jsonDoc = db.getDocument(docId);
-		
-		List<JSONObject> dateStructures = CouchNunaliitUtils.findStructuresOfType("date", jsonDoc);
-		List<TreeElement> treeElements = new ArrayList<TreeElement>(dateStructures.size());
-		for(JSONObject s : dateStructures){
-			DateStructureElement e = new DateStructureElement(s);
-			treeElements.add(e);
-		}
+	/**
+	 * Inserts the date structures of a number of documents in the cluster
+	 * tree. The tree is saved once, if it was modified, and then the
+	 * documents that received a cluster id are updated in bulk.
+	 * 
+	 * A document with invalid date structures, or whose date structures can
+	 * not be inserted in the tree, is marked in error and skipped. If the tree
+	 * can not be saved, the error is thrown and no document is updated.
+	 */
+	public void performProcessDocuments(List<JSONObject> jsonDocs, long fetchTimeInMs) throws Exception {
+		long start = System.currentTimeMillis();
 		
 		NowReference now = NowReference.now();
-		TreeInsertProcess.Result treeInsertInfo = TreeInsertProcess.insertElements(clusterTree, treeElements, now);
+		boolean treeModified = false;
+		List<JSONObject> docsToUpdate = new ArrayList<JSONObject>();
+		for(JSONObject jsonDoc : jsonDocs){
+			String docId = jsonDoc.optString("_id", null);
+
+			List<TreeElement> treeElements = null;
+			try {
+				List<JSONObject> dateStructures = CouchNunaliitUtils.findStructuresOfType("date", jsonDoc);
+				treeElements = new ArrayList<TreeElement>(dateStructures.size());
+				for(JSONObject s : dateStructures){
+					DateStructureElement e = new DateStructureElement(s);
+					treeElements.add(e);
+				}
+			} catch(Exception e) {
+				logger.error("Invalid date structures in "+docId,e);
+				synchronized(this) {
+					docsInError.addDocumentInError(docId);
+				}
+				continue;
+			}
+			
+			boolean documentUpdated = false;
+			try {
+				TreeInsertProcess.Result treeInsertInfo = TreeInsertProcess.insertElements(clusterTree, treeElements, now);
+				if( treeInsertInfo.isTreeModified() ){
+					treeModified = true;
+				}
+				
+				// Update content of document
+				Map<Integer,List<TreeElement>> insertions = treeInsertInfo.getInsertions();
+				for(Integer clusterId : insertions.keySet()){
+					for(TreeElement treeElement : insertions.get(clusterId)){
+						if( treeElement instanceof DateStructureElement ){
+							DateStructureElement e = (DateStructureElement)treeElement;
+							if( clusterId != e.getClusterId() ){
+								e.setClusterId(clusterId);
+								documentUpdated = true;
+							}
+						}
+					}
+				}
+			} catch(Exception e) {
+				logger.error("Unable to insert date structures of "+docId+" in cluster tree",e);
+				synchronized(this) {
+					docsInError.addDocumentInError(docId);
+				}
+				// Nodes might have been added before the failure
+				treeModified = true;
+				continue;
+			}
+			if( documentUpdated ) {
+				docsToUpdate.add(jsonDoc);
+			}
+		}
+		long insertEnd = System.currentTimeMillis();
 		
-		if( treeInsertInfo.isTreeModified() ){
+		if( treeModified ){
 			TreeOperations ops = clusterTree.getOperations();
 			ops.saveTree(clusterTree);
 			logger.info("Modified cluster tree");
 		}
+		long saveEnd = System.currentTimeMillis();
 		
-		// Update content of document
-		boolean documentUpdated = false;
-		Map<Integer,List<TreeElement>> insertions = treeInsertInfo.getInsertions();
-		for(Integer clusterId : insertions.keySet()){
-			for(TreeElement treeElement : insertions.get(clusterId)){
-				if( treeElement instanceof DateStructureElement ){
-					DateStructureElement e = (DateStructureElement)treeElement;
-					if( clusterId != e.getClusterId() ){
-						e.setClusterId(clusterId);
-						documentUpdated = true;
+		int updatedCount = 0;
+		if( docsToUpdate.size() > 0 ) {
+			CouchDb db = atlasDesign.getDatabase();
+			List<CouchBulkResult> results = db.bulkDocuments(docsToUpdate);
+			for(CouchBulkResult result : results){
+				if( result.isSuccess() ){
+					++updatedCount;
+				} else if( result.isConflict() ){
+					// Somebody is updating the document at the same time.
+					// It is retried with the next batch.
+					logger.info("Conflict while indexing "+result.getId()+". Should retry shortly.");
+				} else {
+					logger.error("Unable to index date structures of "+result.getId()+": "+result);
+					synchronized(this) {
+						docsInError.addDocumentInError(result.getId());
 					}
 				}
 			}
 		}
-		if( documentUpdated ) {
-			db.updateDocument(jsonDoc);
-			logger.info("Indexed date structures: "+jsonDoc.getString("_id"));
-		}
+		long end = System.currentTimeMillis();
+		
+		logger.info("Indexed date structures of "+jsonDocs.size()+" document(s), "
+				+updatedCount+" updated. Fetch: "+fetchTimeInMs
+				+"ms, insert: "+(insertEnd-start)
+				+"ms, tree save: "+(saveEnd-insertEnd)
+				+"ms, update: "+(end-saveEnd)+"ms");
 	}
 	
 	private void performReloadTree() throws Exception {
@@ -361,19 +414,4 @@ public class DateRobotThread extends Thread implements CouchDbChangeListener {
 			this.notifyAll();
 		}
 	}
-
-	private List<Throwable> errorAndCausesAsList(Throwable e){
-		List<Throwable> errors = new Vector<Throwable>();
-		
-		errors.add(e);
-		
-		// Add causes
-		Throwable cause = e.getCause();
-		while( null != cause && errors.indexOf(cause) < 0 ){
-			errors.add(cause);
-			cause = e.getCause();
-		}
-		
-		return errors;
-	};
 }
@@ -0,0 +1,177 @@
+package ca.carleton.gcrc.couch.date.impl;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
+import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
+import ca.carleton.gcrc.couch.client.CouchDesignDocument;
+import ca.carleton.gcrc.couch.client.CouchQuery;
+import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.utils.CouchNunaliitUtils;
+
+/**
+ * Date source that answers searches from an index held in memory. The
+ * index is loaded once from the date-index view. Afterwards, documents
+ * reported by the change feed are fetched again and their intervals are
+ * replaced in the index. Pending changes are applied before a search.
+ *
+ * If pending changes can not be fetched, the search is answered from
+ * the current index and the changes are retried on the next search.
+ */
+public class DateSourceInMemory implements DateSource, CouchDbChangeListener, SerializableToInfo {
+
+	static public List<DocumentWithInterval> intervalsFromDocument(JSONObject doc) throws Exception {
+		List<DocumentWithInterval> result = new ArrayList<DocumentWithInterval>();
+
+		String docId = doc.optString("_id", null);
+		if( null == docId || doc.optBoolean("_deleted", false) ){
+			return result;
+		}
+
+		// Same selection as the date-index view
+		for(JSONObject dateStructure : CouchNunaliitUtils.findStructuresOfType("date", doc)){
+			Object min = dateStructure.opt("min");
+			Object max = dateStructure.opt("max");
+			boolean ongoing = dateStructure.optBoolean("ongoing", false);
+			if( ongoing && min instanceof Number ){
+				TimeInterval interval = new TimeInterval(((Number)min).longValue(), (NowReference)null);
+				result.add( new DocumentWithInterval(docId, interval) );
+			} else if( min instanceof Number 
+			 && max instanceof Number 
+			 && ((Number)min).longValue() <= ((Number)max).longValue() ){
+				TimeInterval interval = new TimeInterval(((Number)min).longValue(), ((Number)max).longValue());
+				result.add( new DocumentWithInterval(docId, interval) );
+			}
+		}
+
+		return result;
+	}
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private CouchDesignDocument atlasDesignDocument;
+	private volatile DateIntervalIndex index;
+	private Set<String> pendingDocIds = new HashSet<String>();
+	private Object updateLock = new Object();
+
+	public DateSourceInMemory(CouchDesignDocument atlasDesignDocument) throws Exception {
+		this.atlasDesignDocument = atlasDesignDocument;
+
+		CouchDbChangeMonitor changeMonitor = atlasDesignDocument.getDatabase().getChangeMonitor();
+		if( null == changeMonitor ){
+			throw new Exception("An in-memory date index requires a change monitor");
+		}
+
+		// Listen before loading, so that changes made during the load
+		// are applied afterwards
+		changeMonitor.addChangeListener(this);
+
+		try {
+			CouchQuery query = new CouchQuery();
+			query.setViewName("date-index");
+			query.setIncludeDocs(false);
+			query.setReduce(false);
+			CouchQueryResults queryResults = atlasDesignDocument.performQuery(query);
+
+			List<DocumentWithInterval> documentWithIntervals =
+					new ArrayList<DocumentWithInterval>(queryResults.getRows().size());
+			for(JSONObject row : queryResults.getRows()){
+				String docId = row.optString("id");
+				JSONObject jsonInterval = row.optJSONObject("value");
+				if( null != docId && null != jsonInterval ){
+					TimeInterval interval = TimeInterval.fromJson(jsonInterval);
+					documentWithIntervals.add( new DocumentWithInterval(docId, interval) );
+				}
+			}
+
+			index = new DateIntervalIndex(documentWithIntervals);
+			logger.info("Loaded in-memory date index with "+index.size()+" interval(s)");
+
+		} catch(Exception e) {
+			throw new Exception("Unable to load in-memory date index",e);
+		}
+	}
+
+	@Override
+	public SearchResults getAllDateIntervals() throws Exception {
+		SearchResults results = new SearchResults();
+		results.documentWithIntervals = getCurrentIndex().getAllDateIntervals();
+		return results;
+	}
+
+	@Override
+	public SearchResults getDateIntervalsIntersectingWith(TimeInterval interval, NowReference now) throws Exception {
+		return getCurrentIndex().getDateIntervalsIntersectingWith(interval, now);
+	}
+
+	@Override
+	public void change(
+			CouchDbChangeListener.Type type
+			,String docId
+			,String rev
+			,JSONObject rawChange
+			,JSONObject doc
+			) {
+		synchronized(this){
+			pendingDocIds.add(docId);
+		}
+	}
+
+	@Override
+	public void printInfo(PrintWriter pw) throws Exception {
+		DateIntervalIndex currentIndex = getCurrentIndex();
+		int pendingCount = 0;
+		synchronized(this){
+			pendingCount = pendingDocIds.size();
+		}
+		pw.println("In-memory interval count: "+currentIndex.size());
+		pw.println("Pending document changes: "+pendingCount);
+	}
+
+	private DateIntervalIndex getCurrentIndex() {
+		synchronized(this){
+			if( pendingDocIds.size() < 1 ){
+				return index;
+			}
+		}
+
+		synchronized(updateLock) {
+			List<String> docIds = null;
+			synchronized(this){
+				if( pendingDocIds.size() < 1 ){
+					return index;
+				}
+				docIds = new ArrayList<String>(pendingDocIds);
+				pendingDocIds.clear();
+			}
+
+			try {
+				List<DocumentWithInterval> added = new ArrayList<DocumentWithInterval>();
+				List<JSONObject> docs = atlasDesignDocument.getDatabase().bulkGetDocuments(docIds);
+				for(JSONObject doc : docs){
+					added.addAll( intervalsFromDocument(doc) );
+				}
+
+				// Documents not returned were deleted: their intervals are
+				// removed from the index
+				index = index.update(new HashSet<String>(docIds), added);
+
+			} catch(Exception e) {
+				logger.error("Unable to update in-memory date index",e);
+				synchronized(this){
+					pendingDocIds.addAll(docIds);
+				}
+			}
+
+			return index;
+		}
+	}
+}
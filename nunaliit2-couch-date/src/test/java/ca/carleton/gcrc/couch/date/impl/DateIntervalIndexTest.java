@@ -0,0 +1,151 @@
+package ca.carleton.gcrc.couch.date.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class DateIntervalIndexTest extends TestCase {
+
+	static private List<DocumentWithInterval> createIntervals(int count, long seed) throws Exception {
+		Random random = new Random(seed);
+		List<DocumentWithInterval> result = new ArrayList<DocumentWithInterval>(count);
+		for(int i=0; i<count; ++i){
+			long min = random.nextInt(100000);
+			TimeInterval interval = null;
+			if( 0 == random.nextInt(20) ){
+				interval = new TimeInterval(min, (NowReference)null);
+			} else {
+				interval = new TimeInterval(min, min + random.nextInt(5000));
+			}
+			result.add( new DocumentWithInterval("doc"+(i/2), interval) );
+		}
+		return result;
+	}
+
+	static private Set<String> expectedMatches(List<DocumentWithInterval> intervals, TimeInterval interval, NowReference now) throws Exception {
+		Set<String> result = new HashSet<String>();
+		for(DocumentWithInterval docWithInt : intervals){
+			if( docWithInt.getInterval().intersectsWith(interval, now) ){
+				result.add(docWithInt.getDocId()+docWithInt.getInterval());
+			}
+		}
+		return result;
+	}
+
+	static private Set<String> matches(DateIntervalIndex index, TimeInterval interval, NowReference now) throws Exception {
+		Set<String> result = new HashSet<String>();
+		DateSource.SearchResults results = index.getDateIntervalsIntersectingWith(interval, now);
+		for(DocumentWithInterval docWithInt : results.documentWithIntervals){
+			result.add(docWithInt.getDocId()+docWithInt.getInterval());
+		}
+		if( results.intervalMatched != results.documentWithIntervals.size() ){
+			fail("Unexpected matched count");
+		}
+		return result;
+	}
+
+	public void testSearch() throws Exception {
+		List<DocumentWithInterval> intervals = createIntervals(5000, 1);
+		DateIntervalIndex index = new DateIntervalIndex(intervals);
+		if( 5000 != index.size() ){
+			fail("Unexpected size: "+index.size());
+		}
+
+		NowReference now = new NowReference(60000);
+		Random random = new Random(2);
+		for(int i=0; i<200; ++i){
+			long min = random.nextInt(110000) - 5000;
+			TimeInterval interval = new TimeInterval(min, min + random.nextInt(3000));
+			if( false == expectedMatches(intervals, interval, now).equals(matches(index, interval, now)) ){
+				fail("Unexpected results for "+interval);
+			}
+		}
+
+		// Ongoing search
+		TimeInterval interval = new TimeInterval(59000, now);
+		if( false == expectedMatches(intervals, interval, now).equals(matches(index, interval, now)) ){
+			fail("Unexpected results for "+interval);
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		DateIntervalIndex index = new DateIntervalIndex(Collections.<DocumentWithInterval>emptyList());
+		DateSource.SearchResults results = index.getDateIntervalsIntersectingWith(new TimeInterval(0, 10), NowReference.now());
+		if( 0 != results.documentWithIntervals.size() ){
+			fail("No results expected");
+		}
+	}
+
+	public void testUpdate() throws Exception {
+		List<DocumentWithInterval> intervals = new ArrayList<DocumentWithInterval>();
+		intervals.add( new DocumentWithInterval("a", new TimeInterval(10, 20)) );
+		intervals.add( new DocumentWithInterval("a", new TimeInterval(100, 200)) );
+		intervals.add( new DocumentWithInterval("b", new TimeInterval(15, 25)) );
+		DateIntervalIndex index = new DateIntervalIndex(intervals);
+
+		JSONObject doc = new JSONObject("{\"_id\":\"a\",\"when\":{\"nunaliit_type\":\"date\",\"date\":\"x\",\"min\":500,\"max\":600}}");
+		Set<String> changed = new HashSet<String>();
+		changed.add("a");
+		changed.add("deleted");
+		DateIntervalIndex updated = index.update(changed, DateSourceInMemory.intervalsFromDocument(doc));
+
+		if( 3 != index.size() || 2 != updated.size() ){
+			fail("Unexpected sizes: "+index.size()+" "+updated.size());
+		}
+		NowReference now = NowReference.now();
+		if( 1 != updated.getDateIntervalsIntersectingWith(new TimeInterval(0, 50), now).intervalMatched ){
+			fail("Old interval should be removed");
+		}
+		if( 1 != updated.getDateIntervalsIntersectingWith(new TimeInterval(550, 551), now).intervalMatched ){
+			fail("New interval should be found");
+		}
+	}
+
+	public void testUpdateMerge() throws Exception {
+		List<DocumentWithInterval> intervals = createIntervals(5000, 3);
+		DateIntervalIndex index = new DateIntervalIndex(intervals);
+
+		// Replace the intervals of some documents and remove others
+		Random random = new Random(4);
+		Set<String> changed = new HashSet<String>();
+		for(int i=0; i<100; ++i){
+			changed.add("doc"+random.nextInt(2500));
+		}
+		List<DocumentWithInterval> added = new ArrayList<DocumentWithInterval>();
+		for(DocumentWithInterval docWithInt : createIntervals(200, 5)){
+			if( changed.contains(docWithInt.getDocId()) ){
+				added.add(docWithInt);
+			}
+		}
+		added.add( new DocumentWithInterval("new", new TimeInterval(42, (NowReference)null)) );
+
+		List<DocumentWithInterval> expected = new ArrayList<DocumentWithInterval>();
+		for(DocumentWithInterval docWithInt : intervals){
+			if( false == changed.contains(docWithInt.getDocId()) ){
+				expected.add(docWithInt);
+			}
+		}
+		expected.addAll(added);
+
+		DateIntervalIndex updated = index.update(changed, added);
+		if( expected.size() != updated.size() ){
+			fail("Unexpected size: "+updated.size()+" expected: "+expected.size());
+		}
+
+		NowReference now = new NowReference(60000);
+		for(int i=0; i<200; ++i){
+			long min = random.nextInt(110000) - 5000;
+			TimeInterval interval = new TimeInterval(min, min + random.nextInt(3000));
+			if( false == expectedMatches(expected, interval, now).equals(matches(updated, interval, now)) ){
+				fail("Unexpected results for "+interval);
+			}
+		}
+	}
+}
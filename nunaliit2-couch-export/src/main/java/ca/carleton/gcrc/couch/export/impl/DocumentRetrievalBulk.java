@@ -0,0 +1,177 @@
+package ca.carleton.gcrc.couch.export.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.carleton.gcrc.couch.app.Document;
+import ca.carleton.gcrc.couch.app.impl.DocumentCouchDb;
+import ca.carleton.gcrc.couch.client.CouchDb;
+import ca.carleton.gcrc.couch.export.DocumentRetrieval;
+
+/**
+ * Retrieves a list of documents from the database in chunks, instead of
+ * one request per document. While the documents of a chunk are consumed,
+ * the next chunk is fetched on a background thread.
+ *
+ * Documents that are deleted between the time the list of identifiers
+ * is obtained and the time the chunk is fetched are skipped.
+ *
+ * If a chunk can not be fetched, hasNext() returns true and the failure,
+ * with its cause, is thrown by getNext().
+ */
+public class DocumentRetrievalBulk implements DocumentRetrieval {
+
+	final static public int DEFAULT_CHUNK_SIZE = 200;
+
+	// Shared by all retrievals. Idle threads are released.
+	static private ExecutorService readAheadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private int count = 0;
+
+		@Override
+		synchronized public Thread newThread(Runnable r) {
+			++count;
+			Thread thread = new Thread(r, "Export read-ahead "+count);
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private CouchDb couchDb;
+	private Iterator<String> idIterator;
+	private int chunkSize;
+	private PeekingIterator currentChunk = null;
+	private Future<List<JSONObject>> nextChunk = null;
+	private Exception fetchError = null;
+
+	public DocumentRetrievalBulk(CouchDb couchDb, List<String> docIds) {
+		this(couchDb, docIds, DEFAULT_CHUNK_SIZE);
+	}
+
+	public DocumentRetrievalBulk(CouchDb couchDb, List<String> docIds, int chunkSize) {
+		this.couchDb = couchDb;
+		this.idIterator = docIds.iterator();
+		this.chunkSize = chunkSize < 1 ? 1 : chunkSize;
+
+		requestNextChunk();
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			return null != peekNextJson();
+		} catch(Exception e) {
+			// The failure is kept and thrown by getNext()
+			return true;
+		}
+	}
+
+	@Override
+	public Document getNext() throws Exception {
+		JSONObject jsonDoc = peekNextJson();
+		if( null == jsonDoc ) {
+			throw new Exception("No more document to retrieve");
+		}
+		currentChunk.next();
+
+		DocumentCouchDb doc = DocumentCouchDb.documentFromJson(couchDb, jsonDoc);
+		return doc;
+	}
+
+	private JSONObject peekNextJson() throws Exception {
+		if( null != fetchError ) {
+			throw fetchError;
+		}
+
+		while( null == currentChunk || false == currentChunk.hasNext() ) {
+			if( null == nextChunk ) {
+				return null;
+			}
+
+			List<JSONObject> docs = null;
+			try {
+				docs = nextChunk.get();
+			} catch(ExecutionException e) {
+				fetchFailed(e.getCause());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fetchFailed(e);
+			} catch(Exception e) {
+				fetchFailed(e);
+			}
+			currentChunk = new PeekingIterator(docs);
+
+			// Fetch the following chunk while this one is consumed
+			requestNextChunk();
+		}
+
+		return currentChunk.peek();
+	}
+
+	private void fetchFailed(Throwable cause) throws Exception {
+		nextChunk = null;
+		fetchError = new Exception("Unable to fetch documents from database", cause);
+		logger.error("Error while fetching documents for export", cause);
+		throw fetchError;
+	}
+
+	private void requestNextChunk() {
+		final List<String> ids = new ArrayList<String>(chunkSize);
+		while( idIterator.hasNext() && ids.size() < chunkSize ) {
+			ids.add( idIterator.next() );
+		}
+
+		if( ids.size() < 1 ) {
+			nextChunk = null;
+		} else {
+			nextChunk = readAheadExecutor.submit(new Callable<List<JSONObject>>() {
+				@Override
+				public List<JSONObject> call() throws Exception {
+					return couchDb.bulkGetDocuments(ids);
+				}
+			});
+		}
+	}
+
+	static private class PeekingIterator implements Iterator<JSONObject> {
+		private List<JSONObject> docs;
+		private int index = 0;
+
+		public PeekingIterator(List<JSONObject> docs) {
+			this.docs = docs;
+		}
+
+		public JSONObject peek() {
+			return docs.get(index);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < docs.size();
+		}
+
+		@Override
+		public JSONObject next() {
+			JSONObject doc = docs.get(index);
+			++index;
+			return doc;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -9,6 +9,7 @@ public class DocumentRetrievalFiltered implements DocumentRetrieval {
 	private DocumentRetrieval source;
 	private DocumentFilter filter;
 	private Document cachedDoc;
+	private Exception error;
 	
 	public DocumentRetrievalFiltered(DocumentRetrieval source, DocumentFilter filter){
 		this.source = source;
@@ -20,7 +21,9 @@ public class DocumentRetrievalFiltered implements DocumentRetrieval {
 		try {
 			loadCache();
 		} catch (Exception e) {
-			// ignore
+			// Reported by getNext()
+			error = e;
+			return true;
 		}
 		
 		if( null != cachedDoc ){
@@ -32,6 +35,12 @@ public class DocumentRetrievalFiltered implements DocumentRetrieval {
 
 	@Override
 	public Document getNext() throws Exception {
+		if( null != error ){
+			Exception e = error;
+			error = null;
+			throw e;
+		}
+		
 		loadCache();
 		
 		Document doc = cachedDoc;
@@ -46,11 +55,9 @@ public class DocumentRetrievalFiltered implements DocumentRetrieval {
 		}
 		
 		boolean done = false;
-		while( !done ){
+		while( !done && source.hasNext() ){
 			Document doc = source.getNext();
-			if( null == doc ){
-				done = true;
-			} else if( filter.accepts(doc) ){
+			if( null != doc && filter.accepts(doc) ){
 				cachedDoc = doc;
 				done = true;
 			}
@@ -1,20 +1,19 @@
 package ca.carleton.gcrc.couch.export.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.json.JSONObject;
 
-import ca.carleton.gcrc.couch.app.Document;
-import ca.carleton.gcrc.couch.app.impl.DocumentCouchDb;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
 import ca.carleton.gcrc.couch.client.CouchQueryResults;
 import ca.carleton.gcrc.couch.export.DocumentRetrieval;
 
-public class DocumentRetrievalLayer implements DocumentRetrieval {
+public class DocumentRetrievalLayer extends DocumentRetrievalBulk {
 
 	static public DocumentRetrieval create(CouchDb couchDb, String layerName) throws Exception {
 		CouchDesignDocument dd = couchDb.getDesignDocument("atlas");
@@ -35,32 +34,10 @@ public class DocumentRetrievalLayer implements DocumentRetrieval {
 			}
 		}
 		
-		return new DocumentRetrievalLayer(couchDb, ids.iterator());
+		return new DocumentRetrievalLayer(couchDb, new ArrayList<String>(ids));
 	}
 	
-	private CouchDb couchDb;
-	private Iterator<String> idIterator;
-	
-	private DocumentRetrievalLayer(CouchDb couchDb, Iterator<String> idIterator){
-		this.couchDb = couchDb;
-		this.idIterator = idIterator;
-	}
-	
-	@Override
-	public boolean hasNext() {
-		return idIterator.hasNext();
+	private DocumentRetrievalLayer(CouchDb couchDb, List<String> docIds){
+		super(couchDb, docIds);
 	}
-
-	@Override
-	public Document getNext() throws Exception {
-		if( false == idIterator.hasNext() ) {
-			throw new Exception("No more document on layer");
-		}
-		
-		String docId = idIterator.next();
-		DocumentCouchDb doc = DocumentCouchDb.documentFromCouchDb(couchDb, docId);
-		
-		return doc;
-	}
-
 }
@@ -1,20 +1,21 @@
 package ca.carleton.gcrc.couch.export.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import org.json.JSONObject;
 
-import ca.carleton.gcrc.couch.app.Document;
-import ca.carleton.gcrc.couch.app.impl.DocumentCouchDb;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
-import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
 import ca.carleton.gcrc.couch.export.DocumentRetrieval;
 
-public class DocumentRetrievalSchema implements DocumentRetrieval {
+public class DocumentRetrievalSchema extends DocumentRetrievalBulk {
+
+	final static public int SCHEMA_PAGE_SIZE = 1000;
 
 	static public DocumentRetrieval create(CouchDb couchDb, String schemaName) throws Exception {
 		CouchDesignDocument dd = couchDb.getDesignDocument("atlas");
@@ -25,42 +26,27 @@ public class DocumentRetrievalSchema implements DocumentRetrieval {
 		query.setEndKey(schemaName);
 		query.setIncludeDocs(false);
 		
-		CouchQueryResults results = dd.performQuery(query);
-		
 		Set<String> ids = new HashSet<String>();
-		for(JSONObject row : results.getRows()){
-			String docId = row.optString("id");
-			if( null != docId ) {
-				ids.add(docId);
+		CouchQueryRowIterator rows = dd.performQueryPaged(query, SCHEMA_PAGE_SIZE, true);
+		try {
+			JSONObject row = rows.next();
+			while( null != row ){
+				String docId = row.optString("id");
+				if( null != docId ) {
+					ids.add(docId);
+				}
+				
+				row = rows.next();
 			}
+		} finally {
+			rows.close();
 		}
 		
-		return new DocumentRetrievalSchema(couchDb, ids.iterator());
+		return new DocumentRetrievalSchema(couchDb, new ArrayList<String>(ids));
 	}
 
 	
-	private CouchDb couchDb;
-	private Iterator<String> idIterator;
-	
-	private DocumentRetrievalSchema(CouchDb couchDb, Iterator<String> idIterator){
-		this.couchDb = couchDb;
-		this.idIterator = idIterator;
-	}
-	
-	@Override
-	public boolean hasNext() {
-		return idIterator.hasNext();
-	}
-
-	@Override
-	public Document getNext() throws Exception {
-		if( false == idIterator.hasNext() ) {
-			throw new Exception("No more document on schema");
-		}
-		
-		String docId = idIterator.next();
-		DocumentCouchDb doc = DocumentCouchDb.documentFromCouchDb(couchDb, docId);
-		
-		return doc;
+	private DocumentRetrievalSchema(CouchDb couchDb, List<String> docIds){
+		super(couchDb, docIds);
 	}
 }
@@ -17,9 +17,7 @@ import ca.carleton.gcrc.couch.export.SchemaExportInfo;
 import ca.carleton.gcrc.couch.export.SchemaExportProperty;
 import ca.carleton.gcrc.couch.utils.NunaliitDocument;
 import ca.carleton.gcrc.couch.utils.NunaliitGeometry;
-import ca.carleton.gcrc.geom.Geometry;
-import ca.carleton.gcrc.geom.geojson.GeoJsonGeometryWriter;
-import ca.carleton.gcrc.geom.wkt.WktParser;
+import ca.carleton.gcrc.geom.wkt.WktGeoJsonTranscoder;
 
 public class ExportFormatGeoJson implements ExportFormat {
 
@@ -55,8 +53,7 @@ public class ExportFormatGeoJson implements ExportFormat {
 
 	public void outputExport(Writer writer) throws Exception {
 		JSONWriter jsonWriter = new JSONWriter(writer);
-		GeoJsonGeometryWriter geoWriter = new GeoJsonGeometryWriter();
-		WktParser wktParser = new WktParser();
+		WktGeoJsonTranscoder transcoder = new WktGeoJsonTranscoder();
 	
 		jsonWriter.object();
 		
@@ -70,7 +67,7 @@ public class ExportFormatGeoJson implements ExportFormat {
 			Document doc = retrieval.getNext();
 			if( null != doc  ) {
 				try{
-					outputDocument(jsonWriter, doc, geoWriter, wktParser);
+					outputDocument(jsonWriter, doc, transcoder);
 				} catch(Exception e) {
 					throw new Exception("Error exporting document: "+doc.getId(), e);
 				}
@@ -81,7 +78,7 @@ public class ExportFormatGeoJson implements ExportFormat {
 		jsonWriter.endObject(); // end wrapping object
 	}
 
-	private void outputDocument(JSONWriter jsonWriter, Document doc, GeoJsonGeometryWriter geoWriter, WktParser wktParser) throws Exception {
+	private void outputDocument(JSONWriter jsonWriter, Document doc, WktGeoJsonTranscoder transcoder) throws Exception {
 		NunaliitDocument nunaliitDoc = new NunaliitDocument(doc);
 
 		JSONObject jsonDoc = nunaliitDoc.getJSONObject();
@@ -124,9 +121,9 @@ public class ExportFormatGeoJson implements ExportFormat {
 				if( null != docGeometry ) {
 					String wkt = docGeometry.getWKT();
 					if( null != wkt ){
-						Geometry geometry = wktParser.parseWkt(wkt); 
+						// Written directly from the WKT, without building a geometry
 						jsonWriter.key("geometry");
-						geoWriter.writeGeometry(jsonWriter, geometry);
+						transcoder.transcode(wkt, jsonWriter);
 					}
 				}
 				
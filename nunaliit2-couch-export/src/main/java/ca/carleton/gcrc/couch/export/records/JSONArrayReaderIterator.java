@@ -2,39 +2,36 @@ package ca.carleton.gcrc.couch.export.records;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.BufferedReader;
 
 import org.json.JSONTokener;
 
 public class JSONArrayReaderIterator {
 
-	private BufferedReader reader;
 	private JSONTokener tokener;
 	private boolean first = true;
-	
+
 	public JSONArrayReaderIterator(Reader in) throws Exception {
-		reader = new BufferedReader(in);
-		tokener = new JSONTokener(reader);
-		
+		// The tokener reads ahead, so all characters are obtained from it
+		tokener = new JSONTokener(in);
+
 		// Dequeue '['
-		skipWhiteSpace();
-		int c = reader.read();
+		char c = tokener.nextClean();
 		if( '[' != c ){
 			throw new Exception("First character in stream should be '['");
 		}
 	}
-	
+
 	public boolean hasNext() throws IOException {
 		if( first ){
 			boolean hasNext = true;
 			try {
-				skipWhiteSpace();
-				reader.mark(1);
-				int c = reader.read();
+				char c = tokener.nextClean();
 				if( ']' == c ){
 					hasNext = false;
 				}
-				reader.reset();
+				if( 0 != c ){
+					tokener.back();
+				}
 			} catch (Exception e) {
 				throw new IOException("Error while testing hasNext() on first call",e);
 			}
@@ -42,13 +39,13 @@ public class JSONArrayReaderIterator {
 		} else {
 			boolean hasNext = false;
 			try {
-				skipWhiteSpace();
-				reader.mark(1);
-				int c = reader.read();
+				char c = tokener.nextClean();
 				if( ',' == c ){
 					hasNext = true;
 				}
-				reader.reset();
+				if( 0 != c ){
+					tokener.back();
+				}
 			} catch (Exception e) {
 				throw new IOException("Error while testing hasNext() on subsequent calls",e);
 			}
@@ -66,32 +63,18 @@ public class JSONArrayReaderIterator {
 					first = false;
 				} else {
 					// Dequeue ','
-					int c = reader.read();
+					char c = tokener.nextClean();
 					if( ',' != c ){
 						throw new IOException("Expected ',' character");
 					}
 				}
 
-				skipWhiteSpace();
-				
 				value = tokener.nextValue();
 			}
 		} catch (Exception e) {
 			throw new IOException("Error while parsing JSONArray reader",e);
 		}
-		
-		return value;
-	}
 
-	private void skipWhiteSpace() throws IOException {
-		reader.mark(1);
-		int c = reader.read();
-		while( ' ' == c 
-		 || '\t' == c 
-		 || '\n' == c 
-		 || '\r' == c ){
-			c = reader.read();
-		}
-		reader.reset();
+		return value;
 	}
 }
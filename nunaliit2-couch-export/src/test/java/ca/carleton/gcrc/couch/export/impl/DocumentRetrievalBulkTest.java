@@ -0,0 +1,194 @@
+package ca.carleton.gcrc.couch.export.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.app.Document;
+import ca.carleton.gcrc.couch.client.CouchDb;
+import ca.carleton.gcrc.couch.export.DocumentFilter;
+import ca.carleton.gcrc.couch.export.DocumentRetrieval;
+import junit.framework.TestCase;
+
+public class DocumentRetrievalBulkTest extends TestCase {
+
+	/**
+	 * Database where every document exists, except the ones which
+	 * identifier starts with "missing". A request that includes the
+	 * identifier "failing" fails. Each bulk request is recorded.
+	 */
+	static private CouchDb createMockDb(final List<List<String>> requests){
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if( "bulkGetDocuments".equals(method.getName()) ){
+					List<?> docIds = (List<?>)args[0];
+					List<String> request = new ArrayList<String>();
+					List<JSONObject> docs = new ArrayList<JSONObject>();
+					for(Object docIdObj : docIds){
+						String docId = (String)docIdObj;
+						request.add(docId);
+						if( false == docId.startsWith("missing") ){
+							JSONObject doc = new JSONObject();
+							doc.put("_id", docId);
+							doc.put("_rev", "1-"+docId);
+							docs.add(doc);
+						}
+					}
+					requests.add(request);
+					if( request.contains("failing") ){
+						throw new Exception("Fetch failure");
+					}
+					return docs;
+				}
+				if( "getDocument".equals(method.getName()) ){
+					throw new Exception("Documents should be fetched in bulk");
+				}
+				throw new Exception("Unexpected call: "+method.getName());
+			}
+		};
+
+		return (CouchDb)Proxy.newProxyInstance(
+				CouchDb.class.getClassLoader()
+				,new Class<?>[]{ CouchDb.class }
+				,handler
+				);
+	}
+
+	public void testChunks() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		List<String> docIds = new ArrayList<String>();
+		for(int i=0; i<25; ++i){
+			docIds.add("doc"+i);
+		}
+
+		DocumentRetrievalBulk retrieval = new DocumentRetrievalBulk(createMockDb(requests), docIds, 10);
+		List<String> retrievedIds = new ArrayList<String>();
+		while( retrieval.hasNext() ){
+			Document doc = retrieval.getNext();
+			retrievedIds.add(doc.getId());
+		}
+
+		if( false == docIds.equals(retrievedIds) ){
+			fail("Unexpected documents: "+retrievedIds);
+		}
+		if( 3 != requests.size() ){
+			fail("Unexpected number of requests: "+requests.size());
+		}
+		if( 5 != requests.get(2).size() ){
+			fail("Unexpected size of last request: "+requests.get(2).size());
+		}
+	}
+
+	public void testMissingDocuments() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		List<String> docIds = new ArrayList<String>();
+		docIds.add("missing1");
+		docIds.add("missing2");
+		docIds.add("doc1");
+		docIds.add("missing3");
+
+		DocumentRetrievalBulk retrieval = new DocumentRetrievalBulk(createMockDb(requests), docIds, 2);
+		List<String> retrievedIds = new ArrayList<String>();
+		while( retrieval.hasNext() ){
+			Document doc = retrieval.getNext();
+			retrievedIds.add(doc.getId());
+		}
+
+		if( 1 != retrievedIds.size() || false == "doc1".equals(retrievedIds.get(0)) ){
+			fail("Unexpected documents: "+retrievedIds);
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		DocumentRetrievalBulk retrieval = new DocumentRetrievalBulk(createMockDb(requests), new ArrayList<String>());
+		if( retrieval.hasNext() ){
+			fail("Retrieval should be empty");
+		}
+		if( 0 != requests.size() ){
+			fail("No request expected");
+		}
+	}
+
+	static private List<String> retrieveAll(DocumentRetrieval retrieval) throws Exception {
+		List<String> retrievedIds = new ArrayList<String>();
+		while( retrieval.hasNext() ){
+			Document doc = retrieval.getNext();
+			if( null != doc ){
+				retrievedIds.add(doc.getId());
+			}
+		}
+		return retrievedIds;
+	}
+
+	public void testFetchFailure() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		List<String> docIds = new ArrayList<String>();
+		docIds.add("doc1");
+		docIds.add("doc2");
+		docIds.add("failing");
+
+		DocumentRetrievalBulk retrieval = new DocumentRetrievalBulk(createMockDb(requests), docIds, 2);
+		try {
+			retrieveAll(retrieval);
+			fail("Failure should be reported");
+		} catch(Exception e) {
+			if( null == e.getCause() || false == "Fetch failure".equals(e.getCause().getMessage()) ){
+				fail("Cause should be reported: "+e);
+			}
+		}
+	}
+
+	public void testFetchFailureFiltered() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		List<String> docIds = new ArrayList<String>();
+		docIds.add("doc1");
+		docIds.add("doc2");
+		docIds.add("failing");
+
+		DocumentFilter acceptAll = new DocumentFilter() {
+			@Override
+			public boolean accepts(Document doc) throws Exception {
+				return true;
+			}
+		};
+		DocumentRetrieval retrieval = new DocumentRetrievalFiltered(
+				new DocumentRetrievalBulk(createMockDb(requests), docIds, 2), acceptAll);
+		try {
+			retrieveAll(retrieval);
+			fail("Failure should be reported");
+		} catch(Exception e) {
+			if( null == e.getCause() || false == "Fetch failure".equals(e.getCause().getMessage()) ){
+				fail("Cause should be reported: "+e);
+			}
+		}
+	}
+
+	public void testFiltered() throws Exception {
+		List<List<String>> requests = new Vector<List<String>>();
+		List<String> docIds = new ArrayList<String>();
+		for(int i=0; i<5; ++i){
+			docIds.add("doc"+i);
+		}
+
+		DocumentFilter filter = new DocumentFilter() {
+			@Override
+			public boolean accepts(Document doc) throws Exception {
+				return false == "doc2".equals(doc.getId());
+			}
+		};
+		DocumentRetrieval retrieval = new DocumentRetrievalFiltered(
+				new DocumentRetrievalBulk(createMockDb(requests), docIds, 2), filter);
+		List<String> retrievedIds = retrieveAll(retrieval);
+
+		if( 4 != retrievedIds.size() || retrievedIds.contains("doc2") ){
+			fail("Unexpected documents: "+retrievedIds);
+		}
+	}
+}
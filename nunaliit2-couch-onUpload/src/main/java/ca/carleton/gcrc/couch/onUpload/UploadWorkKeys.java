@@ -0,0 +1,241 @@
+package ca.carleton.gcrc.couch.onUpload;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Computes, for a single document, the keys that the views used by the upload
+ * worker emit. This allows the work queue to be updated when a document changes
+ * without querying the views. The logic must be kept in sync with:
+ * - server_couchapp/views/server_work/map.js
+ * - submission_couchapp/views/upload-work/map.js
+ * Differences are corrected when the work queue is reconciled with the views.
+ */
+public class UploadWorkKeys {
+
+	static final public int ORIENTATION_LEVEL = UploadConstants.SERVER_ORIENTATION_VALUE;
+	static final public int THUMBNAIL_LEVEL = UploadConstants.SERVER_THUMBNAIL_VALUE;
+
+	/**
+	 * Keys emitted by the view server_work for a document
+	 * in the document database.
+	 */
+	static public List<JSONArray> computeServerWorkKeys(JSONObject doc) throws Exception {
+		List<JSONArray> keys = new Vector<JSONArray>();
+
+		if( null == doc ) {
+			return keys;
+		}
+
+		JSONObject attachments = doc.optJSONObject(UploadConstants.KEY_DOC_ATTACHMENTS);
+		JSONObject files = null;
+		if( null != attachments ) {
+			files = attachments.optJSONObject("files");
+		}
+		if( null != files ) {
+			Iterator<?> it = files.keys();
+			while( it.hasNext() ) {
+				Object keyObj = it.next();
+				if( false == (keyObj instanceof String) ) {
+					continue;
+				}
+				String attachmentName = (String)keyObj;
+				JSONObject file = files.optJSONObject(attachmentName);
+				if( null == file ) {
+					continue;
+				}
+
+				String status = file.optString(UploadConstants.UPLOAD_STATUS_KEY, null);
+				String fileClass = file.optString(UploadConstants.MIME_CLASS_KEY, null);
+
+				int orientation = 0;
+				int thumbnail = 0;
+				JSONObject server = file.optJSONObject(UploadConstants.SERVER_KEY);
+				if( null != server ) {
+					Object orientationObj = server.opt(UploadConstants.SERVER_ORIENTATION_KEY);
+					if( orientationObj instanceof Number ) {
+						orientation = ((Number)orientationObj).intValue();
+					}
+					Object thumbnailObj = server.opt(UploadConstants.SERVER_THUMBNAIL_KEY);
+					if( thumbnailObj instanceof Number ) {
+						thumbnail = ((Number)thumbnailObj).intValue();
+					}
+				}
+
+				// Waiting for upload
+				String uploadId = file.optString(UploadConstants.UPLOAD_ID_KEY, null);
+				if( UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD.equals(status)
+				 && null != uploadId
+				 && uploadId.length() > 0 ) {
+					keys.add( createKey(status, uploadId) );
+				}
+
+				// Work based on file status
+				if( UploadConstants.UPLOAD_STATUS_SUBMITTED.equals(status)
+				 || UploadConstants.UPLOAD_STATUS_SUBMITTED_INLINE.equals(status)
+				 || UploadConstants.UPLOAD_STATUS_ANALYZED.equals(status)
+				 || UploadConstants.UPLOAD_STATUS_APPROVED.equals(status) ) {
+					keys.add( createKey(status, attachmentName) );
+				}
+
+				boolean isAttachedImage = UploadConstants.UPLOAD_STATUS_ATTACHED.equals(status)
+						&& "image".equals(fileClass);
+
+				// Fix orientation of images
+				if( isAttachedImage
+				 && orientation < ORIENTATION_LEVEL ) {
+					keys.add( createKey(UploadConstants.UPLOAD_WORK_ORIENTATION, attachmentName) );
+				}
+
+				// Create thumbnail after orientation is fixed. Do not create
+				// thumbnails for thumbnails.
+				if( isAttachedImage
+				 && orientation >= ORIENTATION_LEVEL
+				 && thumbnail < THUMBNAIL_LEVEL
+				 && isFalsy(file.opt(UploadConstants.SOURCE_KEY)) ) {
+					keys.add( createKey(UploadConstants.UPLOAD_WORK_THUMBNAIL, attachmentName) );
+				}
+
+				// Requested work
+				JSONObject work = file.optJSONObject(UploadConstants.WORK_KEY);
+				if( null != work ) {
+					Iterator<?> workIt = work.keys();
+					while( workIt.hasNext() ) {
+						Object requestedWorkObj = workIt.next();
+						if( requestedWorkObj instanceof String ) {
+							String requestedWork = (String)requestedWorkObj;
+							if( work.isNull(requestedWork) ) {
+								keys.add( createKey(requestedWork, attachmentName) );
+							}
+						}
+					}
+				}
+			}
+		}
+
+		JSONObject uploadRequest = doc.optJSONObject("nunaliit_upload_request");
+		if( null != uploadRequest ) {
+			Object uploadIdObj = uploadRequest.opt(UploadConstants.UPLOAD_ID_KEY);
+			if( false == isFalsy(uploadIdObj) ) {
+				keys.add( createKey(UploadConstants.UPLOAD_WORK_UPLOADED_FILE, uploadIdObj.toString()) );
+			}
+		}
+
+		JSONObject geom = doc.optJSONObject("nunaliit_geom");
+		if( null != geom ) {
+			if( isFalsy(geom.opt("simplified")) ) {
+				keys.add( createKey(UploadConstants.UPLOAD_WORK_SIMPLIFY_GEOMETRY, null) );
+			}
+		}
+
+		// InReach records
+		JSONObject item = doc.optJSONObject("Item");
+		if( doc.opt("Action") instanceof String
+		 && doc.opt("ItemType") instanceof String
+		 && null != item
+		 && item.opt("TenantCode") instanceof String
+		 && item.opt("DeviceId") instanceof String
+		 && item.opt("MessageId") instanceof String ) {
+			if( false == (doc.opt("nunaliit_schema") instanceof String) ) {
+				keys.add( createKey(UploadConstants.UPLOAD_WORK_INREACH_SUBMIT, null) );
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Keys emitted by the view upload-work for a document
+	 * in the submission database.
+	 */
+	static public List<JSONArray> computeSubmissionWorkKeys(JSONObject doc) throws Exception {
+		List<JSONArray> keys = new Vector<JSONArray>();
+
+		if( null == doc
+		 || false == "document_submission".equals(doc.opt("nunaliit_type")) ) {
+			return keys;
+		}
+
+		JSONObject submission = doc.optJSONObject("nunaliit_submission");
+		if( null == submission
+		 || false == "waiting_for_approval".equals(submission.opt("state")) ) {
+			return keys;
+		}
+
+		JSONObject submittedDoc = submission.optJSONObject("submitted_doc");
+		JSONObject attachments = null;
+		if( null != submittedDoc ) {
+			attachments = submittedDoc.optJSONObject(UploadConstants.KEY_DOC_ATTACHMENTS);
+		}
+		JSONObject files = null;
+		if( null != attachments ) {
+			files = attachments.optJSONObject("files");
+		}
+		if( null != files ) {
+			Iterator<?> it = files.keys();
+			while( it.hasNext() ) {
+				Object keyObj = it.next();
+				if( false == (keyObj instanceof String) ) {
+					continue;
+				}
+				String attachmentName = (String)keyObj;
+				JSONObject file = files.optJSONObject(attachmentName);
+				if( null == file ) {
+					continue;
+				}
+
+				String status = file.optString(UploadConstants.UPLOAD_STATUS_KEY, null);
+
+				// Waiting for upload
+				String uploadId = file.optString(UploadConstants.UPLOAD_ID_KEY, null);
+				if( UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD.equals(status)
+				 && null != uploadId
+				 && uploadId.length() > 0 ) {
+					keys.add( createKey(status, uploadId) );
+				}
+
+				// Work based on file status
+				if( UploadConstants.UPLOAD_STATUS_SUBMITTED.equals(status)
+				 || UploadConstants.UPLOAD_STATUS_SUBMITTED_INLINE.equals(status)
+				 || UploadConstants.UPLOAD_STATUS_ANALYZED.equals(status) ) {
+					keys.add( createKey(status, attachmentName) );
+				}
+			}
+		}
+
+		return keys;
+	}
+
+	static private JSONArray createKey(String state, String name) {
+		JSONArray key = new JSONArray();
+		key.put(state);
+		if( null != name ) {
+			key.put(name);
+		}
+		return key;
+	}
+
+	/**
+	 * Mimics the javascript notion of a falsy value for the
+	 * values found in a JSON document.
+	 */
+	static private boolean isFalsy(Object value) {
+		if( null == value || JSONObject.NULL.equals(value) ) {
+			return true;
+		}
+		if( value instanceof Boolean ) {
+			return false == ((Boolean)value).booleanValue();
+		}
+		if( value instanceof String ) {
+			return ((String)value).length() < 1;
+		}
+		if( value instanceof Number ) {
+			return 0 == ((Number)value).doubleValue();
+		}
+		return false;
+	}
+}
@@ -0,0 +1,412 @@
+package ca.carleton.gcrc.couch.onUpload;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.json.JSONArray;
+
+/**
+ * In-memory queue of the work pending for the upload worker. The queue holds
+ * the rows emitted by the work views, grouped by document. It is seeded and
+ * periodically reconciled from the views, and updated for a single document
+ * when that document changes.
+ *
+ * Entries are ordered by priority, then by the order in which they were
+ * queued. Rows that map upload identifiers to upload request documents are
+ * tracked separately since they do not represent work.
+ *
+ * This class is thread safe.
+ */
+public class UploadWorkQueue {
+
+	static public enum Source {
+		DOCUMENT_DB
+		,SUBMISSION_DB
+	}
+
+	// States listed first are performed first. Moving newly submitted files
+	// through the pipeline comes before the maintenance work.
+	static final private String[] STATE_PRIORITIES = new String[]{
+		UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD
+		,UploadConstants.UPLOAD_STATUS_SUBMITTED_INLINE
+		,UploadConstants.UPLOAD_STATUS_SUBMITTED
+		,UploadConstants.UPLOAD_STATUS_ANALYZED
+		,UploadConstants.UPLOAD_STATUS_APPROVED
+		,UploadConstants.UPLOAD_WORK_ROTATE_CW
+		,UploadConstants.UPLOAD_WORK_ROTATE_CCW
+		,UploadConstants.UPLOAD_WORK_ROTATE_180
+		,UploadConstants.UPLOAD_WORK_ORIENTATION
+		,UploadConstants.UPLOAD_WORK_THUMBNAIL
+		,UploadConstants.UPLOAD_WORK_UPLOAD_ORIGINAL_IMAGE
+		,UploadConstants.UPLOAD_WORK_INREACH_SUBMIT
+		,UploadConstants.UPLOAD_WORK_SIMPLIFY_GEOMETRY
+	};
+
+	static public int getStatePriority(String state) {
+		for(int i=0; i<STATE_PRIORITIES.length; ++i) {
+			if( STATE_PRIORITIES[i].equals(state) ) {
+				return i;
+			}
+		}
+		return STATE_PRIORITIES.length;
+	}
+
+	static public class Entry {
+		private Source source;
+		private String docId;
+		private String state;
+		private String name;
+		private int priority;
+		private long sequence;
+		private long queuedTime;
+
+		private Entry(Source source, String docId, String state, String name) {
+			this.source = source;
+			this.docId = docId;
+			this.state = state;
+			this.name = name;
+			this.priority = getStatePriority(state);
+		}
+
+		public Source getSource() {
+			return source;
+		}
+
+		public String getDocId() {
+			return docId;
+		}
+
+		public String getState() {
+			return state;
+		}
+
+		/**
+		 * Attachment name associated with the work or, for work in the
+		 * state "waiting for upload", the upload identifier.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		public long getQueuedTime() {
+			return queuedTime;
+		}
+
+		private boolean isSameWork(Entry other) {
+			if( false == state.equals(other.state) ) {
+				return false;
+			}
+			if( null == name ) {
+				return null == other.name;
+			}
+			return name.equals(other.name);
+		}
+
+		public String toString() {
+			return "Queued Work(state:"+state+" id:"+docId+" name:"+name+")";
+		}
+	}
+
+	static private class EntryComparator implements Comparator<Entry> {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			if( e1.priority != e2.priority ) {
+				return e1.priority < e2.priority ? -1 : 1;
+			}
+			if( e1.sequence != e2.sequence ) {
+				return e1.sequence < e2.sequence ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+
+	private TreeSet<Entry> queue = new TreeSet<Entry>(new EntryComparator());
+	private Map<String,List<Entry>> entriesByDoc = new HashMap<String,List<Entry>>();
+	private Map<String,String> uploadRequestDocIdByUploadId = new HashMap<String,String>();
+	private Map<String,List<String>> uploadIdsByDoc = new HashMap<String,List<String>>();
+	private long nextSequence = 0;
+
+	// Metrics
+	private long queuedCount = 0;
+	private long dispatchedCount = 0;
+	private long totalLatencyMs = 0;
+	private long maxLatencyMs = 0;
+	private long reconcileCount = 0;
+	private long reconcileCorrections = 0;
+
+	/**
+	 * Replaces the work associated with a document with the work described by
+	 * the given view keys. Work that was already queued keeps its place in the
+	 * queue.
+	 * @return Number of entries added or removed
+	 */
+	synchronized public int updateDocument(Source source, String docId, List<JSONArray> keys) throws Exception {
+		String docKey = computeDocKey(source, docId);
+
+		// Upload identifiers
+		List<String> uploadIds = new Vector<String>();
+		List<Entry> newEntries = new Vector<Entry>();
+		for(JSONArray key : keys){
+			String state = key.optString(0, null);
+			String name = null;
+			if( key.length() > 1 && false == key.isNull(1) ) {
+				name = key.getString(1);
+			}
+			if( null == state ) {
+				continue;
+			}
+
+			if( UploadConstants.UPLOAD_WORK_UPLOADED_FILE.equals(state) ) {
+				if( Source.DOCUMENT_DB == source && null != name ) {
+					uploadIds.add(name);
+				}
+			} else {
+				newEntries.add( new Entry(source, docId, state, name) );
+			}
+		}
+		updateUploadIds(docKey, docId, uploadIds);
+
+		int changes = 0;
+		List<Entry> currentEntries = entriesByDoc.get(docKey);
+		if( null == currentEntries ) {
+			currentEntries = new ArrayList<Entry>(0);
+		}
+
+		// Keep the entries that are still current
+		List<Entry> entries = new ArrayList<Entry>(newEntries.size());
+		for(Entry newEntry : newEntries) {
+			boolean duplicate = false;
+			for(Entry entry : entries) {
+				if( entry.isSameWork(newEntry) ) {
+					duplicate = true;
+					break;
+				}
+			}
+			if( duplicate ) {
+				continue;
+			}
+
+			Entry existing = null;
+			for(Entry current : currentEntries) {
+				if( current.isSameWork(newEntry) ) {
+					existing = current;
+					break;
+				}
+			}
+
+			if( null != existing ) {
+				entries.add(existing);
+			} else {
+				newEntry.sequence = nextSequence;
+				++nextSequence;
+				newEntry.queuedTime = System.currentTimeMillis();
+				queue.add(newEntry);
+				++queuedCount;
+				entries.add(newEntry);
+				++changes;
+			}
+		}
+
+		// Remove obsolete entries
+		for(Entry current : currentEntries) {
+			if( false == entries.contains(current) ) {
+				queue.remove(current);
+				++changes;
+			}
+		}
+
+		if( entries.size() > 0 ) {
+			entriesByDoc.put(docKey, entries);
+		} else {
+			entriesByDoc.remove(docKey);
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Removes all work associated with a document.
+	 * @return Number of entries removed
+	 */
+	synchronized public int removeDocument(Source source, String docId) throws Exception {
+		return updateDocument(source, docId, new ArrayList<JSONArray>(0));
+	}
+
+	/**
+	 * Replaces the content of the queue for a source with the rows
+	 * obtained from a view.
+	 * @param keysByDocId View keys, grouped by document identifiers
+	 * @return Number of corrections made to the queue
+	 */
+	synchronized public int reconcile(Source source, Map<String,List<JSONArray>> keysByDocId) throws Exception {
+		int corrections = 0;
+
+		// Remove documents no longer reported by the view
+		Set<String> docIdsToRemove = new HashSet<String>();
+		for(List<Entry> entries : entriesByDoc.values()) {
+			for(Entry entry : entries) {
+				if( entry.source == source
+				 && false == keysByDocId.containsKey(entry.docId) ) {
+					docIdsToRemove.add(entry.docId);
+				}
+			}
+		}
+		if( Source.DOCUMENT_DB == source ) {
+			for(String docKey : uploadIdsByDoc.keySet()) {
+				String docId = docKey.substring(docKey.indexOf(':')+1);
+				if( false == keysByDocId.containsKey(docId) ) {
+					docIdsToRemove.add(docId);
+				}
+			}
+		}
+		for(String docId : docIdsToRemove) {
+			corrections += removeDocument(source, docId);
+		}
+
+		for(Map.Entry<String,List<JSONArray>> mapEntry : keysByDocId.entrySet()) {
+			corrections += updateDocument(source, mapEntry.getKey(), mapEntry.getValue());
+		}
+
+		++reconcileCount;
+		reconcileCorrections += corrections;
+
+		return corrections;
+	}
+
+	/**
+	 * Returns a snapshot of the queued work, in the order it should
+	 * be performed.
+	 */
+	synchronized public List<Entry> getEntries() {
+		return new ArrayList<Entry>(queue);
+	}
+
+	/**
+	 * Removes an entry from the queue when it is handed out to a worker.
+	 * @return True if the entry was still queued
+	 */
+	synchronized public boolean dispatched(Entry entry) {
+		boolean removed = queue.remove(entry);
+		if( removed ) {
+			String docKey = computeDocKey(entry.source, entry.docId);
+			List<Entry> entries = entriesByDoc.get(docKey);
+			if( null != entries ) {
+				entries.remove(entry);
+				if( entries.size() < 1 ) {
+					entriesByDoc.remove(docKey);
+				}
+			}
+
+			long latencyMs = System.currentTimeMillis() - entry.queuedTime;
+			++dispatchedCount;
+			totalLatencyMs += latencyMs;
+			if( latencyMs > maxLatencyMs ) {
+				maxLatencyMs = latencyMs;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns the identifier of the upload request document associated with
+	 * an upload identifier, or null if the upload has not been received.
+	 */
+	synchronized public String getUploadRequestDocId(String uploadId) {
+		return uploadRequestDocIdByUploadId.get(uploadId);
+	}
+
+	synchronized public int getDepth() {
+		return queue.size();
+	}
+
+	synchronized public long getQueuedCount() {
+		return queuedCount;
+	}
+
+	synchronized public long getDispatchedCount() {
+		return dispatchedCount;
+	}
+
+	/**
+	 * Average time spent in the queue by the entries dispatched so far.
+	 */
+	synchronized public long getAverageLatencyMs() {
+		if( dispatchedCount < 1 ) {
+			return 0;
+		}
+		return totalLatencyMs / dispatchedCount;
+	}
+
+	synchronized public long getMaxLatencyMs() {
+		return maxLatencyMs;
+	}
+
+	/**
+	 * Time spent in the queue by the oldest entry still queued.
+	 */
+	synchronized public long getOldestEntryAgeMs() {
+		long oldest = 0;
+		long now = System.currentTimeMillis();
+		for(Entry entry : queue) {
+			long age = now - entry.queuedTime;
+			if( age > oldest ) {
+				oldest = age;
+			}
+		}
+		return oldest;
+	}
+
+	synchronized public long getReconcileCount() {
+		return reconcileCount;
+	}
+
+	/**
+	 * Number of entries added or removed while reconciling the queue with
+	 * the views. A high number indicates that changes to documents are
+	 * not reflected in the queue as they happen.
+	 */
+	synchronized public long getReconcileCorrections() {
+		return reconcileCorrections;
+	}
+
+	public String toString() {
+		return "Upload work queue(depth:"+getDepth()
+				+" dispatched:"+getDispatchedCount()
+				+" avgLatencyMs:"+getAverageLatencyMs()
+				+" maxLatencyMs:"+getMaxLatencyMs()
+				+" oldestMs:"+getOldestEntryAgeMs()
+				+" corrections:"+getReconcileCorrections()
+				+")";
+	}
+
+	private void updateUploadIds(String docKey, String docId, List<String> uploadIds) {
+		List<String> currentUploadIds = uploadIdsByDoc.get(docKey);
+		if( null != currentUploadIds ) {
+			for(String uploadId : currentUploadIds) {
+				if( docId.equals(uploadRequestDocIdByUploadId.get(uploadId)) ) {
+					uploadRequestDocIdByUploadId.remove(uploadId);
+				}
+			}
+		}
+
+		if( uploadIds.size() > 0 ) {
+			for(String uploadId : uploadIds) {
+				uploadRequestDocIdByUploadId.put(uploadId, docId);
+			}
+			uploadIdsByDoc.put(docKey, uploadIds);
+		} else {
+			uploadIdsByDoc.remove(docKey);
+		}
+	}
+
+	private String computeDocKey(Source source, String docId) {
+		return source.name()+":"+docId;
+	}
+}
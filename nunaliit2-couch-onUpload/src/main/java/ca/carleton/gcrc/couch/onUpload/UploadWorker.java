@@ -8,6 +8,7 @@ import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.onUpload.mail.MailNotification;
 import ca.carleton.gcrc.couch.onUpload.mail.MailNotificationNull;
 import ca.carleton.gcrc.couch.onUpload.plugin.FileConversionPlugin;
+import ca.carleton.gcrc.utils.ProcessExecutor;
 
 public class UploadWorker {
 
@@ -60,6 +61,26 @@ public class UploadWorker {
 		fileConverters.add(plugin);
 	}
 
+	/**
+	 * Returns the queue of pending work, which reports depth and latency
+	 * metrics. Returns null if the worker is not started.
+	 */
+	synchronized public UploadWorkQueue getWorkQueue() {
+		if( null == workerThread ) {
+			return null;
+		}
+		return workerThread.getWorkQueue();
+	}
+
+	/**
+	 * Returns the executor that runs the external programs used to convert
+	 * media (ImageMagick, ffmpeg). It reports how many processes are
+	 * queued, running, and how many were killed after a timeout.
+	 */
+	public ProcessExecutor getProcessExecutor() {
+		return ProcessExecutor.getDefault();
+	}
+
 	synchronized public void start() throws Exception {
 		if( null == documentDbDesign ) {
 			throw new Exception("Design document must be specified for upload worker");
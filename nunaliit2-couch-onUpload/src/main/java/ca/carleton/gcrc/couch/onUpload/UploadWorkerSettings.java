@@ -1,21 +1,117 @@
 package ca.carleton.gcrc.couch.onUpload;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.carleton.gcrc.utils.ProcessExecutor;
+
 public class UploadWorkerSettings {
 
+	static final public String PROPERTY_WORKERS = "upload.workers";
+	static final public String PROPERTY_WORKER_LIMIT_PREFIX = "upload.workers.limit.";
+	static final public String PROPERTY_PROCESS_TIMEOUT = "upload.process.timeout";
+	static final public String PROPERTY_PROCESS_TIMEOUT_PREFIX = "upload.process.timeout.";
+	static final public String PROPERTY_PROCESS_LIMIT_PREFIX = "upload.process.limit.";
+
+	// Categories of work, used to limit how many external tools of the
+	// same kind run at once
+	static final public String WORK_CATEGORY_DEFAULT = "default";
+	static final public String WORK_CATEGORY_FFMPEG = "ffmpeg";
+	static final public String WORK_CATEGORY_IMAGEMAGICK = "imagemagick";
+
+	static final public int DEFAULT_FFMPEG_LIMIT = 1;
+	static final public int DEFAULT_IMAGEMAGICK_LIMIT = 4;
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
 	private String atlasName = null;
 	private boolean geometrySimplificationDisabled = false;
-	
+	private int workerCount = Runtime.getRuntime().availableProcessors();
+	private Map<String,Integer> workCategoryLimits = new HashMap<String,Integer>();
+	private Long processTimeoutSeconds = null;
+	private Map<String,Long> toolTimeoutsSeconds = new HashMap<String,Long>();
+	private Map<String,Integer> toolLimits = new HashMap<String,Integer>();
+
 	public UploadWorkerSettings(){
-		
+		workCategoryLimits.put(WORK_CATEGORY_FFMPEG, DEFAULT_FFMPEG_LIMIT);
+		workCategoryLimits.put(WORK_CATEGORY_IMAGEMAGICK, DEFAULT_IMAGEMAGICK_LIMIT);
 	}
-	
+
 	public UploadWorkerSettings(Properties props){
+		this();
 		this.parseProperties(props);
 	}
-	
+
+	/**
+	 * Reads the worker configuration. The property "upload.workers" sets the
+	 * number of documents processed concurrently. Properties in the form
+	 * "upload.workers.limit.&lt;category&gt;" limit how many of those workers
+	 * can be busy with a category of work (ffmpeg, imagemagick) at once.
+	 * 
+	 * External programs are killed if they run longer than the number of
+	 * seconds set by "upload.process.timeout", or by
+	 * "upload.process.timeout.&lt;program&gt;" for a specific program (for
+	 * example, "upload.process.timeout.avconv"). Properties in the form
+	 * "upload.process.limit.&lt;program&gt;" limit how many instances of a
+	 * program run at once.
+	 * @param props Properties to read the configuration from
+	 */
 	public void parseProperties(Properties props){
+		if( null == props ){
+			return;
+		}
+
+		String workersStr = props.getProperty(PROPERTY_WORKERS);
+		if( null != workersStr ){
+			try {
+				setWorkerCount( Integer.parseInt(workersStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_WORKERS+": "+workersStr);
+			}
+		}
+
+		String timeoutStr = props.getProperty(PROPERTY_PROCESS_TIMEOUT);
+		if( null != timeoutStr ){
+			try {
+				setProcessTimeoutSeconds( Long.parseLong(timeoutStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_PROCESS_TIMEOUT+": "+timeoutStr);
+			}
+		}
+
+		for(String name : props.stringPropertyNames()){
+			if( name.startsWith(PROPERTY_WORKER_LIMIT_PREFIX) ){
+				String category = name.substring(PROPERTY_WORKER_LIMIT_PREFIX.length());
+				String limitStr = props.getProperty(name);
+				try {
+					setWorkCategoryLimit(category, Integer.parseInt(limitStr.trim()));
+				} catch(Exception e) {
+					logger.error("Invalid value for "+name+": "+limitStr);
+				}
+
+			} else if( name.startsWith(PROPERTY_PROCESS_TIMEOUT_PREFIX) ){
+				String tool = name.substring(PROPERTY_PROCESS_TIMEOUT_PREFIX.length());
+				String valueStr = props.getProperty(name);
+				try {
+					setToolTimeoutSeconds(tool, Long.parseLong(valueStr.trim()));
+				} catch(Exception e) {
+					logger.error("Invalid value for "+name+": "+valueStr);
+				}
+
+			} else if( name.startsWith(PROPERTY_PROCESS_LIMIT_PREFIX) ){
+				String tool = name.substring(PROPERTY_PROCESS_LIMIT_PREFIX.length());
+				String valueStr = props.getProperty(name);
+				try {
+					setToolLimit(tool, Integer.parseInt(valueStr.trim()));
+				} catch(Exception e) {
+					logger.error("Invalid value for "+name+": "+valueStr);
+				}
+			}
+		}
 	}
 
 	public String getAtlasName() {
@@ -33,5 +129,87 @@ public class UploadWorkerSettings {
 	public void setGeometrySimplificationDisabled(boolean geometrySimplificationDisabled) {
 		this.geometrySimplificationDisabled = geometrySimplificationDisabled;
 	}
-	
+
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	public void setWorkerCount(int workerCount) {
+		if( workerCount < 1 ){
+			workerCount = 1;
+		}
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * Returns the maximum number of workers that can perform work of the
+	 * given category at the same time. If no limit is set for a category,
+	 * the number of workers is returned.
+	 */
+	public int getWorkCategoryLimit(String category) {
+		Integer limit = workCategoryLimits.get(category);
+		if( null == limit || limit.intValue() > workerCount ){
+			return workerCount;
+		}
+		return limit.intValue();
+	}
+
+	public void setWorkCategoryLimit(String category, int limit) {
+		if( limit < 1 ){
+			limit = 1;
+		}
+		workCategoryLimits.put(category, limit);
+	}
+
+	/**
+	 * Returns the number of seconds external programs can run before
+	 * they are killed, or null if the default of the process executor
+	 * should be used.
+	 */
+	public Long getProcessTimeoutSeconds() {
+		return processTimeoutSeconds;
+	}
+
+	public void setProcessTimeoutSeconds(Long processTimeoutSeconds) {
+		this.processTimeoutSeconds = processTimeoutSeconds;
+	}
+
+	public Long getToolTimeoutSeconds(String tool) {
+		return toolTimeoutsSeconds.get(tool);
+	}
+
+	public void setToolTimeoutSeconds(String tool, long timeoutSeconds) {
+		if( timeoutSeconds < 0 ){
+			timeoutSeconds = 0;
+		}
+		toolTimeoutsSeconds.put(tool, timeoutSeconds);
+	}
+
+	public Integer getToolLimit(String tool) {
+		return toolLimits.get(tool);
+	}
+
+	public void setToolLimit(String tool, int limit) {
+		if( limit < 0 ){
+			limit = 0;
+		}
+		toolLimits.put(tool, limit);
+	}
+
+	/**
+	 * Applies the timeouts and limits on external programs to a process
+	 * executor.
+	 */
+	public void configureProcessExecutor(ProcessExecutor processExecutor) {
+		if( null != processTimeoutSeconds ){
+			processExecutor.setDefaultTimeoutMs(processTimeoutSeconds * 1000L);
+		}
+		for(Map.Entry<String,Long> entry : toolTimeoutsSeconds.entrySet()){
+			processExecutor.setToolTimeoutMs(entry.getKey(), entry.getValue() * 1000L);
+		}
+		for(Map.Entry<String,Integer> entry : toolLimits.entrySet()){
+			processExecutor.setToolLimit(entry.getKey(), entry.getValue());
+		}
+	}
+
 }
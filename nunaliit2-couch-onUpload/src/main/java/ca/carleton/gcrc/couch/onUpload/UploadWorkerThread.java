@@ -2,9 +2,15 @@ package ca.carleton.gcrc.couch.onUpload;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -15,7 +21,7 @@ import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
 import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchQuery;
-import ca.carleton.gcrc.couch.client.CouchQueryResults;
+import ca.carleton.gcrc.couch.client.CouchQueryRowIterator;
 import ca.carleton.gcrc.couch.client.CouchAuthenticationContext;
 import ca.carleton.gcrc.couch.client.impl.CouchDbException;
 import ca.carleton.gcrc.couch.onUpload.conversion.AttachmentDescriptor;
@@ -36,6 +42,7 @@ import ca.carleton.gcrc.couch.onUpload.simplifyGeoms.GeometrySimplifierDisabled;
 import ca.carleton.gcrc.couch.onUpload.simplifyGeoms.GeometrySimplifierImpl;
 import ca.carleton.gcrc.couch.utils.CouchNunaliitUtils;
 import ca.carleton.gcrc.olkit.multimedia.file.SystemFile;
+import ca.carleton.gcrc.utils.ProcessExecutor;
 
 public class UploadWorkerThread extends Thread implements CouchDbChangeListener {
 	
@@ -43,6 +50,8 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 	static final public int DELAY_NO_WORK_MONITOR = 60 * 1000; // 1 minute
 	static final public int DELAY_ERROR = 60 * 1000; // 1 minute
 	static final public int DELAY_CLEAR_OLD_ERRORS = 5 * 60 * 1000; // 5 minutes
+	static final public int DELAY_RECONCILE_QUEUE = 5 * 60 * 1000; // 5 minutes
+	static final public int REFRESH_BATCH_SIZE = 100;
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
@@ -57,6 +66,14 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 	private int noWorkDelayInMs = DELAY_NO_WORK_POLLING;
 	private GeometrySimplifier simplifier = null;
 	private InReachProcessor inReachProcessor = null;
+	private ExecutorService executor = null;
+	private Set<String> claimedDocIds = new HashSet<String>();
+	private Map<String,Integer> busyWorkersByCategory = new HashMap<String,Integer>();
+	private int busyWorkers = 0;
+	private UploadWorkQueue workQueue = new UploadWorkQueue();
+	private Map<UploadWorkQueue.Source,Set<String>> changedDocIdsBySource = new HashMap<UploadWorkQueue.Source,Set<String>>();
+	private int reconcileIntervalInMs = DELAY_NO_WORK_POLLING;
+	private long lastReconcileTime = 0;
 	
 	protected UploadWorkerThread(
 		UploadWorkerSettings settings
@@ -73,17 +90,34 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 		this.mailNotification = mailNotification;
 		this.fileConverters = fileConverters;
 		
+		changedDocIdsBySource.put(UploadWorkQueue.Source.DOCUMENT_DB, new HashSet<String>());
+		changedDocIdsBySource.put(UploadWorkQueue.Source.SUBMISSION_DB, new HashSet<String>());
+		
+		// Without change monitor, the work queue is reconciled with the
+		// views each time the worker polls for work
 		noWorkDelayInMs = DELAY_NO_WORK_POLLING;
+		reconcileIntervalInMs = DELAY_NO_WORK_POLLING;
 		CouchDbChangeMonitor changeMonitor = documentDbDesign.getDatabase().getChangeMonitor();
 		if( null != changeMonitor ){
 			changeMonitor.addChangeListener(this);
 			noWorkDelayInMs = DELAY_NO_WORK_MONITOR;
+			reconcileIntervalInMs = DELAY_RECONCILE_QUEUE;
 		}
 		
 		if( null != submissionDbDesign ){
 			changeMonitor = submissionDbDesign.getDatabase().getChangeMonitor();
 			if( null != changeMonitor ){
-				changeMonitor.addChangeListener(this);
+				changeMonitor.addChangeListener(new CouchDbChangeListener() {
+					@Override
+					public void change(
+							CouchDbChangeListener.Type type
+							,String docId
+							,String rev
+							,JSONObject rawChange
+							,JSONObject doc) {
+						documentChanged(UploadWorkQueue.Source.SUBMISSION_DB, docId);
+					}
+				});
 			}			
 		}
 		
@@ -104,6 +138,10 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 		inReachProcessor = new InReachProcessorImpl();
 	}
 	
+	public UploadWorkQueue getWorkQueue() {
+		return workQueue;
+	}
+	
 	public void shutdown() {
 		
 		logger.info("Shutting down upload worker thread");
@@ -117,7 +155,21 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 	@Override
 	public void run() {
 		
-		logger.info("Start upload worker thread");
+		final int workerCount = settings.getWorkerCount();
+		logger.info("Start upload worker thread ("+workerCount+" workers)");
+		
+		settings.configureProcessExecutor( ProcessExecutor.getDefault() );
+		
+		executor = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+			private int count = 0;
+			
+			@Override
+			synchronized public Thread newThread(Runnable r) {
+				++count;
+				Thread t = new Thread(r, "UploadWorker-"+count);
+				return t;
+			}
+		});
 		
 		boolean done = false;
 		do {
@@ -129,56 +181,249 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 			}
 		} while( false == done );
 
-		logger.info("Upload worker thread exiting");
+		// Let workers complete the work in progress
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			logger.info("Interrupted while waiting for upload workers");
+			executor.shutdownNow();
+		}
+
+		logger.info("Upload worker thread exiting. "+ProcessExecutor.getDefault());
 	}
 	
+	/**
+	 * Brings the work queue up to date and hands out available work to idle
+	 * workers. A document is claimed by a worker until its work is completed
+	 * so that it is never processed by two workers at once. Work that belongs
+	 * to a category which is at its limit (for example, a video conversion
+	 * while ffmpeg is already running) is left for a later pass.
+	 */
 	private void activity() {
-		Work work = null;
 		try {
-			work = getWork();
+			if( System.currentTimeMillis() - lastReconcileTime >= reconcileIntervalInMs ) {
+				reconcileWorkQueue();
+			}
+			refreshChangedDocuments();
 		} catch (Exception e) {
 			logger.error("Error accessing server",e);
 			waitMillis(DELAY_ERROR); // wait a minute
 			return;
 		}
+
+		synchronized(this) {
+			if( busyWorkers >= settings.getWorkerCount() ) {
+				// All workers are busy. Wait for one to complete.
+				waitMillis(noWorkDelayInMs);
+				return;
+			}
+		}
 		
-		if( null == work ) {
+		List<UploadWorkQueue.Entry> availableWork = getAvailableWork();
+		
+		int dispatchedCount = 0;
+		for(UploadWorkQueue.Entry entry : availableWork) {
+			synchronized(this) {
+				if( isShuttingDown 
+				 || busyWorkers >= settings.getWorkerCount() ) {
+					break;
+				}
+			}
+			
+			if( dispatchWork(entry) ) {
+				++dispatchedCount;
+			}
+		}
+		
+		if( dispatchedCount > 0 ) {
+			// Look for more work right away
+			return;
+		}
+		
+		if( availableWork.size() <= 0 ) {
 			// Nothing to do, remove old errors
-			List<String> docIdsRecovered = docsInError.removeErrorsOlderThanMs(DELAY_CLEAR_OLD_ERRORS);
+			List<String> docIdsRecovered = null;
+			synchronized(this) {
+				docIdsRecovered = docsInError.removeErrorsOlderThanMs(DELAY_CLEAR_OLD_ERRORS);
+			}
 
-			if( docIdsRecovered.size() <= 0 ) {
-				// No errors to get rid of and no work, wait
-				waitMillis(noWorkDelayInMs);
+			if( docIdsRecovered.size() > 0 ) {
+				// Work on these documents was removed from the queue when
+				// it was dispatched. Look at them again.
+				for(String docId : docIdsRecovered) {
+					documentChanged(UploadWorkQueue.Source.DOCUMENT_DB, docId);
+					if( null != submissionDbDesign ) {
+						documentChanged(UploadWorkQueue.Source.SUBMISSION_DB, docId);
+					}
+				}
 				return;
 			}
-		} else {
-			try {
-				// Handle this work
-				performWork(work);
-				
-			} catch(Exception e) {
-				boolean shouldErrorBeTakenIntoAccount = true;
-				for(Throwable t : errorAndCausesAsList(e)){
-					if( t instanceof CouchDbException ){
-						CouchDbException couchDbException = (CouchDbException)t;
-						if( 409 == couchDbException.getReturnCode() ){
-							// This is a conflict error in CouchDb. Somebody is updating the document
-							// at the same time. Just retry the worl
-							shouldErrorBeTakenIntoAccount = false;
-						}
+		}
+
+		// No work or all available work is blocked by a concurrency limit.
+		// Wait for a change or for a worker to complete.
+		waitMillis(noWorkDelayInMs);
+	}
+	
+	/**
+	 * Claims the document associated with the work and submits the work
+	 * to the executor.
+	 * @return True if the work was submitted to a worker.
+	 */
+	private boolean dispatchWork(UploadWorkQueue.Entry entry) {
+		final String docId = entry.getDocId();
+
+		synchronized(this) {
+			if( claimedDocIds.contains(docId) ) {
+				return false;
+			}
+		}
+		
+		final Work work = createWork(entry);
+		if( null == work ) {
+			// Not ready
+			return false;
+		}
+		
+		String category = null;
+		try {
+			category = getWorkCategory(work);
+		} catch(Exception e) {
+			logger.error("Error processing document "+docId+" ("+work.getState()+")",e);
+			synchronized(this) {
+				docsInError.addDocumentInError(docId);
+			}
+			return false;
+		}
+		final String workCategory = category;
+		
+		synchronized(this) {
+			int busyInCategory = getBusyWorkersInCategory(workCategory);
+			if( busyInCategory >= settings.getWorkCategoryLimit(workCategory) ) {
+				return false;
+			}
+			
+			claimedDocIds.add(docId);
+			busyWorkersByCategory.put(workCategory, busyInCategory + 1);
+			++busyWorkers;
+		}
+		workQueue.dispatched(entry);
+		
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						processWork(work);
+					} finally {
+						releaseWork(docId, workCategory);
 					}
 				}
-				
-				logger.error("Error processing document "+work.getDocId()+" ("+work.getState()+")",e);
+			});
+		} catch(RuntimeException e) {
+			logger.error("Unable to submit work for document "+docId,e);
+			releaseWork(docId, workCategory);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	synchronized private void releaseWork(String docId, String category) {
+		claimedDocIds.remove(docId);
+		
+		int busyInCategory = getBusyWorkersInCategory(category);
+		if( busyInCategory > 1 ) {
+			busyWorkersByCategory.put(category, busyInCategory - 1);
+		} else {
+			busyWorkersByCategory.remove(category);
+		}
+		--busyWorkers;
+		
+		// Wake up dispatcher
+		this.notifyAll();
+	}
+	
+	synchronized private int getBusyWorkersInCategory(String category) {
+		Integer busy = busyWorkersByCategory.get(category);
+		if( null == busy ) {
+			return 0;
+		}
+		return busy.intValue();
+	}
 
-				if( shouldErrorBeTakenIntoAccount ){
-					synchronized(this) {
-						docsInError.addDocumentInError( work.getDocId() );
+	/**
+	 * Returns the category of the work, which selects the concurrency limit
+	 * that applies to it. Work on media attachments is categorized by the
+	 * external tool used to convert the file class.
+	 */
+	private String getWorkCategory(Work work) throws Exception {
+		String state = work.getState();
+		
+		if( UploadConstants.UPLOAD_STATUS_ANALYZED.equals(state)
+		 || UploadConstants.UPLOAD_STATUS_APPROVED.equals(state)
+		 || UploadConstants.UPLOAD_WORK_ORIENTATION.equals(state)
+		 || UploadConstants.UPLOAD_WORK_THUMBNAIL.equals(state)
+		 || UploadConstants.UPLOAD_WORK_UPLOAD_ORIGINAL_IMAGE.equals(state)
+		 || UploadConstants.UPLOAD_WORK_ROTATE_CW.equals(state)
+		 || UploadConstants.UPLOAD_WORK_ROTATE_CCW.equals(state)
+		 || UploadConstants.UPLOAD_WORK_ROTATE_180.equals(state) ) {
+
+			String fileClass = null;
+			String attachmentName = work.getAttachmentName();
+			JSONObject doc = work.getDocument();
+			JSONObject attachments = doc.optJSONObject(UploadConstants.KEY_DOC_ATTACHMENTS);
+			if( null != attachments && null != attachmentName ) {
+				JSONObject files = attachments.optJSONObject("files");
+				if( null != files ) {
+					JSONObject att = files.optJSONObject(attachmentName);
+					if( null != att ) {
+						fileClass = att.optString(UploadConstants.MIME_CLASS_KEY, null);
 					}
-				} else {
-					logger.info("Previous error for "+work.getDocId()+" will be ignored. Should retry shortly.");
 				}
 			}
+			
+			if( "video".equals(fileClass) 
+			 || "audio".equals(fileClass) ) {
+				return UploadWorkerSettings.WORK_CATEGORY_FFMPEG;
+			}
+			if( "image".equals(fileClass) 
+			 || "pdf".equals(fileClass) ) {
+				return UploadWorkerSettings.WORK_CATEGORY_IMAGEMAGICK;
+			}
+		}
+		
+		return UploadWorkerSettings.WORK_CATEGORY_DEFAULT;
+	}
+	
+	private void processWork(Work work) {
+		try {
+			// Handle this work
+			performWork(work);
+			
+		} catch(Exception e) {
+			boolean shouldErrorBeTakenIntoAccount = true;
+			for(Throwable t : errorAndCausesAsList(e)){
+				if( t instanceof CouchDbException ){
+					CouchDbException couchDbException = (CouchDbException)t;
+					if( 409 == couchDbException.getReturnCode() ){
+						// This is a conflict error in CouchDb. Somebody is updating the document
+						// at the same time. Just retry the worl
+						shouldErrorBeTakenIntoAccount = false;
+					}
+				}
+			}
+			
+			logger.error("Error processing document "+work.getDocId()+" ("+work.getState()+")",e);
+
+			if( shouldErrorBeTakenIntoAccount ){
+				synchronized(this) {
+					docsInError.addDocumentInError( work.getDocId() );
+				}
+			} else {
+				logger.info("Previous error for "+work.getDocId()+" will be ignored. Should retry shortly.");
+			}
 		}
 	}
 	
@@ -833,149 +1078,193 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 		}
 	}
 	
-	private Work getWork() throws Exception {
-		Map<String,JSONObject> rowsByUploadId = null;
-
-		// Deal with document database
-		{
-			CouchQuery query = new CouchQuery();
-			query.setViewName("server_work");
+	/**
+	 * Returns the queued work, in the order it should be performed. Work on
+	 * documents that are in error or that are claimed by a worker is not
+	 * returned.
+	 */
+	private List<UploadWorkQueue.Entry> getAvailableWork() {
+		List<UploadWorkQueue.Entry> availableWork = new Vector<UploadWorkQueue.Entry>();
+		
+		for(UploadWorkQueue.Entry entry : workQueue.getEntries()) {
+			String id = entry.getDocId();
 			
-			CouchQueryResults results;
-			results = documentDbDesign.performQuery(query);
-			rowsByUploadId = findUploadIds(results);
-					
-			for(JSONObject row : results.getRows()) {
-				String id = row.optString("id");
-				
-				String state = null;
-				String attachmentName = null;
-				JSONArray key = row.optJSONArray("key");
-				if( null != key ){
-					if( key.length() > 0 ){
-						state = key.getString(0);
-					}
-					if( key.length() > 1 ){
-						attachmentName = key.getString(1);
-					}
-				};
-				
-				// Discount documents in error state
-				synchronized(this) {
-					if( docsInError.isDocumentInError(id) ) {
-						continue;
-					}
+			// Discount documents in error state or already claimed
+			synchronized(this) {
+				if( docsInError.isDocumentInError(id) ) {
+					continue;
 				}
-				
-				if( UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD.equals(state) ) {
-					// In the case of "waiting_for_upload", the attachment name
-					// refers to the uploadId
-					JSONObject uploadIdRow = rowsByUploadId.get(attachmentName);
-					if( null == uploadIdRow ) {
-						// Missing information to continue
-						continue;
-					} else {
-						String uploadRequestDocId = uploadIdRow.getString("id");
-						
-						WorkDocumentDb work = new WorkDocumentDb(documentDbDesign, state, id);
-						work.setUploadId(attachmentName);
-						work.setUploadRequestDocId(uploadRequestDocId);
-						return work;
-					}
-					
-				} else if( UploadConstants.UPLOAD_WORK_UPLOADED_FILE.equals(state) ) {
-					// Ignore
+				if( claimedDocIds.contains(id) ) {
 					continue;
-					
-				} else {
-					// Everything else
-					WorkDocumentDb work = new WorkDocumentDb(documentDbDesign, state, id);
-					work.setAttachmentName(attachmentName);
-					return work;
 				}
 			}
+			
+			availableWork.add(entry);
 		}
 		
-		// At this point, no work found in the document database. Look in the
-		// submission database, if present
-		if( null != submissionDbDesign ){
-			CouchQuery query = new CouchQuery();
-			query.setViewName("upload-work");
+		return availableWork;
+	}
+	
+	/**
+	 * Creates the work associated with a queue entry.
+	 * @return The work, or null if the work can not be performed yet
+	 */
+	private Work createWork(UploadWorkQueue.Entry entry) {
+		String state = entry.getState();
+		String id = entry.getDocId();
+		
+		if( UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD.equals(state) ) {
+			// In the case of "waiting_for_upload", the attachment name
+			// refers to the uploadId
+			String uploadId = entry.getName();
+			String uploadRequestDocId = workQueue.getUploadRequestDocId(uploadId);
+			if( null == uploadRequestDocId ) {
+				// Missing information to continue
+				return null;
+			}
 			
-			CouchQueryResults results = submissionDbDesign.performQuery(query);
+			if( UploadWorkQueue.Source.SUBMISSION_DB == entry.getSource() ) {
+				WorkSubmissionDb work = new WorkSubmissionDb(submissionDbDesign, state, id);
+				work.setUploadId(uploadId);
+				work.setUploadRequestDocId(uploadRequestDocId);
+				return work;
+			}
 			
-			for(JSONObject row : results.getRows()) {
+			WorkDocumentDb work = new WorkDocumentDb(documentDbDesign, state, id);
+			work.setUploadId(uploadId);
+			work.setUploadRequestDocId(uploadRequestDocId);
+			return work;
+		}
+		
+		// Everything else
+		if( UploadWorkQueue.Source.SUBMISSION_DB == entry.getSource() ) {
+			WorkSubmissionDb work = new WorkSubmissionDb(submissionDbDesign, state, id);
+			work.setAttachmentName(entry.getName());
+			return work;
+		}
+		
+		WorkDocumentDb work = new WorkDocumentDb(documentDbDesign, state, id);
+		work.setAttachmentName(entry.getName());
+		return work;
+	}
+	
+	/**
+	 * Replaces the content of the work queue with the work reported by
+	 * the views. This recovers from changes that were missed and is the
+	 * only way to find work when no change monitor is available.
+	 */
+	private void reconcileWorkQueue() throws Exception {
+		int corrections = 0;
+		
+		Map<String,List<JSONArray>> keysByDocId = queryWorkKeys(documentDbDesign, "server_work");
+		corrections += workQueue.reconcile(UploadWorkQueue.Source.DOCUMENT_DB, keysByDocId);
+		
+		if( null != submissionDbDesign ){
+			keysByDocId = queryWorkKeys(submissionDbDesign, "upload-work");
+			corrections += workQueue.reconcile(UploadWorkQueue.Source.SUBMISSION_DB, keysByDocId);
+		}
+		
+		lastReconcileTime = System.currentTimeMillis();
+		
+		if( corrections > 0 ) {
+			logger.info("Reconciled upload work queue ("+corrections+" corrections): "+workQueue);
+		} else {
+			logger.debug("Reconciled upload work queue: "+workQueue);
+		}
+	}
+	
+	private Map<String,List<JSONArray>> queryWorkKeys(CouchDesignDocument design, String viewName) throws Exception {
+		Map<String,List<JSONArray>> keysByDocId = new HashMap<String,List<JSONArray>>();
+		
+		CouchQuery query = new CouchQuery();
+		query.setViewName(viewName);
+		
+		CouchQueryRowIterator rowIterator = design.performQueryIterator(query);
+		try {
+			JSONObject row = rowIterator.next();
+			while( null != row ) {
 				String id = row.optString("id");
-				
-				String state = null;
-				String uploadId = null;
 				JSONArray key = row.optJSONArray("key");
 				if( null != key ){
-					if( key.length() > 0 ){
-						state = key.getString(0);
-					}
-					if( key.length() > 1 ){
-						uploadId = key.getString(1);
-					}
-				};
-				
-				// Discount documents in error state
-				synchronized(this) {
-					if( docsInError.isDocumentInError(id) ) {
-						continue;
+					List<JSONArray> keys = keysByDocId.get(id);
+					if( null == keys ){
+						keys = new Vector<JSONArray>();
+						keysByDocId.put(id, keys);
 					}
+					keys.add(key);
 				}
 				
-				if( UploadConstants.UPLOAD_STATUS_WAITING_FOR_UPLOAD.equals(state) ) {
-					// In the case of "waiting_for_upload", the attachment name
-					// refers to the uploadId
-					JSONObject uploadIdRow = rowsByUploadId.get(uploadId);
-					if( null == uploadIdRow ) {
-						// Missing information to continue
-						continue;
-					} else {
-						String uploadRequestDocId = uploadIdRow.getString("id");
-						
-						WorkSubmissionDb work = new WorkSubmissionDb(submissionDbDesign, state, id);
-						work.setUploadId(uploadId);
-						work.setUploadRequestDocId(uploadRequestDocId);
-						return work;
-					}
-					
-				} else {
-					// Everything else
-					WorkSubmissionDb work = new WorkSubmissionDb(submissionDbDesign, state, id);
-					work.setAttachmentName(uploadId);
-					return work;
-				}
+				row = rowIterator.next();
 			}
+		} finally {
+			rowIterator.close();
 		}
-
-		return null;
+		
+		return keysByDocId;
 	}
 	
-	private Map<String,JSONObject> findUploadIds(CouchQueryResults results) throws Exception {
-		Map<String,JSONObject> rowsByUploadId = new HashMap<String,JSONObject>();
-		
-		for(JSONObject row : results.getRows()) {
-			String state = null;
-			String uploadId = null;
-			JSONArray key = row.optJSONArray("key");
-			if( null != key ){
-				if( key.length() > 0 ){
-					state = key.getString(0);
-				}
-				if( key.length() > 1 ){
-					uploadId = key.getString(1);
-				}
-			};
+	/**
+	 * Updates the work queue for the documents that changed since the
+	 * last call. Documents are fetched in batches and the work they need
+	 * is computed locally.
+	 */
+	private void refreshChangedDocuments() throws Exception {
+		for(UploadWorkQueue.Source source : UploadWorkQueue.Source.values()) {
+			CouchDesignDocument design = documentDbDesign;
+			if( UploadWorkQueue.Source.SUBMISSION_DB == source ) {
+				design = submissionDbDesign;
+			}
+			
+			List<String> docIds = new Vector<String>();
+			synchronized(this) {
+				Set<String> changedDocIds = changedDocIdsBySource.get(source);
+				docIds.addAll(changedDocIds);
+				changedDocIds.clear();
+			}
+			if( null == design || docIds.size() < 1 ) {
+				continue;
+			}
 			
-			if( UploadConstants.UPLOAD_WORK_UPLOADED_FILE.equals(state) ) {
-				rowsByUploadId.put(uploadId, row);
+			for(int start=0; start<docIds.size(); start+=REFRESH_BATCH_SIZE) {
+				int end = Math.min(docIds.size(), start+REFRESH_BATCH_SIZE);
+				List<String> batch = docIds.subList(start, end);
+				
+				try {
+					List<JSONObject> docs = design.getDatabase().bulkGetDocuments(batch);
+					
+					Set<String> docIdsFound = new HashSet<String>();
+					for(JSONObject doc : docs) {
+						String docId = doc.optString("_id", null);
+						if( null == docId ) {
+							continue;
+						}
+						docIdsFound.add(docId);
+						
+						List<JSONArray> keys = null;
+						if( UploadWorkQueue.Source.SUBMISSION_DB == source ) {
+							keys = UploadWorkKeys.computeSubmissionWorkKeys(doc);
+						} else {
+							keys = UploadWorkKeys.computeServerWorkKeys(doc);
+						}
+						workQueue.updateDocument(source, docId, keys);
+					}
+					
+					// Deleted documents
+					for(String docId : batch) {
+						if( false == docIdsFound.contains(docId) ) {
+							workQueue.removeDocument(source, docId);
+						}
+					}
+					
+				} catch(Exception e) {
+					// Try again later
+					synchronized(this) {
+						changedDocIdsBySource.get(source).addAll( docIds.subList(start, docIds.size()) );
+					}
+					throw new Exception("Unable to refresh work for changed documents",e);
+				}
 			}
 		}
-		
-		return rowsByUploadId;
 	}
 	
 	private String computeEffectiveAttachmentName(String attachmentName, Integer counter){
@@ -1031,8 +1320,13 @@ public class UploadWorkerThread extends Thread implements CouchDbChangeListener
 			,JSONObject rawChange
 			,JSONObject doc) {
 
+		documentChanged(UploadWorkQueue.Source.DOCUMENT_DB, docId);
+	}
+	
+	private void documentChanged(UploadWorkQueue.Source source, String docId) {
 		synchronized(this) {
 			docsInError.removeErrorsWithDocId(docId);
+			changedDocIdsBySource.get(source).add(docId);
 			this.notifyAll();
 		}
 	}
@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
-import java.util.List;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -20,7 +19,7 @@ import ca.carleton.gcrc.couch.onUpload.plugin.FileConversionPlugin;
 import ca.carleton.gcrc.geom.BoundingBox;
 import ca.carleton.gcrc.geom.Geometry;
 import ca.carleton.gcrc.geom.geojson.GeoJsonFeature;
-import ca.carleton.gcrc.geom.geojson.GeoJsonParser;
+import ca.carleton.gcrc.geom.geojson.GeoJsonFeatureReader;
 import ca.carleton.gcrc.geom.wkt.WktWriter;
 
 public class GeoJsonFileConverter implements FileConversionPlugin {
@@ -58,8 +57,12 @@ public class GeoJsonFileConverter implements FileConversionPlugin {
 			fis = new FileInputStream(file);
 			InputStreamReader reader = new InputStreamReader(fis,"UTF-8");
 			
-			GeoJsonParser parser = new GeoJsonParser();
-			parser.parse(reader);
+			// Verify the whole file without retaining the features
+			GeoJsonFeatureReader featureReader = new GeoJsonFeatureReader(reader);
+			GeoJsonFeature feature = featureReader.readFeature();
+			while( null != feature ){
+				feature = featureReader.readFeature();
+			}
 
 			result.setFileConvertable(true);
 			result.setMimeType("application/json");
@@ -126,26 +129,35 @@ public class GeoJsonFileConverter implements FileConversionPlugin {
 			fis = new FileInputStream(file);
 			InputStreamReader reader = new InputStreamReader(fis,"UTF-8");
 			
-			GeoJsonParser parser = new GeoJsonParser();
-			List<GeoJsonFeature> features = parser.parse(reader);
-
-			fis.close();
-			fis = null;
-			
-			logger.debug("Number of uploaded features: "+features.size());
-
-			int count = 0;
+			// Features are uploaded as they are read, so that large
+			// files do not have to fit in memory
+			GeoJsonFeatureReader featureReader = new GeoJsonFeatureReader(reader);
+			boolean include = false;
+			BoundingBox boundingBox = new BoundingBox();
 			try {
-				for(GeoJsonFeature feature : features){
-					++count;
-					logger.debug("Creating geojson feature: "+count);
+				GeoJsonFeature feature = featureReader.readFeature();
+				while( null != feature ){
+					logger.debug("Creating geojson feature: "+featureReader.getCount());
 
 					uploadFeature(feature, approvedContext);
+
+					Geometry geometry = feature.getGeometry();
+					if( null != geometry ){
+						geometry.extendBoundingBox(boundingBox);
+						include = true;
+					}
+
+					feature = featureReader.readFeature();
 				}
 			} catch(Exception e) {
 				throw new Exception("Error while uploading GeoJSON features",e);
 			}
 
+			fis.close();
+			fis = null;
+			
+			logger.debug("Number of uploaded features: "+featureReader.getCount());
+
 			logger.debug("Done creating geojson features");
 			
 			JSONObject doc = approvedContext.getDoc();
@@ -169,19 +181,8 @@ public class GeoJsonFileConverter implements FileConversionPlugin {
 				}
 				
 
-				logger.debug("Computing BBOX");
-
 				// BBOX
 				{
-					boolean include = false;
-					BoundingBox boundingBox = new BoundingBox();
-					for(GeoJsonFeature feature : features){
-						Geometry geometry = feature.getGeometry();
-						if( null != geometry ){
-							geometry.extendBoundingBox(boundingBox);
-							include = true;
-						}
-					}
 					if( include ){
 						JSONArray bbox = new JSONArray();
 						bbox.put( boundingBox.getMinX() );
@@ -0,0 +1,158 @@
+package ca.carleton.gcrc.couch.onUpload;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import junit.framework.TestCase;
+
+public class UploadWorkQueueTest extends TestCase {
+
+	static private List<JSONArray> keys(String... states){
+		List<JSONArray> keys = new Vector<JSONArray>();
+		for(String state : states){
+			JSONArray key = new JSONArray();
+			key.put(state);
+			key.put("att");
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	public void testPriorityOrder() throws Exception {
+		UploadWorkQueue queue = new UploadWorkQueue();
+		
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_WORK_THUMBNAIL));
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "b", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "c", keys(UploadConstants.UPLOAD_WORK_THUMBNAIL));
+		
+		List<UploadWorkQueue.Entry> entries = queue.getEntries();
+		assertEquals(3, entries.size());
+		assertEquals("b", entries.get(0).getDocId());
+		assertEquals("a", entries.get(1).getDocId());
+		assertEquals("c", entries.get(2).getDocId());
+	}
+
+	public void testUpdateDocument() throws Exception {
+		UploadWorkQueue queue = new UploadWorkQueue();
+		
+		int changes = queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_WORK_ORIENTATION));
+		assertEquals(1, changes);
+		UploadWorkQueue.Entry first = queue.getEntries().get(0);
+		
+		// Same work does not change the queue
+		changes = queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_WORK_ORIENTATION));
+		assertEquals(0, changes);
+		assertSame(first, queue.getEntries().get(0));
+		
+		// New state replaces previous
+		changes = queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_WORK_THUMBNAIL));
+		assertEquals(2, changes);
+		assertEquals(1, queue.getDepth());
+		assertEquals(UploadConstants.UPLOAD_WORK_THUMBNAIL, queue.getEntries().get(0).getState());
+		
+		// Same document in other database is separate
+		queue.updateDocument(UploadWorkQueue.Source.SUBMISSION_DB, "a", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		assertEquals(2, queue.getDepth());
+		
+		queue.removeDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a");
+		assertEquals(1, queue.getDepth());
+	}
+
+	public void testDispatched() throws Exception {
+		UploadWorkQueue queue = new UploadWorkQueue();
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		
+		UploadWorkQueue.Entry entry = queue.getEntries().get(0);
+		assertTrue( queue.dispatched(entry) );
+		assertFalse( queue.dispatched(entry) );
+		assertEquals(0, queue.getDepth());
+		assertEquals(1, queue.getDispatchedCount());
+		
+		// Work re-appears when document is updated
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		assertEquals(1, queue.getDepth());
+	}
+
+	public void testUploadIds() throws Exception {
+		UploadWorkQueue queue = new UploadWorkQueue();
+		
+		List<JSONArray> keys = new Vector<JSONArray>();
+		keys.add( new JSONArray("[\"uploadId\",\"u1\"]") );
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "request", keys);
+		
+		assertEquals(0, queue.getDepth());
+		assertEquals("request", queue.getUploadRequestDocId("u1"));
+		
+		queue.removeDocument(UploadWorkQueue.Source.DOCUMENT_DB, "request");
+		assertNull(queue.getUploadRequestDocId("u1"));
+	}
+
+	public void testReconcile() throws Exception {
+		UploadWorkQueue queue = new UploadWorkQueue();
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "a", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		queue.updateDocument(UploadWorkQueue.Source.DOCUMENT_DB, "b", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		queue.updateDocument(UploadWorkQueue.Source.SUBMISSION_DB, "s", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		
+		Map<String,List<JSONArray>> keysByDocId = new HashMap<String,List<JSONArray>>();
+		keysByDocId.put("a", keys(UploadConstants.UPLOAD_STATUS_SUBMITTED));
+		keysByDocId.put("c", keys(UploadConstants.UPLOAD_STATUS_ANALYZED));
+		
+		int corrections = queue.reconcile(UploadWorkQueue.Source.DOCUMENT_DB, keysByDocId);
+		
+		// b removed, c added
+		assertEquals(2, corrections);
+		assertEquals(3, queue.getDepth());
+		assertEquals(1, queue.getReconcileCount());
+		
+		for(UploadWorkQueue.Entry entry : queue.getEntries()){
+			assertFalse( "b".equals(entry.getDocId()) );
+		}
+	}
+
+	public void testServerWorkKeys() throws Exception {
+		JSONObject doc = new JSONObject("{"
+			+"\"_id\":\"doc1\""
+			+",\"nunaliit_attachments\":{\"files\":{"
+				+"\"photo.jpg\":{\"status\":\"attached\",\"fileClass\":\"image\",\"server\":{\"orientation\":1}}"
+				+",\"thumb.jpg\":{\"status\":\"attached\",\"fileClass\":\"image\",\"source\":\"photo.jpg\",\"server\":{\"orientation\":1}}"
+				+",\"video.mp4\":{\"status\":\"submitted\",\"fileClass\":\"video\",\"work\":{\"rotate180\":null,\"orientation\":1}}"
+				+",\"upload\":{\"status\":\"waiting for upload\",\"uploadId\":\"u1\"}"
+			+"}}"
+			+",\"nunaliit_geom\":{\"wkt\":\"POINT(0 0)\"}"
+			+"}");
+		
+		List<String> keys = new Vector<String>();
+		for(JSONArray key : UploadWorkKeys.computeServerWorkKeys(doc)){
+			keys.add(key.toString());
+		}
+		
+		assertEquals(5, keys.size());
+		assertTrue(keys.contains("[\"thumbnail\",\"photo.jpg\"]"));
+		assertTrue(keys.contains("[\"submitted\",\"video.mp4\"]"));
+		assertTrue(keys.contains("[\"rotate180\",\"video.mp4\"]"));
+		assertTrue(keys.contains("[\"waiting for upload\",\"u1\"]"));
+		assertTrue(keys.contains("[\"simplifyGeometry\"]"));
+	}
+
+	public void testSubmissionWorkKeys() throws Exception {
+		JSONObject doc = new JSONObject("{"
+			+"\"_id\":\"sub1\""
+			+",\"nunaliit_type\":\"document_submission\""
+			+",\"nunaliit_submission\":{\"state\":\"waiting_for_approval\",\"submitted_doc\":{"
+				+"\"nunaliit_attachments\":{\"files\":{"
+					+"\"photo.jpg\":{\"status\":\"analyzed\"}"
+					+",\"other.jpg\":{\"status\":\"approved\"}"
+				+"}}"
+			+"}}"
+			+"}");
+		
+		List<JSONArray> keys = UploadWorkKeys.computeSubmissionWorkKeys(doc);
+		assertEquals(1, keys.size());
+		assertEquals("[\"analyzed\",\"photo.jpg\"]", keys.get(0).toString());
+	}
+}
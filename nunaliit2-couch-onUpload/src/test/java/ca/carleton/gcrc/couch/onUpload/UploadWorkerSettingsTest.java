@@ -0,0 +1,47 @@
+package ca.carleton.gcrc.couch.onUpload;
+
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class UploadWorkerSettingsTest extends TestCase {
+
+	public void testParseProperties(){
+		Properties props = new Properties();
+		props.setProperty("upload.workers", "8");
+		props.setProperty("upload.workers.limit.ffmpeg", "2");
+		props.setProperty("upload.workers.limit.other", "3");
+		
+		UploadWorkerSettings settings = new UploadWorkerSettings(props);
+		
+		assertEquals(8, settings.getWorkerCount());
+		assertEquals(2, settings.getWorkCategoryLimit(UploadWorkerSettings.WORK_CATEGORY_FFMPEG));
+		assertEquals(UploadWorkerSettings.DEFAULT_IMAGEMAGICK_LIMIT, 
+				settings.getWorkCategoryLimit(UploadWorkerSettings.WORK_CATEGORY_IMAGEMAGICK));
+		assertEquals(3, settings.getWorkCategoryLimit("other"));
+		
+		// Categories without a limit can use all workers
+		assertEquals(8, settings.getWorkCategoryLimit(UploadWorkerSettings.WORK_CATEGORY_DEFAULT));
+	}
+
+	public void testLimitsBoundedByWorkerCount(){
+		Properties props = new Properties();
+		props.setProperty("upload.workers", "2");
+		props.setProperty("upload.workers.limit.imagemagick", "4");
+		
+		UploadWorkerSettings settings = new UploadWorkerSettings(props);
+
+		assertEquals(2, settings.getWorkCategoryLimit(UploadWorkerSettings.WORK_CATEGORY_IMAGEMAGICK));
+	}
+
+	public void testInvalidValues(){
+		Properties props = new Properties();
+		props.setProperty("upload.workers", "abc");
+		props.setProperty("upload.workers.limit.ffmpeg", "0");
+		
+		UploadWorkerSettings settings = new UploadWorkerSettings(props);
+		
+		assertTrue(settings.getWorkerCount() >= 1);
+		assertEquals(1, settings.getWorkCategoryLimit(UploadWorkerSettings.WORK_CATEGORY_FFMPEG));
+	}
+}
@@ -0,0 +1,656 @@
+package ca.carleton.gcrc.couch.simplifiedGeometry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
+
+/**
+ * Least-recently-used cache of simplified geometry attachments. Since the
+ * content of an attachment can not change without the revision of its
+ * document changing, entries are keyed by document id, revision and
+ * attachment name and never need to be refreshed.
+ *
+ * Entries are kept in memory up to a number of bytes. If a spill directory
+ * is configured, entries evicted from memory are written to disk, up to
+ * another number of bytes, and are brought back to memory when requested.
+ *
+ * When registered with a change monitor, entries for previous revisions of
+ * a document are dropped as soon as the document changes. In that case,
+ * the cache also remembers the current revision of the documents it holds
+ * attachments for, so that requests for those documents do not need to
+ * look up revisions in the database.
+ *
+ * This class is thread safe. Files are read and written outside of the
+ * lock protecting the entries.
+ */
+public class GeometryAttachmentCache implements CouchDbChangeListener {
+
+	static final public long DEFAULT_MEMORY_BYTES = 64L * 1024L * 1024L; // 64MB
+	static final public long DEFAULT_SPILL_BYTES = 512L * 1024L * 1024L; // 512MB
+	static final public int RECENT_CHANGES_SIZE = 10000;
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	static private class Key {
+		private String docId;
+		private String rev;
+		private String attName;
+
+		public Key(String docId, String rev, String attName) {
+			this.docId = docId;
+			this.rev = rev;
+			this.attName = attName;
+		}
+
+		@Override
+		public int hashCode() {
+			return docId.hashCode() ^ rev.hashCode() ^ attName.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( obj instanceof Key ){
+				Key other = (Key)obj;
+				return docId.equals(other.docId)
+					&& rev.equals(other.rev)
+					&& attName.equals(other.attName);
+			}
+			return false;
+		}
+	}
+
+	static private class SpilledEntry {
+		private File file;
+		private long size;
+
+		public SpilledEntry(File file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	private long maxMemoryBytes;
+	private File spillDir;
+	private long maxSpillBytes;
+	private LinkedHashMap<Key,byte[]> memoryEntries = new LinkedHashMap<Key,byte[]>(256, 0.75f, true);
+	private LinkedHashMap<Key,SpilledEntry> spilledEntries = new LinkedHashMap<Key,SpilledEntry>(256, 0.75f, true);
+	// Entries evicted from memory that are being written to disk
+	private Map<Key,byte[]> pendingSpills = new HashMap<Key,byte[]>();
+	private Map<String,Set<Key>> keysByDocId = new HashMap<String,Set<Key>>();
+	private long memoryBytes = 0;
+	private long spillBytes = 0;
+	private long spillFileCount = 0;
+
+	// Revisions of documents with cached attachments, kept up to date
+	// from the changes reported by the database
+	private boolean changesMonitored = false;
+	private Map<String,String> revisionsByDocId = new HashMap<String,String>();
+	private long changeCount = 0;
+	private long lastForgottenChange = 0;
+	private LinkedHashMap<String,Long> recentChanges = new LinkedHashMap<String,Long>(256, 0.75f, false);
+
+	// Counters
+	private long hitCount = 0;
+	private long spillHitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long invalidationCount = 0;
+
+	public GeometryAttachmentCache(long maxMemoryBytes) {
+		this(maxMemoryBytes, null, 0);
+	}
+
+	/**
+	 * @param maxMemoryBytes Maximum size of the attachments kept in memory
+	 * @param spillDir Directory where attachments evicted from memory are
+	 * saved. If null, evicted attachments are discarded. Files found in this
+	 * directory are deleted.
+	 * @param maxSpillBytes Maximum size of the attachments saved to disk
+	 */
+	public GeometryAttachmentCache(long maxMemoryBytes, File spillDir, long maxSpillBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.spillDir = spillDir;
+		this.maxSpillBytes = maxSpillBytes;
+
+		if( null != spillDir ){
+			if( false == spillDir.exists() ){
+				spillDir.mkdirs();
+			}
+
+			// Files left by a previous run are not indexed
+			File[] children = spillDir.listFiles();
+			if( null != children ){
+				for(File child : children){
+					if( child.isFile() && child.getName().endsWith(".geom") ){
+						child.delete();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether this cache receives the changes made to the
+	 * database. Revisions are remembered only when it does.
+	 */
+	synchronized public boolean isChangesMonitored() {
+		return changesMonitored;
+	}
+
+	synchronized public void setChangesMonitored(boolean changesMonitored) {
+		this.changesMonitored = changesMonitored;
+		if( false == changesMonitored ){
+			revisionsByDocId.clear();
+		}
+	}
+
+	/**
+	 * Returns a number that increases with each change reported to the
+	 * cache. It is obtained before revisions are looked up in the database
+	 * and given back when attachments are added, so that a revision that
+	 * changed in between is not remembered.
+	 */
+	synchronized public long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Returns the current revisions known for the given documents. Documents
+	 * with an unknown revision are not part of the returned map.
+	 */
+	synchronized public Map<String,String> getCurrentRevisions(Collection<String> docIds) {
+		Map<String,String> revisions = new HashMap<String,String>();
+		if( changesMonitored ){
+			for(String docId : docIds){
+				String rev = revisionsByDocId.get(docId);
+				if( null != rev ){
+					revisions.put(docId, rev);
+				}
+			}
+		}
+		return revisions;
+	}
+
+	/**
+	 * Returns the content of an attachment, or null if it is not cached.
+	 */
+	public byte[] get(String docId, String rev, String attName) {
+		if( null == docId || null == rev || null == attName ){
+			return null;
+		}
+		Key key = new Key(docId, rev, attName);
+
+		File file = null;
+		synchronized(this) {
+			byte[] content = memoryEntries.get(key);
+			if( null == content ){
+				content = pendingSpills.get(key);
+			}
+			if( null != content ){
+				++hitCount;
+				return content;
+			}
+
+			SpilledEntry spilled = spilledEntries.get(key);
+			if( null == spilled ){
+				++missCount;
+				return null;
+			}
+			file = spilled.file;
+		}
+
+		// Bring back from disk
+		byte[] content = readFile(file);
+
+		List<Key> toSpill = new ArrayList<Key>();
+		List<File> toDelete = new ArrayList<File>();
+		synchronized(this) {
+			// The entry might have been removed while the file was read
+			boolean present = removeSpilled(key, toDelete);
+			if( null == content ){
+				++missCount;
+			} else {
+				++spillHitCount;
+				if( present ){
+					putInMemory(key, content, toSpill);
+				}
+			}
+		}
+		performFileOperations(toSpill, toDelete);
+
+		return content;
+	}
+
+	/**
+	 * Adds the content of an attachment to the cache.
+	 */
+	public void put(String docId, String rev, String attName, byte[] content) {
+		put(docId, rev, attName, content, -1);
+	}
+
+	/**
+	 * Adds the content of an attachment to the cache. If no change
+	 * was reported for the document since the given change count, the
+	 * revision is remembered as the current revision of the document.
+	 * @param changeCount Value of getChangeCount() obtained before the
+	 * revision was looked up. If negative, the revision is not remembered.
+	 */
+	public void put(String docId, String rev, String attName, byte[] content, long changeCount) {
+		if( null == docId || null == rev || null == attName || null == content ){
+			return;
+		}
+		if( content.length > maxMemoryBytes ){
+			// Would evict everything else
+			return;
+		}
+
+		Key key = new Key(docId, rev, attName);
+
+		List<Key> toSpill = new ArrayList<Key>();
+		List<File> toDelete = new ArrayList<File>();
+		synchronized(this) {
+			if( false == memoryEntries.containsKey(key) ){
+				removeSpilled(key, toDelete);
+				pendingSpills.remove(key);
+				putInMemory(key, content, toSpill);
+			}
+
+			if( changeCount >= 0 
+			 && changesMonitored 
+			 && isUnchangedSince(docId, changeCount) 
+			 && keysByDocId.containsKey(docId) ){
+				revisionsByDocId.put(docId, rev);
+			}
+		}
+		performFileOperations(toSpill, toDelete);
+	}
+
+	/**
+	 * Removes all attachments associated with a document.
+	 */
+	public void invalidateDocument(String docId) {
+		invalidateDocument(docId, null);
+	}
+
+	/**
+	 * Removes the attachments associated with a document, except the
+	 * ones for the given revision.
+	 */
+	public void invalidateDocument(String docId, String currentRev) {
+		List<File> toDelete = new ArrayList<File>();
+		synchronized(this) {
+			invalidate(docId, currentRev, toDelete);
+		}
+		performFileOperations(null, toDelete);
+	}
+
+	@Override
+	public void change(
+			CouchDbChangeListener.Type type
+			,String docId
+			,String rev
+			,JSONObject rawChange
+			,JSONObject doc) {
+
+		List<File> toDelete = new ArrayList<File>();
+		synchronized(this) {
+			// Remember that the document changed, for revisions being
+			// looked up at this time
+			++changeCount;
+			recentChanges.remove(docId);
+			recentChanges.put(docId, changeCount);
+			if( recentChanges.size() > RECENT_CHANGES_SIZE ){
+				Iterator<Map.Entry<String,Long>> it = recentChanges.entrySet().iterator();
+				Map.Entry<String,Long> eldest = it.next();
+				lastForgottenChange = eldest.getValue();
+				it.remove();
+			}
+
+			if( CouchDbChangeListener.Type.DOC_DELETED == type ){
+				invalidate(docId, null, toDelete);
+				revisionsByDocId.remove(docId);
+			} else {
+				invalidate(docId, rev, toDelete);
+				if( keysByDocId.containsKey(docId) ){
+					revisionsByDocId.put(docId, rev);
+				} else {
+					revisionsByDocId.remove(docId);
+				}
+			}
+		}
+		performFileOperations(null, toDelete);
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		List<File> toDelete = new ArrayList<File>();
+		synchronized(this) {
+			memoryEntries.clear();
+			memoryBytes = 0;
+
+			pendingSpills.clear();
+
+			for(SpilledEntry spilled : spilledEntries.values()){
+				toDelete.add(spilled.file);
+			}
+			spilledEntries.clear();
+			spillBytes = 0;
+
+			keysByDocId.clear();
+			revisionsByDocId.clear();
+		}
+		performFileOperations(null, toDelete);
+	}
+
+	synchronized public long getHitCount() {
+		return hitCount;
+	}
+
+	synchronized public long getSpillHitCount() {
+		return spillHitCount;
+	}
+
+	synchronized public long getMissCount() {
+		return missCount;
+	}
+
+	synchronized public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	synchronized public long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	synchronized public int getMemoryEntryCount() {
+		return memoryEntries.size();
+	}
+
+	synchronized public long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	synchronized public int getSpilledEntryCount() {
+		return spilledEntries.size();
+	}
+
+	synchronized public long getSpillBytes() {
+		return spillBytes;
+	}
+
+	public String toString() {
+		return "Geometry attachment cache(hits:"+getHitCount()
+				+" spillHits:"+getSpillHitCount()
+				+" misses:"+getMissCount()
+				+" entries:"+getMemoryEntryCount()
+				+" bytes:"+getMemoryBytes()
+				+" spilled:"+getSpilledEntryCount()
+				+" evictions:"+getEvictionCount()
+				+")";
+	}
+
+	// Called with the lock held
+	private boolean isUnchangedSince(String docId, long changeCount) {
+		if( lastForgottenChange > changeCount ){
+			return false;
+		}
+		Long docChange = recentChanges.get(docId);
+		if( null != docChange && docChange > changeCount ){
+			return false;
+		}
+		return true;
+	}
+
+	// Called with the lock held
+	private void invalidate(String docId, String currentRev, List<File> toDelete) {
+		Set<Key> keys = keysByDocId.get(docId);
+		if( null == keys ){
+			return;
+		}
+
+		List<Key> keysToRemove = new ArrayList<Key>(keys.size());
+		for(Key key : keys){
+			if( null == currentRev || false == currentRev.equals(key.rev) ){
+				keysToRemove.add(key);
+			}
+		}
+
+		for(Key key : keysToRemove){
+			byte[] content = memoryEntries.remove(key);
+			if( null != content ){
+				memoryBytes -= content.length;
+			}
+			pendingSpills.remove(key);
+			removeSpilled(key, toDelete);
+			unindexIfAbsent(key);
+			++invalidationCount;
+		}
+	}
+
+	// Called with the lock held. Entries evicted from memory that
+	// should be saved to disk are added to toSpill.
+	private void putInMemory(Key key, byte[] content, List<Key> toSpill) {
+		memoryEntries.put(key, content);
+		memoryBytes += content.length;
+		index(key);
+
+		// Evict least recently used entries
+		Iterator<Map.Entry<Key,byte[]>> it = memoryEntries.entrySet().iterator();
+		while( memoryBytes > maxMemoryBytes && it.hasNext() ){
+			Map.Entry<Key,byte[]> entry = it.next();
+			Key evictedKey = entry.getKey();
+			byte[] evictedContent = entry.getValue();
+			it.remove();
+			memoryBytes -= evictedContent.length;
+			++evictionCount;
+
+			if( null != spillDir && evictedContent.length <= maxSpillBytes ){
+				pendingSpills.put(evictedKey, evictedContent);
+				toSpill.add(evictedKey);
+			} else {
+				unindexIfAbsent(evictedKey);
+			}
+		}
+	}
+
+	// Called with the lock held. Returns true if the entry was on disk.
+	private boolean removeSpilled(Key key, List<File> toDelete) {
+		SpilledEntry spilled = spilledEntries.remove(key);
+		if( null != spilled ){
+			spillBytes -= spilled.size;
+			toDelete.add(spilled.file);
+			unindexIfAbsent(key);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Writes entries evicted from memory to disk and deletes files of
+	 * entries that were removed. Must be called without the lock held.
+	 */
+	private void performFileOperations(List<Key> toSpill, List<File> toDelete) {
+		if( null != toSpill ){
+			for(Key key : toSpill){
+				spill(key, toDelete);
+			}
+		}
+
+		for(File file : toDelete){
+			file.delete();
+		}
+	}
+
+	private void spill(Key key, List<File> toDelete) {
+		byte[] content = null;
+		File file = null;
+		synchronized(this) {
+			content = pendingSpills.get(key);
+			if( null == content ){
+				// Removed or brought back to memory in the meantime
+				return;
+			}
+
+			// Each file has its own name so that a file being deleted is
+			// never the file of a newer entry
+			++spillFileCount;
+			file = new File(spillDir, computeFileName(key, spillFileCount));
+		}
+
+		boolean saved = writeFile(file, content);
+
+		synchronized(this) {
+			if( content != pendingSpills.get(key) ){
+				// Removed or brought back to memory while the file was written
+				if( saved ){
+					toDelete.add(file);
+				}
+				return;
+			}
+			pendingSpills.remove(key);
+
+			if( false == saved ){
+				unindexIfAbsent(key);
+				return;
+			}
+
+			spilledEntries.put(key, new SpilledEntry(file, content.length));
+			spillBytes += content.length;
+
+			// Evict least recently used files
+			Iterator<Map.Entry<Key,SpilledEntry>> it = spilledEntries.entrySet().iterator();
+			while( spillBytes > maxSpillBytes && it.hasNext() ){
+				Map.Entry<Key,SpilledEntry> entry = it.next();
+				Key evictedKey = entry.getKey();
+				SpilledEntry evicted = entry.getValue();
+				it.remove();
+				spillBytes -= evicted.size;
+				toDelete.add(evicted.file);
+				unindexIfAbsent(evictedKey);
+			}
+		}
+	}
+
+	private boolean writeFile(File file, byte[] content) {
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(file);
+			fos.write(content);
+			fos.close();
+			fos = null;
+			return true;
+		} catch(Exception e) {
+			logger.error("Unable to save geometry attachment to "+file.getAbsolutePath(),e);
+			file.delete();
+			return false;
+		} finally {
+			if( null != fos ){
+				try {
+					fos.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private byte[] readFile(File file) {
+		FileInputStream fis = null;
+		try {
+			int length = (int)file.length();
+			byte[] content = new byte[length];
+			fis = new FileInputStream(file);
+			int offset = 0;
+			while( offset < length ){
+				int count = fis.read(content, offset, length - offset);
+				if( count < 0 ){
+					throw new Exception("Unexpected end of file");
+				}
+				offset += count;
+			}
+			return content;
+		} catch(Exception e) {
+			logger.error("Unable to read geometry attachment from "+file.getAbsolutePath(),e);
+			return null;
+		} finally {
+			if( null != fis ){
+				try {
+					fis.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	// Called with the lock held
+	private void unindexIfAbsent(Key key) {
+		if( false == memoryEntries.containsKey(key)
+		 && false == pendingSpills.containsKey(key)
+		 && false == spilledEntries.containsKey(key) ){
+			unindex(key);
+		}
+	}
+
+	private void index(Key key) {
+		Set<Key> keys = keysByDocId.get(key.docId);
+		if( null == keys ){
+			keys = new HashSet<Key>();
+			keysByDocId.put(key.docId, keys);
+		}
+		keys.add(key);
+	}
+
+	private void unindex(Key key) {
+		Set<Key> keys = keysByDocId.get(key.docId);
+		if( null != keys ){
+			keys.remove(key);
+			if( keys.size() < 1 ){
+				keysByDocId.remove(key.docId);
+				revisionsByDocId.remove(key.docId);
+			}
+		}
+	}
+
+	private String computeFileName(Key key, long sequence) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(key.docId.getBytes("UTF-8"));
+			md.update((byte)0);
+			md.update(key.rev.getBytes("UTF-8"));
+			md.update((byte)0);
+			md.update(key.attName.getBytes("UTF-8"));
+			byte[] digest = md.digest();
+
+			StringBuilder sb = new StringBuilder();
+			for(byte b : digest){
+				sb.append( String.format("%02x", b & 0xff) );
+			}
+			sb.append("_");
+			sb.append(sequence);
+			sb.append(".geom");
+			return sb.toString();
+		} catch(Exception e) {
+			// SHA-1 and UTF-8 are always available
+			throw new RuntimeException("Unable to compute file name",e);
+		}
+	}
+}
@@ -6,7 +6,22 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -20,13 +35,86 @@ public class SimplifiedGeometryActions {
 	
 	static final long RESPONSE_LENGHT_LIMIT = 1000000L;
 	static final int RESPONSE_TIME_LIMIT_MS = 2000; // 2 seconds
+	static final public int DEFAULT_DOWNLOAD_PARALLELISM = 4;
+	static final public int DEFAULT_DOWNLOAD_THREAD_LIMIT = 16;
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	private CouchDb couchDb;
+	private int downloadParallelism;
+	private ExecutorService executor = null;
+	private GeometryAttachmentCache cache = null;
 
 	public SimplifiedGeometryActions(CouchDb couchDb){
+		this(couchDb, DEFAULT_DOWNLOAD_PARALLELISM);
+	}
+
+	/**
+	 * @param couchDb Database where the geometries are stored
+	 * @param downloadParallelism Maximum number of attachments downloaded
+	 * at once for a request. If 1 or less, attachments are downloaded one
+	 * after the other in the order requested.
+	 */
+	public SimplifiedGeometryActions(CouchDb couchDb, int downloadParallelism){
+		this(couchDb, downloadParallelism, DEFAULT_DOWNLOAD_THREAD_LIMIT);
+	}
+
+	/**
+	 * @param couchDb Database where the geometries are stored
+	 * @param downloadParallelism Maximum number of attachments downloaded
+	 * at once for a request. If 1 or less, attachments are downloaded one
+	 * after the other in the order requested.
+	 * @param downloadThreadLimit Maximum number of download threads shared
+	 * by all requests. When all threads are busy, a download is performed
+	 * by the thread serving the request.
+	 */
+	public SimplifiedGeometryActions(CouchDb couchDb, int downloadParallelism, int downloadThreadLimit){
 		this.couchDb = couchDb;
+		this.downloadParallelism = downloadParallelism;
+		
+		if( downloadParallelism > 1 ){
+			ThreadFactory threadFactory = new ThreadFactory() {
+				private int count = 0;
+				
+				@Override
+				synchronized public Thread newThread(Runnable r) {
+					++count;
+					Thread t = new Thread(r, "SimplifiedGeometry-"+count);
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			
+			// Bounded pool without a queue: when all threads are busy, the
+			// download runs in the thread serving the request
+			executor = new ThreadPoolExecutor(
+					0
+					,Math.max(1, downloadThreadLimit)
+					,60L
+					,TimeUnit.SECONDS
+					,new SynchronousQueue<Runnable>()
+					,threadFactory
+					,new ThreadPoolExecutor.CallerRunsPolicy()
+					);
+		}
+	}
+	
+	public GeometryAttachmentCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets a cache where attachments are looked up before they are
+	 * downloaded from the database.
+	 */
+	public void setCache(GeometryAttachmentCache cache) {
+		this.cache = cache;
+	}
+	
+	public void shutdown() {
+		if( null != executor ){
+			executor.shutdownNow();
+		}
 	}
 
 	public JSONObject getAttachments(Map<String, String> attNameByDocId) throws Exception {
@@ -37,6 +125,8 @@ public class SimplifiedGeometryActions {
 		JSONArray geometries = new JSONArray();
 		result.put("geometries", geometries);
 		
+		Revisions revisions = getRevisions(attNameByDocId.keySet());
+		
 		long currentSize = 0;
 		for(String docId : attNameByDocId.keySet()){
 			String attName = attNameByDocId.get(docId);
@@ -48,22 +138,19 @@ public class SimplifiedGeometryActions {
 			attObj.put("attName", attName);
 			
 			// Get revision
-			try {
-				JSONObject dbDoc = couchDb.getDocument(docId);
-				String revision = dbDoc.getString("_rev");
+			String revision = revisions.get(docId);
+			if( null != revision ){
 				attObj.put("rev", revision);
-				
-			} catch (Exception e) {
-				logger.error("Error obtaining document "+docId,e);
+			} else {
+				logger.error("Error obtaining revision for document "+docId);
 				attObj.put("error", true);
 			}
 			
 			try {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				couchDb.downloadAttachment(docId, attName, baos);
+				byte[] content = fetchAttachment(docId, revisions, attName);
 
 				StringWriter sw = new StringWriter();
-				ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+				ByteArrayInputStream bais = new ByteArrayInputStream(content);
 				InputStreamReader isr = new InputStreamReader(bais,"UTF-8");
 				
 				StreamUtils.copyStream(isr, sw);
@@ -114,6 +201,8 @@ public class SimplifiedGeometryActions {
 		JSONArray geometries = new JSONArray();
 		result.put("geometries", geometries);
 		
+		Revisions revisions = getRevisions(simplifiedGeometryRequest.getRequests());
+		
 		long currentSize = 0;
 		for(GeometryAttachmentRequest attachmentRequest : simplifiedGeometryRequest.getRequests()){
 			String docId = attachmentRequest.getDocId();
@@ -126,22 +215,19 @@ public class SimplifiedGeometryActions {
 			attObj.put("attName", attName);
 			
 			// Get revision
-			try {
-				JSONObject dbDoc = couchDb.getDocument(docId);
-				String revision = dbDoc.getString("_rev");
+			String revision = revisions.get(docId);
+			if( null != revision ){
 				attObj.put("rev", revision);
-				
-			} catch (Exception e) {
-				logger.error("Error obtaining document "+docId,e);
+			} else {
+				logger.error("Error obtaining revision for document "+docId);
 				attObj.put("error", true);
 			}
 			
 			try {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				couchDb.downloadAttachment(docId, attName, baos);
+				byte[] content = fetchAttachment(docId, revisions, attName);
 
 				StringWriter sw = new StringWriter();
-				ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+				ByteArrayInputStream bais = new ByteArrayInputStream(content);
 				InputStreamReader isr = new InputStreamReader(bais,"UTF-8");
 
 				StreamUtils.copyStream(isr, sw);
@@ -171,6 +257,13 @@ public class SimplifiedGeometryActions {
 		return result;
 	}
 
+	/**
+	 * Streams the requested attachments to the output stream. Attachments are
+	 * downloaded concurrently and written in the order in which the downloads
+	 * complete. The response is terminated when the size limit is exceeded or
+	 * the time limit is reached. Geometries that are not part of the response
+	 * are not reported.
+	 */
 	public void getAttachments(
 			SimplifiedGeometryRequest simplifiedGeometryRequest, 
 			OutputStream os
@@ -191,10 +284,35 @@ public class SimplifiedGeometryActions {
 		long startMs = System.currentTimeMillis();
 		long endMs = startMs + timeLimit;
 		
+		List<GeometryAttachmentRequest> requests = simplifiedGeometryRequest.getRequests();
+		
+		// Revisions for all documents, in one request
+		Revisions revisions = getRevisions(requests);
+		
 		ps.print("{\"geometries\":[");
 		
+		if( null == executor ){
+			getAttachmentsSerially(requests, revisions, attachmentOs, ps, sizeLimit, endMs);
+		} else {
+			getAttachmentsConcurrently(requests, revisions, attachmentOs, ps, sizeLimit, endMs);
+		}
+		
+		ps.print("]}");
+		
+		ps.flush();
+	}
+
+	private void getAttachmentsSerially(
+			List<GeometryAttachmentRequest> requests,
+			Revisions revisions,
+			AttachmentOutputStream attachmentOs,
+			PrintStream ps,
+			long sizeLimit,
+			long endMs
+		) throws Exception {
+		
 		boolean isFirst = true;
-		for(GeometryAttachmentRequest attachmentRequest : simplifiedGeometryRequest.getRequests()){
+		for(GeometryAttachmentRequest attachmentRequest : requests){
 			
 			if( isFirst ){
 				isFirst = false;
@@ -202,50 +320,236 @@ public class SimplifiedGeometryActions {
 				ps.print(",");
 			}
 			
-			String docId = attachmentRequest.getDocId();
-			String attName = attachmentRequest.getAttName();
-
-			ps.print("{\"id\":");
-			ps.print(JSONObject.quote(docId));
-			ps.print(",\"attName\":");
-			ps.print(JSONObject.quote(attName));
+			AttachmentDownload download = new AttachmentDownload(attachmentRequest, revisions);
+			download.call();
+			writeDownload(download, attachmentOs, ps);
 			
-			// Get revision
-			try {
-				JSONObject dbDoc = couchDb.getDocument(docId);
-				String revision = dbDoc.getString("_rev");
-				ps.print(",\"rev\":");
-				ps.print(JSONObject.quote(revision));
-				
-			} catch (Exception e) {
-				logger.error("Error obtaining document "+docId,e);
+			if( attachmentOs.getCount() > sizeLimit ){
+				break;
+			}
+			
+			long currentMs = System.currentTimeMillis();
+			if( currentMs > endMs ){
+				break;
 			}
+		}
+	}
 
-			ps.print(",\"att\":\"");
-			attachmentOs.setEscapingString(true);
+	private void getAttachmentsConcurrently(
+			List<GeometryAttachmentRequest> requests,
+			Revisions revisions,
+			AttachmentOutputStream attachmentOs,
+			PrintStream ps,
+			long sizeLimit,
+			long endMs
+		) throws Exception {
+		
+		CompletionService<AttachmentDownload> completionService = 
+				new ExecutorCompletionService<AttachmentDownload>(executor);
+		List<Future<AttachmentDownload>> futures = new ArrayList<Future<AttachmentDownload>>(requests.size());
+		
+		try {
+			// Keep at most downloadParallelism downloads in flight for this request
+			int nextIndex = 0;
+			int inFlight = 0;
+			while( nextIndex < requests.size() && inFlight < downloadParallelism ){
+				futures.add( completionService.submit( new AttachmentDownload(requests.get(nextIndex), revisions) ) );
+				++nextIndex;
+				++inFlight;
+			}
 			
-			try {
-				couchDb.downloadAttachment(docId, attName, ps);
+			boolean isFirst = true;
+			while( inFlight > 0 ){
+				long remainingMs = endMs - System.currentTimeMillis();
+				if( remainingMs <= 0 ){
+					break;
+				}
 				
-			} catch (Exception e) {
-				logger.error("Error obtaining attachment "+docId+"/"+attName,e);
+				Future<AttachmentDownload> future = completionService.poll(remainingMs, TimeUnit.MILLISECONDS);
+				if( null == future ){
+					// Time limit reached
+					break;
+				}
+				--inFlight;
+				
+				AttachmentDownload download = future.get();
+				
+				if( isFirst ){
+					isFirst = false;
+				} else {
+					ps.print(",");
+				}
+				writeDownload(download, attachmentOs, ps);
+				
+				if( attachmentOs.getCount() > sizeLimit ){
+					break;
+				}
+				
+				if( nextIndex < requests.size() ){
+					futures.add( completionService.submit( new AttachmentDownload(requests.get(nextIndex), revisions) ) );
+					++nextIndex;
+					++inFlight;
+				}
+			}
+			
+		} finally {
+			// Abandon downloads that did not make it in the response
+			for(Future<AttachmentDownload> future : futures){
+				future.cancel(true);
 			}
+		}
+	}
+	
+	private void writeDownload(
+			AttachmentDownload download,
+			AttachmentOutputStream attachmentOs,
+			PrintStream ps
+		) throws Exception {
+		
+		ps.print("{\"id\":");
+		ps.print(JSONObject.quote(download.getDocId()));
+		ps.print(",\"attName\":");
+		ps.print(JSONObject.quote(download.getAttName()));
+		
+		String revision = download.getRevision();
+		if( null != revision ){
+			ps.print(",\"rev\":");
+			ps.print(JSONObject.quote(revision));
+		}
+		
+		if( null == download.getContent() ){
+			ps.print(",\"error\":true}");
 			
+		} else {
+			ps.print(",\"att\":\"");
+			ps.flush();
+			attachmentOs.setEscapingString(true);
+			attachmentOs.write(download.getContent());
 			attachmentOs.setEscapingString(false);
 			ps.print("\"}");
-			
-			if( attachmentOs.getCount() > sizeLimit ){
-				break;
+		}
+	}
+	
+	/**
+	 * Current revisions of the documents of a request, along with the
+	 * cache change count at the time they were looked up.
+	 */
+	static private class Revisions {
+		private Map<String,String> revisionsByDocId = new HashMap<String,String>();
+		private long changeCount = -1;
+		
+		public String get(String docId) {
+			return revisionsByDocId.get(docId);
+		}
+	}
+	
+	/**
+	 * Returns the current revision of the documents associated with the
+	 * requests. Revisions known to the cache are used as is. The others are
+	 * obtained in a single request to the database.
+	 */
+	private Revisions getRevisions(Collection<GeometryAttachmentRequest> requests){
+		Set<String> docIds = new LinkedHashSet<String>();
+		for(GeometryAttachmentRequest attachmentRequest : requests){
+			docIds.add( attachmentRequest.getDocId() );
+		}
+		return getRevisions(docIds);
+	}
+	
+	private Revisions getRevisions(Set<String> docIds){
+		Revisions revisions = new Revisions();
+		
+		Set<String> missingDocIds = docIds;
+		if( null != cache ){
+			revisions.changeCount = cache.getChangeCount();
+			revisions.revisionsByDocId.putAll( cache.getCurrentRevisions(docIds) );
+			if( revisions.revisionsByDocId.size() > 0 ){
+				missingDocIds = new LinkedHashSet<String>(docIds);
+				missingDocIds.removeAll( revisions.revisionsByDocId.keySet() );
 			}
-			
-			long currentMs = System.currentTimeMillis();
-			if( currentMs > endMs ){
-				break;
+		}
+		
+		if( missingDocIds.size() > 0 ){
+			try {
+				revisions.revisionsByDocId.putAll( couchDb.getDocumentRevisions(missingDocIds) );
+			} catch(Exception e) {
+				logger.error("Error obtaining revisions for "+missingDocIds.size()+" documents",e);
 			}
 		}
 		
-		ps.print("]}");
+		return revisions;
+	}
+	
+	/**
+	 * Returns the content of an attachment. When the revision of the document
+	 * is known, the cache is consulted first and updated after the download.
+	 */
+	private byte[] fetchAttachment(String docId, Revisions revisions, String attName) throws Exception {
+		String revision = revisions.get(docId);
+		if( null != cache && null != revision ){
+			byte[] content = cache.get(docId, revision, attName);
+			if( null != content ){
+				return content;
+			}
+		}
 		
-		ps.flush();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		couchDb.downloadAttachment(docId, attName, baos);
+		byte[] content = baos.toByteArray();
+		
+		if( null != cache && null != revision ){
+			cache.put(docId, revision, attName, content, revisions.changeCount);
+		}
+		
+		return content;
+	}
+	
+	/**
+	 * Downloads an attachment in memory so that it can be written to
+	 * the response once completed.
+	 */
+	private class AttachmentDownload implements Callable<AttachmentDownload> {
+		private String docId;
+		private Revisions revisions;
+		private String revision;
+		private String attName;
+		private byte[] content = null;
+		
+		public AttachmentDownload(GeometryAttachmentRequest attachmentRequest, Revisions revisions){
+			this.docId = attachmentRequest.getDocId();
+			this.attName = attachmentRequest.getAttName();
+			this.revisions = revisions;
+			this.revision = revisions.get(docId);
+		}
+		
+		public String getDocId() {
+			return docId;
+		}
+
+		public String getRevision() {
+			return revision;
+		}
+
+		public String getAttName() {
+			return attName;
+		}
+
+		/**
+		 * Content of the attachment, or null if the download failed.
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		@Override
+		public AttachmentDownload call() throws Exception {
+			try {
+				content = fetchAttachment(docId, revisions, attName);
+				
+			} catch (Exception e) {
+				logger.error("Error obtaining attachment "+docId+"/"+attName,e);
+			}
+			return this;
+		}
 	}
 }
@@ -19,6 +19,7 @@ import org.json.JSONTokener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
 import ca.carleton.gcrc.json.servlet.JsonServlet;
 import ca.carleton.gcrc.utils.StreamUtils;
 
@@ -47,14 +48,46 @@ public class SimplifiedGeometryServlet extends JsonServlet {
 
 			actions = new SimplifiedGeometryActions(
 				configuration.getCouchDb()
+				,configuration.getDownloadParallelism()
 			);
 			
+			if( configuration.getCacheMemoryBytes() > 0 ){
+				GeometryAttachmentCache cache = new GeometryAttachmentCache(
+					configuration.getCacheMemoryBytes()
+					,configuration.getCacheSpillDir()
+					,configuration.getCacheSpillBytes()
+				);
+				actions.setCache(cache);
+				
+				// Drop previous revisions as documents change
+				try {
+					CouchDbChangeMonitor changeMonitor = configuration.getCouchDb().getChangeMonitor();
+					if( null != changeMonitor ){
+						changeMonitor.addChangeListener(cache);
+						
+						// Revisions can be served from the cache
+						cache.setChangesMonitored(true);
+					}
+				} catch(Exception e) {
+					logger.error("Unable to monitor changes for geometry attachment cache",e);
+				}
+			}
+			
 		} else {
 			throw new ServletException("Invalid class for configuration: "+configurationObj.getClass().getName());
 		}
 	}
 	
 	public void destroy() {
+		if( null != actions ){
+			actions.shutdown();
+			
+			GeometryAttachmentCache cache = actions.getCache();
+			if( null != cache ){
+				logger.info(""+cache);
+				cache.clear();
+			}
+		}
 	}
 
 	@SuppressWarnings("unused")
@@ -66,6 +99,21 @@ public class SimplifiedGeometryServlet extends JsonServlet {
 				JSONObject result = new JSONObject();
 				result.put("ok", true);
 				result.put("service", "simplifiedGeometry");
+				
+				GeometryAttachmentCache cache = actions.getCache();
+				if( null != cache ){
+					JSONObject jsonCache = new JSONObject();
+					jsonCache.put("hits", cache.getHitCount());
+					jsonCache.put("spillHits", cache.getSpillHitCount());
+					jsonCache.put("misses", cache.getMissCount());
+					jsonCache.put("entries", cache.getMemoryEntryCount());
+					jsonCache.put("bytes", cache.getMemoryBytes());
+					jsonCache.put("spilledEntries", cache.getSpilledEntryCount());
+					jsonCache.put("spilledBytes", cache.getSpillBytes());
+					jsonCache.put("evictions", cache.getEvictionCount());
+					jsonCache.put("invalidations", cache.getInvalidationCount());
+					result.put("cache", jsonCache);
+				}
 				sendJsonResponse(response, result);
 				
 			} else if( paths.size() == 1
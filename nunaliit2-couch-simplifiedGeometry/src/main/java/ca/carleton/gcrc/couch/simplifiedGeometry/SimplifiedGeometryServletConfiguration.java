@@ -1,5 +1,7 @@
 package ca.carleton.gcrc.couch.simplifiedGeometry;
 
+import java.io.File;
+
 import ca.carleton.gcrc.couch.client.CouchDb;
 
 public class SimplifiedGeometryServletConfiguration {
@@ -7,6 +9,10 @@ public class SimplifiedGeometryServletConfiguration {
 	final static public String CONFIGURATION_KEY = "SIMPLIFIED_GEOM_SERVLET_CONFIGURATION";
 
 	private CouchDb couchDb;
+	private int downloadParallelism = SimplifiedGeometryActions.DEFAULT_DOWNLOAD_PARALLELISM;
+	private long cacheMemoryBytes = GeometryAttachmentCache.DEFAULT_MEMORY_BYTES;
+	private File cacheSpillDir = null;
+	private long cacheSpillBytes = GeometryAttachmentCache.DEFAULT_SPILL_BYTES;
 	
 	public CouchDb getCouchDb() {
 		return couchDb;
@@ -14,4 +20,40 @@ public class SimplifiedGeometryServletConfiguration {
 	public void setCouchDb(CouchDb couchDb) {
 		this.couchDb = couchDb;
 	}
+	
+	public int getDownloadParallelism() {
+		return downloadParallelism;
+	}
+	public void setDownloadParallelism(int downloadParallelism) {
+		this.downloadParallelism = downloadParallelism;
+	}
+
+	/**
+	 * Size of the attachments kept in memory by the cache. Set to
+	 * zero to disable the cache.
+	 */
+	public long getCacheMemoryBytes() {
+		return cacheMemoryBytes;
+	}
+	public void setCacheMemoryBytes(long cacheMemoryBytes) {
+		this.cacheMemoryBytes = cacheMemoryBytes;
+	}
+	
+	/**
+	 * Directory where attachments evicted from memory are saved. If
+	 * not set, evicted attachments are discarded.
+	 */
+	public File getCacheSpillDir() {
+		return cacheSpillDir;
+	}
+	public void setCacheSpillDir(File cacheSpillDir) {
+		this.cacheSpillDir = cacheSpillDir;
+	}
+	
+	public long getCacheSpillBytes() {
+		return cacheSpillBytes;
+	}
+	public void setCacheSpillBytes(long cacheSpillBytes) {
+		this.cacheSpillBytes = cacheSpillBytes;
+	}
 }
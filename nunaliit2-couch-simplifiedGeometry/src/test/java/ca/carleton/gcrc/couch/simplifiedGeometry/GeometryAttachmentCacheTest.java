@@ -0,0 +1,157 @@
+package ca.carleton.gcrc.couch.simplifiedGeometry;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
+import junit.framework.TestCase;
+
+public class GeometryAttachmentCacheTest extends TestCase {
+
+	static private byte[] content(int size){
+		byte[] content = new byte[size];
+		for(int i=0; i<size; ++i){
+			content[i] = (byte)('a' + (i % 26));
+		}
+		return content;
+	}
+
+	public void testHitAndMiss() throws Exception {
+		GeometryAttachmentCache cache = new GeometryAttachmentCache(1000);
+		
+		assertNull( cache.get("doc1", "1-a", "att") );
+		cache.put("doc1", "1-a", "att", content(10));
+		assertNotNull( cache.get("doc1", "1-a", "att") );
+		
+		// Other revision is not the same entry
+		assertNull( cache.get("doc1", "2-b", "att") );
+		
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(10, cache.getMemoryBytes());
+	}
+
+	public void testEvictionBySize() throws Exception {
+		GeometryAttachmentCache cache = new GeometryAttachmentCache(250);
+		
+		cache.put("doc1", "1-a", "att", content(100));
+		cache.put("doc2", "1-a", "att", content(100));
+		
+		// Use doc1 so that doc2 is the least recently used
+		assertNotNull( cache.get("doc1", "1-a", "att") );
+		
+		cache.put("doc3", "1-a", "att", content(100));
+		
+		assertEquals(1, cache.getEvictionCount());
+		assertNull( cache.get("doc2", "1-a", "att") );
+		assertNotNull( cache.get("doc1", "1-a", "att") );
+		assertNotNull( cache.get("doc3", "1-a", "att") );
+		assertTrue( cache.getMemoryBytes() <= 250 );
+	}
+
+	public void testInvalidationFromChange() throws Exception {
+		GeometryAttachmentCache cache = new GeometryAttachmentCache(1000);
+		
+		cache.put("doc1", "1-a", "att", content(10));
+		cache.put("doc1", "2-b", "att", content(10));
+		cache.put("doc2", "1-a", "att", content(10));
+		
+		cache.change(CouchDbChangeListener.Type.DOC_UPDATED, "doc1", "2-b", null, null);
+		assertNull( cache.get("doc1", "1-a", "att") );
+		assertNotNull( cache.get("doc1", "2-b", "att") );
+		
+		cache.change(CouchDbChangeListener.Type.DOC_DELETED, "doc1", "3-c", null, null);
+		assertNull( cache.get("doc1", "2-b", "att") );
+		
+		assertNotNull( cache.get("doc2", "1-a", "att") );
+		assertEquals(10, cache.getMemoryBytes());
+	}
+
+	public void testSpillToDisk() throws Exception {
+		File spillDir = File.createTempFile("geomCache", "");
+		spillDir.delete();
+		spillDir.mkdirs();
+		
+		try {
+			GeometryAttachmentCache cache = new GeometryAttachmentCache(150, spillDir, 1000);
+			
+			byte[] content1 = content(100);
+			cache.put("doc1", "1-a", "att", content1);
+			cache.put("doc2", "1-a", "att", content(100));
+			
+			// doc1 was spilled to disk
+			assertEquals(1, cache.getSpilledEntryCount());
+			assertEquals(1, spillDir.listFiles().length);
+			
+			byte[] restored = cache.get("doc1", "1-a", "att");
+			assertNotNull(restored);
+			assertEquals(content1.length, restored.length);
+			for(int i=0; i<content1.length; ++i){
+				assertEquals(content1[i], restored[i]);
+			}
+			assertEquals(1, cache.getSpillHitCount());
+			
+			// Now doc2 is on disk
+			assertEquals(1, cache.getSpilledEntryCount());
+			
+			cache.clear();
+			assertEquals(0, spillDir.listFiles().length);
+			
+		} finally {
+			for(File file : spillDir.listFiles()){
+				file.delete();
+			}
+			spillDir.delete();
+		}
+	}
+
+	public void testCurrentRevisions() throws Exception {
+		GeometryAttachmentCache cache = new GeometryAttachmentCache(1000);
+		List<String> docIds = Arrays.asList("doc1", "doc2");
+		
+		// Revisions are only remembered when changes are monitored
+		cache.put("doc1", "1-a", "att", content(10), cache.getChangeCount());
+		assertEquals(0, cache.getCurrentRevisions(docIds).size());
+		
+		cache.setChangesMonitored(true);
+		cache.put("doc1", "1-a", "att", content(10), cache.getChangeCount());
+		assertEquals("1-a", cache.getCurrentRevisions(docIds).get("doc1"));
+		
+		// A change reported while the revision was looked up
+		long changeCount = cache.getChangeCount();
+		cache.change(CouchDbChangeListener.Type.DOC_UPDATED, "doc2", "2-b", null, null);
+		cache.put("doc2", "1-a", "att", content(10), changeCount);
+		assertNull( cache.getCurrentRevisions(docIds).get("doc2") );
+		
+		// Change of a cached document drops its revision
+		cache.change(CouchDbChangeListener.Type.DOC_UPDATED, "doc1", "2-b", null, null);
+		assertNull( cache.getCurrentRevisions(docIds).get("doc1") );
+	}
+
+	public void testSpilledEntryInvalidated() throws Exception {
+		File spillDir = File.createTempFile("geomCache", "");
+		spillDir.delete();
+		spillDir.mkdirs();
+		
+		try {
+			GeometryAttachmentCache cache = new GeometryAttachmentCache(150, spillDir, 1000);
+			
+			cache.put("doc1", "1-a", "att", content(100));
+			cache.put("doc2", "1-a", "att", content(100));
+			assertEquals(1, spillDir.listFiles().length);
+			
+			cache.change(CouchDbChangeListener.Type.DOC_DELETED, "doc1", "2-b", null, null);
+			assertEquals(0, cache.getSpilledEntryCount());
+			assertEquals(0, cache.getSpillBytes());
+			assertEquals(0, spillDir.listFiles().length);
+			assertNull( cache.get("doc1", "1-a", "att") );
+			
+		} finally {
+			for(File file : spillDir.listFiles()){
+				file.delete();
+			}
+			spillDir.delete();
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package ca.carleton.gcrc.couch.simplifiedGeometry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.carleton.gcrc.couch.client.CouchDb;
+import ca.carleton.gcrc.couch.client.CouchDbChangeListener;
+import junit.framework.TestCase;
+
+public class SimplifiedGeometryActionsTest extends TestCase {
+
+	/**
+	 * Database where every document has revision "1-<id>" and every
+	 * attachment contains "POINT(<id>)". Documents which identifier
+	 * starts with "missing" have no attachment.
+	 */
+	static private CouchDb createMockDb(){
+		return createMockDb(new int[2]);
+	}
+
+	/**
+	 * @param counters Receives the number of revision lookups and the
+	 * number of documents looked up
+	 */
+	static private CouchDb createMockDb(final int[] counters){
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if( "getDocumentRevisions".equals(method.getName()) ){
+					++counters[0];
+					counters[1] += ((Collection<?>)args[0]).size();
+					Map<String,String> revisions = new HashMap<String,String>();
+					for(Object docId : (Collection<?>)args[0]){
+						revisions.put((String)docId, "1-"+docId);
+					}
+					return revisions;
+					
+				} else if( "downloadAttachment".equals(method.getName()) ){
+					String docId = (String)args[0];
+					if( docId.startsWith("missing") ){
+						throw new Exception("Attachment not found");
+					}
+					OutputStream os = (OutputStream)args[2];
+					os.write( ("POINT(\""+docId+"\")").getBytes("UTF-8") );
+					return null;
+				}
+				throw new Exception("Not implemented: "+method.getName());
+			}
+		};
+		return (CouchDb)Proxy.newProxyInstance(
+				CouchDb.class.getClassLoader()
+				,new Class<?>[]{ CouchDb.class }
+				,handler
+				);
+	}
+
+	private JSONArray performRequest(SimplifiedGeometryActions actions, SimplifiedGeometryRequest request) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		actions.getAttachments(request, baos);
+		JSONObject response = new JSONObject( baos.toString("UTF-8") );
+		return response.getJSONArray("geometries");
+	}
+
+	public void testConcurrentDownloads() throws Exception {
+		SimplifiedGeometryActions actions = new SimplifiedGeometryActions(createMockDb(), 3);
+		try {
+			SimplifiedGeometryRequest request = new SimplifiedGeometryRequest();
+			for(int i=0; i<10; ++i){
+				request.addRequest("doc"+i, "simplified.wkt");
+			}
+			request.addRequest("missing", "simplified.wkt");
+			
+			JSONArray geometries = performRequest(actions, request);
+			assertEquals(11, geometries.length());
+			
+			Map<String,JSONObject> geometriesById = new HashMap<String,JSONObject>();
+			for(int i=0; i<geometries.length(); ++i){
+				JSONObject geometry = geometries.getJSONObject(i);
+				geometriesById.put(geometry.getString("id"), geometry);
+			}
+			
+			JSONObject doc5 = geometriesById.get("doc5");
+			assertEquals("1-doc5", doc5.getString("rev"));
+			assertEquals("simplified.wkt", doc5.getString("attName"));
+			assertEquals("POINT(\"doc5\")", doc5.getString("att"));
+			
+			JSONObject missing = geometriesById.get("missing");
+			assertTrue( missing.optBoolean("error", false) );
+			assertFalse( missing.has("att") );
+			
+		} finally {
+			actions.shutdown();
+		}
+	}
+
+	public void testDownloadThreadLimit() throws Exception {
+		// More downloads in flight than threads: the request thread
+		// performs the downloads that can not be handed to the pool
+		SimplifiedGeometryActions actions = new SimplifiedGeometryActions(createMockDb(), 4, 1);
+		try {
+			SimplifiedGeometryRequest request = new SimplifiedGeometryRequest();
+			for(int i=0; i<10; ++i){
+				request.addRequest("doc"+i, "simplified.wkt");
+			}
+			
+			JSONArray geometries = performRequest(actions, request);
+			assertEquals(10, geometries.length());
+			for(int i=0; i<geometries.length(); ++i){
+				assertTrue( geometries.getJSONObject(i).has("att") );
+			}
+			
+		} finally {
+			actions.shutdown();
+		}
+	}
+
+	public void testRevisionsFromCache() throws Exception {
+		int[] counters = new int[2];
+		SimplifiedGeometryActions actions = new SimplifiedGeometryActions(createMockDb(counters), 1);
+		GeometryAttachmentCache cache = new GeometryAttachmentCache(10000);
+		cache.setChangesMonitored(true);
+		actions.setCache(cache);
+		
+		SimplifiedGeometryRequest request = new SimplifiedGeometryRequest();
+		request.addRequest("doc1", "simplified.wkt");
+		request.addRequest("doc2", "simplified.wkt");
+		
+		performRequest(actions, request);
+		assertEquals(1, counters[0]);
+		assertEquals(2, counters[1]);
+		
+		// Revisions and attachments come from the cache
+		JSONArray geometries = performRequest(actions, request);
+		assertEquals(2, geometries.length());
+		assertEquals("1-doc1", geometries.getJSONObject(0).getString("rev"));
+		assertEquals(1, counters[0]);
+		assertEquals(2, cache.getHitCount());
+		
+		// A changed document is looked up again
+		cache.change(CouchDbChangeListener.Type.DOC_UPDATED, "doc1", "2-doc1", null, null);
+		performRequest(actions, request);
+		assertEquals(2, counters[0]);
+		assertEquals(3, counters[1]);
+	}
+
+	public void testSizeLimit() throws Exception {
+		SimplifiedGeometryActions actions = new SimplifiedGeometryActions(createMockDb(), 2);
+		try {
+			SimplifiedGeometryRequest request = new SimplifiedGeometryRequest();
+			for(int i=0; i<10; ++i){
+				request.addRequest("doc"+i, "simplified.wkt");
+			}
+			request.setSizeLimit(1L);
+			
+			JSONArray geometries = performRequest(actions, request);
+			assertEquals(1, geometries.length());
+			
+		} finally {
+			actions.shutdown();
+		}
+	}
+
+	public void testSerialDownloads() throws Exception {
+		SimplifiedGeometryActions actions = new SimplifiedGeometryActions(createMockDb(), 1);
+		
+		SimplifiedGeometryRequest request = new SimplifiedGeometryRequest();
+		request.addRequest("doc1", "simplified.wkt");
+		request.addRequest("doc2", "simplified.wkt");
+		
+		JSONArray geometries = performRequest(actions, request);
+		assertEquals(2, geometries.length());
+		assertEquals("doc1", geometries.getJSONObject(0).getString("id"));
+		assertEquals("POINT(\"doc1\")", geometries.getJSONObject(0).getString("att"));
+		assertEquals("1-doc1", geometries.getJSONObject(0).getString("rev"));
+	}
+}
@@ -238,20 +238,23 @@ public class SubmissionServlet extends JsonServlet {
 				}
 
 				InputStream is = result.getInputStream();
-
-				resp.setStatus(200);
-				resp.setContentType(result.getContentType());
-				resp.setCharacterEncoding(result.getContentEncoding());
-
-				resp.addHeader("Cache-Control", "no-cache");
-				resp.addHeader("Pragma", "no-cache");
-				resp.addHeader("Expires", "-1");
-
-				OutputStream os = resp.getOutputStream();
-				
-				StreamUtils.copyStream(is, os);
-				
-				os.flush();
+				try {
+					resp.setStatus(200);
+					resp.setContentType(result.getContentType());
+					resp.setCharacterEncoding(result.getContentEncoding());
+	
+					resp.addHeader("Cache-Control", "no-cache");
+					resp.addHeader("Pragma", "no-cache");
+					resp.addHeader("Expires", "-1");
+	
+					OutputStream os = resp.getOutputStream();
+					
+					StreamUtils.copyStream(is, os);
+					
+					os.flush();
+				} finally {
+					is.close();
+				}
 				
 			} else {
 				throw new Exception("Invalid action requested");
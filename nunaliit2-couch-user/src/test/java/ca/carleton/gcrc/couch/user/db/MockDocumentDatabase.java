@@ -17,10 +17,12 @@ import java.util.Vector;
 
 import org.json.JSONObject;
 
+import ca.carleton.gcrc.couch.client.CouchBulkResult;
 import ca.carleton.gcrc.couch.client.CouchClient;
 import ca.carleton.gcrc.couch.client.CouchContext;
 import ca.carleton.gcrc.couch.client.CouchDb;
 import ca.carleton.gcrc.couch.client.CouchDbChangeMonitor;
+import ca.carleton.gcrc.couch.client.CouchDbChanges;
 import ca.carleton.gcrc.couch.client.CouchDbSecurityDocument;
 import ca.carleton.gcrc.couch.client.CouchDesignDocument;
 import ca.carleton.gcrc.couch.client.CouchDocumentOptions;
@@ -163,6 +165,26 @@ public class MockDocumentDatabase implements CouchDb {
 		docsById.remove(docId);
 	}
 
+	@Override
+	public List<CouchBulkResult> bulkDocuments(List<JSONObject> docs) throws Exception {
+		throw new Exception("Not implemented");
+	}
+
+	@Override
+	public Map<String,String> getDocumentRevisions(Collection<String> docIds) throws Exception {
+		throw new Exception("Not implemented");
+	}
+
+	@Override
+	public List<JSONObject> bulkGetDocuments(List<String> docIds) throws Exception {
+		throw new Exception("Not implemented");
+	}
+
+	@Override
+	public CouchDbChanges getChanges(String since, int limit) throws Exception {
+		throw new Exception("Not implemented");
+	}
+
 	@Override
 	public void uploadAttachment(
 			JSONObject doc, 
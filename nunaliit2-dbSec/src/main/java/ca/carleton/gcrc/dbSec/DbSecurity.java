@@ -66,10 +66,25 @@ public class DbSecurity {
 	static final private String DB_NAME_COLUMNS = "dbsec_columns";
 
 	private Connection connection;
+	private TableSchemaCache schemaCache = null;
 
 	public DbSecurity(Connection connection) {
 		this.connection = connection;
 	}
+
+	/**
+	 * @param connection Connection used to access the database
+	 * @param schemaCache Cache where computed table schemas are kept. Can
+	 * be shared with other instances. If null, schemas are always computed.
+	 */
+	public DbSecurity(Connection connection, TableSchemaCache schemaCache) {
+		this.connection = connection;
+		this.schemaCache = schemaCache;
+	}
+
+	public TableSchemaCache getSchemaCache() {
+		return schemaCache;
+	}
 	
 	public Connection getConnection() {
 		return connection;
@@ -139,6 +154,13 @@ public class DbSecurity {
 			return new HashMap<String,TableSchemaImpl>();
 		}
 		
+		if( null != schemaCache ) {
+			Map<String,TableSchemaImpl> cached = schemaCache.get(groups, logicalNames);
+			if( null != cached ) {
+				return cached;
+			}
+		}
+		
 		String sqlQuery = null;
 		{
 			StringWriter sw = new StringWriter();
@@ -217,6 +239,10 @@ public class DbSecurity {
 			retrieveColumnTypes(tableData);
 		}
 		
+		if( null != schemaCache ) {
+			schemaCache.put(groups, logicalNames, nameToTableMap);
+		}
+		
 		return nameToTableMap;
 	}
 	
@@ -296,24 +322,32 @@ public class DbSecurity {
 		}
 		
 		Statement stmt = connection.createStatement();
-		if( stmt.execute(sqlQuery) ) {
-			ResultSet rs = stmt.getResultSet();
-			ResultSetMetaData rsmd = rs.getMetaData();
+		try {
+			if( stmt.execute(sqlQuery) ) {
+				ResultSet rs = stmt.getResultSet();
+				ResultSetMetaData rsmd = rs.getMetaData();
 			
-			int count = rsmd.getColumnCount();
-			for(int loop=0; loop<count; ++loop) {
-				String columnName = rsmd.getColumnName(loop+1);
-				int sqlType = rsmd.getColumnType(loop+1);
-				String sqlTypeName = rsmd.getColumnTypeName(loop+1);
+				int count = rsmd.getColumnCount();
+				for(int loop=0; loop<count; ++loop) {
+					String columnName = rsmd.getColumnName(loop+1);
+					int sqlType = rsmd.getColumnType(loop+1);
+					String sqlTypeName = rsmd.getColumnTypeName(loop+1);
 
-				ColumnDataImpl columnDataImpl = tableData.createColumnDataFromName( columnName );
+					ColumnDataImpl columnDataImpl = tableData.createColumnDataFromName( columnName );
 				
-				ColumnData.Type colType = ColumnDataUtils.columnDataTypeFromSQLType(
-						sqlType, columnName, sqlTypeName);
+					ColumnData.Type colType = ColumnDataUtils.columnDataTypeFromSQLType(
+							sqlType, columnName, sqlTypeName);
 				
-				// Set column type
-				columnDataImpl.setColumnType(colType);
-			}	
+					// Set column type
+					columnDataImpl.setColumnType(colType);
+				}	
+			}
+		} finally {
+			try {
+				stmt.close();
+			} catch(Exception e) {
+				// Ignore
+			}
 		}
 	}
 }
@@ -53,6 +53,7 @@ import ca.carleton.gcrc.dbSec.impl.ColumnDataUtils;
 import ca.carleton.gcrc.dbSec.impl.ExpressionConstantImpl;
 import ca.carleton.gcrc.dbSec.impl.FieldSelectorComparator;
 import ca.carleton.gcrc.dbSec.impl.RecordSelectorComparator;
+import ca.carleton.gcrc.dbSec.impl.ResultSetJsonWriter;
 import ca.carleton.gcrc.dbSec.impl.SqlElement;
 import ca.carleton.gcrc.dbSec.impl.TypedValue;
 import ca.carleton.gcrc.dbSec.impl.VariablesImpl;
@@ -307,6 +308,65 @@ public class DbTableAccess {
 			,Integer offset
 			) throws Exception {
 		
+		PreparedStatement pstmt = prepareQuery(
+				recordSelectors
+				,fieldSelectors
+				,groupBySelectors
+				,orderBySpecifiers
+				,limit
+				,offset
+				);
+		
+		// Now, we need to retrieve the objects
+		JSONArray array = ColumnDataUtils.executeStatementToJson(pstmt);
+		
+		return array;
+	}
+
+	/**
+	 * Queries the database for a set of rows matching the given selectors. The query is
+	 * performed immediately but the rows are read from the database as they are written
+	 * by the returned writer, instead of being accumulated in memory. The caller must
+	 * write or close the returned writer.
+	 * @param recordSelectors List of record selectors (WHERE)
+	 * @param fieldSelectors  List of column selectors (SELECT) or null to select all
+	 * @param groupBySelectors Field selectors to group records (GROUP BY) or null for not grouping
+	 * @param orderBySpecifiers Field selectors to order records (ORDER BY) or null for no order
+	 * @param limit Limit on the number of records returned (LIMIT) or null if not used
+	 * @param offset Start offset or returned records (OFFSET) or null if not used.
+	 * @return A writer that produces a JSON array of the selected rows
+	 * @throws Exception
+	 */
+	public ResultSetJsonWriter streamQuery(
+			List<RecordSelector> recordSelectors
+			,List<FieldSelector> fieldSelectors
+			,List<FieldSelector> groupBySelectors
+			,List<OrderSpecifier> orderBySpecifiers
+			,Integer limit
+			,Integer offset
+			) throws Exception {
+		
+		PreparedStatement pstmt = prepareQuery(
+				recordSelectors
+				,fieldSelectors
+				,groupBySelectors
+				,orderBySpecifiers
+				,limit
+				,offset
+				);
+		
+		return ResultSetJsonWriter.executeStatement(pstmt);
+	}
+
+	private PreparedStatement prepareQuery(
+			List<RecordSelector> recordSelectors
+			,List<FieldSelector> fieldSelectors
+			,List<FieldSelector> groupBySelectors
+			,List<OrderSpecifier> orderBySpecifiers
+			,Integer limit
+			,Integer offset
+			) throws Exception {
+		
 		OperationAccess operationAccess = tableSchema.getQueryAccess();
 		if( false == operationAccess.isAllowed() ) {
 			throw new Exception("Attempting to query a table while the privilege is not allowed: "+tableSchema.getLogicalName()+" ("+tableSchema.getPhysicalName()+")");
@@ -494,10 +554,7 @@ public class DbTableAccess {
 			}
 		}
 		
-		// Now, we need to retrieve the objects
-		JSONArray array = ColumnDataUtils.executeStatementToJson(pstmt);
-		
-		return array;
+		return pstmt;
 	}
 
 	/**
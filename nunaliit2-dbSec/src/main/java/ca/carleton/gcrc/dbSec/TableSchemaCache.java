@@ -0,0 +1,197 @@
+package ca.carleton.gcrc.dbSec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.carleton.gcrc.dbSec.impl.TableSchemaImpl;
+
+/**
+ * Keeps the table schemas computed by DbSecurity so that the security
+ * tables and the table metadata are not queried on every request. Schemas
+ * are cached by the set of groups a user belongs to and the requested
+ * table names. Entries expire after a configurable time, or when
+ * invalidated explicitly after the security tables are modified.
+ *
+ * A single instance is meant to be shared by all instances of DbSecurity
+ * that access the same database. This class is thread safe.
+ */
+public class TableSchemaCache {
+
+	static final public long DEFAULT_TIME_TO_LIVE_MS = 60L * 1000L; // 1 minute
+	static final public int DEFAULT_MAX_ENTRIES = 1000;
+
+	static private class Entry {
+		// Null when all tables were requested
+		private List<String> logicalNames;
+		private Map<String,TableSchemaImpl> nameToTableMap;
+		private long expiry;
+	}
+
+	private long timeToLiveMs;
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	private Map<String,Entry> entries = new HashMap<String,Entry>();
+
+	// Counters
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	public TableSchemaCache() {
+		this(DEFAULT_TIME_TO_LIVE_MS);
+	}
+
+	public TableSchemaCache(long timeToLiveMs) {
+		this.timeToLiveMs = timeToLiveMs;
+	}
+
+	synchronized public long getTimeToLiveMs() {
+		return timeToLiveMs;
+	}
+
+	synchronized public void setTimeToLiveMs(long timeToLiveMs) {
+		this.timeToLiveMs = timeToLiveMs;
+	}
+
+	synchronized public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	synchronized public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Returns the tables cached for a set of groups and table names, or null
+	 * if the information is not cached.
+	 * @param groups Groups the user belongs to
+	 * @param logicalNames Requested tables. Null for all tables.
+	 */
+	synchronized public Map<String,TableSchemaImpl> get(List<Integer> groups, List<String> logicalNames) {
+		String key = computeKey(groups, logicalNames);
+		Entry entry = entries.get(key);
+		if( null != entry && entry.expiry < System.currentTimeMillis() ) {
+			entries.remove(key);
+			entry = null;
+		}
+
+		if( null == entry ) {
+			++missCount;
+			return null;
+		}
+
+		++hitCount;
+		return new HashMap<String,TableSchemaImpl>(entry.nameToTableMap);
+	}
+
+	synchronized public void put(List<Integer> groups, List<String> logicalNames, Map<String,TableSchemaImpl> nameToTableMap) {
+		if( timeToLiveMs <= 0 ) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		if( entries.size() >= maxEntries ) {
+			removeExpiredEntries(now);
+		}
+		if( entries.size() >= maxEntries ) {
+			// Still full. Start over.
+			entries.clear();
+		}
+
+		Entry entry = new Entry();
+		if( null != logicalNames ) {
+			entry.logicalNames = new ArrayList<String>(logicalNames);
+		}
+		entry.nameToTableMap = new HashMap<String,TableSchemaImpl>(nameToTableMap);
+		entry.expiry = now + timeToLiveMs;
+		entries.put(computeKey(groups, logicalNames), entry);
+	}
+
+	/**
+	 * Removes all cached schemas. This should be called after the security
+	 * tables or the structure of the tables are modified.
+	 */
+	synchronized public void invalidate() {
+		entries.clear();
+	}
+
+	/**
+	 * Removes the cached schemas that refer to a table, including the
+	 * lists of all available tables.
+	 */
+	synchronized public void invalidateTable(String logicalName) {
+		Iterator<Entry> it = entries.values().iterator();
+		while( it.hasNext() ) {
+			Entry entry = it.next();
+			if( null == entry.logicalNames
+			 || entry.logicalNames.contains(logicalName) ) {
+				it.remove();
+			}
+		}
+	}
+
+	synchronized public int getEntryCount() {
+		return entries.size();
+	}
+
+	synchronized public long getHitCount() {
+		return hitCount;
+	}
+
+	synchronized public long getMissCount() {
+		return missCount;
+	}
+
+	public String toString() {
+		return "Table schema cache(entries:"+getEntryCount()
+				+" hits:"+getHitCount()
+				+" misses:"+getMissCount()
+				+")";
+	}
+
+	private void removeExpiredEntries(long now) {
+		Iterator<Entry> it = entries.values().iterator();
+		while( it.hasNext() ) {
+			Entry entry = it.next();
+			if( entry.expiry < now ) {
+				it.remove();
+			}
+		}
+	}
+
+	private String computeKey(List<Integer> groups, List<String> logicalNames) {
+		List<Integer> sortedGroups = new ArrayList<Integer>(groups);
+		Collections.sort(sortedGroups);
+
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for(Integer groupId : sortedGroups) {
+			if( first ) {
+				first = false;
+			} else {
+				sb.append(",");
+			}
+			sb.append(groupId);
+		}
+		sb.append("|");
+		if( null == logicalNames ) {
+			// All tables. The separator can not appear in a list of names.
+			sb.append("|*");
+		} else {
+			List<String> sortedNames = new ArrayList<String>(logicalNames);
+			Collections.sort(sortedNames);
+			first = true;
+			for(String logicalName : sortedNames) {
+				if( first ) {
+					first = false;
+				} else {
+					sb.append(",");
+				}
+				sb.append(logicalName);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -35,7 +35,6 @@ package ca.carleton.gcrc.dbSec.impl;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.Time;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -311,33 +310,12 @@ public class ColumnDataUtils {
 	}
 
 	static public JSONArray executeStatementToJson(PreparedStatement pstmt) throws Exception {
-		boolean resultAvailable = pstmt.execute();
-		if (!resultAvailable) { // There's a ResultSet to be had
-			// indicates an update count or no results - this must be no results
-			throw new Exception("Query returned no results");
-		}
-		ResultSet rs = pstmt.getResultSet();
-		ResultSetMetaData rsmd = rs.getMetaData();
+		// Results are accumulated in memory. No need for a cursor.
+		ResultSetJsonWriter writer = ResultSetJsonWriter.executeStatement(pstmt, 0);
 
-		JSONArray array = new JSONArray();
+		JSONArray array = null;
 		try {
-			while (rs.next()) {
-
-				JSONObject obj = new JSONObject();
-				for(int loop=0; loop<rsmd.getColumnCount(); ++loop) {
-					int index = loop+1;						
-					addColumnToJson(
-							obj
-							,rs
-							,index
-							,rsmd.getColumnName(index)
-							,rsmd.getColumnType(index)
-							,rsmd.getColumnTypeName(index)
-							);
-				}
-				array.put(obj);
-
-			}
+			array = writer.toJSONArray();
 		} catch (Exception je) {
 			throw new ServletException("Error while parsing results",je);
 		}
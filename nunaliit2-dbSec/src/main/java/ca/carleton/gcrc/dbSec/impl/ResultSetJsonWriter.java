@@ -0,0 +1,191 @@
+package ca.carleton.gcrc.dbSec.impl;
+
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the rows of a result set to JSON objects as they are read from
+ * the database. The column metadata is obtained once, when the statement
+ * is executed.
+ *
+ * When a fetch size is given, the rows are retrieved from the database in
+ * batches of that size. The PostgreSQL driver only uses a cursor when the
+ * connection is not in auto-commit mode; auto-commit is turned off while the
+ * rows are read and restored when the writer is closed.
+ *
+ * The statement is executed before anything is written so that errors
+ * in the query can still be reported to the client.
+ */
+public class ResultSetJsonWriter {
+
+	static final public int DEFAULT_FETCH_SIZE = 500;
+
+	static final protected Logger logger = LoggerFactory.getLogger("ca.carleton.gcrc.dbSec.impl.ResultSetJsonWriter");
+
+	/**
+	 * Executes a statement and returns a writer for the result rows,
+	 * fetching the rows in batches of the default size.
+	 */
+	static public ResultSetJsonWriter executeStatement(PreparedStatement pstmt) throws Exception {
+		return executeStatement(pstmt, DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * Executes a statement and returns a writer for the result rows.
+	 * @param pstmt Statement to execute
+	 * @param fetchSize Number of rows fetched at once. If 0, the driver
+	 * decides (the PostgreSQL driver reads all rows at once).
+	 */
+	static public ResultSetJsonWriter executeStatement(PreparedStatement pstmt, int fetchSize) throws Exception {
+		Connection connection = null;
+		boolean autoCommitDisabled = false;
+		if( fetchSize > 0 ) {
+			connection = pstmt.getConnection();
+			if( connection.getAutoCommit() ) {
+				connection.setAutoCommit(false);
+				autoCommitDisabled = true;
+			}
+			pstmt.setFetchSize(fetchSize);
+		}
+
+		try {
+			boolean resultAvailable = pstmt.execute();
+			if (!resultAvailable) { // There's a ResultSet to be had
+				// indicates an update count or no results - this must be no results
+				throw new Exception("Query returned no results");
+			}
+			ResultSet rs = pstmt.getResultSet();
+
+			return new ResultSetJsonWriter(rs, autoCommitDisabled ? connection : null);
+
+		} catch(Exception e) {
+			if( autoCommitDisabled ) {
+				restoreAutoCommit(connection);
+			}
+			throw e;
+		}
+	}
+
+	static private void restoreAutoCommit(Connection connection) {
+		try {
+			connection.commit();
+			connection.setAutoCommit(true);
+		} catch(Exception e) {
+			logger.error("Unable to restore auto-commit on connection",e);
+		}
+	}
+
+	private ResultSet rs;
+	private Connection autoCommitConnection;
+	private int columnCount;
+	private String[] columnNames;
+	private int[] columnTypes;
+	private String[] columnTypeNames;
+	private boolean closed = false;
+
+	private ResultSetJsonWriter(ResultSet rs, Connection autoCommitConnection) throws Exception {
+		this.rs = rs;
+		this.autoCommitConnection = autoCommitConnection;
+
+		ResultSetMetaData rsmd = rs.getMetaData();
+		columnCount = rsmd.getColumnCount();
+		columnNames = new String[columnCount];
+		columnTypes = new int[columnCount];
+		columnTypeNames = new String[columnCount];
+		for(int loop=0; loop<columnCount; ++loop) {
+			int index = loop+1;
+			columnNames[loop] = rsmd.getColumnName(index);
+			columnTypes[loop] = rsmd.getColumnType(index);
+			columnTypeNames[loop] = rsmd.getColumnTypeName(index);
+		}
+	}
+
+	/**
+	 * Returns the next row as a JSON object, or null if there are no more rows.
+	 */
+	public JSONObject nextRow() throws Exception {
+		if( closed || false == rs.next() ) {
+			return null;
+		}
+
+		JSONObject obj = new JSONObject();
+		for(int loop=0; loop<columnCount; ++loop) {
+			ColumnDataUtils.addColumnToJson(
+					obj
+					,rs
+					,loop+1
+					,columnNames[loop]
+					,columnTypes[loop]
+					,columnTypeNames[loop]
+					);
+		}
+		return obj;
+	}
+
+	/**
+	 * Writes all rows as a JSON array and closes the result set.
+	 * @return Number of rows written
+	 */
+	public int write(Writer writer) throws Exception {
+		int count = 0;
+		try {
+			writer.write("[");
+			JSONObject obj = nextRow();
+			while( null != obj ) {
+				if( count > 0 ) {
+					writer.write(",");
+				}
+				obj.write(writer);
+				++count;
+
+				obj = nextRow();
+			}
+			writer.write("]");
+		} finally {
+			close();
+		}
+		return count;
+	}
+
+	/**
+	 * Reads all rows in memory and closes the result set.
+	 */
+	public JSONArray toJSONArray() throws Exception {
+		JSONArray array = new JSONArray();
+		try {
+			JSONObject obj = nextRow();
+			while( null != obj ) {
+				array.put(obj);
+				obj = nextRow();
+			}
+		} finally {
+			close();
+		}
+		return array;
+	}
+
+	public void close() {
+		if( closed ) {
+			return;
+		}
+		closed = true;
+
+		try {
+			rs.close();
+		} catch(Exception e) {
+			// Ignore
+		}
+
+		if( null != autoCommitConnection ) {
+			restoreAutoCommit(autoCommitConnection);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package ca.carleton.gcrc.dbSec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.carleton.gcrc.dbSec.impl.TableSchemaImpl;
+import junit.framework.TestCase;
+
+public class TableSchemaCacheTest extends TestCase {
+
+	static private Map<String,TableSchemaImpl> createTables(String... names) {
+		Map<String,TableSchemaImpl> nameToTableMap = new HashMap<String,TableSchemaImpl>();
+		for(String name : names) {
+			TableSchemaImpl tableData = new TableSchemaImpl();
+			tableData.setLogicalName(name);
+			tableData.setPhysicalName(name);
+			nameToTableMap.put(name, tableData);
+		}
+		return nameToTableMap;
+	}
+
+	public void testGroupOrder() throws Exception {
+		TableSchemaCache cache = new TableSchemaCache();
+		List<String> names = Arrays.asList("t1");
+
+		cache.put(Arrays.asList(2, 1), names, createTables("t1"));
+
+		Map<String,TableSchemaImpl> cached = cache.get(Arrays.asList(1, 2), names);
+		if( null == cached || false == cached.containsKey("t1") ) {
+			fail("Order of groups should not matter");
+		}
+		if( null != cache.get(Arrays.asList(1), names) ) {
+			fail("Different groups should not share schemas");
+		}
+		if( null != cache.get(Arrays.asList(1, 2), null) ) {
+			fail("All tables should be cached separately");
+		}
+		if( 1 != cache.getHitCount() || 2 != cache.getMissCount() ) {
+			fail("Unexpected counters: "+cache);
+		}
+	}
+
+	public void testUnavailableTable() throws Exception {
+		TableSchemaCache cache = new TableSchemaCache();
+		List<Integer> groups = Arrays.asList(1);
+		List<String> names = Arrays.asList("hidden");
+
+		// Remember that the table is not available
+		cache.put(groups, names, createTables());
+
+		Map<String,TableSchemaImpl> cached = cache.get(groups, names);
+		if( null == cached || cached.size() != 0 ) {
+			fail("Empty result should be cached");
+		}
+	}
+
+	public void testExpiry() throws Exception {
+		TableSchemaCache cache = new TableSchemaCache(1);
+		List<Integer> groups = Arrays.asList(1);
+
+		cache.put(groups, null, createTables("t1", "t2"));
+		Thread.sleep(10);
+		if( null != cache.get(groups, null) ) {
+			fail("Entry should have expired");
+		}
+	}
+
+	public void testInvalidateTable() throws Exception {
+		TableSchemaCache cache = new TableSchemaCache();
+		List<Integer> groups = Arrays.asList(1);
+
+		cache.put(groups, Arrays.asList("t1"), createTables("t1"));
+		cache.put(groups, Arrays.asList("t2"), createTables("t2"));
+		cache.put(groups, null, createTables("t1", "t2"));
+
+		cache.invalidateTable("t1");
+		if( null != cache.get(groups, Arrays.asList("t1")) ) {
+			fail("Table should be invalidated");
+		}
+		if( null != cache.get(groups, null) ) {
+			fail("List of all tables should be invalidated");
+		}
+		if( null == cache.get(groups, Arrays.asList("t2")) ) {
+			fail("Other tables should remain cached");
+		}
+
+		cache.invalidate();
+		if( 0 != cache.getEntryCount() ) {
+			fail("Cache should be empty");
+		}
+	}
+}
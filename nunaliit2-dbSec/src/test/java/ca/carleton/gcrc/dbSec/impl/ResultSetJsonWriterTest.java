@@ -0,0 +1,176 @@
+package ca.carleton.gcrc.dbSec.impl;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.json.JSONArray;
+
+import junit.framework.TestCase;
+
+public class ResultSetJsonWriterTest extends TestCase {
+
+	/**
+	 * Statement that returns a result set with an integer column "id" and
+	 * a string column "name". Only supports the calls made by the writer.
+	 */
+	static private class MockStatement implements InvocationHandler {
+		private int rowCount;
+		private int currentRow = 0;
+		private boolean autoCommit = true;
+		private int fetchSize = 0;
+		private int metaDataCount = 0;
+		private int commitCount = 0;
+		private boolean resultSetClosed = false;
+
+		public MockStatement(int rowCount) {
+			this.rowCount = rowCount;
+		}
+
+		public PreparedStatement getStatement() {
+			return (PreparedStatement)createProxy(PreparedStatement.class);
+		}
+
+		private Object createProxy(Class<?> cl) {
+			return Proxy.newProxyInstance(
+				cl.getClassLoader()
+				,new Class<?>[]{ cl }
+				,this
+				);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			// Statement
+			if( "getConnection".equals(name) ){
+				return createProxy(Connection.class);
+			}
+			if( "setFetchSize".equals(name) ){
+				fetchSize = (Integer)args[0];
+				return null;
+			}
+			if( "execute".equals(name) ){
+				return true;
+			}
+			if( "getResultSet".equals(name) ){
+				return createProxy(ResultSet.class);
+			}
+			// Connection
+			if( "getAutoCommit".equals(name) ){
+				return autoCommit;
+			}
+			if( "setAutoCommit".equals(name) ){
+				autoCommit = (Boolean)args[0];
+				return null;
+			}
+			if( "commit".equals(name) ){
+				++commitCount;
+				return null;
+			}
+			// Result set
+			if( "getMetaData".equals(name) ){
+				++metaDataCount;
+				return createProxy(ResultSetMetaData.class);
+			}
+			if( "next".equals(name) ){
+				++currentRow;
+				return currentRow <= rowCount;
+			}
+			if( "getInt".equals(name) ){
+				return currentRow;
+			}
+			if( "getString".equals(name) ){
+				return "name"+currentRow;
+			}
+			if( "close".equals(name) ){
+				resultSetClosed = true;
+				return null;
+			}
+			// Result set metadata
+			if( "getColumnCount".equals(name) ){
+				return 2;
+			}
+			if( "getColumnName".equals(name) ){
+				return 1 == (Integer)args[0] ? "id" : "name";
+			}
+			if( "getColumnType".equals(name) ){
+				return 1 == (Integer)args[0] ? java.sql.Types.INTEGER : java.sql.Types.VARCHAR;
+			}
+			if( "getColumnTypeName".equals(name) ){
+				return 1 == (Integer)args[0] ? "int4" : "varchar";
+			}
+			throw new Exception("Unexpected call: "+name);
+		}
+	}
+
+	public void testWrite() throws Exception {
+		MockStatement mock = new MockStatement(3);
+
+		ResultSetJsonWriter writer = ResultSetJsonWriter.executeStatement(mock.getStatement(), 10);
+		if( 10 != mock.fetchSize ){
+			fail("Fetch size should be set");
+		}
+		if( mock.autoCommit ){
+			fail("Auto-commit should be disabled while rows are read");
+		}
+
+		StringWriter sw = new StringWriter();
+		int count = writer.write(sw);
+		if( 3 != count ){
+			fail("Unexpected row count: "+count);
+		}
+
+		JSONArray array = new JSONArray(sw.toString());
+		if( 3 != array.length() ){
+			fail("Unexpected array: "+sw.toString());
+		}
+		if( 2 != array.getJSONObject(1).getInt("id")
+		 || false == "name2".equals(array.getJSONObject(1).getString("name")) ){
+			fail("Unexpected row: "+array.getJSONObject(1));
+		}
+		if( 1 != mock.metaDataCount ){
+			fail("Metadata should be obtained once");
+		}
+		if( false == mock.resultSetClosed ){
+			fail("Result set should be closed");
+		}
+		if( false == mock.autoCommit || 1 != mock.commitCount ){
+			fail("Auto-commit should be restored");
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		MockStatement mock = new MockStatement(0);
+
+		ResultSetJsonWriter writer = ResultSetJsonWriter.executeStatement(mock.getStatement());
+
+		StringWriter sw = new StringWriter();
+		writer.write(sw);
+		if( false == "[]".equals(sw.toString()) ){
+			fail("Unexpected output: "+sw.toString());
+		}
+	}
+
+	public void testWithoutCursor() throws Exception {
+		MockStatement mock = new MockStatement(2);
+
+		ResultSetJsonWriter writer = ResultSetJsonWriter.executeStatement(mock.getStatement(), 0);
+		if( false == mock.autoCommit || 0 != mock.fetchSize ){
+			fail("Connection should not be modified");
+		}
+
+		JSONArray array = writer.toJSONArray();
+		if( 2 != array.length() ){
+			fail("Unexpected array: "+array);
+		}
+		if( 0 != mock.commitCount ){
+			fail("Nothing to commit");
+		}
+	}
+}
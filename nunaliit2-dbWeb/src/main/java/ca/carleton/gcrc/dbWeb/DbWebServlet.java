@@ -32,12 +32,16 @@ $Id$
 */
 package ca.carleton.gcrc.dbWeb;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
@@ -70,8 +74,10 @@ import ca.carleton.gcrc.dbSec.FieldSelectorScoreSubString;
 import ca.carleton.gcrc.dbSec.OrderSpecifier;
 import ca.carleton.gcrc.dbSec.RecordSelectorComparison;
 import ca.carleton.gcrc.dbSec.TableSchema;
+import ca.carleton.gcrc.dbSec.TableSchemaCache;
 import ca.carleton.gcrc.dbSec.RecordSelector;
 import ca.carleton.gcrc.dbSec.RecordSelectorSearchString;
+import ca.carleton.gcrc.dbSec.impl.ResultSetJsonWriter;
 import ca.carleton.gcrc.jdbc.JdbcConnections;
 import ca.carleton.gcrc.json.JSONSupport;
 
@@ -100,8 +106,7 @@ public class DbWebServlet extends HttpServlet {
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	private JdbcConnections connections = null;
-	Connection connection = null;
-	private DbSecurity dbSecurity = null;
+	private TableSchemaCache schemaCache = new TableSchemaCache();
 	
 	/**
 	 * This servlet gives access to database tables to web clients by combining
@@ -117,15 +122,13 @@ public class DbWebServlet extends HttpServlet {
 
 		try {
 			connections = JdbcConnections.connectionsFromServletContext(config.getServletContext());
-			connection = connections.getDb();
 		} catch (Exception e) {
 			throw new ServletException("Error while connecting to database",e);
 		}
-		
-		dbSecurity = new DbSecurity(connection);
 	}
 
 	public void destroy() {
+		schemaCache.invalidate();
 		connections.closeAllConnections();
 	}
 
@@ -139,27 +142,32 @@ public class DbWebServlet extends HttpServlet {
 		
 		logger.info(this.getClass().getName()+" "+path);
 
+		Connection connection = null;
 		try {
+			// Connection is returned to the pool once the request is served
+			connection = connections.borrowDb();
+			DbSecurity dbSecurity = new DbSecurity(connection, schemaCache);
+			
 			if( "getSchema".equalsIgnoreCase(path) ) {
-				performGetSchema(request, response);
+				performGetSchema(request, response, dbSecurity);
 
 			} else if ( "getCapabilities".equalsIgnoreCase(path) ) {
-				performGetCapabilities(request, response);
+				performGetCapabilities(request, response, dbSecurity);
 
 			} else if ( "query".equalsIgnoreCase(path) ) {
-				performQuery(request, response);
+				performQuery(request, response, dbSecurity);
 
 			} else if ( "queries".equalsIgnoreCase(path) ) {
-				performMultiQuery(request, response);
+				performMultiQuery(request, response, dbSecurity);
 
 			} else if ( "insert".equalsIgnoreCase(path) ) {
-				performInsert(request, response);
+				performInsert(request, response, dbSecurity);
 
 			} else if ( "update".equalsIgnoreCase(path) ) {
-				performUpdate(request, response);
+				performUpdate(request, response, dbSecurity);
 
 			} else if ( "delete".equalsIgnoreCase(path) ) {
-				performDelete(request, response);
+				performDelete(request, response, dbSecurity);
 				
 			} else {
 				throw new Exception("Unknown request: "+path);
@@ -167,10 +175,16 @@ public class DbWebServlet extends HttpServlet {
 		} catch(Exception e) {
 			logger.info("Error encountered while performing: "+path,e);
 			sendErrorResponse(response, e);
+		} finally {
+			if( null != connection ) {
+				try {
+					connection.close();
+				} catch(SQLException ignored) { }
+			}
 		}
 	}
 	
-	private void performGetSchema(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performGetSchema(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 		String tableName = getTableNameFromRequest(request);
 		
@@ -180,7 +194,7 @@ public class DbWebServlet extends HttpServlet {
 		sendJsonResponse(response, schema);
 	}
 	
-	private void performGetCapabilities(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performGetCapabilities(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 
 		List<TableSchema> tableSchemas = dbSecurity.getAvailableTablesFromGroups( new DbUserAdaptor(user) );
@@ -228,7 +242,7 @@ public class DbWebServlet extends HttpServlet {
 	 * @param response http response to be sent.
 	 * @throws Exception (for a variety of reasons detected while parsing and validating the http parms).
 	 */
-	private void performQuery(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performQuery(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 		String tableName = getTableNameFromRequest(request);
 		
@@ -241,7 +255,9 @@ public class DbWebServlet extends HttpServlet {
 		Integer limit = getLimitFromRequest(request);
 		Integer offset = getOffsetFromRequest(request);
 		
-		JSONArray queriedObjects = tableAccess.query(
+		// The query is performed before the response is started so that
+		// errors can still be reported
+		ResultSetJsonWriter queriedObjects = tableAccess.streamQuery(
 				whereMap
 				,selectSpecifiers
 				,groupByColumnNames
@@ -250,10 +266,15 @@ public class DbWebServlet extends HttpServlet {
 				,offset
 				);
 		
-		JSONObject obj = new JSONObject();
-		obj.put("queried", queriedObjects);
-		
-		sendJsonResponse(response, obj);
+		try {
+			Writer writer = startJsonResponse(response);
+			writer.write("{\"queried\":");
+			queriedObjects.write(writer);
+			writer.write("}");
+			writer.flush();
+		} finally {
+			queriedObjects.close();
+		}
 	}
 	
 	/**
@@ -313,7 +334,7 @@ public class DbWebServlet extends HttpServlet {
 	 * @param response http response to be sent.
 	 * @throws Exception (for a variety of reasons detected while parsing and validating the http parms).
 	 */
-	private void performMultiQuery(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performMultiQuery(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 
 		String[] queriesStrings = request.getParameterValues("queries");
@@ -324,42 +345,69 @@ public class DbWebServlet extends HttpServlet {
 		// Create list of Query instances
 		List<Query> queries = parseQueriesJson(queriesStrings[0]);
 
-		// Perform queries
-		JSONObject result = new JSONObject();
-		{
-			Map<String, DbTableAccess> tableAccessCache = new HashMap<String, DbTableAccess>(); 
-			for(Query query : queries) {
-				String tableName = query.getTableName();
-				List<RecordSelector> whereMap = query.getWhereExpressions();
-				List<FieldSelector> fieldSelectors = query.getFieldSelectors();
-				List<FieldSelector> groupByColumnNames = query.getGroupByColumnNames();
-				List<OrderSpecifier> orderSpecifiers = query.getOrderBySpecifiers();
-				Integer limit = query.getLimit();
-				Integer offset = query.getOffset();
-				
-				DbTableAccess tableAccess = tableAccessCache.get(tableName);
-				if( null == tableAccess ) {
-					tableAccess = DbTableAccess.getAccess(dbSecurity, tableName, new DbUserAdaptor(user));
-					tableAccessCache.put(tableName, tableAccess);
-				}
-				
+		// Verify access to all tables before the response is started. When
+		// a key is repeated, the last query wins.
+		Map<String, Query> queriesByKey = new LinkedHashMap<String, Query>();
+		Map<String, DbTableAccess> tableAccessCache = new HashMap<String, DbTableAccess>(); 
+		for(Query query : queries) {
+			String tableName = query.getTableName();
+			
+			DbTableAccess tableAccess = tableAccessCache.get(tableName);
+			if( null == tableAccess ) {
+				tableAccess = DbTableAccess.getAccess(dbSecurity, tableName, new DbUserAdaptor(user));
+				tableAccessCache.put(tableName, tableAccess);
+			}
+			
+			queriesByKey.remove(query.getQueryKey());
+			queriesByKey.put(query.getQueryKey(), query);
+		}
+
+		// Perform queries, writing the results of each as they are read
+		Writer writer = startJsonResponse(response);
+		writer.write("{");
+		boolean first = true;
+		for(Query query : queriesByKey.values()) {
+			List<RecordSelector> whereMap = query.getWhereExpressions();
+			List<FieldSelector> fieldSelectors = query.getFieldSelectors();
+			List<FieldSelector> groupByColumnNames = query.getGroupByColumnNames();
+			List<OrderSpecifier> orderSpecifiers = query.getOrderBySpecifiers();
+			Integer limit = query.getLimit();
+			Integer offset = query.getOffset();
+			
+			DbTableAccess tableAccess = tableAccessCache.get(query.getTableName());
+			
+			if( first ) {
+				first = false;
+			} else {
+				writer.write(",");
+			}
+			writer.write(JSONObject.quote(query.getQueryKey()));
+			writer.write(":");
+
+			ResultSetJsonWriter queriedObjects = null;
+			try {
+				queriedObjects = tableAccess.streamQuery(
+						whereMap
+						,fieldSelectors
+						,groupByColumnNames
+						,orderSpecifiers
+						,limit
+						,offset
+						);
+			} catch(Exception e) {
+				errorToJson(e).write(writer);
+			}
+			
+			if( null != queriedObjects ) {
 				try {
-					JSONArray queriedObjects = tableAccess.query(
-							whereMap
-							,fieldSelectors
-							,groupByColumnNames
-							,orderSpecifiers
-							,limit
-							,offset
-							);
-					result.put(query.getQueryKey(), queriedObjects);
-				} catch(Exception e) {
-					result.put(query.getQueryKey(), errorToJson(e));
+					queriedObjects.write(writer);
+				} finally {
+					queriedObjects.close();
 				}
 			}
 		}
-		
-		sendJsonResponse(response, result);
+		writer.write("}");
+		writer.flush();
 	}
 	
 	protected List<Query> parseQueriesJson(String queriesString) throws Exception {
@@ -506,7 +554,7 @@ public class DbWebServlet extends HttpServlet {
 		return query;
 	}
 
-	private void performInsert(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performInsert(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 		String tableName = getTableNameFromRequest(request);
 		
@@ -522,7 +570,7 @@ public class DbWebServlet extends HttpServlet {
 		sendJsonResponse(response, obj);
 	}
 	
-	private void performUpdate(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performUpdate(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 		String tableName = getTableNameFromRequest(request);
 		
@@ -539,7 +587,7 @@ public class DbWebServlet extends HttpServlet {
 		sendJsonResponse(response, obj);
 	}
 	
-	private void performDelete(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void performDelete(HttpServletRequest request, HttpServletResponse response, DbSecurity dbSecurity) throws Exception {
 		User user = AuthenticationUtils.getUserFromRequest(request);
 		String tableName = getTableNameFromRequest(request);
 		
@@ -928,6 +976,18 @@ public class DbWebServlet extends HttpServlet {
 		return setterMap;
 	}
 	
+	private Writer startJsonResponse(HttpServletResponse response) throws Exception {
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setHeader("Cache-Control", "no-cache");
+		response.setDateHeader("Expires", (new Date()).getTime());
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("utf-8");
+		
+		OutputStreamWriter osw = new OutputStreamWriter( response.getOutputStream(), "UTF-8" );
+		return new BufferedWriter(osw);
+	}
+	
 	private void sendJsonResponse(HttpServletResponse response, JSONObject result) throws Exception {
 
 		response.setStatus(HttpServletResponse.SC_OK);
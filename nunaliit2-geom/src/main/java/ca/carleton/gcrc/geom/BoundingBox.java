@@ -1,149 +1,110 @@
 package ca.carleton.gcrc.geom;
 
-import java.util.List;
-import java.util.Vector;
-
 public class BoundingBox {
 
-	private List<Number> minimumPositions;
-	private List<Number> maximumPositions;
-	
+	// Ordinates not yet known are NaN
+	private double[] minimumPositions;
+	private double[] maximumPositions;
+
 	public BoundingBox(){
-		minimumPositions = new Vector<Number>();
-		maximumPositions = new Vector<Number>();
+		minimumPositions = new double[0];
+		maximumPositions = new double[0];
 	}
-	
-	public BoundingBox(double minX, double minY, double maxX, double maxY){
-		minimumPositions = new Vector<Number>();
-		minimumPositions.add(minX);
-		minimumPositions.add(minY);
 
-		maximumPositions = new Vector<Number>();
-		maximumPositions.add(maxX);
-		maximumPositions.add(maxY);
+	public BoundingBox(double minX, double minY, double maxX, double maxY){
+		minimumPositions = new double[]{ minX, minY };
+		maximumPositions = new double[]{ maxX, maxY };
 	}
-	
+
 	public Number getMinX(){
-		Number result = null;
-		if( minimumPositions.size() > 0 ) {
-			result = minimumPositions.get(0);
-		}
-		return result;
+		return getPosition(minimumPositions, 0);
 	}
-	
+
 	public Number getMinY(){
-		Number result = null;
-		if( minimumPositions.size() > 1 ) {
-			result = minimumPositions.get(1);
-		}
-		return result;
+		return getPosition(minimumPositions, 1);
 	}
-	
+
 	public Number getMaxX(){
-		Number result = null;
-		if( maximumPositions.size() > 0 ) {
-			result = maximumPositions.get(0);
-		}
-		return result;
+		return getPosition(maximumPositions, 0);
 	}
-	
+
 	public Number getMaxY(){
-		Number result = null;
-		if( maximumPositions.size() > 1 ) {
-			result = maximumPositions.get(1);
-		}
-		return result;
+		return getPosition(maximumPositions, 1);
 	}
-	
+
 	public void extendToInclude(BoundingBox another){
-		// Minimums
-		{
-			int anotherSize = another.minimumPositions.size();
-			for(int i=0,e=minimumPositions.size(); i<e; ++i){
-				if( anotherSize > i ) {
-					Number n = another.minimumPositions.get(i);
-					if( n.doubleValue() < minimumPositions.get(i).doubleValue() ) {
-						minimumPositions.set(i, n);
-					}
-				}
-			}
-			for(int i=minimumPositions.size(); i<anotherSize; ++i){
-				minimumPositions.add( another.minimumPositions.get(i) );
-			}
+		for(int i=0; i<another.minimumPositions.length; ++i){
+			include(i, another.minimumPositions[i]);
 		}
-
-		// Maximums
-		{
-			int anotherSize = another.maximumPositions.size();
-			for(int i=0,e=maximumPositions.size(); i<e; ++i){
-				if( anotherSize > i ) {
-					Number n = another.maximumPositions.get(i);
-					if( n.doubleValue() > maximumPositions.get(i).doubleValue() ) {
-						maximumPositions.set(i, n);
-					}
-				}
-			}
-			for(int i=maximumPositions.size(); i<anotherSize; ++i){
-				maximumPositions.add( another.maximumPositions.get(i) );
-			}
+		for(int i=0; i<another.maximumPositions.length; ++i){
+			include(i, another.maximumPositions[i]);
 		}
 	}
-	
+
 	public void extendToInclude(Point point){
-		List<Number> positions = point.getPositions();
-		int pointSize = positions.size();
-		
-		// Minimums
-		{
-			for(int i=0,e=minimumPositions.size(); i<e; ++i){
-				if( pointSize > i ) {
-					Number n = positions.get(i);
-					if( n.doubleValue() < minimumPositions.get(i).doubleValue() ) {
-						minimumPositions.set(i, n);
-					}
-				}
-			}
-			for(int i=minimumPositions.size(); i<pointSize; ++i){
-				minimumPositions.add( positions.get(i) );
-			}
+		for(int i=0,e=point.getDimension(); i<e; ++i){
+			include(i, point.getOrdinate(i));
 		}
+	}
 
-		// Maximums
-		{
-			for(int i=0,e=maximumPositions.size(); i<e; ++i){
-				if( pointSize > i ) {
-					Number n = positions.get(i);
-					if( n.doubleValue() > maximumPositions.get(i).doubleValue() ) {
-						maximumPositions.set(i, n);
-					}
-				}
-			}
-			for(int i=maximumPositions.size(); i<pointSize; ++i){
-				maximumPositions.add( positions.get(i) );
+	public void extendToInclude(CoordinateSequence coordinates){
+		int dimension = coordinates.getDimension();
+		for(int index=0,e=coordinates.size(); index<e; ++index){
+			for(int i=0; i<dimension; ++i){
+				include(i, coordinates.getOrdinate(index, i));
 			}
 		}
 	}
-	
+
 	public Point getCentroid(){
-		List<Number> centroid = new Vector<Number>();
-		
-		int size = this.minimumPositions.size();
-		if( size > this.maximumPositions.size() ){
-			size = this.maximumPositions.size();
+		int size = this.minimumPositions.length;
+		double[] centroid = new double[size];
+
+		for(int i=0; i<size; ++i){
+			centroid[i] = (minimumPositions[i] + maximumPositions[i])/2;
 		}
-		
+
+		return new Point(centroid, size);
+	}
+
+	private Number getPosition(double[] positions, int index){
+		Number result = null;
+		if( positions.length > index
+		 && false == Double.isNaN(positions[index]) ) {
+			result = positions[index];
+		}
+		return result;
+	}
+
+	private void include(int index, double value){
+		if( Double.isNaN(value) ){
+			return;
+		}
+
+		if( index >= minimumPositions.length ){
+			minimumPositions = extend(minimumPositions, index+1);
+			maximumPositions = extend(maximumPositions, index+1);
+		}
+
+		if( Double.isNaN(minimumPositions[index])
+		 || value < minimumPositions[index] ) {
+			minimumPositions[index] = value;
+		}
+		if( Double.isNaN(maximumPositions[index])
+		 || value > maximumPositions[index] ) {
+			maximumPositions[index] = value;
+		}
+	}
+
+	private double[] extend(double[] positions, int size){
+		double[] extended = new double[size];
 		for(int i=0; i<size; ++i){
-			Number min = this.minimumPositions.get(i);
-			Number max = this.maximumPositions.get(i);
-			
-			if( null != min && null != max ){
-				Double value = (min.doubleValue() + max.doubleValue())/2;
-				centroid.add(value);
+			if( i < positions.length ){
+				extended[i] = positions[i];
 			} else {
-				centroid.add(null);
+				extended[i] = Double.NaN;
 			}
 		}
-		
-		return new Point(centroid);
+		return extended;
 	}
 }
@@ -0,0 +1,229 @@
+package ca.carleton.gcrc.geom;
+
+import java.io.PrintWriter;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Positions of a geometry, packed in a single array of doubles. The
+ * ordinates of a position are consecutive and every position takes
+ * the same number of slots (the dimension of the sequence). A position
+ * with fewer ordinates than the dimension is padded with NaN.
+ *
+ * Large line strings and polygons are stored without creating an object
+ * per vertex. The points returned by getPoint() and asPoints() are views
+ * over the array.
+ */
+public class CoordinateSequence {
+
+	static final private int MIN_CAPACITY = 8;
+
+	private double[] coordinates;
+	private int dimension;
+	private int size = 0;
+
+	public CoordinateSequence(){
+		this.dimension = 0;
+		this.coordinates = new double[0];
+	}
+
+	public CoordinateSequence(int dimension, int capacity){
+		this.dimension = dimension;
+		this.coordinates = new double[dimension * capacity];
+	}
+
+	/**
+	 * Returns the number of positions in the sequence
+	 * @return Number of positions
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots reserved for each position. This is the
+	 * largest number of ordinates found in a position.
+	 * @return Dimension of the sequence
+	 */
+	public int getDimension(){
+		return dimension;
+	}
+
+	/**
+	 * Returns the number of ordinates of a position, ignoring padding.
+	 * @param index Index of the position
+	 * @return Number of ordinates
+	 */
+	public int getPositionDimension(int index){
+		checkIndex(index);
+		int base = index * dimension;
+		int count = dimension;
+		while( count > 0 && Double.isNaN(coordinates[base+count-1]) ){
+			--count;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an ordinate of a position
+	 * @param index Index of the position
+	 * @param ordinate Index of the ordinate within the position: 0 for X, 1 for Y, ...
+	 * @return Value of the ordinate. NaN if the position does not have the ordinate.
+	 */
+	public double getOrdinate(int index, int ordinate){
+		checkIndex(index);
+		if( ordinate < 0 || ordinate >= dimension ){
+			return Double.NaN;
+		}
+		return coordinates[(index * dimension) + ordinate];
+	}
+
+	public double getX(int index){
+		return getOrdinate(index, 0);
+	}
+
+	public double getY(int index){
+		return getOrdinate(index, 1);
+	}
+
+	public void add(double x, double y){
+		if( dimension < 2 ){
+			setDimension(2);
+		}
+		ensureCapacity(size+1);
+		int base = size * dimension;
+		coordinates[base] = x;
+		coordinates[base+1] = y;
+		for(int i=2; i<dimension; ++i){
+			coordinates[base+i] = Double.NaN;
+		}
+		++size;
+	}
+
+	/**
+	 * Appends a position to the sequence.
+	 * @param ordinates Array holding the ordinates of the position
+	 * @param count Number of ordinates to use from the array
+	 */
+	public void add(double[] ordinates, int count){
+		if( count > dimension ){
+			setDimension(count);
+		}
+		ensureCapacity(size+1);
+		int base = size * dimension;
+		System.arraycopy(ordinates, 0, coordinates, base, count);
+		for(int i=count; i<dimension; ++i){
+			coordinates[base+i] = Double.NaN;
+		}
+		++size;
+	}
+
+	public void add(Point point){
+		int count = point.getDimension();
+		if( count > dimension ){
+			setDimension(count);
+		}
+		ensureCapacity(size+1);
+		int base = size * dimension;
+		for(int i=0; i<count; ++i){
+			coordinates[base+i] = point.getOrdinate(i);
+		}
+		for(int i=count; i<dimension; ++i){
+			coordinates[base+i] = Double.NaN;
+		}
+		++size;
+	}
+
+	/**
+	 * Returns a point that shares the storage of this sequence.
+	 * @param index Index of the position
+	 * @return Point at the given index
+	 */
+	public Point getPoint(int index){
+		int count = getPositionDimension(index);
+		return new Point(coordinates, index * dimension, count, true);
+	}
+
+	/**
+	 * Returns a view of the sequence as a list of points. Points can be
+	 * appended to the list. Other modifications are not supported.
+	 * @return List of points backed by this sequence
+	 */
+	public List<Point> asPoints(){
+		return new AbstractList<Point>(){
+			@Override
+			public Point get(int index) {
+				return getPoint(index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void add(int index, Point point) {
+				if( index != size ){
+					throw new UnsupportedOperationException("Points can only be appended to a coordinate sequence");
+				}
+				CoordinateSequence.this.add(point);
+			}
+		};
+	}
+
+	/**
+	 * Prints the ordinates of a position separated by spaces, as found
+	 * in WKT.
+	 */
+	void printPosition(PrintWriter pw, int index){
+		int count = getPositionDimension(index);
+		int base = index * dimension;
+		for(int i=0; i<count; ++i){
+			if( i > 0 ){
+				pw.print(" ");
+			}
+			pw.print(coordinates[base+i]);
+		}
+	}
+
+	private void checkIndex(int index){
+		if( index < 0 || index >= size ){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+	}
+
+	private void ensureCapacity(int capacity){
+		if( capacity * dimension <= coordinates.length ){
+			return;
+		}
+		int newCapacity = Math.max(capacity, 2 * size);
+		if( newCapacity < MIN_CAPACITY ){
+			newCapacity = MIN_CAPACITY;
+		}
+		double[] newCoordinates = new double[newCapacity * dimension];
+		System.arraycopy(coordinates, 0, newCoordinates, 0, size * dimension);
+		coordinates = newCoordinates;
+	}
+
+	/**
+	 * Changes the number of slots for each position. Existing positions
+	 * are padded with NaN.
+	 */
+	private void setDimension(int newDimension){
+		int capacity = Math.max(size+1, MIN_CAPACITY);
+		double[] newCoordinates = new double[capacity * newDimension];
+		for(int index=0; index<size; ++index){
+			int oldBase = index * dimension;
+			int newBase = index * newDimension;
+			for(int i=0; i<newDimension; ++i){
+				if( i < dimension ){
+					newCoordinates[newBase+i] = coordinates[oldBase+i];
+				} else {
+					newCoordinates[newBase+i] = Double.NaN;
+				}
+			}
+		}
+		coordinates = newCoordinates;
+		dimension = newDimension;
+	}
+}
@@ -90,19 +90,10 @@ public class GeometryComparator implements Comparator<Geometry> {
 			return 1;
 		}
 		
-		if( p1.getX() < p2.getX() ){
-			return -1;
-		}
-		if( p1.getX() > p2.getX() ){
-			return 1;
-		}
-		if( p1.getY() < p2.getY() ){
-			return -1;
-		}
-		if( p1.getY() > p2.getY() ){
-			return 1;
-		}
-		return 0;
+		return compareOrdinates(
+			p1.getOrdinate(0), p1.getOrdinate(1),
+			p2.getOrdinate(0), p2.getOrdinate(1)
+		);
 	}
 	
 	public int compareMultiPoints(MultiPoint p1, MultiPoint p2){
@@ -132,18 +123,22 @@ public class GeometryComparator implements Comparator<Geometry> {
 			return 1;
 		}
 		
-		List<Point> points1 = l1.getPoints();
-		List<Point> points2 = l2.getPoints();
-		
-		if( points1.size() != points2.size() ){
-			return points1.size() - points2.size();
-		}
-		
-		for(int i=0,e=points1.size(); i<e; ++i){
-			Point p1 = points1.get(i);
-			Point p2 = points2.get(i);
-			
-			int c = comparePoints(p1, p2);
+		return compareCoordinates(l1.getCoordinates(), l2.getCoordinates());
+	}
+
+	/**
+	 * Compares two sequences position by position, on X and Y.
+	 */
+	public int compareCoordinates(CoordinateSequence c1, CoordinateSequence c2){
+		if( c1.size() != c2.size() ){
+			return c1.size() - c2.size();
+		}
+		
+		for(int i=0,e=c1.size(); i<e; ++i){
+			int c = compareOrdinates(
+				c1.getX(i), c1.getY(i),
+				c2.getX(i), c2.getY(i)
+			);
 			if( c != 0 ){
 				return c;
 			}
@@ -151,6 +146,22 @@ public class GeometryComparator implements Comparator<Geometry> {
 		
 		return 0;
 	}
+	
+	private int compareOrdinates(double x1, double y1, double x2, double y2){
+		if( x1 < x2 ){
+			return -1;
+		}
+		if( x1 > x2 ){
+			return 1;
+		}
+		if( y1 < y2 ){
+			return -1;
+		}
+		if( y1 > y2 ){
+			return 1;
+		}
+		return 0;
+	}
 
 	public int compareMultiLineStrings(MultiLineString l1, MultiLineString l2){
 		if( l1 == l2 ){
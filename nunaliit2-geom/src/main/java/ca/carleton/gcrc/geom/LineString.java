@@ -4,26 +4,41 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
 
 public class LineString extends GeometryAbstract implements Geometry {
 
-	private List<Point> points;
+	private CoordinateSequence coordinates;
 	
 	public LineString(){
-		this.points = new Vector<Point>();
+		this.coordinates = new CoordinateSequence();
 	}
 	
 	public LineString(List<Point> points){
-		this.points = points;
+		this.coordinates = new CoordinateSequence();
+		for(Point point : points){
+			this.coordinates.add(point);
+		}
+	}
+	
+	public LineString(CoordinateSequence coordinates){
+		this.coordinates = coordinates;
+	}
+	
+	public CoordinateSequence getCoordinates(){
+		return coordinates;
 	}
 	
+	/**
+	 * Returns the points of the line string as a view over its
+	 * coordinates. Points can be appended to the returned list.
+	 * @return Points of the line string
+	 */
 	public List<Point> getPoints(){
-		return points;
+		return coordinates.asPoints();
 	}
 	
 	public void addPoint(Point point){
-		points.add(point);
+		coordinates.add(point);
 	}
 	
 	public String toString(){
@@ -31,38 +46,29 @@ public class LineString extends GeometryAbstract implements Geometry {
 		PrintWriter pw = new PrintWriter(sw);
 		
 		pw.print("LINESTRING(");
+		printCoordinates(pw);
+		pw.print(")");
+		pw.flush();
 		
-		boolean firstPoint = true;
-		for(Point point : points) {
-			if( firstPoint ) {
-				firstPoint = false;
-			} else {
+		return sw.toString();
+	}
+	
+	/**
+	 * Prints the positions of the line string separated by commas
+	 */
+	void printCoordinates(PrintWriter pw){
+		for(int i=0,e=coordinates.size(); i<e; ++i) {
+			if( i > 0 ) {
 				pw.print(",");
 			}
 			
-			boolean firstPosition = true;
-			for(Number p : point.getPositions()){
-				if( firstPosition ) {
-					firstPosition = false;
-				} else {
-					pw.print(" ");
-				}
-				
-				pw.print(p);
-			}
+			coordinates.printPosition(pw, i);
 		}
-		
-		pw.print(")");
-		pw.flush();
-		
-		return sw.toString();
 	}
 
 	@Override
 	public void extendBoundingBox(BoundingBox boundingBox) {
-		for(Point point : points){
-			boundingBox.extendToInclude(point);
-		}
+		boundingBox.extendToInclude(coordinates);
 	}
 
 	@Override
@@ -5,37 +5,52 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
 
 public class MultiPoint extends GeometryAbstract implements Geometry,GeometryAssembly {
 
-	private List<Point> points;
+	private CoordinateSequence coordinates;
 	
 	public MultiPoint(){
-		this.points = new Vector<Point>();
+		this.coordinates = new CoordinateSequence();
 	}
 	
 	public MultiPoint(List<Point> points){
-		this.points = points;
+		this.coordinates = new CoordinateSequence();
+		for(Point point : points){
+			this.coordinates.add(point);
+		}
+	}
+	
+	public MultiPoint(CoordinateSequence coordinates){
+		this.coordinates = coordinates;
 	}
 
 	@Override
 	public int size() {
-		return points.size();
+		return coordinates.size();
 	}
 
 	@Override
 	public List<Geometry> getGeometries() {
-		ArrayList<Geometry> geometries = new ArrayList<Geometry>(points);
+		ArrayList<Geometry> geometries = new ArrayList<Geometry>(coordinates.asPoints());
 		return geometries;
 	}
 	
+	public CoordinateSequence getCoordinates(){
+		return coordinates;
+	}
+	
+	/**
+	 * Returns the points as a view over the coordinates of this
+	 * geometry. Points can be appended to the returned list.
+	 * @return Points of this geometry
+	 */
 	public List<Point> getPoints(){
-		return points;
+		return coordinates.asPoints();
 	}
 	
 	public void addPoint(Point point){
-		points.add(point);
+		coordinates.add(point);
 	}
 	
 	public String toString(){
@@ -44,25 +59,13 @@ public class MultiPoint extends GeometryAbstract implements Geometry,GeometryAss
 		
 		pw.print("MULTIPOINT(");
 		
-		boolean firstPoint = true;
-		for(Point point : points) {
-			if( firstPoint ) {
-				firstPoint = false;
-			} else {
+		for(int i=0,e=coordinates.size(); i<e; ++i) {
+			if( i > 0 ) {
 				pw.print(",");
 			}
 			
 			pw.print("(");
-			boolean firstPosition = true;
-			for(Number p : point.getPositions()){
-				if( firstPosition ) {
-					firstPosition = false;
-				} else {
-					pw.print(" ");
-				}
-				
-				pw.print(p);
-			}
+			coordinates.printPosition(pw, i);
 			pw.print(")");
 		}
 		
@@ -74,15 +77,13 @@ public class MultiPoint extends GeometryAbstract implements Geometry,GeometryAss
 
 	@Override
 	public void extendBoundingBox(BoundingBox boundingBox) {
-		for(Point point : points){
-			boundingBox.extendToInclude(point);
-		}
+		boundingBox.extendToInclude(coordinates);
 	}
 
 	@Override
 	public void accumulateBasicGeometries(Collection<Geometry> geometries) {
-		for(Point point : this.points){
-			point.accumulateBasicGeometries(geometries);
+		for(int i=0,e=coordinates.size(); i<e; ++i){
+			coordinates.getPoint(i).accumulateBasicGeometries(geometries);
 		}
 	}
 }
@@ -63,25 +63,7 @@ public class MultiPolygon extends GeometryAbstract implements Geometry,GeometryA
 				}
 				
 				pw.print("(");
-				boolean firstPoint = true;
-				for(Point point : linearRing.getPoints()) {
-					if( firstPoint ) {
-						firstPoint = false;
-					} else {
-						pw.print(",");
-					}
-					
-					boolean firstPosition = true;
-					for(Number p : point.getPositions()){
-						if( firstPosition ) {
-							firstPosition = false;
-						} else {
-							pw.print(" ");
-						}
-						
-						pw.print(p);
-					}
-				}
+				linearRing.printCoordinates(pw);
 				pw.print(")");
 			}
 			
@@ -2,90 +2,158 @@ package ca.carleton.gcrc.geom;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
 
 public class Point extends GeometryAbstract implements Geometry {
 
-	private List<Number> positions;
-	
+	// Ordinates of the point start at offset. When the point is obtained
+	// from a coordinate sequence, the array is shared with the sequence
+	// and it is copied before the point is modified.
+	private double[] positions;
+	private int offset;
+	private int count;
+	private boolean shared;
+
 	public Point(){
-		this.positions = new Vector<Number>();
+		this.positions = new double[2];
+		this.offset = 0;
+		this.count = 0;
+		this.shared = false;
 	}
 
 	public Point(double x, double y){
-		positions = new Vector<Number>();
-		positions.add(x);
-		positions.add(y);
+		this.positions = new double[]{ x, y };
+		this.offset = 0;
+		this.count = 2;
+		this.shared = false;
 	}
 
 	public Point(double x, double y, double z){
-		positions = new Vector<Number>();
-		positions.add(x);
-		positions.add(y);
-		positions.add(z);
+		this.positions = new double[]{ x, y, z };
+		this.offset = 0;
+		this.count = 3;
+		this.shared = false;
+	}
+
+	public Point(double[] positions, int count){
+		this.positions = new double[count];
+		System.arraycopy(positions, 0, this.positions, 0, count);
+		this.offset = 0;
+		this.count = count;
+		this.shared = false;
 	}
-	
+
 	public Point(List<Number> positions){
+		this.positions = new double[positions.size()];
+		this.offset = 0;
+		this.count = 0;
+		this.shared = false;
+		for(Number position : positions){
+			if( null == position ){
+				this.positions[count] = Double.NaN;
+			} else {
+				this.positions[count] = position.doubleValue();
+			}
+			++count;
+		}
+	}
+
+	Point(double[] positions, int offset, int count, boolean shared){
 		this.positions = positions;
+		this.offset = offset;
+		this.count = count;
+		this.shared = shared;
 	}
-	
+
+	/**
+	 * Returns a view of the ordinates of this point. Each access
+	 * creates a Number. Use getDimension() and getOrdinate() to avoid
+	 * boxing the values.
+	 * @return Ordinates of the point
+	 */
 	public List<Number> getPositions() {
-		return positions;
+		return new AbstractList<Number>(){
+			@Override
+			public Number get(int index) {
+				return getOrdinate(index);
+			}
+
+			@Override
+			public int size() {
+				return count;
+			}
+		};
 	}
-	
+
+	public int getDimension(){
+		return count;
+	}
+
+	public double getOrdinate(int index){
+		if( index < 0 || index >= count ){
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+count);
+		}
+		return positions[offset+index];
+	}
+
 	public void addPosition(double position){
-		positions.add( position );
+		if( shared || offset+count >= positions.length ){
+			double[] newPositions = new double[Math.max(2, count * 2)];
+			System.arraycopy(positions, offset, newPositions, 0, count);
+			positions = newPositions;
+			offset = 0;
+			shared = false;
+		}
+		positions[offset+count] = position;
+		++count;
 	}
-	
+
 	public Double getX(){
 		Double x = null;
-		if( positions.size() > 0 ){
-			x = positions.get(0).doubleValue();
+		if( count > 0 ){
+			x = positions[offset];
 		}
-			
+
 		return x;
 	}
-	
+
 	public Double getY(){
 		Double y = null;
-		if( positions.size() > 1 ){
-			y = positions.get(1).doubleValue();
+		if( count > 1 ){
+			y = positions[offset+1];
 		}
-			
+
 		return y;
 	}
-	
+
 	public Double getZ(){
 		Double z = null;
-		if( positions.size() > 2 ){
-			z = positions.get(2).doubleValue();
+		if( count > 2 ){
+			z = positions[offset+2];
 		}
-			
+
 		return z;
 	}
-	
+
 	public String toString(){
 		StringWriter sw = new StringWriter();
 		PrintWriter pw = new PrintWriter(sw);
-		
+
 		pw.print("POINT(");
-		
-		boolean first = true;
-		for(Number p : positions){
-			if( first ) {
-				first = false;
-			} else {
+
+		for(int i=0; i<count; ++i){
+			if( i > 0 ) {
 				pw.print(" ");
 			}
-			
-			pw.print(p);
+
+			pw.print(positions[offset+i]);
 		}
-		
+
 		pw.print(")");
 		pw.flush();
-		
+
 		return sw.toString();
 	}
 
@@ -0,0 +1,153 @@
+package ca.carleton.gcrc.geom.geojson;
+
+import java.io.Reader;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Reads the features of a GeoJSON FeatureCollection one at a time. Only
+ * the feature being returned is held in memory, so that large files can
+ * be processed.
+ *
+ * Since the collection is not read ahead, an error located after a feature
+ * (for example, a missing "type" or a syntax error at the end of the file)
+ * is reported only once the preceding features have been returned.
+ */
+public class GeoJsonFeatureReader {
+
+	private JSONTokener tokener;
+	private GeoJsonParser parser = new GeoJsonParser();
+	private boolean started = false;
+	private boolean done = false;
+	private boolean memberRead = false;
+	private boolean typeFound = false;
+	private boolean featuresFound = false;
+	private boolean inFeatures = false;
+	private boolean firstFeature = false;
+	private int count = 0;
+
+	public GeoJsonFeatureReader(Reader reader) {
+		this.tokener = new JSONTokener(reader);
+	}
+
+	/**
+	 * Returns the number of features read so far
+	 * @return Number of features
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Reads the next feature of the collection.
+	 * @return The next feature, or null when all features are read.
+	 */
+	public GeoJsonFeature readFeature() throws Exception {
+		try {
+			if( false == started ){
+				started = true;
+				char c = tokener.nextClean();
+				if( '{' != c ) {
+					throw new Exception("Expected a JSON object at top level");
+				}
+			}
+
+			while( false == done ){
+				if( inFeatures ){
+					char c = tokener.nextClean();
+					if( firstFeature ){
+						firstFeature = false;
+						if( ']' == c ){
+							inFeatures = false;
+							continue;
+						}
+						tokener.back();
+					} else if( ']' == c ){
+						inFeatures = false;
+						continue;
+					} else if( ',' != c ){
+						throw tokener.syntaxError("Expected ',' or ']' after a feature");
+					}
+
+					Object obj = tokener.nextValue();
+					if( obj instanceof JSONObject ){
+						GeoJsonFeature feature = parser.parseFeature((JSONObject)obj);
+						++count;
+						return feature;
+					} else {
+						throw new Exception("A feature should be an object");
+					}
+				}
+
+				String key = nextKey();
+				if( null == key ){
+					done = true;
+					if( false == typeFound ){
+						throw new Exception("Key 'type' expected for a FeatureCollection");
+					}
+					if( false == featuresFound ){
+						throw new Exception("FeatureCollections should contain an array called 'features'");
+					}
+
+				} else if( "type".equals(key) ){
+					Object type = tokener.nextValue();
+					if( false == "FeatureCollection".equals(type) ){
+						throw new Exception("FeatureCollection with unexpected type: "+type);
+					}
+					typeFound = true;
+
+				} else if( "features".equals(key) ){
+					char c = tokener.nextClean();
+					if( '[' != c ){
+						throw new Exception("FeatureCollections should contain an array called 'features'");
+					}
+					featuresFound = true;
+					inFeatures = true;
+					firstFeature = true;
+
+				} else {
+					// Other members (crs, bbox, ...) are ignored
+					tokener.nextValue();
+				}
+			}
+
+			return null;
+
+		} catch(Exception e) {
+			done = true;
+			throw new Exception("Error while parsing FeatureCollection",e);
+		}
+	}
+
+	/**
+	 * Reads the next key of the top level object.
+	 * @return The key, or null at the end of the object.
+	 */
+	private String nextKey() throws Exception {
+		char c = tokener.nextClean();
+		if( memberRead ){
+			if( '}' == c ){
+				return null;
+			}
+			if( ',' != c ){
+				throw tokener.syntaxError("Expected ',' or '}'");
+			}
+			c = tokener.nextClean();
+		} else if( '}' == c ){
+			return null;
+		}
+
+		if( '"' != c && '\'' != c ){
+			throw tokener.syntaxError("Expected a key");
+		}
+		String key = tokener.nextString(c);
+
+		if( ':' != tokener.nextClean() ){
+			throw tokener.syntaxError("Expected ':' after a key");
+		}
+		memberRead = true;
+
+		return key;
+	}
+}
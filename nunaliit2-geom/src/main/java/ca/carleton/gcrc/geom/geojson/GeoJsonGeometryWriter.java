@@ -2,6 +2,7 @@ package ca.carleton.gcrc.geom.geojson;
 
 import org.json.JSONWriter;
 
+import ca.carleton.gcrc.geom.CoordinateSequence;
 import ca.carleton.gcrc.geom.Geometry;
 import ca.carleton.gcrc.geom.GeometryCollection;
 import ca.carleton.gcrc.geom.LineString;
@@ -51,8 +52,8 @@ public class GeoJsonGeometryWriter {
 		
 		writer.array();
 		
-		for(Number position : point.getPositions()){
-			writer.value(position);
+		for(int i=0,e=point.getDimension(); i<e; ++i){
+			writer.value(point.getOrdinate(i));
 		}
 		
 		writer.endArray();
@@ -69,15 +70,7 @@ public class GeoJsonGeometryWriter {
 		writer.key("coordinates");
 		
 		writer.array();
-		for(Point point : lineString.getPoints()){
-			writer.array();
-			
-			for(Number position : point.getPositions()){
-				writer.value(position);
-			}
-			
-			writer.endArray();
-		}
+		writeCoordinates(writer, lineString.getCoordinates());
 		writer.endArray();
 		
 		writer.endObject();
@@ -95,15 +88,7 @@ public class GeoJsonGeometryWriter {
 		for(LineString linearRing : polygon.getLinearRings()){
 			writer.array();
 
-			for(Point point : linearRing.getPoints()){
-				writer.array();
-				
-				for(Number position : point.getPositions()){
-					writer.value(position);
-				}
-				
-				writer.endArray();
-			}
+			writeCoordinates(writer, linearRing.getCoordinates());
 			
 			writer.endArray();
 		}
@@ -122,15 +107,7 @@ public class GeoJsonGeometryWriter {
 		writer.key("coordinates");
 		
 		writer.array();
-		for(Point point : multiPoint.getPoints()){
-			writer.array();
-			
-			for(Number position : point.getPositions()){
-				writer.value(position);
-			}
-			
-			writer.endArray();
-		}
+		writeCoordinates(writer, multiPoint.getCoordinates());
 		writer.endArray();
 		
 		
@@ -148,15 +125,7 @@ public class GeoJsonGeometryWriter {
 		writer.array();
 		for(LineString lineString : multiLineString.getLineStrings()){
 			writer.array();
-			for(Point point : lineString.getPoints()){
-				writer.array();
-				
-				for(Number position : point.getPositions()){
-					writer.value(position);
-				}
-				
-				writer.endArray();
-			}
+			writeCoordinates(writer, lineString.getCoordinates());
 			writer.endArray();
 		}
 		writer.endArray();
@@ -178,15 +147,7 @@ public class GeoJsonGeometryWriter {
 			writer.array();
 			for(LineString lineString : polygon.getLinearRings()){
 				writer.array();
-				for(Point point : lineString.getPoints()){
-					writer.array();
-					
-					for(Number position : point.getPositions()){
-						writer.value(position);
-					}
-					
-					writer.endArray();
-				}
+				writeCoordinates(writer, lineString.getCoordinates());
 				writer.endArray();
 			}
 			writer.endArray();
@@ -214,4 +175,16 @@ public class GeoJsonGeometryWriter {
 		
 		writer.endObject();
 	}
+
+	private void writeCoordinates(JSONWriter writer, CoordinateSequence coordinates)  throws Exception {
+		for(int index=0,e=coordinates.size(); index<e; ++index){
+			writer.array();
+			
+			for(int i=0,d=coordinates.getPositionDimension(index); i<d; ++i){
+				writer.value(coordinates.getOrdinate(index, i));
+			}
+			
+			writer.endArray();
+		}
+	}
 }
@@ -6,8 +6,8 @@ import java.util.Vector;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
+import ca.carleton.gcrc.geom.CoordinateSequence;
 import ca.carleton.gcrc.geom.Geometry;
 import ca.carleton.gcrc.geom.GeometryCollection;
 import ca.carleton.gcrc.geom.LineString;
@@ -19,60 +19,28 @@ import ca.carleton.gcrc.geom.Polygon;
 
 public class GeoJsonParser {
 
+	/**
+	 * Reads all the features of a FeatureCollection. For large collections,
+	 * use a GeoJsonFeatureReader to process the features one at a time.
+	 */
 	public List<GeoJsonFeature> parse(Reader reader) throws Exception {
 		try {
-			JSONTokener tokener = new JSONTokener(reader);
-			Object obj = tokener.nextValue();
-			if( obj instanceof JSONObject ) {
-				JSONObject featureCollection = (JSONObject)obj;
-				
-				return parseFeatureCollection(featureCollection);
-				
-			} else {
-				throw new Exception("Expected a JSON object at top level");
-			}
-		} catch(Exception e) {
-			throw new Exception("Error while parsing the JSON",e);
-		}
-	}
-	
-	private List<GeoJsonFeature> parseFeatureCollection(JSONObject featureCollection) throws Exception {
-		try {
-			// Verify "type"
-			String type = featureCollection.optString("type");
-			if( null == type ){
-				throw new Exception("Key 'type' expected for a FeatureCollection");
-			}
-			if( false == "FeatureCollection".equals(type) ){
-				throw new Exception("FeatureCollection with unexpected type: "+type);
-			}
-			
-			// Check array "features"
-			JSONArray featuresArray = featureCollection.getJSONArray("features");
-			if( null == featuresArray ) {
-				throw new Exception("FeatureCollections should contain an array called 'features'");
-			}
+			GeoJsonFeatureReader featureReader = new GeoJsonFeatureReader(reader);
 			
 			List<GeoJsonFeature> features = new Vector<GeoJsonFeature>();
-			for(int loop=0,e=featuresArray.length(); loop<e; ++loop){
-				Object obj = featuresArray.get(loop);
-				if( obj instanceof JSONObject ){
-					JSONObject featureObj = (JSONObject)obj;
-					GeoJsonFeature feature = parseFeature(featureObj);
-					features.add(feature);
-					
-				} else {
-					throw new Exception("A feature should be an object");
-				}
+			GeoJsonFeature feature = featureReader.readFeature();
+			while( null != feature ){
+				features.add(feature);
+				feature = featureReader.readFeature();
 			}
 			return features;
 			
 		} catch(Exception e) {
-			throw new Exception("Error while parsing FeatureCollection",e);
+			throw new Exception("Error while parsing the JSON",e);
 		}
 	}
 	
-	private GeoJsonFeature parseFeature(JSONObject featureObj) throws Exception {
+	GeoJsonFeature parseFeature(JSONObject featureObj) throws Exception {
 		try {
 			// Verify "type"
 			String type = featureObj.optString("type");
@@ -185,17 +153,7 @@ public class GeoJsonParser {
 				throw new Exception("A geometry must contain an array called 'coordinates'");
 			}
 			
-			LineString lineString = new LineString();
-			
-			for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
-				JSONArray coordinates = points.getJSONArray(pointIndex);
-				Point point = new Point();
-				for(int coordIndex=0,coordEnd=coordinates.length(); coordIndex<coordEnd; ++coordIndex){
-					double position = coordinates.getDouble(coordIndex);
-					point.addPosition(position);
-				}
-				lineString.addPoint(point);
-			}
+			LineString lineString = new LineString( parseCoordinates(points) );
 			
 			return lineString;
 			
@@ -216,17 +174,7 @@ public class GeoJsonParser {
 			
 			for(int lsIndex=0,lsEnd=lineStrings.length(); lsIndex<lsEnd; ++lsIndex){
 				JSONArray points = lineStrings.getJSONArray(lsIndex);
-				LineString lineString = new LineString();
-			
-				for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
-					JSONArray coordinates = points.getJSONArray(pointIndex);
-					Point point = new Point();
-					for(int coordIndex=0,coordEnd=coordinates.length(); coordIndex<coordEnd; ++coordIndex){
-						double position = coordinates.getDouble(coordIndex);
-						point.addPosition(position);
-					}
-					lineString.addPoint(point);
-				}
+				LineString lineString = new LineString( parseCoordinates(points) );
 				
 				polygon.addLinearRing(lineString);
 			}
@@ -246,17 +194,7 @@ public class GeoJsonParser {
 				throw new Exception("A geometry must contain an array called 'coordinates'");
 			}
 			
-			MultiPoint multiPoint = new MultiPoint();
-			
-			for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
-				JSONArray coordinates = points.getJSONArray(pointIndex);
-				Point point = new Point();
-				for(int coordIndex=0,coordEnd=coordinates.length(); coordIndex<coordEnd; ++coordIndex){
-					double position = coordinates.getDouble(coordIndex);
-					point.addPosition(position);
-				}
-				multiPoint.addPoint(point);
-			}
+			MultiPoint multiPoint = new MultiPoint( parseCoordinates(points) );
 			
 			return multiPoint;
 			
@@ -277,17 +215,7 @@ public class GeoJsonParser {
 			
 			for(int lsIndex=0,lsEnd=lineStrings.length(); lsIndex<lsEnd; ++lsIndex){
 				JSONArray points = lineStrings.getJSONArray(lsIndex);
-				LineString lineString = new LineString();
-			
-				for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
-					JSONArray coordinates = points.getJSONArray(pointIndex);
-					Point point = new Point();
-					for(int coordIndex=0,coordEnd=coordinates.length(); coordIndex<coordEnd; ++coordIndex){
-						double position = coordinates.getDouble(coordIndex);
-						point.addPosition(position);
-					}
-					lineString.addPoint(point);
-				}
+				LineString lineString = new LineString( parseCoordinates(points) );
 				
 				multiLineString.addLineString(lineString);
 			}
@@ -315,17 +243,7 @@ public class GeoJsonParser {
 				
 				for(int lsIndex=0,lsEnd=lineStrings.length(); lsIndex<lsEnd; ++lsIndex){
 					JSONArray points = lineStrings.getJSONArray(lsIndex);
-					LineString lineString = new LineString();
-				
-					for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
-						JSONArray coordinates = points.getJSONArray(pointIndex);
-						Point point = new Point();
-						for(int coordIndex=0,coordEnd=coordinates.length(); coordIndex<coordEnd; ++coordIndex){
-							double position = coordinates.getDouble(coordIndex);
-							point.addPosition(position);
-						}
-						lineString.addPoint(point);
-					}
+					LineString lineString = new LineString( parseCoordinates(points) );
 					
 					polygon.addLinearRing(lineString);
 				}
@@ -340,6 +258,29 @@ public class GeoJsonParser {
 		}
 	}
 
+	/**
+	 * Reads an array of positions into a coordinate sequence, without
+	 * creating a point for each position.
+	 */
+	private CoordinateSequence parseCoordinates(JSONArray points) throws Exception {
+		CoordinateSequence sequence = new CoordinateSequence(2, points.length());
+		double[] ordinates = new double[3];
+		
+		for(int pointIndex=0,pointEnd=points.length(); pointIndex<pointEnd; ++pointIndex){
+			JSONArray coordinates = points.getJSONArray(pointIndex);
+			int count = coordinates.length();
+			if( count > ordinates.length ){
+				ordinates = new double[count];
+			}
+			for(int coordIndex=0; coordIndex<count; ++coordIndex){
+				ordinates[coordIndex] = coordinates.getDouble(coordIndex);
+			}
+			sequence.add(ordinates, count);
+		}
+		
+		return sequence;
+	}
+
 	private GeometryCollection parseGeometryCollection(JSONObject geometryObj) throws Exception {
 		try {
 			// Get coordinates
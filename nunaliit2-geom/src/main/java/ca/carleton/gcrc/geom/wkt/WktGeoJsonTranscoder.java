@@ -0,0 +1,340 @@
+package ca.carleton.gcrc.geom.wkt;
+
+import java.io.Writer;
+
+import org.json.JSONString;
+import org.json.JSONWriter;
+
+/**
+ * Converts WKT strings into GeoJSON geometries without building Geometry
+ * objects. The tokens of the WKT string are read in order and the
+ * corresponding JSON is written as they are found. Numbers are copied from
+ * the WKT text (normalized to valid JSON numbers) instead of being
+ * converted to doubles and back.
+ *
+ * The accepted syntax is the same as WktParser. The state of the
+ * conversion is kept in the instance, so an instance should not be shared
+ * between threads.
+ */
+public class WktGeoJsonTranscoder {
+
+	private String wkt;
+	private int pos;
+	private int length;
+	private StringBuilder number = new StringBuilder();
+	private JSONString numberValue = new JSONString() {
+		@Override
+		public String toJSONString() {
+			return number.toString();
+		}
+	};
+
+	public WktGeoJsonTranscoder(){
+
+	}
+
+	public void transcode(String wktString, Writer writer) throws Exception {
+		JSONWriter jsonWriter = new JSONWriter(writer);
+		transcode(wktString, jsonWriter);
+	}
+
+	/**
+	 * Writes the GeoJSON geometry equivalent to a WKT string.
+	 * @param wktString Geometry in WKT
+	 * @param writer JSON writer positioned where a value is expected
+	 */
+	public void transcode(String wktString, JSONWriter writer) throws Exception {
+		this.wkt = wktString;
+		this.pos = 0;
+		this.length = wktString.length();
+		try {
+			writeGeometry(writer);
+		} catch(Exception e) {
+			throw new Exception("Error transcoding WKT string: "+wktString, e);
+		} finally {
+			this.wkt = null;
+		}
+	}
+
+	private void writeGeometry(JSONWriter writer) throws Exception {
+		skipWhiteSpaces();
+		String identifier = readIdentifier();
+
+		writer.object();
+		writer.key("type");
+
+		if( "point".equalsIgnoreCase(identifier) ) {
+			writer.value("Point");
+			writer.key("coordinates");
+			skipWhiteSpaces();
+			pop('(');
+			writePosition(writer);
+			skipWhiteSpaces();
+			pop(')');
+
+		} else if( "linestring".equalsIgnoreCase(identifier) ) {
+			writer.value("LineString");
+			writer.key("coordinates");
+			writePositionList(writer);
+
+		} else if( "polygon".equalsIgnoreCase(identifier) ) {
+			writer.value("Polygon");
+			writer.key("coordinates");
+			writePositionLists(writer);
+
+		} else if( "multipoint".equalsIgnoreCase(identifier) ) {
+			writer.value("MultiPoint");
+			writer.key("coordinates");
+			writeMultiPointPositions(writer);
+
+		} else if( "multilinestring".equalsIgnoreCase(identifier) ) {
+			writer.value("MultiLineString");
+			writer.key("coordinates");
+			writePositionLists(writer);
+
+		} else if( "multipolygon".equalsIgnoreCase(identifier) ) {
+			writer.value("MultiPolygon");
+			writer.key("coordinates");
+			skipWhiteSpaces();
+			pop('(');
+			writer.array();
+			boolean done = false;
+			do {
+				writePositionLists(writer);
+				skipWhiteSpaces();
+				if( check(')') ) {
+					done = true;
+				} else {
+					pop(',');
+				}
+			} while( !done );
+			writer.endArray();
+			pop(')');
+
+		} else if( "geometrycollection".equalsIgnoreCase(identifier) ) {
+			writer.value("GeometryCollection");
+			writer.key("geometries");
+			skipWhiteSpaces();
+			pop('(');
+			writer.array();
+			boolean done = false;
+			do {
+				writeGeometry(writer);
+				skipWhiteSpaces();
+				if( check(')') ) {
+					done = true;
+				} else {
+					pop(',');
+				}
+			} while( !done );
+			writer.endArray();
+			pop(')');
+
+		} else {
+			throw new Exception("Unrecognized WKT type: "+identifier);
+		}
+
+		writer.endObject();
+	}
+
+	/**
+	 * Writes the ordinates of one position as an array
+	 */
+	private void writePosition(JSONWriter writer) throws Exception {
+		writer.array();
+
+		skipWhiteSpaces();
+		writeNumber(writer);
+		int count = 1;
+
+		skipWhiteSpaces();
+		while( pos < length
+		 && false == check(')')
+		 && false == check(',') ){
+			writeNumber(writer);
+			++count;
+			skipWhiteSpaces();
+		}
+
+		if( count < 2 ){
+			throw new Exception("A point must have 2 or more positions");
+		}
+
+		writer.endArray();
+	}
+
+	/**
+	 * Writes a parenthesized list of positions: (x y, x y, ...)
+	 */
+	private void writePositionList(JSONWriter writer) throws Exception {
+		skipWhiteSpaces();
+		pop('(');
+		writer.array();
+		boolean done = false;
+		do {
+			writePosition(writer);
+			if( check(')') ) {
+				done = true;
+			} else {
+				pop(',');
+			}
+		} while( !done );
+		writer.endArray();
+		pop(')');
+	}
+
+	/**
+	 * Writes a parenthesized list of position lists: ((x y, ...),(x y, ...))
+	 */
+	private void writePositionLists(JSONWriter writer) throws Exception {
+		skipWhiteSpaces();
+		pop('(');
+		writer.array();
+		boolean done = false;
+		do {
+			writePositionList(writer);
+			skipWhiteSpaces();
+			if( check(')') ) {
+				done = true;
+			} else {
+				pop(',');
+			}
+		} while( !done );
+		writer.endArray();
+		pop(')');
+	}
+
+	/**
+	 * Positions of a multi point may or may not be enclosed in parentheses:
+	 * ((x y),(x y)) or (x y, x y)
+	 */
+	private void writeMultiPointPositions(JSONWriter writer) throws Exception {
+		skipWhiteSpaces();
+		pop('(');
+		writer.array();
+		boolean done = false;
+		do {
+			skipWhiteSpaces();
+			if( check('(') ) {
+				pop('(');
+				writePosition(writer);
+				skipWhiteSpaces();
+				pop(')');
+				skipWhiteSpaces();
+			} else {
+				writePosition(writer);
+			}
+			if( check(')') ) {
+				done = true;
+			} else {
+				pop(',');
+			}
+		} while( !done );
+		writer.endArray();
+		pop(')');
+	}
+
+	/**
+	 * Copies a number from the WKT string to the JSON writer. Since
+	 * JSON does not accept a leading '+', leading zeros or a decimal
+	 * point without digits, those are removed. Trailing zeros in the
+	 * decimal portion are also removed.
+	 */
+	private void writeNumber(JSONWriter writer) throws Exception {
+		number.setLength(0);
+
+		// Sign
+		if( pos < length && '+' == wkt.charAt(pos) ) {
+			++pos;
+		} else if( pos < length && '-' == wkt.charAt(pos) ) {
+			number.append('-');
+			++pos;
+		}
+
+		// Integer portion
+		int intStart = pos;
+		while( pos < length && isDigit(wkt.charAt(pos)) ) {
+			++pos;
+		}
+		int intEnd = pos;
+
+		// Decimal portion
+		int decStart = pos;
+		int decEnd = pos;
+		if( pos < length && '.' == wkt.charAt(pos) ) {
+			++pos;
+			decStart = pos;
+			while( pos < length && isDigit(wkt.charAt(pos)) ) {
+				++pos;
+			}
+			decEnd = pos;
+		}
+
+		if( intEnd - intStart + decEnd - decStart < 1 ) {
+			throw new Exception("Expected a position at offset "+pos);
+		}
+
+		int i = intStart;
+		while( i < intEnd - 1 && '0' == wkt.charAt(i) ) {
+			++i;
+		}
+		if( i < intEnd ) {
+			number.append(wkt, i, intEnd);
+		} else {
+			number.append('0');
+		}
+
+		while( decEnd > decStart && '0' == wkt.charAt(decEnd-1) ) {
+			--decEnd;
+		}
+		if( decEnd > decStart ) {
+			number.append('.');
+			number.append(wkt, decStart, decEnd);
+		}
+
+		writer.value(numberValue);
+	}
+
+	private String readIdentifier() {
+		int start = pos;
+		while( pos < length ) {
+			char c = wkt.charAt(pos);
+			if( (c >= 'a' && c <= 'z')
+			 || (c >= 'A' && c <= 'Z') ) {
+				++pos;
+			} else {
+				break;
+			}
+		}
+		return wkt.substring(start, pos);
+	}
+
+	private void skipWhiteSpaces() {
+		while( pos < length ) {
+			char c = wkt.charAt(pos);
+			if( ' ' == c
+			 || '\n' == c
+			 || '\r' == c
+			 || '\t' == c ) {
+				++pos;
+			} else {
+				break;
+			}
+		}
+	}
+
+	private boolean check(char expected) {
+		return pos < length && expected == wkt.charAt(pos);
+	}
+
+	private void pop(char expected) throws Exception {
+		if( false == check(expected) ) {
+			throw new Exception("Expected '"+expected+"' at offset "+pos);
+		}
+		++pos;
+	}
+
+	private boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -3,9 +3,8 @@ package ca.carleton.gcrc.geom.wkt;
 import java.io.BufferedReader;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.List;
-import java.util.Vector;
 
+import ca.carleton.gcrc.geom.CoordinateSequence;
 import ca.carleton.gcrc.geom.Geometry;
 import ca.carleton.gcrc.geom.GeometryCollection;
 import ca.carleton.gcrc.geom.LineString;
@@ -15,8 +14,30 @@ import ca.carleton.gcrc.geom.MultiPolygon;
 import ca.carleton.gcrc.geom.Point;
 import ca.carleton.gcrc.geom.Polygon;
 
+/**
+ * Parses WKT strings into geometries. An instance holds no state and
+ * can be shared between threads.
+ */
 public class WktParser {
 
+	/**
+	 * Buffer receiving the ordinates of the position being parsed. A new
+	 * buffer is used for each WKT string parsed.
+	 */
+	static private class OrdinateBuffer {
+		double[] ordinates = new double[4];
+
+		int add(int count, double position) {
+			if( count >= ordinates.length ){
+				double[] newOrdinates = new double[ordinates.length * 2];
+				System.arraycopy(ordinates, 0, newOrdinates, 0, count);
+				ordinates = newOrdinates;
+			}
+			ordinates[count] = position;
+			return count + 1;
+		}
+	}
+
 	public WktParser(){
 		
 	}
@@ -32,10 +53,10 @@ public class WktParser {
 	
 	public Geometry parseWkt(Reader reader) throws Exception {
 		BufferedReader bufReader = new BufferedReader(reader);
-		return parseGeometry(bufReader);
+		return parseGeometry(bufReader, new OrdinateBuffer());
 	}
 	
-	private Geometry parseGeometry(BufferedReader bufReader) throws Exception {
+	private Geometry parseGeometry(BufferedReader bufReader, OrdinateBuffer buffer) throws Exception {
 		
 		Geometry geometry = null;
 		try {
@@ -43,25 +64,25 @@ public class WktParser {
 			String identifier = readIdentifier(bufReader);
 			
 			if( "point".equalsIgnoreCase(identifier) ) {
-				geometry = parsePoint(bufReader);
+				geometry = parsePoint(bufReader, buffer);
 				
 			} else if( "linestring".equalsIgnoreCase(identifier) ) {
-				geometry = parseLineString(bufReader);
+				geometry = parseLineString(bufReader, buffer);
 					
 			} else if( "polygon".equalsIgnoreCase(identifier) ) {
-				geometry = parsePolygon(bufReader);
+				geometry = parsePolygon(bufReader, buffer);
 				
 			} else if( "multipoint".equalsIgnoreCase(identifier) ) {
-				geometry = parseMultiPoint(bufReader);
+				geometry = parseMultiPoint(bufReader, buffer);
 				
 			} else if( "multilinestring".equalsIgnoreCase(identifier) ) {
-				geometry = parseMultiLineString(bufReader);
+				geometry = parseMultiLineString(bufReader, buffer);
 				
 			} else if( "multipolygon".equalsIgnoreCase(identifier) ) {
-				geometry = parseMultiPolygon(bufReader);
+				geometry = parseMultiPolygon(bufReader, buffer);
 				
 			} else if( "geometrycollection".equalsIgnoreCase(identifier) ) {
-				geometry = parseGeometryCollection(bufReader);
+				geometry = parseGeometryCollection(bufReader, buffer);
 					
 			} else {
 				throw new Exception("Unrecognized WKT type: "+identifier);
@@ -257,46 +278,51 @@ public class WktParser {
 		return position;
 	}
 	
-	private List<Number> parsePositions(BufferedReader br) throws Exception {
-		List<Number> positions = new Vector<Number>();
+	/**
+	 * Parses the ordinates of a position into the buffer.
+	 * @return Number of ordinates parsed
+	 */
+	private int parsePositions(BufferedReader br, OrdinateBuffer buffer) throws Exception {
+		int count = 0;
 		
 		skipWhiteSpaces(br);
 		
 		double position = parsePosition(br);
-		positions.add(position);
+		count = buffer.add(count, position);
 		
 		int whites = skipWhiteSpaces(br);
 		boolean isEndOfPositions = checkForRightParen(br);
 		while( false == isEndOfPositions && whites > 0 ){
 			position = parsePosition(br);
-			positions.add(position);
+			count = buffer.add(count, position);
 			
 			whites = skipWhiteSpaces(br);
 			isEndOfPositions = checkForRightParenOrComma(br);
 		}
 		
-		return positions;
+		if( count < 2 ){
+			throw new Exception("A point must have 2 or more positions");
+		}
+		
+		return count;
 	}
 	
-	private Point parsePoint(BufferedReader br) throws Exception {
+	private Point parsePoint(BufferedReader br, OrdinateBuffer buffer) throws Exception {
 		
 		skipWhiteSpaces(br);
 		popLeftParen(br);
 		
-		List<Number> positions = parsePositions(br);
-		if( positions.size() < 2 ){
-			throw new Exception("A point must have 2 or more positions");
-		}
+		int count = parsePositions(br, buffer);
 		
 		skipWhiteSpaces(br);
 		popRightParen(br);
 
-		Point point = new Point(positions);
+		Point point = new Point(buffer.ordinates, count);
 		return point;
 	}
 	
-	private LineString parseLineString(BufferedReader br) throws Exception {
-		LineString lineString = new LineString();
+	private LineString parseLineString(BufferedReader br, OrdinateBuffer buffer) throws Exception {
+		CoordinateSequence coordinates = new CoordinateSequence();
 		
 		skipWhiteSpaces(br);
 		popLeftParen(br);
@@ -304,13 +330,8 @@ public class WktParser {
 		// Accumulate points
 		boolean done = false;
 		do {
-			List<Number> positions = parsePositions(br);
-			if( positions.size() < 2 ){
-				throw new Exception("A point must have 2 or more positions");
-			}
-
-			Point point = new Point(positions);
-			lineString.addPoint(point);
+			int count = parsePositions(br, buffer);
+			coordinates.add(buffer.ordinates, count);
 			
 			if( checkForRightParen(br) ) {
 				done = true;
@@ -322,22 +343,22 @@ public class WktParser {
 		
 		popRightParen(br);
 		
-		return lineString;
+		return new LineString(coordinates);
 	}
 	
-	private Polygon parsePolygon(BufferedReader br) throws Exception {
+	private Polygon parsePolygon(BufferedReader br, OrdinateBuffer buffer) throws Exception {
 		Polygon polygon = new Polygon();
 		
 		skipWhiteSpaces(br);
 		popLeftParen(br);
 		
-		LineString ls = parseLineString(br);
+		LineString ls = parseLineString(br, buffer);
 		polygon.addLinearRing(ls);
 		skipWhiteSpaces(br);
 		while( false == checkForRightParen(br) ){
 			popComma(br);
 			
-			ls = parseLineString(br);
+			ls = parseLineString(br, buffer);
 			polygon.addLinearRing(ls);
 			skipWhiteSpaces(br);
 		}
@@ -347,8 +368,8 @@ public class WktParser {
 		return polygon;
 	}
 	
-	private MultiPoint parseMultiPoint(BufferedReader br) throws Exception {
-		MultiPoint multiPoint = new MultiPoint();
+	private MultiPoint parseMultiPoint(BufferedReader br, OrdinateBuffer buffer) throws Exception {
+		CoordinateSequence coordinates = new CoordinateSequence();
 		
 		skipWhiteSpaces(br);
 		popLeftParen(br);
@@ -357,16 +378,14 @@ public class WktParser {
 		do {
 			skipWhiteSpaces(br);
 			if( checkForLeftParen(br) ) {
-				Point point = parsePoint(br);
-				multiPoint.addPoint(point);
+				popLeftParen(br);
+				int count = parsePositions(br, buffer);
+				skipWhiteSpaces(br);
+				popRightParen(br);
+				coordinates.add(buffer.ordinates, count);
 			} else {
-				List<Number> positions = parsePositions(br);
-				if( positions.size() < 2 ){
-					throw new Exception("A point must have 2 or more positions");
-				}
-
-				Point point = new Point(positions);
-				multiPoint.addPoint(point);
+				int count = parsePositions(br, buffer);
+				coordinates.add(buffer.ordinates, count);
 			}
 
 			if( checkForRightParen(br) ) {
@@ -379,10 +398,10 @@ public class WktParser {
 		
 		popRightParen(br);
 		
-		return multiPoint;
+		return new MultiPoint(coordinates);
 	}
 	
-	private MultiLineString parseMultiLineString(BufferedReader br) throws Exception {
+	private MultiLineString parseMultiLineString(BufferedReader br, OrdinateBuffer buffer) throws Exception {
 		MultiLineString multiLineString = new MultiLineString();
 		
 		skipWhiteSpaces(br);
@@ -392,7 +411,7 @@ public class WktParser {
 		do {
 			skipWhiteSpaces(br);
 
-			LineString lineString = parseLineString(br);
+			LineString lineString = parseLineString(br, buffer);
 			multiLineString.addLineString(lineString);
 
 			if( checkForRightParen(br) ) {
@@ -408,7 +427,7 @@ public class WktParser {
 		return multiLineString;
 	}
 	
-	private MultiPolygon parseMultiPolygon(BufferedReader br) throws Exception {
+	private MultiPolygon parseMultiPolygon(BufferedReader br, OrdinateBuffer buffer) throws Exception {
 		MultiPolygon multiPolygon = new MultiPolygon();
 		
 		skipWhiteSpaces(br);
@@ -418,7 +437,7 @@ public class WktParser {
 		do {
 			skipWhiteSpaces(br);
 
-			Polygon polygon = parsePolygon(br);
+			Polygon polygon = parsePolygon(br, buffer);
 			multiPolygon.addPolygon(polygon);
 
 			if( checkForRightParen(br) ) {
@@ -434,7 +453,7 @@ public class WktParser {
 		return multiPolygon;
 	}
 	
-	private GeometryCollection parseGeometryCollection(BufferedReader br) throws Exception {
+	private GeometryCollection parseGeometryCollection(BufferedReader br, OrdinateBuffer buffer) throws Exception {
 		GeometryCollection geometryCollection = new GeometryCollection();
 		
 		skipWhiteSpaces(br);
@@ -444,7 +463,7 @@ public class WktParser {
 		do {
 			skipWhiteSpaces(br);
 
-			Geometry geometry = parseGeometry(br);
+			Geometry geometry = parseGeometry(br, buffer);
 			geometryCollection.addGeometry(geometry);
 
 			if( checkForRightParen(br) ) {
@@ -5,6 +5,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.text.NumberFormat;
 
+import ca.carleton.gcrc.geom.CoordinateSequence;
 import ca.carleton.gcrc.geom.Geometry;
 import ca.carleton.gcrc.geom.GeometryCollection;
 import ca.carleton.gcrc.geom.LineString;
@@ -69,42 +70,26 @@ public class WktWriter {
 	
 	private void writePoint(Point point, NumberFormat numFormat, PrintWriter pw) throws Exception {
 		pw.write("POINT(");
-		boolean firstPosition = true;
-		for(Number position : point.getPositions()){
-			if( firstPosition ) {
-				firstPosition = false;
-			} else {
+		for(int i=0,e=point.getDimension(); i<e; ++i){
+			if( i > 0 ) {
 				pw.write(" ");
 			}
 			
-			writeNumber(pw, numFormat, position);
+			writeNumber(pw, numFormat, point.getOrdinate(i));
 		}
 		pw.write(")");
 	}
 	
 	private void writeMultiPoint(MultiPoint multiPoint, NumberFormat numFormat, PrintWriter pw) throws Exception {
 		pw.write("MULTIPOINT(");
-		boolean firstPoint = true;
-		for(Point point : multiPoint.getPoints()){
-			if( firstPoint ) {
-				firstPoint = false;
-			} else {
+		CoordinateSequence coordinates = multiPoint.getCoordinates();
+		for(int i=0,e=coordinates.size(); i<e; ++i){
+			if( i > 0 ) {
 				pw.write(",");
 			}
 
 			pw.write("(");
-			
-			boolean firstPosition = true;
-			for(Number position : point.getPositions()){
-				if( firstPosition ) {
-					firstPosition = false;
-				} else {
-					pw.write(" ");
-				}
-				
-				writeNumber(pw, numFormat, position);
-			}
-
+			writePosition(pw, numFormat, coordinates, i);
 			pw.write(")");
 		}
 		pw.write(")");
@@ -112,25 +97,7 @@ public class WktWriter {
 	
 	private void writeLineString(LineString lineString, NumberFormat numFormat, PrintWriter pw) throws Exception {
 		pw.write("LINESTRING(");
-		boolean firstPoint = true;
-		for(Point point : lineString.getPoints()){
-			if( firstPoint ) {
-				firstPoint = false;
-			} else {
-				pw.write(",");
-			}
-
-			boolean firstPosition = true;
-			for(Number position : point.getPositions()){
-				if( firstPosition ) {
-					firstPosition = false;
-				} else {
-					pw.write(" ");
-				}
-				
-				writeNumber(pw, numFormat, position);
-			}
-		}
+		writeCoordinates(pw, numFormat, lineString.getCoordinates());
 		pw.write(")");
 	}
 	
@@ -146,25 +113,7 @@ public class WktWriter {
 
 			pw.write("(");
 
-			boolean firstPoint = true;
-			for(Point point : lineString.getPoints()){
-				if( firstPoint ) {
-					firstPoint = false;
-				} else {
-					pw.write(",");
-				}
-
-				boolean firstPosition = true;
-				for(Number position : point.getPositions()){
-					if( firstPosition ) {
-						firstPosition = false;
-					} else {
-						pw.write(" ");
-					}
-					
-					writeNumber(pw, numFormat, position);
-				}
-			}
+			writeCoordinates(pw, numFormat, lineString.getCoordinates());
 
 			pw.write(")");
 		}
@@ -183,25 +132,7 @@ public class WktWriter {
 
 			pw.write("(");
 
-			boolean firstPoint = true;
-			for(Point point : lineString.getPoints()){
-				if( firstPoint ) {
-					firstPoint = false;
-				} else {
-					pw.write(",");
-				}
-
-				boolean firstPosition = true;
-				for(Number position : point.getPositions()){
-					if( firstPosition ) {
-						firstPosition = false;
-					} else {
-						pw.write(" ");
-					}
-					
-					writeNumber(pw, numFormat, position);
-				}
-			}
+			writeCoordinates(pw, numFormat, lineString.getCoordinates());
 
 			pw.write(")");
 		}
@@ -231,25 +162,7 @@ public class WktWriter {
 
 				pw.write("(");
 
-				boolean firstPoint = true;
-				for(Point point : lineString.getPoints()){
-					if( firstPoint ) {
-						firstPoint = false;
-					} else {
-						pw.write(",");
-					}
-
-					boolean firstPosition = true;
-					for(Number position : point.getPositions()){
-						if( firstPosition ) {
-							firstPosition = false;
-						} else {
-							pw.write(" ");
-						}
-						
-						writeNumber(pw, numFormat, position);
-					}
-				}
+				writeCoordinates(pw, numFormat, lineString.getCoordinates());
 
 				pw.write(")");
 			}
@@ -275,19 +188,45 @@ public class WktWriter {
 		pw.write(")");
 	}
 	
+	/**
+	 * Writes the positions of a sequence, separated by commas
+	 */
+	private void writeCoordinates(PrintWriter pw, NumberFormat numFormat, CoordinateSequence coordinates){
+		for(int i=0,e=coordinates.size(); i<e; ++i){
+			if( i > 0 ) {
+				pw.write(",");
+			}
+
+			writePosition(pw, numFormat, coordinates, i);
+		}
+	}
+
+	/**
+	 * Writes the ordinates of a position, separated by spaces
+	 */
+	private void writePosition(PrintWriter pw, NumberFormat numFormat, CoordinateSequence coordinates, int index){
+		for(int i=0,e=coordinates.getPositionDimension(index); i<e; ++i){
+			if( i > 0 ) {
+				pw.write(" ");
+			}
+			
+			writeNumber(pw, numFormat, coordinates.getOrdinate(index, i));
+		}
+	}
+	
 	/**
 	 * Writes a number to the print writer. If the number is an integer, do not
 	 * write the decimal points.
 	 * @param pw
 	 * @param num
 	 */
-	private void writeNumber(PrintWriter pw, NumberFormat numFormat, Number num){
-		if( num.doubleValue() == Math.round(num.doubleValue()) ){
+	private void writeNumber(PrintWriter pw, NumberFormat numFormat, double num){
+		if( num == Math.round(num) ){
 			// Integer
 			if( null != numFormat ){
-				pw.print( numFormat.format(num.intValue()) );
+				pw.print( numFormat.format((int)num) );
 			} else {
-				pw.print( num.intValue() );
+				pw.print( (int)num );
 			}
 			
 		} else {
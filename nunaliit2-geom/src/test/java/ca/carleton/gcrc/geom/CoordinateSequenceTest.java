@@ -0,0 +1,92 @@
+package ca.carleton.gcrc.geom;
+
+import java.util.List;
+
+import ca.carleton.gcrc.geom.wkt.WktParser;
+import ca.carleton.gcrc.geom.wkt.WktWriter;
+import junit.framework.TestCase;
+
+public class CoordinateSequenceTest extends TestCase {
+
+	public void testAdd() throws Exception {
+		CoordinateSequence coordinates = new CoordinateSequence();
+		for(int i=0; i<100; ++i){
+			coordinates.add(i, -i);
+		}
+
+		if( 100 != coordinates.size() ){
+			fail("Unexpected size: "+coordinates.size());
+		}
+		if( 2 != coordinates.getDimension() ){
+			fail("Unexpected dimension: "+coordinates.getDimension());
+		}
+		if( 42.0 != coordinates.getX(42) || -42.0 != coordinates.getY(42) ){
+			fail("Unexpected position");
+		}
+	}
+
+	public void testMixedDimensions() throws Exception {
+		CoordinateSequence coordinates = new CoordinateSequence();
+		coordinates.add(1, 2);
+		coordinates.add(new double[]{3, 4, 5}, 3);
+
+		if( 3 != coordinates.getDimension() ){
+			fail("Unexpected dimension: "+coordinates.getDimension());
+		}
+		if( 2 != coordinates.getPositionDimension(0) ){
+			fail("First position should keep two ordinates");
+		}
+		if( 2 != coordinates.getPoint(0).getPositions().size() ){
+			fail("First point should have two ordinates");
+		}
+		if( 5.0 != coordinates.getOrdinate(1, 2) ){
+			fail("Unexpected ordinate");
+		}
+	}
+
+	public void testPointViews() throws Exception {
+		LineString lineString = new LineString();
+		lineString.addPoint( new Point(1,2) );
+		lineString.getPoints().add( new Point(3,4) );
+
+		List<Point> points = lineString.getPoints();
+		if( 2 != points.size() ){
+			fail("Unexpected number of points: "+points.size());
+		}
+
+		// Modifying a point obtained from the line string does not
+		// affect the line string
+		Point point = points.get(0);
+		point.addPosition(10);
+		if( 3 != point.getDimension() ){
+			fail("Position should be added to point");
+		}
+		if( 2 != lineString.getPoints().get(0).getDimension() ){
+			fail("Line string should not be modified");
+		}
+		if( 3.0 != lineString.getPoints().get(1).getX() ){
+			fail("Unexpected point");
+		}
+	}
+
+	public void testRoundTrip() throws Exception {
+		String wkt = "MULTIPOLYGON(((0 0,0 10,10 10,0 0)),((100 100,100 110,110 110,110 100,100 100),(101 101,101 102,102 102,101.5 101)))";
+		Geometry geom = (new WktParser()).parseWkt(wkt);
+
+		String output = (new WktWriter()).toWkt(geom);
+		if( false == wkt.equals(output) ){
+			fail("Unexpected WKT: "+output);
+		}
+
+		BoundingBox bbox = geom.getBoundingBox();
+		if( 0.0 != bbox.getMinX().doubleValue()
+		 || 110.0 != bbox.getMaxY().doubleValue() ){
+			fail("Unexpected bounding box");
+		}
+
+		Geometry other = (new WktParser()).parseWkt(wkt);
+		if( 0 != (new GeometryComparator()).compare(geom, other) ){
+			fail("Geometries should be equal");
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package ca.carleton.gcrc.geom;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.List;
+
+import ca.carleton.gcrc.geom.geojson.GeoJsonFeature;
+import ca.carleton.gcrc.geom.geojson.GeoJsonFeatureReader;
+import ca.carleton.gcrc.geom.geojson.GeoJsonParser;
+
+import junit.framework.TestCase;
+
+public class GeoJsonFeatureReaderTest extends TestCase {
+
+	public void testReadFeatures() throws Exception {
+		StringReader sr = new StringReader("{\"crs\":{\"type\":\"name\"},\"features\":["
+				+"{\"type\":\"Feature\",\"id\":\"a\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[0,1]}},"
+				+"{\"type\":\"Feature\",\"id\":\"b\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[0,1],[2,3]]}}"
+				+"],\"type\":\"FeatureCollection\"}");
+		GeoJsonFeatureReader reader = new GeoJsonFeatureReader(sr);
+
+		GeoJsonFeature feature = reader.readFeature();
+		if( null == feature || false == "a".equals(feature.getId()) ){
+			fail("Unexpected first feature");
+		}
+		feature = reader.readFeature();
+		if( null == feature || false == (feature.getGeometry() instanceof LineString) ){
+			fail("Unexpected second feature");
+		}
+		if( null != reader.readFeature() ){
+			fail("Expected end of features");
+		}
+		if( 2 != reader.getCount() ){
+			fail("Unexpected count: "+reader.getCount());
+		}
+	}
+
+	public void testEmptyCollection() throws Exception {
+		StringReader sr = new StringReader("{\"type\":\"FeatureCollection\",\"features\":[]}");
+		GeoJsonFeatureReader reader = new GeoJsonFeatureReader(sr);
+		if( null != reader.readFeature() ){
+			fail("Expected no features");
+		}
+	}
+
+	public void testInvalidType() throws Exception {
+		StringReader sr = new StringReader("{\"type\":\"Feature\",\"features\":[]}");
+		GeoJsonFeatureReader reader = new GeoJsonFeatureReader(sr);
+		try {
+			reader.readFeature();
+			fail("Error expected");
+		} catch(Exception e) {
+			// OK
+		}
+	}
+
+	public void testSameAsParser() throws Exception {
+		File parent = TestSupport.findTopTestingDir();
+		File file = new File(parent, "1_NI_PlacePoints.json");
+
+		FileInputStream fis = new FileInputStream(file);
+		List<GeoJsonFeature> features = null;
+		try {
+			features = new GeoJsonParser().parse(new InputStreamReader(fis, "UTF-8"));
+		} finally {
+			fis.close();
+		}
+
+		fis = new FileInputStream(file);
+		try {
+			GeoJsonFeatureReader reader = new GeoJsonFeatureReader(new InputStreamReader(fis, "UTF-8"));
+			GeometryComparator comparator = new GeometryComparator();
+			for(GeoJsonFeature expected : features){
+				GeoJsonFeature feature = reader.readFeature();
+				if( null == feature ){
+					fail("Missing feature");
+				}
+				if( 0 != comparator.compare(expected.getGeometry(), feature.getGeometry()) ){
+					fail("Unexpected geometry for feature: "+feature.getId());
+				}
+			}
+			if( null != reader.readFeature() ){
+				fail("Unexpected feature");
+			}
+		} finally {
+			fis.close();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package ca.carleton.gcrc.geom;
+
+import java.io.StringWriter;
+
+import org.json.JSONWriter;
+
+import ca.carleton.gcrc.geom.geojson.GeoJsonGeometryWriter;
+import ca.carleton.gcrc.geom.wkt.WktGeoJsonTranscoder;
+import ca.carleton.gcrc.geom.wkt.WktParser;
+import junit.framework.TestCase;
+
+public class WktGeoJsonTranscoderTest extends TestCase {
+
+	static private String transcode(String wkt) throws Exception {
+		StringWriter sw = new StringWriter();
+		new WktGeoJsonTranscoder().transcode(wkt, sw);
+		return sw.toString();
+	}
+
+	static private String parseAndWrite(String wkt) throws Exception {
+		Geometry geometry = new WktParser().parseWkt(wkt);
+		StringWriter sw = new StringWriter();
+		new GeoJsonGeometryWriter().writeGeometry(new JSONWriter(sw), geometry);
+		return sw.toString();
+	}
+
+	static private void checkSameAsParser(String wkt) throws Exception {
+		String expected = parseAndWrite(wkt);
+		String output = transcode(wkt);
+		if( false == expected.equals(output) ){
+			fail("Unexpected output for "+wkt+": "+output+" (expected "+expected+")");
+		}
+	}
+
+	public void testGeometries() throws Exception {
+		checkSameAsParser("POINT(0.123 -123)");
+		checkSameAsParser("POINT(1 2 3)");
+		checkSameAsParser("LINESTRING(0.123 -123, 10 40)");
+		checkSameAsParser("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0),(1 1, 1 2, 2 2, 2 1, 1 1))");
+		checkSameAsParser("MULTIPOINT((0 0),(0 10))");
+		checkSameAsParser("MULTIPOINT(0 0, 0 10)");
+		checkSameAsParser("MULTILINESTRING((0 0, 0 10),(10 0, 10 10))");
+		checkSameAsParser("MULTIPOLYGON(((0 0, 0 10, 10 10, 0 0)),((100 100, 100 110, 110 110, 110 100, 100 100),(101 101, 101 102, 102 102, 101 101)))");
+		checkSameAsParser("GEOMETRYCOLLECTION(POINT(1 2),LINESTRING(3 4, 5 6))");
+	}
+
+	public void testNumbers() throws Exception {
+		String output = transcode("POINT(+007.500 -.25)");
+		if( false == "{\"type\":\"Point\",\"coordinates\":[7.5,-0.25]}".equals(output) ){
+			fail("Unexpected output: "+output);
+		}
+	}
+
+	public void testInvalid() throws Exception {
+		try {
+			transcode("LINESTRING(0 0, 1)");
+			fail("Error expected");
+		} catch(Exception e) {
+			// OK
+		}
+	}
+}
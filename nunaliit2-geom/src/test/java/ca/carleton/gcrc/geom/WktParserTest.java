@@ -121,4 +121,43 @@ public class WktParserTest extends TestCase {
 			fail("Expected two geometries");
 		}
 	}
+
+	public void testSharedParser() throws Exception {
+		final WktParser parser = new WktParser();
+		final String[] errors = new String[8];
+		Thread[] threads = new Thread[errors.length];
+		for(int t=0; t<threads.length; ++t){
+			final int id = t;
+			threads[t] = new Thread(){
+				@Override
+				public void run() {
+					try {
+						String wkt = "LINESTRING("+id+" "+id+" "+id+", "+id+" "+id+")";
+						for(int loop=0; loop<2000 && null == errors[id]; ++loop){
+							LineString lineString = (LineString)parser.parseWkt(wkt);
+							for(Point point : lineString.getPoints()){
+								if( id != point.getX().intValue() 
+								 || id != point.getY().intValue() ){
+									errors[id] = "Unexpected point "+point+" in thread "+id;
+								}
+							}
+						}
+					} catch(Exception e) {
+						errors[id] = e.getMessage();
+					}
+				}
+			};
+		}
+		for(Thread thread : threads){
+			thread.start();
+		}
+		for(Thread thread : threads){
+			thread.join();
+		}
+		for(String error : errors){
+			if( null != error ){
+				fail(error);
+			}
+		}
+	}
 }
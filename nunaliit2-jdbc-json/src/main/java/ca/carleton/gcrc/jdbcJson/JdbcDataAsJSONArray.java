@@ -33,11 +33,12 @@ $Id$
 package ca.carleton.gcrc.jdbcJson;
 
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -67,6 +68,9 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 
 	private static final long serialVersionUID = 1L;
 	
+	// Number of rows fetched from the database at once
+	private static final int FETCH_SIZE = 500;
+	
 	private static Pattern stringParamPattern = Pattern.compile("\\s*string\\((.+)\\)\\s*");
 
 	private JdbcConnections connections;
@@ -494,7 +498,7 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 				throw new ServletException("Database (db) specified multiple times in query - http query: "+httpQuery);
 			}
 			try {
-				con = connections.getDb(dbs[0]);
+				con = connections.borrowDb(dbs[0]);
 			} catch (Exception e) {
 				throw new ServletException("Error while connecting to database ("+dbs[0]+")",e);
 			}
@@ -503,6 +507,17 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 			}
 		}
 		
+		try {
+			performQuery(req, res, con, httpQuery);
+		} finally {
+			// Return connection to pool
+			try {
+				con.close();
+			} catch (SQLException ignored) { }
+		}
+	}
+	
+	private void performQuery(HttpServletRequest req, HttpServletResponse res, Connection con, String httpQuery) throws ServletException, IOException {
 		String sqlQuery = null;
 		try {
 			if( null != req.getParameterValues("search_fields") ) {
@@ -518,8 +533,17 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 			throw new ServletException("Syntax error in SQL query parameters - http query: "+httpQuery, e);									
 		}
 
+		boolean autoCommit = true;
 		try {
+			// Rows are fetched from the database in batches and written as they
+			// are read. The driver only uses a cursor outside auto-commit mode.
+			autoCommit = con.getAutoCommit();
+			if( autoCommit ) {
+				con.setAutoCommit(false);
+			}
+			
 			Statement stmt = con.createStatement();
+			stmt.setFetchSize(FETCH_SIZE);
 
 			if (stmt.execute(sqlQuery)) {
 				// There's a ResultSet to be had
@@ -534,12 +558,14 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 					columnTypes[i] = rsmd.getColumnType(i);
 				}
 
-				JSONArray array = new JSONArray();
+				Writer writer = startJsonResponse(res);
 				try {
+					writer.write("[");
+					boolean first = true;
+					PreparedStatement userStmt = null;
 					Map<Integer,JSONObject> contributorMap = new HashMap<Integer,JSONObject>();
 					while (rs.next()) {
 						JSONObject obj = new JSONObject();
-						array.put(obj);
 						
 						int contributor_id = 0;
 						for (int i=1; i <= numColumns; i++) {
@@ -576,15 +602,18 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 							userInfo = contributorMap.get(contId);
 						} else {
 							try {
-								PreparedStatement pstmt = con.prepareStatement("SELECT name,group_id FROM users WHERE id=?;");
-								pstmt.setInt(1, contributor_id);
-								if( pstmt.execute() ) {
-									ResultSet prs = pstmt.getResultSet();
+								if( null == userStmt ) {
+									userStmt = con.prepareStatement("SELECT name,group_id FROM users WHERE id=?;");
+								}
+								userStmt.setInt(1, contributor_id);
+								if( userStmt.execute() ) {
+									ResultSet prs = userStmt.getResultSet();
 									if( prs.next() ) {
 										userInfo = new JSONObject();
 										userInfo.put("display", prs.getString(1));
 										userInfo.put("anonymous", (prs.getInt(2)==0));
 									}
+									prs.close();
 								}
 							} catch(Exception e) {
 								// Just ignore
@@ -595,38 +624,55 @@ public class JdbcDataAsJSONArray extends HttpServlet {
 						if( null != userInfo ) {
 							obj.put("contributor", userInfo);
 						}
+						
+						if( first ) {
+							first = false;
+						} else {
+							writer.write(",");
+						}
+						obj.write(writer);
+					}
+					writer.write("]");
+					writer.flush();
+					
+					rs.close();
+					if( null != userStmt ) {
+						userStmt.close();
 					}
+				} catch (ServletException e) {
+					throw e;
 				} catch (Exception je) {
 					throw new ServletException("JSON exception for query: "+sqlQuery,je);
 				}
 				
-				// Send response
-				sendJsonResponse(array, res);
-				
 			} else {
 				// indicates an update count or no results - this must be no results
 				throw new ServletException("query returned no results - query: "+sqlQuery);
 			}
 		} catch (SQLException sqle) {
 			throw new ServletException("SQL query failed - query: "+sqlQuery,sqle);
+		} finally {
+			if( autoCommit ) {
+				try {
+					con.rollback();
+					con.setAutoCommit(true);
+				} catch(SQLException e) {
+					// Ignore. The connection is reset when returned to the pool.
+				}
+			}
 		}
 	}
 
-	private void sendJsonResponse(JSONArray array, HttpServletResponse response) throws ServletException {
+	private Writer startJsonResponse(HttpServletResponse response) throws IOException {
 		response.setCharacterEncoding("UTF-8");
 		response.setContentType("text/javascript");
 		response.setHeader("Cache-Control", "no-cache,must-revalidate");
 		response.setDateHeader("Expires", (new Date()).getTime());
 		
-		try {
-			OutputStreamWriter osw = new OutputStreamWriter(response.getOutputStream(),"UTF-8");
-			array.write(osw);
-			osw.flush();
-		} catch(Exception e) {
-			throw new ServletException("Failure generating error",e);
-		}
+		OutputStreamWriter osw = new OutputStreamWriter(response.getOutputStream(),"UTF-8");
+		return new BufferedWriter(osw);
 	}
-	
+
 	public void destroy() {
 		connections.closeAllConnections();
 	}
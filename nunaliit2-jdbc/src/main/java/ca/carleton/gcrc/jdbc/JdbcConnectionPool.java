@@ -0,0 +1,734 @@
+package ca.carleton.gcrc.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of connections to one database. Connections are obtained
+ * with borrowConnection() and must be given back by calling close() on
+ * the returned connection. The physical connection is then kept for the
+ * next borrower.
+ *
+ * Idle connections are validated before they are handed out and are closed
+ * when they stay unused for too long.
+ *
+ * Prepared statements are cached with each physical connection. Preparing
+ * a statement already prepared on the connection reuses it. A statement
+ * returns to the cache when it is closed or, at the latest, when the
+ * connection is returned to the pool.
+ *
+ * This class is thread safe.
+ */
+public class JdbcConnectionPool {
+
+	static final public String PROPERTY_MAX_ACTIVE = "jdbc.pool.maxActive";
+	static final public String PROPERTY_MAX_WAIT_MS = "jdbc.pool.maxWaitMs";
+	static final public String PROPERTY_MAX_IDLE_MS = "jdbc.pool.maxIdleMs";
+	static final public String PROPERTY_VALIDATION_INTERVAL_MS = "jdbc.pool.validationIntervalMs";
+	static final public String PROPERTY_VALIDATION_QUERY = "jdbc.pool.validationQuery";
+	static final public String PROPERTY_STATEMENT_CACHE_SIZE = "jdbc.pool.statementCacheSize";
+
+	static final public int DEFAULT_MAX_ACTIVE = 8;
+	static final public long DEFAULT_MAX_WAIT_MS = 30L * 1000L; // 30 seconds
+	static final public long DEFAULT_MAX_IDLE_MS = 10L * 60L * 1000L; // 10 minutes
+	static final public long DEFAULT_VALIDATION_INTERVAL_MS = 30L * 1000L; // 30 seconds
+	static final public String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+	static final public int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	static private class PhysicalConnection {
+		private Connection connection;
+		private long releasedTime = 0;
+		// Statements not in use, by SQL. Least recently used first.
+		private LinkedHashMap<String,LinkedList<PreparedStatement>> cachedStatements =
+				new LinkedHashMap<String,LinkedList<PreparedStatement>>(16, 0.75f, true);
+		private int cachedStatementCount = 0;
+
+		public PhysicalConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	private String name;
+	private ConnectionInfo info;
+	private int maxActive = DEFAULT_MAX_ACTIVE;
+	private long maxWaitMs = DEFAULT_MAX_WAIT_MS;
+	private long maxIdleMs = DEFAULT_MAX_IDLE_MS;
+	private long validationIntervalMs = DEFAULT_VALIDATION_INTERVAL_MS;
+	private String validationQuery = DEFAULT_VALIDATION_QUERY;
+	private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+	private LinkedList<PhysicalConnection> idleConnections = new LinkedList<PhysicalConnection>();
+	private int activeCount = 0;
+	private int openingCount = 0;
+	private boolean closed = false;
+
+	// Counters
+	private long borrowCount = 0;
+	private long createdCount = 0;
+	private long destroyedCount = 0;
+	private long validationFailureCount = 0;
+	private long timeoutCount = 0;
+	private long totalWaitMs = 0;
+	private long maxWaitObservedMs = 0;
+	private long statementHitCount = 0;
+	private long statementMissCount = 0;
+
+	public JdbcConnectionPool(String name, ConnectionInfo info) {
+		this.name = name;
+		this.info = info;
+	}
+
+	/**
+	 * Reads the pool configuration. Settings are shared by all
+	 * the pools created from the same properties.
+	 */
+	public void parseProperties(Properties props) {
+		if( null == props ) {
+			return;
+		}
+
+		String maxActiveStr = props.getProperty(PROPERTY_MAX_ACTIVE);
+		if( null != maxActiveStr ) {
+			try {
+				setMaxActive( Integer.parseInt(maxActiveStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_MAX_ACTIVE+": "+maxActiveStr);
+			}
+		}
+
+		String maxWaitStr = props.getProperty(PROPERTY_MAX_WAIT_MS);
+		if( null != maxWaitStr ) {
+			try {
+				setMaxWaitMs( Long.parseLong(maxWaitStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_MAX_WAIT_MS+": "+maxWaitStr);
+			}
+		}
+
+		String maxIdleStr = props.getProperty(PROPERTY_MAX_IDLE_MS);
+		if( null != maxIdleStr ) {
+			try {
+				setMaxIdleMs( Long.parseLong(maxIdleStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_MAX_IDLE_MS+": "+maxIdleStr);
+			}
+		}
+
+		String validationIntervalStr = props.getProperty(PROPERTY_VALIDATION_INTERVAL_MS);
+		if( null != validationIntervalStr ) {
+			try {
+				setValidationIntervalMs( Long.parseLong(validationIntervalStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_VALIDATION_INTERVAL_MS+": "+validationIntervalStr);
+			}
+		}
+
+		String validationQuery = props.getProperty(PROPERTY_VALIDATION_QUERY);
+		if( null != validationQuery ) {
+			setValidationQuery(validationQuery.trim());
+		}
+
+		String statementCacheSizeStr = props.getProperty(PROPERTY_STATEMENT_CACHE_SIZE);
+		if( null != statementCacheSizeStr ) {
+			try {
+				setStatementCacheSize( Integer.parseInt(statementCacheSizeStr.trim()) );
+			} catch(Exception e) {
+				logger.error("Invalid value for "+PROPERTY_STATEMENT_CACHE_SIZE+": "+statementCacheSizeStr);
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	synchronized public int getMaxActive() {
+		return maxActive;
+	}
+
+	synchronized public void setMaxActive(int maxActive) {
+		if( maxActive < 1 ) {
+			maxActive = 1;
+		}
+		this.maxActive = maxActive;
+		notifyAll();
+	}
+
+	synchronized public long getMaxWaitMs() {
+		return maxWaitMs;
+	}
+
+	synchronized public void setMaxWaitMs(long maxWaitMs) {
+		this.maxWaitMs = maxWaitMs;
+	}
+
+	synchronized public long getMaxIdleMs() {
+		return maxIdleMs;
+	}
+
+	synchronized public void setMaxIdleMs(long maxIdleMs) {
+		this.maxIdleMs = maxIdleMs;
+	}
+
+	synchronized public long getValidationIntervalMs() {
+		return validationIntervalMs;
+	}
+
+	synchronized public void setValidationIntervalMs(long validationIntervalMs) {
+		this.validationIntervalMs = validationIntervalMs;
+	}
+
+	synchronized public String getValidationQuery() {
+		return validationQuery;
+	}
+
+	/**
+	 * Sets the query used to verify that an idle connection is still
+	 * usable. If null or empty, idle connections are not validated.
+	 */
+	synchronized public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	synchronized public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of prepared statements kept with each
+	 * connection. Zero disables the cache.
+	 */
+	synchronized public void setStatementCacheSize(int statementCacheSize) {
+		if( statementCacheSize < 0 ) {
+			statementCacheSize = 0;
+		}
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * Obtains a connection from the pool, waiting if all connections are in
+	 * use. The caller must call close() on the connection when done.
+	 */
+	public Connection borrowConnection() throws Exception {
+		long start = System.currentTimeMillis();
+
+		while( true ) {
+			PhysicalConnection idle = null;
+			boolean mustOpen = false;
+			long validationInterval = 0;
+			String query = null;
+
+			synchronized(this) {
+				evictIdleConnections(start);
+
+				while( null == idle && false == mustOpen ) {
+					if( closed ) {
+						throw new Exception("Connection pool is closed: "+name);
+					}
+
+					if( idleConnections.size() > 0 ) {
+						// Most recently used connection first
+						idle = idleConnections.removeLast();
+						++activeCount;
+
+					} else if( activeCount + openingCount < maxActive ) {
+						++openingCount;
+						mustOpen = true;
+
+					} else {
+						long waited = System.currentTimeMillis() - start;
+						long remaining = maxWaitMs - waited;
+						if( remaining <= 0 ) {
+							++timeoutCount;
+							throw new Exception("Timeout while waiting for a connection to "+name
+									+" (active: "+activeCount+", waited: "+waited+"ms)");
+						}
+						wait(remaining);
+					}
+				}
+
+				validationInterval = validationIntervalMs;
+				query = validationQuery;
+			}
+
+			if( mustOpen ) {
+				Connection physical = null;
+				try {
+					physical = createPhysicalConnection();
+				} finally {
+					synchronized(this) {
+						--openingCount;
+						if( null != physical ) {
+							++activeCount;
+							++createdCount;
+						} else {
+							notifyAll();
+						}
+					}
+				}
+				recordBorrow(start);
+				return wrapConnection( new PhysicalConnection(physical) );
+			}
+
+			// Validate connections that were idle for a while
+			long idleMs = System.currentTimeMillis() - idle.releasedTime;
+			if( idleMs < validationInterval
+			 || isConnectionValid(idle.connection, query) ) {
+				recordBorrow(start);
+				return wrapConnection(idle);
+			}
+
+			logger.info("Discarding invalid connection to "+name);
+			synchronized(this) {
+				++validationFailureCount;
+			}
+			destroyPhysicalConnection(idle);
+			// loop and try again
+		}
+	}
+
+	/**
+	 * Closes the connections that have been idle for longer than the
+	 * maximum idle time.
+	 */
+	public void evictIdleConnections() {
+		synchronized(this) {
+			evictIdleConnections(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Connections currently in use are closed
+	 * when they are returned to the pool.
+	 */
+	public void close() {
+		LinkedList<PhysicalConnection> toClose = null;
+		synchronized(this) {
+			closed = true;
+			toClose = idleConnections;
+			idleConnections = new LinkedList<PhysicalConnection>();
+			notifyAll();
+		}
+
+		for(PhysicalConnection idle : toClose) {
+			destroyPhysicalConnection(idle);
+		}
+	}
+
+	synchronized public int getActiveCount() {
+		return activeCount;
+	}
+
+	synchronized public int getIdleCount() {
+		return idleConnections.size();
+	}
+
+	synchronized public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	synchronized public long getCreatedCount() {
+		return createdCount;
+	}
+
+	synchronized public long getDestroyedCount() {
+		return destroyedCount;
+	}
+
+	synchronized public long getValidationFailureCount() {
+		return validationFailureCount;
+	}
+
+	synchronized public long getTimeoutCount() {
+		return timeoutCount;
+	}
+
+	/**
+	 * Average time spent by borrowers waiting for a connection.
+	 */
+	synchronized public long getAverageWaitMs() {
+		if( borrowCount < 1 ) {
+			return 0;
+		}
+		return totalWaitMs / borrowCount;
+	}
+
+	synchronized public long getMaxWaitObservedMs() {
+		return maxWaitObservedMs;
+	}
+
+	/**
+	 * Number of times a prepared statement was reused from the cache.
+	 */
+	synchronized public long getStatementHitCount() {
+		return statementHitCount;
+	}
+
+	synchronized public long getStatementMissCount() {
+		return statementMissCount;
+	}
+
+	public String toString() {
+		synchronized(this) {
+			return "JDBC pool "+name+"(active:"+activeCount
+					+" idle:"+idleConnections.size()
+					+" borrowed:"+borrowCount
+					+" avgWaitMs:"+getAverageWaitMs()
+					+" maxWaitMs:"+maxWaitObservedMs
+					+" timeouts:"+timeoutCount
+					+" stmtHits:"+statementHitCount
+					+")";
+		}
+	}
+
+	/**
+	 * Opens a new connection to the database. Can be overridden
+	 * to obtain connections elsewhere.
+	 */
+	protected Connection createPhysicalConnection() throws Exception {
+		if( null == info ) {
+			throw new Exception("No information provided for database named: "+name);
+		}
+
+		try {
+			Class.forName(info.getJdbcClass()); //load the driver
+			Connection con = DriverManager.getConnection(info.getConnectionString(),
+			                                             info.getUserName(),
+			                                             info.getPassword()); //connect to the db
+			DatabaseMetaData dbmd = con.getMetaData(); //get MetaData to confirm connection
+			logger.info("Connection to "+dbmd.getDatabaseProductName()+" "+
+			            dbmd.getDatabaseProductVersion()+" successful.");
+			return con;
+		} catch(Exception e) {
+			throw new Exception("Couldn't get db connection: "+name,e);
+		}
+	}
+
+	private void releaseConnection(PhysicalConnection physical, boolean broken) {
+		boolean destroy = broken;
+		if( false == destroy ) {
+			try {
+				if( physical.connection.isClosed() ) {
+					destroy = true;
+				} else if( false == physical.connection.getAutoCommit() ) {
+					// Do not leak an open transaction to the next borrower
+					physical.connection.rollback();
+					physical.connection.setAutoCommit(true);
+				}
+			} catch(Exception e) {
+				destroy = true;
+			}
+		}
+
+		synchronized(this) {
+			--activeCount;
+			if( false == destroy && false == closed ) {
+				physical.releasedTime = System.currentTimeMillis();
+				idleConnections.addLast(physical);
+				physical = null;
+			}
+			notifyAll();
+		}
+
+		if( null != physical ) {
+			destroyPhysicalConnection(physical);
+		}
+	}
+
+	private void destroyPhysicalConnection(PhysicalConnection physical) {
+		synchronized(this) {
+			++destroyedCount;
+		}
+		// Closing the connection releases its statements
+		physical.cachedStatements.clear();
+		physical.cachedStatementCount = 0;
+		try {
+			physical.connection.close();
+		} catch(Exception e) {
+			// Ignore
+		}
+	}
+
+	/**
+	 * Returns a statement from the cache of the connection, or prepares
+	 * a new one. Called only by the borrower of the connection.
+	 */
+	private PreparedStatement obtainStatement(PhysicalConnection physical, String sql) throws SQLException {
+		LinkedList<PreparedStatement> statements = physical.cachedStatements.get(sql);
+		if( null != statements && statements.size() > 0 ) {
+			PreparedStatement stmt = statements.removeFirst();
+			--physical.cachedStatementCount;
+			if( statements.size() < 1 ) {
+				physical.cachedStatements.remove(sql);
+			}
+			synchronized(this) {
+				++statementHitCount;
+			}
+			return stmt;
+		}
+
+		synchronized(this) {
+			++statementMissCount;
+		}
+		return physical.connection.prepareStatement(sql);
+	}
+
+	/**
+	 * Puts a statement back in the cache of the connection, closing the
+	 * least recently used statements if the cache is full.
+	 */
+	private void returnStatement(PhysicalConnection physical, String sql, PreparedStatement stmt) {
+		int cacheSize = getStatementCacheSize();
+		try {
+			stmt.clearParameters();
+		} catch(Exception e) {
+			closeStatement(stmt);
+			return;
+		}
+
+		LinkedList<PreparedStatement> statements = physical.cachedStatements.get(sql);
+		if( null == statements ) {
+			statements = new LinkedList<PreparedStatement>();
+			physical.cachedStatements.put(sql, statements);
+		}
+		statements.addLast(stmt);
+		++physical.cachedStatementCount;
+
+		Iterator<Map.Entry<String,LinkedList<PreparedStatement>>> it =
+				physical.cachedStatements.entrySet().iterator();
+		while( physical.cachedStatementCount > cacheSize && it.hasNext() ) {
+			LinkedList<PreparedStatement> evicted = it.next().getValue();
+			it.remove();
+			for(PreparedStatement evictedStmt : evicted) {
+				--physical.cachedStatementCount;
+				closeStatement(evictedStmt);
+			}
+		}
+	}
+
+	private void closeStatement(Statement stmt) {
+		try {
+			stmt.close();
+		} catch(Exception e) {
+			// Ignore
+		}
+	}
+
+	// Must be called while synchronized
+	private void evictIdleConnections(long now) {
+		Iterator<PhysicalConnection> it = idleConnections.iterator();
+		while( it.hasNext() ) {
+			PhysicalConnection idle = it.next();
+			if( now - idle.releasedTime > maxIdleMs ) {
+				it.remove();
+				++destroyedCount;
+				idle.cachedStatements.clear();
+				try {
+					idle.connection.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private boolean isConnectionValid(Connection physical, String query) {
+		try {
+			if( physical.isClosed() ) {
+				return false;
+			}
+			if( null == query || query.length() < 1 ) {
+				return true;
+			}
+			Statement stmt = physical.createStatement();
+			try {
+				stmt.execute(query);
+			} finally {
+				stmt.close();
+			}
+			return true;
+		} catch(Exception e) {
+			return false;
+		}
+	}
+
+	synchronized private void recordBorrow(long start) {
+		long waitMs = System.currentTimeMillis() - start;
+		++borrowCount;
+		totalWaitMs += waitMs;
+		if( waitMs > maxWaitObservedMs ) {
+			maxWaitObservedMs = waitMs;
+		}
+	}
+
+	private Connection wrapConnection(final PhysicalConnection physical) {
+		final boolean cacheStatements = getStatementCacheSize() > 0;
+
+		InvocationHandler handler = new InvocationHandler() {
+			private boolean released = false;
+			private boolean broken = false;
+			// Statements obtained from the cache and not yet returned
+			private Map<PreparedStatement,String> outstandingStatements = new IdentityHashMap<PreparedStatement,String>();
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String methodName = method.getName();
+
+				if( "close".equals(methodName) && null == args ) {
+					synchronized(this) {
+						if( released ) {
+							return null;
+						}
+						released = true;
+					}
+					if( false == broken ) {
+						for(Map.Entry<PreparedStatement,String> entry : outstandingStatements.entrySet()) {
+							returnStatement(physical, entry.getValue(), entry.getKey());
+						}
+					}
+					outstandingStatements.clear();
+					releaseConnection(physical, broken);
+					return null;
+				}
+				if( "isClosed".equals(methodName) && null == args ) {
+					synchronized(this) {
+						if( released ) {
+							return true;
+						}
+					}
+				}
+				if( "equals".equals(methodName) && null != args && 1 == args.length ) {
+					return proxy == args[0];
+				}
+				if( "hashCode".equals(methodName) && null == args ) {
+					return System.identityHashCode(proxy);
+				}
+				if( "toString".equals(methodName) && null == args ) {
+					return "Pooled connection to "+name;
+				}
+
+				checkNotReleased();
+
+				try {
+					if( cacheStatements
+					 && "prepareStatement".equals(methodName)
+					 && null != args
+					 && 1 == args.length ) {
+						String sql = (String)args[0];
+						PreparedStatement stmt = obtainStatement(physical, sql);
+						outstandingStatements.put(stmt, sql);
+						return wrapStatement((Connection)proxy, stmt, sql);
+					}
+
+					return method.invoke(physical.connection, args);
+
+				} catch(InvocationTargetException e) {
+					throw checkBroken(e.getCause());
+				} catch(SQLException e) {
+					throw checkBroken(e);
+				}
+			}
+
+			synchronized private void checkNotReleased() throws SQLException {
+				if( released ) {
+					throw new SQLException("Connection was returned to the pool");
+				}
+			}
+
+			private Throwable checkBroken(Throwable cause) {
+				if( cause instanceof SQLException ) {
+					// Connection exceptions (SQL state class 08) indicate
+					// that the physical connection is no longer usable
+					String state = ((SQLException)cause).getSQLState();
+					if( null != state && state.startsWith("08") ) {
+						synchronized(this) {
+							broken = true;
+						}
+					}
+				}
+				return cause;
+			}
+
+			/**
+			 * Statement given to the borrower. Closing it returns it to
+			 * the cache of the connection.
+			 */
+			private PreparedStatement wrapStatement(
+					final Connection connectionProxy
+					,final PreparedStatement stmt
+					,final String sql) {
+				InvocationHandler stmtHandler = new InvocationHandler() {
+					private boolean returned = false;
+
+					@Override
+					public Object invoke(Object stmtProxy, Method method, Object[] args) throws Throwable {
+						String methodName = method.getName();
+
+						if( "close".equals(methodName) && null == args ) {
+							if( false == returned ) {
+								returned = true;
+								if( null != outstandingStatements.remove(stmt) ) {
+									returnStatement(physical, sql, stmt);
+								}
+							}
+							return null;
+						}
+						if( "isClosed".equals(methodName) && null == args && returned ) {
+							return true;
+						}
+						if( "getConnection".equals(methodName) && null == args ) {
+							return connectionProxy;
+						}
+						if( "equals".equals(methodName) && null != args && 1 == args.length ) {
+							return stmtProxy == args[0];
+						}
+						if( "hashCode".equals(methodName) && null == args ) {
+							return System.identityHashCode(stmtProxy);
+						}
+
+						if( returned ) {
+							throw new SQLException("Statement is closed");
+						}
+						checkNotReleased();
+
+						try {
+							return method.invoke(stmt, args);
+						} catch(InvocationTargetException e) {
+							throw checkBroken(e.getCause());
+						}
+					}
+				};
+
+				return (PreparedStatement)Proxy.newProxyInstance(
+						PreparedStatement.class.getClassLoader()
+						,new Class<?>[]{ PreparedStatement.class }
+						,stmtHandler
+						);
+			}
+		};
+
+		return (Connection)Proxy.newProxyInstance(
+				Connection.class.getClassLoader()
+				,new Class<?>[]{ Connection.class }
+				,handler
+				);
+	}
+}
@@ -33,11 +33,11 @@ $Id$
 package ca.carleton.gcrc.jdbc;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -69,6 +69,9 @@ public class JdbcConnections {
 	
 	private Map<String,ConnectionInfo> nameToInfo = new HashMap<String,ConnectionInfo>();
 	private Map<String,Connection> nameToConnection = new HashMap<String,Connection>();
+	private Map<String,JdbcConnectionPool> nameToPool = new HashMap<String,JdbcConnectionPool>();
+	private String defaultConnectionName = null;
+	private Properties poolProperties = new Properties();
 
 	public JdbcConnections(ServletContext servletContext) throws ServletException {
 		
@@ -91,6 +94,7 @@ public class JdbcConnections {
 	}
 	
 	synchronized private void readProperties(Properties props) {
+		poolProperties = props;
 
 		Iterator<Object> it = props.keySet().iterator();
 		while( it.hasNext() ) {
@@ -120,6 +124,7 @@ public class JdbcConnections {
 							// First one defined is the default connection
 							if( false == nameToInfo.containsKey(null) ) {
 								nameToInfo.put(null, def);
+								defaultConnectionName = connectionName;
 							}
 						}
 					}
@@ -129,6 +134,64 @@ public class JdbcConnections {
 		}
 	}
 	
+	/**
+	 * Obtains a connection to the default database from its pool. The
+	 * caller must call close() on the connection to return it to the pool.
+	 * 
+	 * @return Returns a pooled Connection instance.
+	 */
+	public Connection borrowDb() throws Exception {
+		return borrowDb(null);
+	}
+	
+	/**
+	 * Obtains a connection to the named database from its pool, waiting if all
+	 * connections are in use. The caller must call close() on the connection to
+	 * return it to the pool.
+	 * 
+	 * @param db database name.
+	 * @return Returns a pooled Connection instance.
+	 */
+	public Connection borrowDb(String db) throws Exception {
+		JdbcConnectionPool pool = getPool(db);
+		return pool.borrowConnection();
+	}
+	
+	/**
+	 * Returns the pool of connections associated with a database name, creating
+	 * it if needed.
+	 * 
+	 * @param db database name. Null for the default database.
+	 * @return Returns the pool associated with the database.
+	 */
+	synchronized public JdbcConnectionPool getPool(String db) throws Exception {
+		String poolName = db;
+		if( null == poolName ) {
+			poolName = defaultConnectionName;
+		}
+		
+		JdbcConnectionPool pool = nameToPool.get(poolName);
+		if( null == pool ) {
+			ConnectionInfo info = nameToInfo.get(db);
+			
+			if( null == info ) {
+				throw new Exception("No information provided for database named: "+db);
+			}
+			
+			pool = new JdbcConnectionPool(poolName, info);
+			pool.parseProperties(poolProperties);
+			nameToPool.put(poolName, pool);
+		}
+		return pool;
+	}
+	
+	/**
+	 * Returns the pools created so far.
+	 */
+	synchronized public List<JdbcConnectionPool> getPools() {
+		return new ArrayList<JdbcConnectionPool>(nameToPool.values());
+	}
+	
 	/**
 	 * This method returns the default connection.
 	 * 
@@ -140,9 +203,12 @@ public class JdbcConnections {
 	
 	/**
 	 * This method checks for the presence of a Connection associated with the input db parameter. 
-	 * It attempts to create the Connection and adds it to the connection map if it does not
+	 * It attempts to borrow the Connection from the pool and adds it to the connection map if it does not
 	 * already exist.  If the Connection exists or is created, it is returned.
 	 * 
+	 * The returned connection is shared by all callers and is not returned to the pool until
+	 * all connections are closed. Prefer borrowDb() for work performed on behalf of a request.
+	 * 
 	 * @param db database name.
 	 * @return Returns the desired Connection instance, or null.
 	 */
@@ -151,25 +217,8 @@ public class JdbcConnections {
 		if (nameToConnection.containsKey(db)) {
 			con = nameToConnection.get(db);
 		} else {
-			ConnectionInfo info = nameToInfo.get(db);
-			
-			if( null == info ) {
-				throw new Exception("No information provided for database named: "+db);
-			}
-			
-			try {
-				Class.forName(info.getJdbcClass()); //load the driver
-				con = DriverManager.getConnection(info.getConnectionString(),
-			                                     info.getUserName(),
-			                                     info.getPassword()); //connect to the db
-			    DatabaseMetaData dbmd = con.getMetaData(); //get MetaData to confirm connection
-			    logger.info("Connection to "+dbmd.getDatabaseProductName()+" "+
-			                       dbmd.getDatabaseProductVersion()+" successful.\n");
-
-			    nameToConnection.put(db, con);
-			} catch(Exception e) {
-				throw new Exception("Couldn't get db connection: "+db,e);
-			}
+			con = borrowDb(db);
+			nameToConnection.put(db, con);
 		}
 		return(con);
 	}
@@ -186,5 +235,11 @@ public class JdbcConnections {
 			}
 		}
 		catch (SQLException ignored) { }
+		
+		Map<String,JdbcConnectionPool> pools = nameToPool;
+		nameToPool = new HashMap<String,JdbcConnectionPool>();
+		for(JdbcConnectionPool pool : pools.values()) {
+			pool.close();
+		}
 	}
 }
@@ -0,0 +1,275 @@
+package ca.carleton.gcrc.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+public class JdbcConnectionPoolTest extends TestCase {
+
+	/**
+	 * Connection that only supports the calls made by the pool. A connection
+	 * can be marked invalid, in which case the validation query fails.
+	 */
+	static private class MockConnection implements InvocationHandler {
+		private boolean closed = false;
+		private boolean invalid = false;
+		private int prepareCount = 0;
+		private int statementCloseCount = 0;
+
+		public Connection getConnection() {
+			return (Connection)Proxy.newProxyInstance(
+				Connection.class.getClassLoader()
+				,new Class<?>[]{ Connection.class }
+				,this
+				);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if( "close".equals(name) ){
+				closed = true;
+				return null;
+			}
+			if( "isClosed".equals(name) ){
+				return closed;
+			}
+			if( "getAutoCommit".equals(name) ){
+				return true;
+			}
+			if( "prepareStatement".equals(name) ){
+				++prepareCount;
+				InvocationHandler stmtHandler = new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if( "close".equals(method.getName()) ){
+							++statementCloseCount;
+						}
+						return null;
+					}
+				};
+				return Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader()
+					,new Class<?>[]{ PreparedStatement.class }
+					,stmtHandler
+					);
+			}
+			if( "createStatement".equals(name) ){
+				InvocationHandler stmtHandler = new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if( "execute".equals(method.getName()) && invalid ){
+							throw new SQLException("Connection reset", "08006");
+						}
+						return null;
+					}
+				};
+				return Proxy.newProxyInstance(
+					Statement.class.getClassLoader()
+					,new Class<?>[]{ Statement.class }
+					,stmtHandler
+					);
+			}
+			throw new Exception("Unexpected call: "+name);
+		}
+	}
+
+	static private class MockPool extends JdbcConnectionPool {
+		private int created = 0;
+		private MockConnection last = null;
+
+		public MockPool() {
+			super("test", null);
+		}
+
+		@Override
+		protected Connection createPhysicalConnection() throws Exception {
+			++created;
+			last = new MockConnection();
+			return last.getConnection();
+		}
+	}
+
+	public void testReuse() throws Exception {
+		MockPool pool = new MockPool();
+
+		Connection c1 = pool.borrowConnection();
+		if( 1 != pool.getActiveCount() ){
+			fail("Unexpected active count: "+pool.getActiveCount());
+		}
+		c1.close();
+		if( 0 != pool.getActiveCount() || 1 != pool.getIdleCount() ){
+			fail("Connection should be idle");
+		}
+		if( false == c1.isClosed() ){
+			fail("Returned connection should appear closed");
+		}
+
+		// Closing twice has no effect
+		c1.close();
+		if( 1 != pool.getIdleCount() ){
+			fail("Connection returned twice");
+		}
+
+		Connection c2 = pool.borrowConnection();
+		c2.close();
+		if( 1 != pool.created ){
+			fail("Physical connection should be reused");
+		}
+		if( 2 != pool.getBorrowCount() ){
+			fail("Unexpected borrow count: "+pool.getBorrowCount());
+		}
+	}
+
+	public void testUseAfterClose() throws Exception {
+		MockPool pool = new MockPool();
+
+		Connection c1 = pool.borrowConnection();
+		c1.close();
+		try {
+			c1.createStatement();
+			fail("Connection should not be usable after being returned");
+		} catch(SQLException e) {
+			// OK
+		}
+	}
+
+	public void testTimeout() throws Exception {
+		MockPool pool = new MockPool();
+		pool.setMaxActive(1);
+		pool.setMaxWaitMs(50);
+
+		Connection c1 = pool.borrowConnection();
+		try {
+			pool.borrowConnection();
+			fail("Pool should be exhausted");
+		} catch(Exception e) {
+			// OK
+		}
+		if( 1 != pool.getTimeoutCount() ){
+			fail("Unexpected timeout count: "+pool.getTimeoutCount());
+		}
+		c1.close();
+
+		Connection c2 = pool.borrowConnection();
+		c2.close();
+	}
+
+	public void testWaitForReturn() throws Exception {
+		MockPool pool = new MockPool();
+		pool.setMaxActive(1);
+		pool.setMaxWaitMs(5000);
+
+		final Connection c1 = pool.borrowConnection();
+		Thread thread = new Thread(){
+			public void run() {
+				try {
+					Thread.sleep(50);
+					c1.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		};
+		thread.start();
+
+		Connection c2 = pool.borrowConnection();
+		c2.close();
+		thread.join();
+
+		if( 1 != pool.created ){
+			fail("Physical connection should be reused");
+		}
+	}
+
+	public void testValidation() throws Exception {
+		MockPool pool = new MockPool();
+		pool.setValidationIntervalMs(0);
+
+		Connection c1 = pool.borrowConnection();
+		c1.close();
+		pool.last.invalid = true;
+
+		Connection c2 = pool.borrowConnection();
+		c2.close();
+		if( 2 != pool.created ){
+			fail("Invalid connection should be replaced");
+		}
+		if( 1 != pool.getValidationFailureCount() ){
+			fail("Unexpected validation failure count: "+pool.getValidationFailureCount());
+		}
+	}
+
+	public void testIdleEviction() throws Exception {
+		MockPool pool = new MockPool();
+		pool.setMaxIdleMs(0);
+
+		Connection c1 = pool.borrowConnection();
+		c1.close();
+		Thread.sleep(5);
+		pool.evictIdleConnections();
+		if( 0 != pool.getIdleCount() ){
+			fail("Idle connection should be evicted");
+		}
+		if( 1 != pool.getDestroyedCount() ){
+			fail("Unexpected destroyed count: "+pool.getDestroyedCount());
+		}
+	}
+
+	public void testStatementCache() throws Exception {
+		MockPool pool = new MockPool();
+
+		Connection c1 = pool.borrowConnection();
+		PreparedStatement s1 = c1.prepareStatement("SELECT a FROM t WHERE id=?");
+		s1.close();
+		PreparedStatement s2 = c1.prepareStatement("SELECT a FROM t WHERE id=?");
+		if( 1 != pool.last.prepareCount ){
+			fail("Closed statement should be reused");
+		}
+
+		// Statement in use is not shared
+		PreparedStatement s3 = c1.prepareStatement("SELECT a FROM t WHERE id=?");
+		if( 2 != pool.last.prepareCount ){
+			fail("Statement in use should not be reused");
+		}
+		s3.close();
+		if( s2.getConnection() != c1 ){
+			fail("Statement should report the pooled connection");
+		}
+
+		// Statements not closed are returned with the connection
+		c1.close();
+		Connection c2 = pool.borrowConnection();
+		c2.prepareStatement("SELECT a FROM t WHERE id=?");
+		c2.prepareStatement("SELECT a FROM t WHERE id=?");
+		if( 2 != pool.last.prepareCount ){
+			fail("Statements should be reused by the next borrower");
+		}
+		c2.close();
+
+		if( 3 != pool.getStatementHitCount() ){
+			fail("Unexpected hit count: "+pool.getStatementHitCount());
+		}
+	}
+
+	public void testStatementCacheSize() throws Exception {
+		MockPool pool = new MockPool();
+		pool.setStatementCacheSize(2);
+
+		Connection c1 = pool.borrowConnection();
+		for(int i=0; i<4; ++i){
+			PreparedStatement stmt = c1.prepareStatement("SELECT "+i);
+			stmt.close();
+		}
+		if( 2 != pool.last.statementCloseCount ){
+			fail("Least recently used statements should be closed");
+		}
+		c1.close();
+	}
+}
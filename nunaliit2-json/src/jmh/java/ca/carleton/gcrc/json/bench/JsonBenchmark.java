@@ -0,0 +1,122 @@
+package ca.carleton.gcrc.json.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import ca.carleton.gcrc.json.Utf8Writer;
+
+/**
+ * Measures parsing and serialization of documents as they are stored
+ * in an atlas: a schema document, a typical document with geometry,
+ * time stamps and attachment descriptions, and a large GeoJSON feature
+ * collection. Allocation rates are reported when run with "-prof gc".
+ *
+ * Run with:
+ * mvn -P jmh -pl nunaliit2-json test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+	static public void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+			.include(JsonBenchmark.class.getSimpleName())
+			.addProfiler("gc")
+			.build();
+
+		new Runner(opt).run();
+	}
+
+	@Param({"schema_definition.json", "demo_doc.json", "place_points.json"})
+	public String document;
+
+	private String text;
+	private byte[] utf8;
+	private JSONObject parsed;
+	private ByteArrayOutputStream output;
+
+	@Setup
+	public void setup() throws Exception {
+		InputStream is = JsonBenchmark.class.getResourceAsStream(document);
+		if( null == is ){
+			throw new Exception("Unable to find document: "+document);
+		}
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int size = is.read(buffer);
+			while( size >= 0 ){
+				baos.write(buffer, 0, size);
+				size = is.read(buffer);
+			}
+			utf8 = baos.toByteArray();
+		} finally {
+			is.close();
+		}
+
+		text = new String(utf8, "UTF-8");
+		parsed = new JSONObject(text);
+		output = new ByteArrayOutputStream(utf8.length * 2);
+	}
+
+	@Benchmark
+	public JSONObject parseString() throws Exception {
+		return new JSONObject(text);
+	}
+
+	@Benchmark
+	public JSONObject parseReader() throws Exception {
+		Reader reader = new InputStreamReader(new ByteArrayInputStream(utf8), "UTF-8");
+		return new JSONObject(new JSONTokener(reader));
+	}
+
+	@Benchmark
+	public String serializeString() throws Exception {
+		return parsed.toString();
+	}
+
+	@Benchmark
+	public int serializeOutputStreamWriter() throws Exception {
+		output.reset();
+		Writer writer = new OutputStreamWriter(output, "UTF-8");
+		parsed.write(writer);
+		writer.flush();
+		return output.size();
+	}
+
+	@Benchmark
+	public int serializeUtf8Writer() throws Exception {
+		output.reset();
+		Writer writer = new Utf8Writer(output);
+		parsed.write(writer);
+		writer.flush();
+		return output.size();
+	}
+}
@@ -0,0 +1,127 @@
+package ca.carleton.gcrc.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer that encodes characters to UTF-8 directly into a byte buffer,
+ * which is written to the output stream when full. Unlike
+ * OutputStreamWriter, it does not lock on each write nor go through a
+ * charset encoder, which makes it suitable for streaming large JSON
+ * responses.
+ *
+ * Unpaired surrogates are written as '?'. Instances are not safe to share
+ * between threads.
+ */
+public class Utf8Writer extends Writer {
+
+	static final private int BUFFER_SIZE = 8192;
+
+	private OutputStream os;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int count = 0;
+	// High surrogate waiting for the following low surrogate, or 0
+	private char pendingHighSurrogate = 0;
+
+	public Utf8Writer(OutputStream os) {
+		this.os = os;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		writeChar((char)c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for(int i=off, e=off+len; i<e; ++i){
+			char c = cbuf[i];
+			if( c < 0x80 && 0 == pendingHighSurrogate && count < BUFFER_SIZE ){
+				buffer[count++] = (byte)c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for(int i=off, e=off+len; i<e; ++i){
+			char c = str.charAt(i);
+			if( c < 0x80 && 0 == pendingHighSurrogate && count < BUFFER_SIZE ){
+				buffer[count++] = (byte)c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		os.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if( 0 != pendingHighSurrogate ){
+			pendingHighSurrogate = 0;
+			writeByte('?');
+		}
+		flushBuffer();
+		os.close();
+	}
+
+	private void writeChar(char c) throws IOException {
+		if( 0 != pendingHighSurrogate ){
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if( Character.isLowSurrogate(c) ){
+				int codePoint = Character.toCodePoint(high, c);
+				ensureCapacity(4);
+				buffer[count++] = (byte)(0xf0 | (codePoint >> 18));
+				buffer[count++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[count++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[count++] = (byte)(0x80 | (codePoint & 0x3f));
+				return;
+			}
+			writeByte('?');
+		}
+
+		if( c < 0x80 ){
+			writeByte(c);
+		} else if( c < 0x800 ){
+			ensureCapacity(2);
+			buffer[count++] = (byte)(0xc0 | (c >> 6));
+			buffer[count++] = (byte)(0x80 | (c & 0x3f));
+		} else if( Character.isHighSurrogate(c) ){
+			pendingHighSurrogate = c;
+		} else if( Character.isLowSurrogate(c) ){
+			writeByte('?');
+		} else {
+			ensureCapacity(3);
+			buffer[count++] = (byte)(0xe0 | (c >> 12));
+			buffer[count++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			buffer[count++] = (byte)(0x80 | (c & 0x3f));
+		}
+	}
+
+	private void writeByte(int b) throws IOException {
+		ensureCapacity(1);
+		buffer[count++] = (byte)b;
+	}
+
+	private void ensureCapacity(int size) throws IOException {
+		if( count + size > BUFFER_SIZE ){
+			flushBuffer();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if( count > 0 ){
+			os.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
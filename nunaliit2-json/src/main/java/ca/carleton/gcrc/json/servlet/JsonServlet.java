@@ -1,6 +1,5 @@
 package ca.carleton.gcrc.json.servlet;
 
-import java.io.OutputStreamWriter;
 import java.util.List;
 import java.util.Vector;
 
@@ -14,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.carleton.gcrc.json.JSONSupport;
+import ca.carleton.gcrc.json.Utf8Writer;
 
 @SuppressWarnings("serial")
 public abstract class JsonServlet extends HttpServlet {
@@ -33,7 +33,7 @@ public abstract class JsonServlet extends HttpServlet {
 		resp.addHeader("Expires", "-1");
 		
 		if( null != result ) {
-			OutputStreamWriter osw = new OutputStreamWriter(resp.getOutputStream(), "UTF-8");
+			Utf8Writer osw = new Utf8Writer(resp.getOutputStream());
 			result.write(osw);
 			osw.flush();
 		}
@@ -49,7 +49,7 @@ public abstract class JsonServlet extends HttpServlet {
 			
 			JSONObject errorObj = JSONSupport.fromError(t);
 			
-			OutputStreamWriter osw = new OutputStreamWriter(resp.getOutputStream(), "UTF-8");
+			Utf8Writer osw = new Utf8Writer(resp.getOutputStream());
 			errorObj.write(osw);
 			osw.flush();
 			
@@ -230,7 +230,7 @@ public class JSONObject {
                 return;
             default:
                 x.back();
-                key = x.nextValue().toString();
+                key = x.nextKey();
             }
 
             // The key is followed by ':'.
@@ -992,16 +992,34 @@ public class JSONObject {
         String string = number.toString();
         if (string.indexOf('.') > 0 && string.indexOf('e') < 0
                 && string.indexOf('E') < 0) {
-            while (string.endsWith("0")) {
-                string = string.substring(0, string.length() - 1);
+            int end = string.length();
+            while (string.charAt(end - 1) == '0') {
+                end -= 1;
             }
-            if (string.endsWith(".")) {
-                string = string.substring(0, string.length() - 1);
+            if (string.charAt(end - 1) == '.') {
+                end -= 1;
+            }
+            if (end < string.length()) {
+                string = string.substring(0, end);
             }
         }
         return string;
     }
 
+    /**
+     * Returns true if the number is one of the primitive wrappers. Their
+     * text, as produced by numberToString(), is always a valid JSON number,
+     * so it does not need to be verified.
+     */
+    static boolean isPrimitiveNumber(Number number) {
+        return number instanceof Integer
+                || number instanceof Long
+                || number instanceof Double
+                || number instanceof Float
+                || number instanceof Short
+                || number instanceof Byte;
+    }
+
     /**
      * Get an optional value associated with a key.
      *
@@ -1933,14 +1951,12 @@ public class JSONObject {
      * @return A String correctly formatted for insertion in a JSON text.
      */
     public static String quote(String string) {
-        StringWriter sw = new StringWriter();
-        synchronized (sw.getBuffer()) {
-            try {
-                return quote(string, sw).toString();
-            } catch (IOException ignored) {
-                // will never happen - we are writing to a string writer
-                return "";
-            }
+        StringWriter sw = new StringWriter(string == null ? 2 : string.length() + 2);
+        try {
+            return quote(string, sw).toString();
+        } catch (IOException ignored) {
+            // will never happen - we are writing to a string writer
+            return "";
         }
     }
 
@@ -1955,21 +1971,36 @@ public class JSONObject {
         String hhhh;
         int i;
         int len = string.length();
+        // Characters that need no escape are written in runs
+        int runStart = 0;
 
         w.write('"');
         for (i = 0; i < len; i += 1) {
             b = c;
             c = string.charAt(i);
+            boolean escape;
+            if (c < ' ' || c == '\\' || c == '"') {
+                escape = true;
+            } else if (c == '/') {
+                escape = (b == '<');
+            } else {
+                escape = (c >= '\u0080' && c < '\u00a0')
+                        || (c >= '\u2000' && c < '\u2100');
+            }
+            if (!escape) {
+                continue;
+            }
+
+            if (i > runStart) {
+                w.write(string, runStart, i - runStart);
+            }
+            runStart = i + 1;
+
             switch (c) {
             case '\\':
             case '"':
-                w.write('\\');
-                w.write(c);
-                break;
             case '/':
-                if (b == '<') {
-                    w.write('\\');
-                }
+                w.write('\\');
                 w.write(c);
                 break;
             case '\b':
@@ -1988,17 +2019,15 @@ public class JSONObject {
                 w.write("\\r");
                 break;
             default:
-                if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-                        || (c >= '\u2000' && c < '\u2100')) {
-                    w.write("\\u");
-                    hhhh = Integer.toHexString(c);
-                    w.write("0000", 0, 4 - hhhh.length());
-                    w.write(hhhh);
-                } else {
-                    w.write(c);
-                }
+                w.write("\\u");
+                hhhh = Integer.toHexString(c);
+                w.write("0000", 0, 4 - hhhh.length());
+                w.write(hhhh);
             }
         }
+        if (len > runStart) {
+            w.write(string, runStart, len - runStart);
+        }
         w.write('"');
         return w;
     }
@@ -2408,7 +2437,8 @@ public class JSONObject {
         } else if (value instanceof Number) {
             // not all Numbers may match actual JSON Numbers. i.e. fractions or Imaginary
             final String numberAsString = numberToString((Number) value);
-            if(NUMBER_PATTERN.matcher(numberAsString).matches()) {
+            if(isPrimitiveNumber((Number) value)
+                    || NUMBER_PATTERN.matcher(numberAsString).matches()) {
                 writer.write(numberAsString);
             } else {
                 // The Number value is not a valid JSON number.
@@ -2418,7 +2448,7 @@ public class JSONObject {
         } else if (value instanceof Boolean) {
             writer.write(value.toString());
         } else if (value instanceof Enum<?>) {
-            writer.write(quote(((Enum<?>)value).name()));
+            quote(((Enum<?>)value).name(), writer);
         } else if (value instanceof JSONObject) {
             ((JSONObject) value).write(writer, indentFactor, indent);
         } else if (value instanceof JSONArray) {
@@ -2479,7 +2509,7 @@ public class JSONObject {
             if (length == 1) {
             	final Entry<String,?> entry = this.entrySet().iterator().next();
                 final String key = entry.getKey();
-                writer.write(quote(key));
+                quote(key, writer);
                 writer.write(':');
                 if (indentFactor > 0) {
                     writer.write(' ');
@@ -2500,7 +2530,7 @@ public class JSONObject {
                     }
                     indent(writer, newindent);
                     final String key = entry.getKey();
-                    writer.write(quote(key));
+                    quote(key, writer);
                     writer.write(':');
                     if (indentFactor > 0) {
                         writer.write(' ');
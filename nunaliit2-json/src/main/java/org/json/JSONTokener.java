@@ -1,11 +1,9 @@
 package org.json;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -35,10 +33,29 @@ SOFTWARE.
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse
  * JSON source strings.
+ * <p>
+ * Characters are read in blocks into a buffer owned by the tokener, so that
+ * reading a character does not involve a call to the reader. Strings and
+ * unquoted values found entirely in the buffer are extracted without
+ * copying them character by character. Keys of objects are shared between
+ * documents through a small cache.
  * @author JSON.org
  * @version 2014-05-03
  */
 public class JSONTokener {
+    /** size of the blocks read from a reader. */
+    private static final int BUFFER_SIZE = 8192;
+    /** number of entries in the key cache. Must be a power of 2. */
+    private static final int KEY_CACHE_SIZE = 1024;
+    /** longest key kept in the key cache. */
+    private static final int KEY_CACHE_MAX_LENGTH = 32;
+    /**
+     * Keys recently parsed, indexed by hash. The array is shared by all
+     * tokeners without locking: strings are immutable, so a thread sees
+     * either a complete string or a stale entry, which is only a cache miss.
+     */
+    private static final String[] keyCache = new String[KEY_CACHE_SIZE];
+
     /** current read character position on the current line. */
     private long character;
     /** flag to indicate if the end of the input has been found. */
@@ -49,8 +66,16 @@ public class JSONTokener {
     private long line;
     /** previous character read from the input. */
     private char previous;
-    /** Reader for the input. */
+    /** Reader for the input, or null if the input is a string. */
     private final Reader reader;
+    /** characters read from the input. */
+    private char[] buffer;
+    /** position of the next character in the buffer. */
+    private int position;
+    /** number of valid characters in the buffer. */
+    private int limit;
+    /** position in the buffer that must be preserved when reading more, or -1. */
+    private int mark;
     /** flag to indicate that a previous character was requested. */
     private boolean usePrevious;
     /** the number of characters read in the previous line. */
@@ -59,20 +84,13 @@ public class JSONTokener {
 
     /**
      * Construct a JSONTokener from a Reader. The caller must close the Reader.
+     * Characters are read ahead in blocks, so the reader must not be read
+     * other than through the tokener.
      *
      * @param reader     A reader.
      */
     public JSONTokener(Reader reader) {
-        this.reader = reader.markSupported()
-                ? reader
-                        : new BufferedReader(reader);
-        this.eof = false;
-        this.usePrevious = false;
-        this.previous = 0;
-        this.index = 0;
-        this.character = 1;
-        this.characterPreviousLine = 0;
-        this.line = 1;
+        this(reader, new char[BUFFER_SIZE], 0);
     }
 
 
@@ -91,7 +109,65 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this(null, s.toCharArray(), s.length());
+    }
+
+
+    private JSONTokener(Reader reader, char[] buffer, int limit) {
+        this.reader = reader;
+        this.buffer = buffer;
+        this.position = 0;
+        this.limit = limit;
+        this.mark = -1;
+        this.eof = false;
+        this.usePrevious = false;
+        this.previous = 0;
+        this.index = 0;
+        this.character = 1;
+        this.characterPreviousLine = 0;
+        this.line = 1;
+    }
+
+
+    /**
+     * Reads the next block of characters from the reader. Called when all
+     * characters in the buffer were consumed. Characters from the mark are
+     * kept in the buffer.
+     * @return false if the end of the input is reached
+     * @throws JSONException Thrown if the reader fails
+     */
+    private boolean fill() throws JSONException {
+        if (this.reader == null) {
+            return false;
+        }
+
+        int keep = 0;
+        if (this.mark >= 0) {
+            keep = this.limit - this.mark;
+            char[] target = this.buffer;
+            if (keep >= this.buffer.length) {
+                target = new char[this.buffer.length * 2];
+            }
+            System.arraycopy(this.buffer, this.mark, target, 0, keep);
+            this.buffer = target;
+            this.mark = 0;
+        }
+        this.position = keep;
+        this.limit = keep;
+
+        try {
+            int count = this.reader.read(this.buffer, keep, this.buffer.length - keep);
+            while (count == 0) {
+                count = this.reader.read(this.buffer, keep, this.buffer.length - keep);
+            }
+            if (count < 0) {
+                return false;
+            }
+            this.limit = keep + count;
+        } catch (IOException exception) {
+            throw new JSONException(exception);
+        }
+        return true;
     }
 
 
@@ -164,20 +240,14 @@ public class JSONTokener {
         if(this.usePrevious) {
             return true;
         }
-        try {
-            this.reader.mark(1);
-        } catch (IOException e) {
-            throw new JSONException("Unable to preserve stream position", e);
+        // next() can not consume the null character '\0'
+        if (this.position >= this.limit && !this.fill()) {
+            this.eof = true;
+            return false;
         }
-        try {
-            // -1 is EOF, but next() can not consume the null character '\0'
-            if(this.reader.read() <= 0) {
-                this.eof = true;
-                return false;
-            }
-            this.reader.reset();
-        } catch (IOException e) {
-            throw new JSONException("Unable to read the next character from the stream", e);
+        if (this.buffer[this.position] == 0) {
+            this.eof = true;
+            return false;
         }
         return true;
     }
@@ -194,12 +264,10 @@ public class JSONTokener {
         if (this.usePrevious) {
             this.usePrevious = false;
             c = this.previous;
+        } else if (this.position < this.limit || this.fill()) {
+            c = this.buffer[this.position++];
         } else {
-            try {
-                c = this.reader.read();
-            } catch (IOException exception) {
-                throw new JSONException(exception);
-            }
+            c = -1;
         }
         if (c <= 0) { // End of stream
             this.eof = true;
@@ -234,6 +302,21 @@ public class JSONTokener {
         }
     }
 
+    /**
+     * Consumes characters of the buffer that are known not to be line
+     * terminators, updating the indexes as next() would.
+     * @param end Position following the last character consumed
+     */
+    private void consumeTo(int end) {
+        int count = end - this.position;
+        if (count > 0) {
+            this.index += count;
+            this.character += count;
+            this.previous = this.buffer[end - 1];
+            this.position = end;
+        }
+    }
+
     /**
      * Consume the next character, and check that it matches a specified
      * character.
@@ -309,6 +392,50 @@ public class JSONTokener {
      * @throws JSONException Unterminated string.
      */
     public String nextString(char quote) throws JSONException {
+        return this.nextString(quote, false);
+    }
+
+
+    /**
+     * Return the key of an object member. Quoted keys are shared through
+     * the key cache.
+     * @return The key
+     * @throws JSONException If syntax error.
+     */
+    String nextKey() throws JSONException {
+        char c = this.nextClean();
+        if (c == '"' || c == '\'') {
+            return this.nextString(c, true);
+        }
+        this.back();
+        return this.nextValue().toString();
+    }
+
+
+    private String nextString(char quote, boolean isKey) throws JSONException {
+        // Strings without escapes that end in the buffer are taken directly
+        if (!this.usePrevious) {
+            char[] chars = this.buffer;
+            int start = this.position;
+            for (int i = start, e = this.limit; i < e; i += 1) {
+                char c = chars[i];
+                if (c == quote) {
+                    int length = i - start;
+                    String string;
+                    if (isKey && length <= KEY_CACHE_MAX_LENGTH) {
+                        string = cachedKey(chars, start, length);
+                    } else {
+                        string = new String(chars, start, length);
+                    }
+                    this.consumeTo(i + 1);
+                    return string;
+                }
+                if (c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                    break;
+                }
+            }
+        }
+
         char c;
         StringBuilder sb = new StringBuilder();
         for (;;) {
@@ -363,6 +490,37 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Returns a string for the given characters, reusing a string from the
+     * key cache when the same characters were seen before.
+     */
+    private static String cachedKey(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start, e = start + length; i < e; i += 1) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+
+        String cached = keyCache[slot];
+        if (cached != null && cached.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length; i += 1) {
+                if (cached.charAt(i) != chars[start + i]) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return cached;
+            }
+        }
+
+        String key = new String(chars, start, length);
+        keyCache[slot] = key;
+        return key;
+    }
+
+
     /**
      * Get the text up but not including the specified character or the
      * end of line, whichever comes first.
@@ -419,6 +577,7 @@ public class JSONTokener {
      * @return An object.
      */
     public Object nextValue() throws JSONException {
+        boolean fromBuffer = !(this.usePrevious && this.previous > ' ');
         char c = this.nextClean();
         String string;
 
@@ -443,6 +602,21 @@ public class JSONTokener {
          * formatting character.
          */
 
+        // Values that end in the buffer are taken directly. The first
+        // character was read from the buffer unless it was backed up.
+        if (fromBuffer && c > ' ' && !isValueDelimiter(c) && this.position > 0
+                && this.buffer[this.position - 1] == c) {
+            char[] chars = this.buffer;
+            int start = this.position - 1;
+            for (int i = this.position, e = this.limit; i < e; i += 1) {
+                char d = chars[i];
+                if (d <= ' ' || isValueDelimiter(d)) {
+                    this.consumeTo(i);
+                    return JSONObject.stringToValue(new String(chars, start, i - start));
+                }
+            }
+        }
+
         StringBuilder sb = new StringBuilder();
         while (c > ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
             sb.append(c);
@@ -460,6 +634,26 @@ public class JSONTokener {
     }
 
 
+    private static boolean isValueDelimiter(char c) {
+        switch (c) {
+        case ',':
+        case ':':
+        case ']':
+        case '}':
+        case '/':
+        case '\\':
+        case '"':
+        case '[':
+        case '{':
+        case ';':
+        case '=':
+        case '#':
+            return true;
+        }
+        return false;
+    }
+
+
     /**
      * Skip characters until the next character is the requested character.
      * If the requested character is not found, no characters are skipped.
@@ -471,27 +665,27 @@ public class JSONTokener {
      */
     public char skipTo(char to) throws JSONException {
         char c;
+        long startIndex = this.index;
+        long startCharacter = this.character;
+        long startLine = this.line;
+        boolean startUsePrevious = this.usePrevious;
+        char startPrevious = this.previous;
+        this.mark = this.position;
         try {
-            long startIndex = this.index;
-            long startCharacter = this.character;
-            long startLine = this.line;
-            this.reader.mark(1000000);
             do {
                 c = this.next();
                 if (c == 0) {
-                    // in some readers, reset() may throw an exception if
-                    // the remaining portion of the input is greater than
-                    // the mark size (1,000,000 above).
-                    this.reader.reset();
+                    this.position = this.mark;
                     this.index = startIndex;
                     this.character = startCharacter;
                     this.line = startLine;
+                    this.usePrevious = startUsePrevious;
+                    this.previous = startPrevious;
                     return 0;
                 }
             } while (c != to);
-            this.reader.mark(1);
-        } catch (IOException exception) {
-            throw new JSONException(exception);
+        } finally {
+            this.mark = -1;
         }
         this.back();
         return c;
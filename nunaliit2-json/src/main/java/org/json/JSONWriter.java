@@ -1,6 +1,7 @@
 package org.json;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Map;
 
@@ -133,6 +134,31 @@ public class JSONWriter {
         throw new JSONException("Value out of sequence.");
     }
 
+    /**
+     * Append a string value, quoted directly into the writer.
+     * @param string A string value.
+     * @return this
+     * @throws JSONException If the value is out of sequence.
+     */
+    private JSONWriter appendQuoted(String string) throws JSONException {
+        if (this.mode == 'o' || this.mode == 'a') {
+            try {
+                if (this.comma && this.mode == 'a') {
+                    this.writer.append(',');
+                }
+                JSONObject.quote(string, (Writer) this.writer);
+            } catch (IOException e) {
+                throw new JSONException(e);
+            }
+            if (this.mode == 'o') {
+                this.mode = 'k';
+            }
+            this.comma = true;
+            return this;
+        }
+        throw new JSONException("Value out of sequence.");
+    }
+
     /**
      * Begin appending a new array. All values until the balancing
      * <code>endArray</code> will be appended to this array. The
@@ -221,7 +247,11 @@ public class JSONWriter {
                 if (this.comma) {
                     this.writer.append(',');
                 }
-                this.writer.append(JSONObject.quote(string));
+                if (this.writer instanceof Writer) {
+                    JSONObject.quote(string, (Writer) this.writer);
+                } else {
+                    this.writer.append(JSONObject.quote(string));
+                }
                 this.writer.append(':');
                 this.comma = false;
                 this.mode = 'o';
@@ -339,7 +369,8 @@ public class JSONWriter {
         if (value instanceof Number) {
             // not all Numbers may match actual JSON Numbers. i.e. Fractions or Complex
             final String numberAsString = JSONObject.numberToString((Number) value);
-            if(JSONObject.NUMBER_PATTERN.matcher(numberAsString).matches()) {
+            if(JSONObject.isPrimitiveNumber((Number) value)
+                    || JSONObject.NUMBER_PATTERN.matcher(numberAsString).matches()) {
                 // Close enough to a JSON number that we will return it unquoted
                 return numberAsString;
             }
@@ -408,6 +439,9 @@ public class JSONWriter {
      * @throws JSONException If the value is out of sequence.
      */
     public JSONWriter value(Object object) throws JSONException {
+        if (object instanceof String && this.writer instanceof Writer) {
+            return this.appendQuoted((String) object);
+        }
         return this.append(valueToString(object));
     }
 }
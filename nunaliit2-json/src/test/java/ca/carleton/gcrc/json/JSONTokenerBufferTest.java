@@ -0,0 +1,208 @@
+package ca.carleton.gcrc.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import junit.framework.TestCase;
+
+public class JSONTokenerBufferTest extends TestCase {
+
+	/**
+	 * Reader that returns few characters at a time, so that tokens are
+	 * split between reads.
+	 */
+	static private class TrickleReader extends Reader {
+		private Reader reader;
+		private int size;
+
+		public TrickleReader(String s, int size) {
+			this.reader = new StringReader(s);
+			this.size = size;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return reader.read(cbuf, off, Math.min(len, size));
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	static private String sampleDocument() throws Exception {
+		char[] longChars = new char[20000];
+		Arrays.fill(longChars, 'x');
+
+		JSONObject doc = new JSONObject();
+		doc.put("_id", "0123456789abcdef");
+		doc.put("nunaliit_schema", "demo_doc");
+		doc.put("escapes", "line\nbreak \"quoted\" back\\slash </script> \u00e9\u2028");
+		doc.put("long", new String(longChars));
+		doc.put("int", 42);
+		doc.put("negative", -7.25);
+		doc.put("large", 12345678901L);
+		doc.put("flag", true);
+		doc.put("nothing", JSONObject.NULL);
+		JSONArray coordinates = new JSONArray();
+		for(int i=0; i<500; ++i){
+			JSONArray point = new JSONArray();
+			point.put(-75.0 + i * 0.001);
+			point.put(45.5);
+			coordinates.put(point);
+		}
+		JSONObject geom = new JSONObject();
+		geom.put("nunaliit_type", "geometry");
+		geom.put("wkt", "LINESTRING(0 0,1 1)");
+		geom.put("coordinates", coordinates);
+		doc.put("nunaliit_geom", geom);
+		return doc.toString(2);
+	}
+
+	public void testReaderSameAsString() throws Exception {
+		String text = sampleDocument();
+
+		JSONObject fromString = new JSONObject(new JSONTokener(text));
+
+		int[] sizes = new int[]{1, 3, 7, 100000};
+		for(int size : sizes){
+			JSONTokener tokener = new JSONTokener(new TrickleReader(text, size));
+			JSONObject fromReader = new JSONObject(tokener);
+			if( false == fromString.similar(fromReader) ){
+				fail("Different result when reading "+size+" character(s) at a time");
+			}
+			if( tokener.more() ){
+				fail("Unexpected remaining characters");
+			}
+		}
+
+		// Round trip
+		JSONObject copy = new JSONObject(fromString.toString());
+		if( false == fromString.similar(copy) ){
+			fail("Round trip changed the document");
+		}
+	}
+
+	public void testPositions() throws Exception {
+		String text = "{\"a\": 1,\n \"b\": [true, \"c\"],\r\n\"d\": -2.5e3}";
+
+		JSONTokener fromString = new JSONTokener(text);
+		fromString.nextValue();
+		JSONTokener fromReader = new JSONTokener(new TrickleReader(text, 2));
+		fromReader.nextValue();
+
+		if( false == fromString.toString().equals(fromReader.toString()) ){
+			fail("Different positions: "+fromString+" / "+fromReader);
+		}
+	}
+
+	public void testValues() throws Exception {
+		JSONArray array = new JSONArray(new JSONTokener("[1, -2.5, 12345678901, true, null, \"a\\u0041\\/\", 'single']"));
+		if( 1 != array.getInt(0) ){
+			fail("Unexpected integer: "+array.get(0));
+		}
+		if( -2.5 != array.getDouble(1) ){
+			fail("Unexpected double: "+array.get(1));
+		}
+		if( 12345678901L != array.getLong(2) ){
+			fail("Unexpected long: "+array.get(2));
+		}
+		if( true != array.getBoolean(3) ){
+			fail("Unexpected boolean: "+array.get(3));
+		}
+		if( false == array.isNull(4) ){
+			fail("Unexpected null: "+array.get(4));
+		}
+		if( false == "aA/".equals(array.getString(5)) ){
+			fail("Unexpected string: "+array.get(5));
+		}
+		if( false == "single".equals(array.getString(6)) ){
+			fail("Unexpected string: "+array.get(6));
+		}
+	}
+
+	public void testSharedKeys() throws Exception {
+		JSONObject o1 = new JSONObject("{\"nunaliit_schema\":1}");
+		JSONObject o2 = new JSONObject(new JSONTokener(new StringReader("{\"nunaliit_schema\":2}")));
+
+		String k1 = o1.keys().next();
+		String k2 = o2.keys().next();
+		if( k1 != k2 ){
+			fail("Keys should be shared");
+		}
+	}
+
+	public void testSkipTo() throws Exception {
+		JSONTokener tokener = new JSONTokener(new TrickleReader("abcdef", 2));
+		if( 'd' != tokener.skipTo('d') ){
+			fail("Character not found");
+		}
+		if( 'd' != tokener.next() ){
+			fail("Unexpected character after skip");
+		}
+		if( 0 != tokener.skipTo('z') ){
+			fail("Character should not be found");
+		}
+		if( 'e' != tokener.next() ){
+			fail("Characters should not be skipped");
+		}
+	}
+
+	public void testQuote() throws Exception {
+		String quoted = JSONObject.quote("a\"b\\c</d\te\u0001f\u2028g");
+		String expected = "\"a\\\"b\\\\c<\\/d\\te\\u0001f\\u2028g\"";
+		if( false == expected.equals(quoted) ){
+			fail("Unexpected quote: "+quoted);
+		}
+
+		if( false == "\"plain\"".equals(JSONObject.quote("plain")) ){
+			fail("Unexpected quote of plain text");
+		}
+		if( false == "\"\"".equals(JSONObject.quote(null)) ){
+			fail("Unexpected quote of null");
+		}
+	}
+
+	public void testUtf8Writer() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<5000; ++i){
+			sb.append("a\u00e9\u4e2d\ud83d\ude00");
+		}
+		String text = sb.toString();
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Utf8Writer writer = new Utf8Writer(baos);
+		writer.write(text);
+		writer.write('!');
+		writer.write(text.toCharArray(), 0, 10);
+		writer.flush();
+
+		String expected = text + "!" + text.substring(0, 10);
+		if( false == Arrays.equals(expected.getBytes("UTF-8"), baos.toByteArray()) ){
+			fail("Unexpected encoding");
+		}
+	}
+
+	public void testWriterOutput() throws Exception {
+		StringWriter sw = new StringWriter();
+		new org.json.JSONWriter(sw)
+			.object()
+				.key("a").value("x\"y")
+				.key("b").value(1.5)
+				.key("c").array().value("z").value(2).endArray()
+			.endObject();
+		String expected = "{\"a\":\"x\\\"y\",\"b\":1.5,\"c\":[\"z\",2]}";
+		if( false == expected.equals(sw.toString()) ){
+			fail("Unexpected output: "+sw.toString());
+		}
+	}
+}
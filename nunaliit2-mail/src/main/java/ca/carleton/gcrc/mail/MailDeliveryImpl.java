@@ -82,89 +82,8 @@ public class MailDeliveryImpl implements MailDelivery {
 		logger.info("Sending mail message");
 		
 		try {
-			// Send to log the properties
-//			Enumeration<?> e = mailProperties.propertyNames();
-//			while( e.hasMoreElements() ){
-//				Object keyObj = e.nextElement();
-//				if( keyObj instanceof String ){
-//					String key = (String)keyObj;
-//					String value = mailProperties.getProperty(key);
-//					logger.info("Mail Property "+key+"="+value);
-//				}
-//			}
-			
-			// Check for user name and password
-			String userName = null;
-			String userPassword = null;
-			String prot = mailProperties.getProperty("mail.transport.protocol",null);
-			if( null != prot ){
-				userName = mailProperties.getProperty("mail."+prot+".user",null);
-				userPassword = mailProperties.getProperty("mail."+prot+".password",null);
-			}
-			
-			// Create session
-			Session mailSession = null;
-			if( null != userName && null != userPassword ) {
-				final String name = userName;
-				final String pw = userPassword;
-				
-				Authenticator auth = new Authenticator(){
-					protected PasswordAuthentication getPasswordAuthentication() {
-						return new PasswordAuthentication(name,pw);
-					}
-				};
-				mailSession = Session.getInstance(mailProperties, auth);
-			} else {
-				mailSession = Session.getInstance(mailProperties);
-			}
-			
-			MimeMessage msg = new MimeMessage(mailSession);
-			
-			// From
-			MailRecipient fromRecipient = message.getFromAddress();
-			if( null == fromRecipient ){
-				msg.setFrom( fromAddress );
-			} else {
-				msg.setFrom( fromRecipient.getInternetAddress() );
-			}
-			
-			// To
-			{
-				List<MailRecipient> recipients = message.getToRecipients();
-				InternetAddress[] toAddresses = new InternetAddress[recipients.size()];
-				for(int loop=0; loop<toAddresses.length; ++loop) {
-					MailRecipient recipient = recipients.get(loop);
-					if( null == recipient.getDisplayName() ) {
-						toAddresses[loop] = new InternetAddress(recipient.getAddress());
-					} else {
-						toAddresses[loop] = new InternetAddress(
-							recipient.getAddress()
-							,recipient.getDisplayName()
-						);
-					}
-				}
-				msg.setRecipients(Message.RecipientType.TO, toAddresses);
-			}
-			
-			// Subject
-			msg.setSubject( message.getSubject() );
-			
-			// Date
-			msg.setSentDate(new Date());
-			
-			// Create HTML body part
-			MimeBodyPart htmlMbp = null;
-			if( null != message.getHtmlContent() ) {
-				htmlMbp = new MimeBodyPart();
-				htmlMbp.setContent(message.getHtmlContent(), "text/html");
-			}
-			
-			// Add body part to message
-			Multipart mp = new MimeMultipart();
-			if( null != htmlMbp ) {
-				mp.addBodyPart(htmlMbp);
-			}
-			msg.setContent(mp);
+			Session mailSession = createSession();
+			MimeMessage msg = createMimeMessage(mailSession, message);
 			
 			// Send message
 			Transport.send(msg);
@@ -173,4 +92,90 @@ public class MailDeliveryImpl implements MailDelivery {
 			throw new Exception("Unable to send mail notification",e);
 		}
 	}
+
+	/**
+	 * Creates a mail session from the mail properties. A transport obtained
+	 * from the session can be used to send a number of messages over the
+	 * same connection.
+	 */
+	public Session createSession() throws Exception {
+		// Check for user name and password
+		String userName = null;
+		String userPassword = null;
+		String prot = mailProperties.getProperty("mail.transport.protocol",null);
+		if( null != prot ){
+			userName = mailProperties.getProperty("mail."+prot+".user",null);
+			userPassword = mailProperties.getProperty("mail."+prot+".password",null);
+		}
+		
+		// Create session
+		Session mailSession = null;
+		if( null != userName && null != userPassword ) {
+			final String name = userName;
+			final String pw = userPassword;
+			
+			Authenticator auth = new Authenticator(){
+				protected PasswordAuthentication getPasswordAuthentication() {
+					return new PasswordAuthentication(name,pw);
+				}
+			};
+			mailSession = Session.getInstance(mailProperties, auth);
+		} else {
+			mailSession = Session.getInstance(mailProperties);
+		}
+		
+		return mailSession;
+	}
+
+	public MimeMessage createMimeMessage(Session mailSession, MailMessage message) throws Exception {
+		MimeMessage msg = new MimeMessage(mailSession);
+		
+		// From
+		MailRecipient fromRecipient = message.getFromAddress();
+		if( null == fromRecipient ){
+			msg.setFrom( fromAddress );
+		} else {
+			msg.setFrom( fromRecipient.getInternetAddress() );
+		}
+		
+		// To
+		{
+			List<MailRecipient> recipients = message.getToRecipients();
+			InternetAddress[] toAddresses = new InternetAddress[recipients.size()];
+			for(int loop=0; loop<toAddresses.length; ++loop) {
+				MailRecipient recipient = recipients.get(loop);
+				if( null == recipient.getDisplayName() ) {
+					toAddresses[loop] = new InternetAddress(recipient.getAddress());
+				} else {
+					toAddresses[loop] = new InternetAddress(
+						recipient.getAddress()
+						,recipient.getDisplayName()
+					);
+				}
+			}
+			msg.setRecipients(Message.RecipientType.TO, toAddresses);
+		}
+		
+		// Subject
+		msg.setSubject( message.getSubject() );
+		
+		// Date
+		msg.setSentDate(new Date());
+		
+		// Create HTML body part
+		MimeBodyPart htmlMbp = null;
+		if( null != message.getHtmlContent() ) {
+			htmlMbp = new MimeBodyPart();
+			htmlMbp.setContent(message.getHtmlContent(), "text/html");
+		}
+		
+		// Add body part to message
+		Multipart mp = new MimeMultipart();
+		if( null != htmlMbp ) {
+			mp.addBodyPart(htmlMbp);
+		}
+		msg.setContent(mp);
+		
+		return msg;
+	}
 }
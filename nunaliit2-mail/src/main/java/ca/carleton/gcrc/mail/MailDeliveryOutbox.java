@@ -0,0 +1,527 @@
+package ca.carleton.gcrc.mail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mail delivery that queues messages in an outbox and returns immediately.
+ * A sender thread delivers the queued messages in batches, using a single
+ * connection to the mail server for each batch.
+ *
+ * When a message can not be delivered, it is attempted again later with an
+ * increasing delay. After a number of attempts, the message is abandoned.
+ *
+ * If a directory is given, each queued message is saved as a file in that
+ * directory until it is delivered, so that messages survive a restart.
+ * Abandoned messages are kept in the directory with the extension
+ * ".failed".
+ */
+public class MailDeliveryOutbox implements MailDelivery {
+
+	static final public int DEFAULT_BATCH_SIZE = 50;
+	static final public int DEFAULT_MAX_ATTEMPTS = 8;
+	static final public long DELAY_RETRY_BASE = 30 * 1000; // 30 seconds
+	static final public long DELAY_RETRY_MAX = 60 * 60 * 1000; // 1 hour
+
+	static final private String EXTENSION_QUEUED = ".json";
+	static final private String EXTENSION_WRITING = ".tmp";
+	static final private String EXTENSION_FAILED = ".failed";
+
+	private class OutboxEntry {
+		String id;
+		MailMessage message;
+		int attempts = 0;
+		long nextAttemptTime = 0;
+	}
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private MailDeliveryImpl delivery;
+	private File outboxDir;
+	private List<OutboxEntry> queue = new ArrayList<OutboxEntry>();
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long retryDelayBase = DELAY_RETRY_BASE;
+	private long idCounter = 0;
+	private boolean isShuttingDown = false;
+	private Thread senderThread = null;
+
+	// Metrics
+	private long queuedCount = 0;
+	private long sentCount = 0;
+	private long failedAttemptCount = 0;
+	private long abandonedCount = 0;
+	private long batchCount = 0;
+	private long sendTimeInMs = 0;
+
+	/**
+	 * @param delivery Delivery used to reach the mail server
+	 * @param outboxDir Directory where queued messages are saved. If null,
+	 * messages are only kept in memory.
+	 */
+	public MailDeliveryOutbox(MailDeliveryImpl delivery, File outboxDir) throws Exception {
+		this.delivery = delivery;
+		this.outboxDir = outboxDir;
+
+		if( null != outboxDir ){
+			loadOutbox();
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getRetryDelayBase() {
+		return retryDelayBase;
+	}
+
+	/**
+	 * Sets the delay before the first retry of a message. The delay is
+	 * doubled at each attempt, up to DELAY_RETRY_MAX.
+	 */
+	public void setRetryDelayBase(long retryDelayBase) {
+		this.retryDelayBase = retryDelayBase;
+	}
+
+	/**
+	 * Computes the delay before the next attempt of a message that
+	 * failed the given number of times.
+	 */
+	public long computeRetryDelay(int attempts) {
+		long delay = retryDelayBase << Math.min(Math.max(attempts - 1, 0), 20);
+		if( delay > DELAY_RETRY_MAX ){
+			delay = DELAY_RETRY_MAX;
+		}
+		return delay;
+	}
+
+	@Override
+	public boolean isConfigured() {
+		return delivery.isConfigured();
+	}
+
+	@Override
+	public Properties getMailProperties() {
+		return delivery.getMailProperties();
+	}
+
+	@Override
+	public void sendMessage(MailMessage message) throws Exception {
+		if( false == delivery.isConfigured() ) return;
+
+		OutboxEntry entry = new OutboxEntry();
+		entry.message = message;
+
+		// The counter is padded so that entries created within the same
+		// millisecond are loaded in order
+		synchronized(this) {
+			entry.id = String.format("%d_%010d", System.currentTimeMillis(), idCounter);
+			++idCounter;
+		}
+
+		if( null != outboxDir ){
+			saveEntry(entry);
+		}
+
+		synchronized(this) {
+			queue.add(entry);
+			++queuedCount;
+			this.notifyAll();
+		}
+	}
+
+	synchronized public void start() throws Exception {
+		if( null != senderThread ){
+			// Already started
+			return;
+		}
+
+		isShuttingDown = false;
+		senderThread = new Thread(){
+			@Override
+			public void run() {
+				sendLoop();
+			}
+		};
+		senderThread.setName("mail-outbox");
+		senderThread.start();
+	}
+
+	public void stopTimeoutMillis(int millis) throws Exception {
+		Thread thread = null;
+		synchronized(this) {
+			thread = senderThread;
+			senderThread = null;
+			isShuttingDown = true;
+			this.notifyAll();
+		}
+
+		if( null != thread ){
+			thread.join(millis);
+		}
+	}
+
+	synchronized public int getQueueSize() {
+		return queue.size();
+	}
+
+	synchronized public long getQueuedCount() {
+		return queuedCount;
+	}
+
+	synchronized public long getSentCount() {
+		return sentCount;
+	}
+
+	synchronized public long getFailedAttemptCount() {
+		return failedAttemptCount;
+	}
+
+	synchronized public long getAbandonedCount() {
+		return abandonedCount;
+	}
+
+	synchronized public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Average time spent sending a message, including the time to
+	 * connect to the mail server.
+	 */
+	synchronized public double getAverageSendTimeInMs() {
+		long attempts = sentCount + failedAttemptCount;
+		if( attempts < 1 ){
+			return 0.0;
+		}
+		return (double)sendTimeInMs / (double)attempts;
+	}
+
+	private void sendLoop() {
+		logger.info("Start mail outbox sender");
+
+		List<OutboxEntry> batch = nextBatch();
+		while( null != batch ){
+			sendBatch(batch);
+			batch = nextBatch();
+		}
+
+		logger.info("Mail outbox sender exiting");
+	}
+
+	/**
+	 * Waits until some messages are ready to be sent.
+	 * @return Messages to send or null if shutting down
+	 */
+	synchronized private List<OutboxEntry> nextBatch() {
+		while( false == isShuttingDown ){
+			long now = System.currentTimeMillis();
+			long nextTime = Long.MAX_VALUE;
+
+			List<OutboxEntry> batch = new ArrayList<OutboxEntry>();
+			for(OutboxEntry entry : queue){
+				if( entry.nextAttemptTime <= now ){
+					if( batch.size() < batchSize ){
+						batch.add(entry);
+					}
+				} else if( entry.nextAttemptTime < nextTime ) {
+					nextTime = entry.nextAttemptTime;
+				}
+			}
+
+			if( batch.size() > 0 ){
+				queue.removeAll(batch);
+				return batch;
+			}
+
+			try {
+				if( Long.MAX_VALUE == nextTime ){
+					this.wait();
+				} else {
+					this.wait( Math.max(1, nextTime - now) );
+				}
+			} catch (InterruptedException e) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	private void sendBatch(List<OutboxEntry> batch) {
+		long start = System.currentTimeMillis();
+		int sent = 0;
+
+		Transport transport = null;
+		try {
+			Session session = delivery.createSession();
+
+			Exception connectError = null;
+			long connectErrorTime = 0;
+			for(OutboxEntry entry : batch){
+				if( null != connectError ){
+					// Do not wait on an unreachable server for each message.
+					// The messages are retried together.
+					messageFailed(entry, connectError, 0, connectErrorTime);
+					continue;
+				}
+
+				long messageStart = System.currentTimeMillis();
+				try {
+					if( null == transport || false == transport.isConnected() ){
+						closeTransport(transport);
+						transport = session.getTransport();
+						try {
+							transport.connect();
+						} catch(Exception e) {
+							connectError = e;
+							connectErrorTime = System.currentTimeMillis();
+							throw e;
+						}
+					}
+
+					MimeMessage msg = delivery.createMimeMessage(session, entry.message);
+					msg.saveChanges();
+					transport.sendMessage(msg, msg.getAllRecipients());
+
+					++sent;
+					messageSent(entry, System.currentTimeMillis() - messageStart);
+
+				} catch(Exception e) {
+					long now = System.currentTimeMillis();
+					long failedTime = (null != connectError) ? connectErrorTime : now;
+					messageFailed(entry, e, now - messageStart, failedTime);
+				}
+			}
+
+		} catch(Exception e) {
+			// Unable to create a session. Entries not yet attempted are
+			// placed back in the queue.
+			logger.error("Unable to create mail session", e);
+			synchronized(this) {
+				for(OutboxEntry entry : batch){
+					if( false == queue.contains(entry) ){
+						entry.nextAttemptTime = System.currentTimeMillis() + retryDelayBase;
+						queue.add(entry);
+					}
+				}
+			}
+
+		} finally {
+			closeTransport(transport);
+		}
+
+		synchronized(this) {
+			++batchCount;
+		}
+
+		logger.info("Mail outbox sent "+sent+" of "+batch.size()+" message(s) in "
+				+(System.currentTimeMillis() - start)+"ms");
+	}
+
+	private void messageSent(OutboxEntry entry, long timeInMs) {
+		if( null != outboxDir ){
+			File file = new File(outboxDir, entry.id + EXTENSION_QUEUED);
+			if( file.exists() && false == file.delete() ){
+				logger.error("Unable to remove sent message from outbox: "+file.getAbsolutePath());
+			}
+		}
+
+		synchronized(this) {
+			++sentCount;
+			sendTimeInMs += timeInMs;
+		}
+	}
+
+	private void messageFailed(OutboxEntry entry, Exception e, long timeInMs, long failedTime) {
+		entry.attempts++;
+
+		boolean abandon = (entry.attempts >= maxAttempts);
+		if( abandon ){
+			logger.error("Abandoning mail message after "+entry.attempts+" attempt(s): "+entry.id, e);
+
+			if( null != outboxDir ){
+				File file = new File(outboxDir, entry.id + EXTENSION_QUEUED);
+				File failedFile = new File(outboxDir, entry.id + EXTENSION_FAILED);
+				if( file.exists() && false == file.renameTo(failedFile) ){
+					logger.error("Unable to mark abandoned message in outbox: "+file.getAbsolutePath());
+				}
+			}
+
+		} else {
+			long delay = computeRetryDelay(entry.attempts);
+			entry.nextAttemptTime = failedTime + delay;
+
+			logger.info("Unable to send mail message "+entry.id+" (attempt "+entry.attempts
+					+"). Retrying in "+(delay/1000)+"s: "+e.getMessage());
+
+			if( null != outboxDir ){
+				try {
+					saveEntry(entry);
+				} catch(Exception e1) {
+					logger.error("Unable to save mail message in outbox: "+entry.id, e1);
+				}
+			}
+		}
+
+		synchronized(this) {
+			++failedAttemptCount;
+			sendTimeInMs += timeInMs;
+			if( abandon ){
+				++abandonedCount;
+			} else {
+				queue.add(entry);
+			}
+		}
+	}
+
+	private void closeTransport(Transport transport) {
+		if( null != transport ){
+			try {
+				transport.close();
+			} catch(Exception e) {
+				// Ignore
+			}
+		}
+	}
+
+	/**
+	 * Writes the entry to a temporary file, then renames it, so that a
+	 * partially written message is never loaded.
+	 */
+	private void saveEntry(OutboxEntry entry) throws Exception {
+		JSONObject json = new JSONObject();
+		json.put("message", entry.message.toJSON());
+		json.put("attempts", entry.attempts);
+		json.put("nextAttemptTime", entry.nextAttemptTime);
+
+		File file = new File(outboxDir, entry.id + EXTENSION_QUEUED);
+		File tempFile = new File(outboxDir, entry.id + EXTENSION_WRITING);
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(tempFile);
+			Writer writer = new OutputStreamWriter(fos, "UTF-8");
+			writer.write( json.toString() );
+			writer.flush();
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+
+			if( file.exists() && false == file.delete() ){
+				throw new Exception("Unable to replace file: "+file.getAbsolutePath());
+			}
+			if( false == tempFile.renameTo(file) ){
+				throw new Exception("Unable to rename file: "+tempFile.getAbsolutePath());
+			}
+
+		} catch(Exception e) {
+			throw new Exception("Unable to save mail message in outbox: "+file.getAbsolutePath(), e);
+
+		} finally {
+			if( null != fos ){
+				try {
+					fos.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	private void loadOutbox() throws Exception {
+		if( false == outboxDir.exists() ){
+			if( false == outboxDir.mkdirs() ){
+				throw new Exception("Unable to create outbox directory: "+outboxDir.getAbsolutePath());
+			}
+		}
+		if( false == outboxDir.isDirectory() ){
+			throw new Exception("Outbox is not a directory: "+outboxDir.getAbsolutePath());
+		}
+
+		String[] names = outboxDir.list();
+		if( null == names ){
+			throw new Exception("Unable to list outbox directory: "+outboxDir.getAbsolutePath());
+		}
+		Arrays.sort(names);
+
+		for(String name : names){
+			if( name.endsWith(EXTENSION_QUEUED) ){
+				String id = name.substring(0, name.length() - EXTENSION_QUEUED.length());
+				File file = new File(outboxDir, name);
+				try {
+					JSONObject json = new JSONObject( readFile(file) );
+
+					OutboxEntry entry = new OutboxEntry();
+					entry.id = id;
+					entry.message = MailMessage.fromJSON( json.getJSONObject("message") );
+					entry.attempts = json.optInt("attempts", 0);
+					entry.nextAttemptTime = json.optLong("nextAttemptTime", 0);
+					queue.add(entry);
+
+				} catch(Exception e) {
+					logger.error("Unable to load mail message from outbox: "+file.getAbsolutePath(), e);
+				}
+			}
+		}
+
+		if( queue.size() > 0 ){
+			logger.info("Loaded "+queue.size()+" mail message(s) from outbox");
+		}
+	}
+
+	private String readFile(File file) throws Exception {
+		FileInputStream fis = null;
+		try {
+			fis = new FileInputStream(file);
+			Reader reader = new InputStreamReader(fis, "UTF-8");
+			StringWriter sw = new StringWriter();
+			char[] buffer = new char[1024];
+			int size = reader.read(buffer);
+			while( size >= 0 ){
+				sw.write(buffer, 0, size);
+				size = reader.read(buffer);
+			}
+			return sw.toString();
+
+		} finally {
+			if( null != fis ){
+				try {
+					fis.close();
+				} catch(Exception e) {
+					// Ignore
+				}
+			}
+		}
+	}
+}
@@ -3,8 +3,32 @@ package ca.carleton.gcrc.mail;
 import java.util.List;
 import java.util.Vector;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 public class MailMessage {
 
+	static public MailMessage fromJSON(JSONObject json) throws Exception {
+		MailMessage message = new MailMessage();
+
+		JSONObject from = json.optJSONObject("from");
+		if( null != from ){
+			message.setFromAddress( MailRecipient.fromJSON(from) );
+		}
+
+		JSONArray to = json.optJSONArray("to");
+		if( null != to ){
+			for(int i=0,e=to.length(); i<e; ++i){
+				message.addToRecipient( MailRecipient.fromJSON(to.getJSONObject(i)) );
+			}
+		}
+
+		message.setSubject( json.optString("subject", null) );
+		message.setHtmlContent( json.optString("htmlContent", null) );
+
+		return message;
+	}
+
 	private MailRecipient fromAddress = null;
 	private List<MailRecipient> toRecipients = new Vector<MailRecipient>();
 	private String subject = null;
@@ -44,4 +68,28 @@ public class MailMessage {
 	public void setHtmlContent(String htmlContent) {
 		this.htmlContent = htmlContent;
 	}
+
+	public JSONObject toJSON() throws Exception {
+		JSONObject json = new JSONObject();
+
+		if( null != fromAddress ){
+			json.put("from", fromAddress.toJSON());
+		}
+
+		JSONArray to = new JSONArray();
+		for(MailRecipient recipient : toRecipients){
+			to.put( recipient.toJSON() );
+		}
+		json.put("to", to);
+
+		if( null != subject ){
+			json.put("subject", subject);
+		}
+
+		if( null != htmlContent ){
+			json.put("htmlContent", htmlContent);
+		}
+
+		return json;
+	}
 }
@@ -2,6 +2,8 @@ package ca.carleton.gcrc.mail;
 
 import javax.mail.internet.InternetAddress;
 
+import org.json.JSONObject;
+
 public class MailRecipient {
 
 	static public MailRecipient parseString(String value){
@@ -16,6 +18,12 @@ public class MailRecipient {
 
 		return new MailRecipient(components[0].trim());
 	}
+
+	static public MailRecipient fromJSON(JSONObject json) throws Exception {
+		String address = json.getString("address");
+		String displayName = json.optString("displayName", null);
+		return new MailRecipient(address, displayName);
+	}
 	
 	private String address;
 	private String displayName;
@@ -56,4 +64,13 @@ public class MailRecipient {
 		}
 		return iAddress;
 	}
+
+	public JSONObject toJSON() throws Exception {
+		JSONObject json = new JSONObject();
+		json.put("address", address);
+		if( null != displayName ){
+			json.put("displayName", displayName);
+		}
+		return json;
+	}
 }
@@ -0,0 +1,264 @@
+package ca.carleton.gcrc.mail;
+
+import java.io.File;
+import java.util.List;
+
+import javax.mail.internet.InternetAddress;
+
+import junit.framework.TestCase;
+
+public class MailDeliveryOutboxTest extends TestCase {
+
+	static private File createTempDir(String name) throws Exception {
+		File dir = File.createTempFile(name, "");
+		if( false == dir.delete() || false == dir.mkdir() ){
+			throw new Exception("Unable to create temporary directory: "+dir.getAbsolutePath());
+		}
+		return dir;
+	}
+
+	static private void deleteDir(File dir) {
+		File[] files = dir.listFiles();
+		if( null != files ){
+			for(File file : files){
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	static private MailMessage createMessage(String subject) throws Exception {
+		MailMessage message = new MailMessage();
+		message.addToRecipient(new MailRecipient("to@example.com"));
+		message.setSubject(subject);
+		message.setHtmlContent("<p>"+subject+"</p>");
+		return message;
+	}
+
+	static private void waitForAttempts(MailDeliveryOutbox outbox, long attempts) throws Exception {
+		long end = System.currentTimeMillis() + 10000;
+		while( outbox.getSentCount() + outbox.getFailedAttemptCount() < attempts
+		 && System.currentTimeMillis() < end ){
+			Thread.sleep(10);
+		}
+	}
+
+	static private int countFiles(File dir, String extension) {
+		int count = 0;
+		File[] files = dir.listFiles();
+		if( null != files ){
+			for(File file : files){
+				if( file.getName().endsWith(extension) ){
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	public void testMessageJson() throws Exception {
+		MailMessage message = new MailMessage();
+		message.setFromAddress(new MailRecipient("from@example.com", "From"));
+		message.addToRecipient(new MailRecipient("a@example.com"));
+		message.addToRecipient(new MailRecipient("b@example.com", "B"));
+		message.setSubject("subject");
+		message.setHtmlContent("<p>content</p>");
+
+		MailMessage copy = MailMessage.fromJSON( message.toJSON() );
+
+		if( false == "From<from@example.com>".equals(""+copy.getFromAddress()) ){
+			fail("Unexpected from: "+copy.getFromAddress());
+		}
+		if( 2 != copy.getToRecipients().size() ){
+			fail("Unexpected recipients: "+copy.getToRecipients());
+		}
+		if( false == "a@example.com".equals(""+copy.getToRecipients().get(0)) ){
+			fail("Unexpected recipient: "+copy.getToRecipients().get(0));
+		}
+		if( false == "B<b@example.com>".equals(""+copy.getToRecipients().get(1)) ){
+			fail("Unexpected recipient: "+copy.getToRecipients().get(1));
+		}
+		if( false == "subject".equals(copy.getSubject()) ){
+			fail("Unexpected subject: "+copy.getSubject());
+		}
+		if( false == "<p>content</p>".equals(copy.getHtmlContent()) ){
+			fail("Unexpected content: "+copy.getHtmlContent());
+		}
+	}
+
+	public void testQueuedMessagesSurviveRestart() throws Exception {
+		File dir = createTempDir("outbox");
+		try {
+			MailDeliveryImpl delivery = new MailDeliveryImpl();
+			delivery.setFromAddress(new InternetAddress("from@example.com"));
+
+			// Sender is not started: messages stay in the outbox
+			MailDeliveryOutbox outbox = new MailDeliveryOutbox(delivery, dir);
+			for(int i=0; i<3; ++i){
+				MailMessage message = new MailMessage();
+				message.addToRecipient(new MailRecipient("to@example.com"));
+				message.setSubject("message "+i);
+				outbox.sendMessage(message);
+			}
+			if( 3 != outbox.getQueueSize() ){
+				fail("Unexpected queue size: "+outbox.getQueueSize());
+			}
+
+			MailDeliveryOutbox reloaded = new MailDeliveryOutbox(delivery, dir);
+			if( 3 != reloaded.getQueueSize() ){
+				fail("Unexpected queue size after reload: "+reloaded.getQueueSize());
+			}
+
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+	public void testNotConfigured() throws Exception {
+		MailDeliveryOutbox outbox = new MailDeliveryOutbox(new MailDeliveryImpl(), null);
+
+		MailMessage message = new MailMessage();
+		message.addToRecipient(new MailRecipient("to@example.com"));
+		outbox.sendMessage(message);
+
+		if( 0 != outbox.getQueueSize() ){
+			fail("Message should not be queued");
+		}
+	}
+
+	public void testRetryDelay() throws Exception {
+		MailDeliveryOutbox outbox = new MailDeliveryOutbox(new MailDeliveryImpl(), null);
+		outbox.setRetryDelayBase(1000);
+
+		if( 1000 != outbox.computeRetryDelay(1) ){
+			fail("Unexpected first delay: "+outbox.computeRetryDelay(1));
+		}
+		if( 4000 != outbox.computeRetryDelay(3) ){
+			fail("Unexpected third delay: "+outbox.computeRetryDelay(3));
+		}
+		if( MailDeliveryOutbox.DELAY_RETRY_MAX != outbox.computeRetryDelay(100) ){
+			fail("Delay should be capped: "+outbox.computeRetryDelay(100));
+		}
+	}
+
+	public void testRetryAfterConnectFailure() throws Exception {
+		File dir = createTempDir("outbox");
+		MockTransport.reset(1, 0);
+		MailDeliveryOutbox outbox = new MailDeliveryOutbox(MockTransport.createDelivery(), dir);
+		outbox.setRetryDelayBase(20);
+		try {
+			for(int i=0; i<3; ++i){
+				outbox.sendMessage(createMessage("message "+i));
+			}
+			outbox.start();
+
+			// First batch can not connect, second batch is sent
+			waitForAttempts(outbox, 6);
+
+			if( 3 != outbox.getSentCount() || 3 != outbox.getFailedAttemptCount() ){
+				fail("Unexpected counts. sent: "+outbox.getSentCount()
+						+" failed: "+outbox.getFailedAttemptCount());
+			}
+			// A failed connection is not attempted again for each message,
+			// and the messages of a batch share one connection
+			if( 2 != MockTransport.getConnectCount() ){
+				fail("Unexpected number of connections: "+MockTransport.getConnectCount());
+			}
+			if( 0 != outbox.getQueueSize() || 0 != countFiles(dir, ".json") ){
+				fail("Outbox should be empty");
+			}
+
+		} finally {
+			outbox.stopTimeoutMillis(5000);
+			deleteDir(dir);
+		}
+	}
+
+	public void testRetryAfterSendFailure() throws Exception {
+		MockTransport.reset(0, 1);
+		MailDeliveryOutbox outbox = new MailDeliveryOutbox(MockTransport.createDelivery(), null);
+		outbox.setRetryDelayBase(20);
+		try {
+			outbox.sendMessage(createMessage("first"));
+			outbox.sendMessage(createMessage("second"));
+			outbox.start();
+
+			waitForAttempts(outbox, 3);
+
+			// The rejected message is sent on the next batch
+			List<String> subjects = MockTransport.getSentSubjects();
+			if( 2 != subjects.size() || false == "first".equals(subjects.get(1)) ){
+				fail("Unexpected messages sent: "+subjects);
+			}
+			if( 1 != outbox.getFailedAttemptCount() || 0 != outbox.getAbandonedCount() ){
+				fail("Unexpected counts. failed: "+outbox.getFailedAttemptCount()
+						+" abandoned: "+outbox.getAbandonedCount());
+			}
+
+		} finally {
+			outbox.stopTimeoutMillis(5000);
+		}
+	}
+
+	public void testAbandon() throws Exception {
+		File dir = createTempDir("outbox");
+		MockTransport.reset(0, Integer.MAX_VALUE);
+		MailDeliveryOutbox outbox = new MailDeliveryOutbox(MockTransport.createDelivery(), dir);
+		outbox.setRetryDelayBase(10);
+		outbox.setMaxAttempts(3);
+		try {
+			outbox.sendMessage(createMessage("rejected"));
+			outbox.start();
+
+			waitForAttempts(outbox, 3);
+
+			if( 1 != outbox.getAbandonedCount() || 3 != outbox.getFailedAttemptCount() ){
+				fail("Unexpected counts. failed: "+outbox.getFailedAttemptCount()
+						+" abandoned: "+outbox.getAbandonedCount());
+			}
+			if( 0 != outbox.getQueueSize() ){
+				fail("Abandoned message should leave the queue");
+			}
+			if( 0 != countFiles(dir, ".json") || 1 != countFiles(dir, ".failed") ){
+				fail("Abandoned message should be kept as failed");
+			}
+
+		} finally {
+			outbox.stopTimeoutMillis(5000);
+			deleteDir(dir);
+		}
+	}
+
+	public void testReloadOrder() throws Exception {
+		File dir = createTempDir("outbox");
+		MockTransport.reset(0, 0);
+		try {
+			// More than ten messages, most likely within the same millisecond
+			MailDeliveryOutbox outbox = new MailDeliveryOutbox(MockTransport.createDelivery(), dir);
+			for(int i=0; i<25; ++i){
+				outbox.sendMessage(createMessage("message "+i));
+			}
+
+			MailDeliveryOutbox reloaded = new MailDeliveryOutbox(MockTransport.createDelivery(), dir);
+			try {
+				reloaded.start();
+				waitForAttempts(reloaded, 25);
+			} finally {
+				reloaded.stopTimeoutMillis(5000);
+			}
+
+			List<String> subjects = MockTransport.getSentSubjects();
+			if( 25 != subjects.size() ){
+				fail("Unexpected messages sent: "+subjects);
+			}
+			for(int i=0; i<25; ++i){
+				if( false == ("message "+i).equals(subjects.get(i)) ){
+					fail("Messages should be sent in order: "+subjects);
+				}
+			}
+
+		} finally {
+			deleteDir(dir);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package ca.carleton.gcrc.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Provider;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+
+/**
+ * Transport that records the messages sent instead of reaching a mail
+ * server. Connections and sends can be made to fail a number of times.
+ * The state is shared by all instances and must be reset between tests.
+ */
+public class MockTransport extends Transport {
+
+	static final public String PROTOCOL = "mock";
+
+	static private int connectFailures = 0;
+	static private int sendFailures = 0;
+	static private int connectCount = 0;
+	static private List<String> sentSubjects = new ArrayList<String>();
+
+	static synchronized public void reset(int connectFailures, int sendFailures) {
+		MockTransport.connectFailures = connectFailures;
+		MockTransport.sendFailures = sendFailures;
+		MockTransport.connectCount = 0;
+		MockTransport.sentSubjects = new ArrayList<String>();
+	}
+
+	static synchronized public int getConnectCount() {
+		return connectCount;
+	}
+
+	static synchronized public List<String> getSentSubjects() {
+		return new ArrayList<String>(sentSubjects);
+	}
+
+	/**
+	 * Returns a delivery which sessions use this transport
+	 */
+	static public MailDeliveryImpl createDelivery() throws Exception {
+		MailDeliveryImpl delivery = new MailDeliveryImpl() {
+			@Override
+			public Session createSession() throws Exception {
+				Session session = super.createSession();
+				session.addProvider(new Provider(
+						Provider.Type.TRANSPORT
+						,PROTOCOL
+						,MockTransport.class.getName()
+						,"nunaliit"
+						,"1.0"
+						));
+				return session;
+			}
+		};
+
+		Properties props = new Properties();
+		props.setProperty("mail.transport.protocol", PROTOCOL);
+		props.setProperty("user.sender", "from@example.com");
+		delivery.setMailProperties(props);
+
+		return delivery;
+	}
+
+	public MockTransport(Session session, URLName urlname) {
+		super(session, urlname);
+	}
+
+	@Override
+	protected boolean protocolConnect(String host, int port, String user, String password) throws MessagingException {
+		synchronized(MockTransport.class) {
+			++connectCount;
+			if( connectFailures > 0 ){
+				--connectFailures;
+				throw new MessagingException("Connection refused");
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void sendMessage(Message msg, Address[] addresses) throws MessagingException {
+		synchronized(MockTransport.class) {
+			if( sendFailures > 0 ){
+				--sendFailures;
+				throw new MessagingException("Message rejected");
+			}
+			sentSubjects.add( msg.getSubject() );
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package ca.carleton.gcrc.olkit.multimedia.converter.impl;
 
 import java.io.File;
+import java.util.List;
+import java.util.Vector;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +21,7 @@ import ca.carleton.gcrc.olkit.multimedia.imageMagick.ImageInfo;
 import ca.carleton.gcrc.olkit.multimedia.imageMagick.ImageMagick;
 import ca.carleton.gcrc.olkit.multimedia.imageMagick.ImageMagickInfo;
 import ca.carleton.gcrc.olkit.multimedia.imageMagick.ImageMagickProcessor;
+import ca.carleton.gcrc.olkit.multimedia.imageMagick.ImageOutput;
 import ca.carleton.gcrc.olkit.multimedia.utils.MultimediaConfiguration;
 import ca.carleton.gcrc.olkit.multimedia.xmp.XmpExtractor;
 import ca.carleton.gcrc.olkit.multimedia.xmp.XmpInfo;
@@ -287,6 +290,10 @@ public class MultimediaConverterImpl implements MultimediaConverter {
 			outputExtension = "jpg";
 		}
 		
+		// All files derived from the image are written by a single
+		// invocation, so that the image is decoded only once
+		List<ImageOutput> outputs = new Vector<ImageOutput>();
+		ImageOutput convertedOutput = null;
 		if( request.isSkipConversion() ){
 			progress.updateProgress(100);
 			
@@ -307,29 +314,22 @@ public class MultimediaConverterImpl implements MultimediaConverter {
 				outFile = File.createTempFile("conv", "."+outputExtension, parentDir);
 			}
 			
-			ImageMagickProcessor im = imInfo.getProcessor(progress);
 			if( resizeRequired ) {
-				im.resizeImage(
-						imageInfo, 
+				convertedOutput = new ImageOutput(
 						outFile, 
 						MultimediaConfiguration.IMAGE_MAX_WIDTH, 
 						MultimediaConfiguration.IMAGE_MAX_HEIGHT
 					);
 			} else if(conversionRequired) {
-				im.convertImage(imageInfo, outFile);
+				convertedOutput = new ImageOutput(outFile, ImageOutput.Operation.CONVERT);
 			} else {
-				im.reorientImage(imageInfo, outFile);
+				convertedOutput = new ImageOutput(outFile, ImageOutput.Operation.REORIENT);
 			}
-			
-			request.setOutFile(outFile);
-			request.setConversionPerformed(true);
-
-			ImageInfo outImageInfo = im.getImageInfo( outFile );
-			request.setOutHeight( outImageInfo.height );
-			request.setOutWidth( outImageInfo.width );
+			outputs.add(convertedOutput);
 		}
 		
 		// Create thumbnail
+		ImageOutput thumbnailOutput = null;
 		if( null != imageInfo && request.isThumbnailRequested() ){
 			File thumbnailFile = request.getThumbnailFile();
 			if( null == thumbnailFile ) {
@@ -345,20 +345,31 @@ public class MultimediaConverterImpl implements MultimediaConverter {
 				thumbnailFile = new File(parentDir, name);
 			}
 
-			ImageMagickProcessor im = imInfo.getProcessor(progress);
-			im.resizeImage(
-					imageInfo,
+			thumbnailOutput = new ImageOutput(
 					thumbnailFile,
 					MultimediaConfiguration.IMAGE_THUMB_WIDTH,
 					MultimediaConfiguration.IMAGE_THUMB_HEIGHT
 				);
-			
-			request.setThumbnailFile(thumbnailFile);
-			request.setThumbnailCreated(true);
+			outputs.add(thumbnailOutput);
+		}
 
-			ImageInfo thumbImageInfo = im.getImageInfo( thumbnailFile );
-			request.setThumbnailHeight( thumbImageInfo.height );
-			request.setThumbnailWidth( thumbImageInfo.width );
+		if( outputs.size() > 0 ) {
+			ImageMagickProcessor im = imInfo.getProcessor(progress);
+			im.processImage(imageInfo, outputs);
+		}
+		
+		if( null != convertedOutput ) {
+			request.setOutFile(convertedOutput.file);
+			request.setConversionPerformed(true);
+			request.setOutHeight( convertedOutput.height );
+			request.setOutWidth( convertedOutput.width );
+		}
+		
+		if( null != thumbnailOutput ) {
+			request.setThumbnailFile(thumbnailOutput.file);
+			request.setThumbnailCreated(true);
+			request.setThumbnailHeight( thumbnailOutput.height );
+			request.setThumbnailWidth( thumbnailOutput.width );
 		}
 	}
 
@@ -416,20 +427,21 @@ public class MultimediaConverterImpl implements MultimediaConverter {
 				thumbnailFile = new File(parentDir, name);
 			}
 
-			ImageMagickProcessor im = imInfo.getProcessor(progress);
-			im.resizeImage(
-					imageInfo, 
+			ImageOutput thumbnailOutput = new ImageOutput(
 					thumbnailFile, 
 					MultimediaConfiguration.IMAGE_THUMB_WIDTH, 
 					MultimediaConfiguration.IMAGE_THUMB_HEIGHT
 				);
+			List<ImageOutput> outputs = new Vector<ImageOutput>();
+			outputs.add(thumbnailOutput);
+
+			ImageMagickProcessor im = imInfo.getProcessor(progress);
+			im.processImage(imageInfo, outputs);
 			
 			request.setThumbnailFile(thumbnailFile);
 			request.setThumbnailCreated(true);
-
-			ImageInfo thumbImageInfo = im.getImageInfo( thumbnailFile );
-			request.setThumbnailHeight( thumbImageInfo.height );
-			request.setThumbnailWidth( thumbImageInfo.width );
+			request.setThumbnailHeight( thumbnailOutput.height );
+			request.setThumbnailWidth( thumbnailOutput.width );
 		}
 	}
 	
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 import java.util.regex.Matcher;
@@ -16,6 +17,8 @@ import org.slf4j.LoggerFactory;
 
 import ca.carleton.gcrc.olkit.multimedia.converter.MultimediaConversionProgress;
 import ca.carleton.gcrc.utils.CommandUtils;
+import ca.carleton.gcrc.utils.ManagedProcess;
+import ca.carleton.gcrc.utils.ProcessExecutor;
 
 public class FFmpegProcessorDefault implements FFmpegProcessor {
 
@@ -62,7 +65,6 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 	public FFmpegMediaInfo getMediaInfo(File mediafile) throws Exception {
 		FFmpegMediaInfoImpl info = new FFmpegMediaInfoImpl(mediafile);
 		
-		Runtime rt = Runtime.getRuntime();
 		StringWriter sw = new StringWriter();
 		try {
 			String[] tokens = breakUpCommand(ffmpegInfoCommand);
@@ -72,7 +74,7 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 				sw.write(tokens[i]);
 			}
 			logger.debug(sw.toString());
-			Process p = rt.exec(tokens, null, null);
+			ManagedProcess p = ProcessExecutor.getDefault().start(Arrays.asList(tokens));
 			InputStream is = p.getErrorStream();
 			InputStreamReader isr = new InputStreamReader(is);
 			info.parseFromFFmpegReader(isr);
@@ -99,7 +101,6 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 	@Override
 	public void convertVideo(FFmpegMediaInfo inputVideo, File outputFile) throws Exception {
 		
-		Runtime rt = Runtime.getRuntime();
 		StringWriter sw = new StringWriter();
 		try {
 			String convertVideoCommand = ffmpegConvertVideoCommand;
@@ -121,7 +122,7 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 			}
 			logger.debug(sw.toString());
 
-			Process p = rt.exec(tokens, null, null);
+			ManagedProcess p = ProcessExecutor.getDefault().start(Arrays.asList(tokens));
 			InputStream is = p.getErrorStream();
 			InputStreamReader isr = new InputStreamReader(is);
 			BufferedReader bufReader = new BufferedReader(isr);
@@ -164,7 +165,6 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 	@Override
 	public void convertAudio(FFmpegMediaInfo inputVideo, File outputFile) throws Exception {
 		
-		Runtime rt = Runtime.getRuntime();
 		StringWriter sw = new StringWriter();
 		try {
 			String[] tokens = breakUpCommand(ffmpegConvertAudioCommand);
@@ -175,7 +175,7 @@ public class FFmpegProcessorDefault implements FFmpegProcessor {
 			}
 			logger.debug(sw.toString());
 
-			Process p = rt.exec(tokens, null, null);
+			ManagedProcess p = ProcessExecutor.getDefault().start(Arrays.asList(tokens));
 			InputStream is = p.getErrorStream();
 			InputStreamReader isr = new InputStreamReader(is);
 			BufferedReader bufReader = new BufferedReader(isr);
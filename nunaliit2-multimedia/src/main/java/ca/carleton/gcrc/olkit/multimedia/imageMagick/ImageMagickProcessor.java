@@ -1,6 +1,7 @@
 package ca.carleton.gcrc.olkit.multimedia.imageMagick;
 
 import java.io.File;
+import java.util.List;
 
 
 public interface ImageMagickProcessor {
@@ -18,4 +19,12 @@ public interface ImageMagickProcessor {
 	void reorientImage(File imageFile, File outputFile) throws Exception;
 	
 	void reorientImage(ImageInfo imageInfo, File outputFile) throws Exception;
+
+	/**
+	 * Writes a number of files from an image. Each output is derived from
+	 * the previous one, so the outputs should be listed from the largest
+	 * to the smallest (for example, the converted image and then its
+	 * thumbnail). On return, the dimensions of each output are set.
+	 */
+	void processImage(ImageInfo imageInfo, List<ImageOutput> outputs) throws Exception;
 }
@@ -16,11 +16,19 @@ import ca.carleton.gcrc.utils.CommandUtils;
 
 public class ImageMagickProcessorDefault implements ImageMagickProcessor {
 	
-	static public String imageInfoCommand = "identify -verbose %1$s[0]";
+	static public String imageInfoCommand = "identify -ping -verbose %1$s[0]";
 	static public String imageConvertCommand = "convert -monitor -auto-orient %1$s[0] -compress JPEG -quality 70 %2$s";
 	static public String imageResizeCommand = "convert -monitor -auto-orient %1$s[0] -resize %3$dx%4$d> -compress JPEG -alpha flatten -quality 70 %2$s";
 	static public String imageReorientCommand = "convert -monitor -auto-orient %1$s[0] %2$s";
 
+	// Used to write a number of files with a single decoding of the image
+	static public String imageProcessCommand = "convert -monitor %1$s[0] -auto-orient";
+	static public String imageProcessConvertOptions = "-compress JPEG -quality 70";
+	static public String imageProcessResizeOptions = "-resize %1$dx%2$d> -compress JPEG -alpha flatten -quality 70";
+	static public String imageProcessReorientOptions = "";
+	static public String imageProcessWriteOptions = "-format %%wx%%h\\n -write info:- -write %1$s";
+	static public String imageProcessEnd = "null:";
+
 	static private Pattern patternInfoGeometry = Pattern.compile("^\\s*Geometry:\\s*(\\d+)x(\\d+)");
 	static private Pattern patternInfoFormat = Pattern.compile("^\\s*Format:\\s*([^\\s]+)");
 	static private Pattern patternInfoExifOrientation = Pattern.compile("^\\s*exif:Orientation:\\s*([\\d]+)");
@@ -30,6 +38,7 @@ public class ImageMagickProcessorDefault implements ImageMagickProcessor {
 	static private Pattern patternProgressResize = Pattern.compile("^\\s*resize image.* (\\d+)%");
 	static private Pattern patternProgressRotate = Pattern.compile("^\\s*rotate image.* (\\d+)%");
 	static private Pattern patternProgressSave = Pattern.compile("^\\s*save image.* (\\d+)%");
+	static private Pattern patternOutputGeometry = Pattern.compile("^(\\d+)x(\\d+)$");
 	
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -319,4 +328,95 @@ public class ImageMagickProcessorDefault implements ImageMagickProcessor {
 		}
 	}
 
+	@Override
+	public void processImage(ImageInfo imageInfo, List<ImageOutput> outputs) throws Exception {
+
+		StringWriter sw = new StringWriter();
+		try {
+			List<String> tokens = new Vector<String>();
+			addTokens(tokens, imageProcessCommand, imageInfo.file.getAbsolutePath());
+			for(ImageOutput output : outputs){
+				if( ImageOutput.Operation.RESIZE == output.operation ) {
+					addTokens(tokens, imageProcessResizeOptions, output.maxWidth, output.maxHeight);
+				} else if( ImageOutput.Operation.CONVERT == output.operation ) {
+					addTokens(tokens, imageProcessConvertOptions);
+				} else {
+					addTokens(tokens, imageProcessReorientOptions);
+				}
+				addTokens(tokens, imageProcessWriteOptions, output.file.getAbsolutePath());
+			}
+			addTokens(tokens, imageProcessEnd);
+
+			boolean first = true;
+			for(String token : tokens){
+				if( first ) {
+					first = false;
+				} else {
+					sw.write(" ");
+				}
+				sw.write(token);
+			}
+			logger.debug(sw.toString());
+
+			// The image is loaded once, then resized and saved once per output
+			int steps = 1 + (2 * outputs.size());
+			int step = 0;
+			int outputIndex = 0;
+			BufferedReader bufReader = CommandUtils.executeCommand(tokens);
+			String line = bufReader.readLine();
+			while( null != line ) {
+				line = line.trim();
+
+				Matcher matcherGeometry = patternOutputGeometry.matcher(line);
+				if( matcherGeometry.find() ) {
+					if( outputIndex < outputs.size() ) {
+						ImageOutput output = outputs.get(outputIndex);
+						output.width = Integer.parseInt( matcherGeometry.group(1) );
+						output.height = Integer.parseInt( matcherGeometry.group(2) );
+					}
+					++outputIndex;
+
+				} else if( null != progressTracker ) {
+					Matcher matcherLoad = patternProgressLoad.matcher(line);
+					Matcher matcherResize = patternProgressResize.matcher(line);
+					Matcher matcherSave = patternProgressSave.matcher(line);
+					
+					int value = -1;
+					if( matcherLoad.find() ) {
+						value = Integer.parseInt( matcherLoad.group(1) );
+						step = 0;
+					} else if( matcherResize.find() ) {
+						value = Integer.parseInt( matcherResize.group(1) );
+						step = 1 + (2 * outputIndex);
+					} else if( matcherSave.find() ) {
+						value = Integer.parseInt( matcherSave.group(1) );
+						step = 2 + (2 * outputIndex);
+					}
+					if( value >= 0 ) {
+						int percent = ((step * 100) + value + 1) / steps;
+						if( percent > 100 ) {
+							percent = 100;
+						}
+						progressTracker.updateProgress(percent);
+					}
+				}
+				
+				line = bufReader.readLine();
+			}
+
+			if( outputIndex < outputs.size() ) {
+				throw new Exception("Dimensions reported for "+outputIndex+" of "+outputs.size()+" outputs");
+			}
+		} catch (Exception e) {
+			logger.error("Error while processing image: "+sw.toString(),e);
+			throw new Exception("Error while processing image: "+sw.toString(),e);
+		}
+	}
+
+	private void addTokens(List<String> tokens, String command, Object... args) throws Exception {
+		List<String> originalTokens = CommandUtils.breakUpCommand(command);
+		for(String originalToken : originalTokens){
+			tokens.add( String.format(originalToken, args) );
+		}
+	}
 }
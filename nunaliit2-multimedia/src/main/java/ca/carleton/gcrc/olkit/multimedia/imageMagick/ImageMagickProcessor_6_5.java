@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -267,4 +268,24 @@ public class ImageMagickProcessor_6_5 implements ImageMagickProcessor {
 			throw new Exception("Error while re-orienting image "+imageInfo.file.getAbsolutePath(),e);
 		}
 	}
+
+	/**
+	 * Older versions run one command per output, each from the original image.
+	 */
+	@Override
+	public void processImage(ImageInfo imageInfo, List<ImageOutput> outputs) throws Exception {
+		for(ImageOutput output : outputs){
+			if( ImageOutput.Operation.RESIZE == output.operation ) {
+				resizeImage(imageInfo, output.file, output.maxWidth, output.maxHeight);
+			} else if( ImageOutput.Operation.CONVERT == output.operation ) {
+				convertImage(imageInfo, output.file);
+			} else {
+				reorientImage(imageInfo, output.file);
+			}
+			
+			ImageInfo outputInfo = getImageInfo(output.file);
+			output.width = outputInfo.width;
+			output.height = outputInfo.height;
+		}
+	}
 }
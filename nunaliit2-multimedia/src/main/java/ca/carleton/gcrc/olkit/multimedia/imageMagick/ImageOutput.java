@@ -0,0 +1,34 @@
+package ca.carleton.gcrc.olkit.multimedia.imageMagick;
+
+import java.io.File;
+
+/**
+ * One of the files written when an image is processed. The width and
+ * height are reported once the file is written.
+ */
+public class ImageOutput {
+	public enum Operation {
+		CONVERT
+		,RESIZE
+		,REORIENT
+	};
+
+	public File file;
+	public Operation operation;
+	public int maxWidth;
+	public int maxHeight;
+	public int width;
+	public int height;
+
+	public ImageOutput(File file, Operation operation) {
+		this.file = file;
+		this.operation = operation;
+	}
+
+	public ImageOutput(File file, int maxWidth, int maxHeight) {
+		this.file = file;
+		this.operation = Operation.RESIZE;
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+	}
+}
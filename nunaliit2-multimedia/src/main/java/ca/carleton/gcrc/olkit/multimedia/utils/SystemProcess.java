@@ -3,16 +3,21 @@ package ca.carleton.gcrc.olkit.multimedia.utils;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ca.carleton.gcrc.utils.CommandUtils;
+import ca.carleton.gcrc.utils.ManagedProcess;
+import ca.carleton.gcrc.utils.ProcessExecutor;
+
 public class SystemProcess {
 
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	private String command;
-	private Process process = null;
+	private ManagedProcess process = null;
 	
 	public SystemProcess() {
 		
@@ -31,15 +36,27 @@ public class SystemProcess {
 	}
 
 	public void start() throws Exception {
-//		ProcessBuilder pb = new ProcessBuilder(command);
-//		process = pb.start();
-		
-		Runtime rt = Runtime.getRuntime();
-		process = rt.exec(command, null, null);
+		List<String> tokens = CommandUtils.breakUpCommand(command);
+		process = ProcessExecutor.getDefault().start(tokens);
 	}
 
 	public Process getProcess() {
-		return process;
+		return process.getProcess();
+	}
+
+	/**
+	 * Waits for the process to terminate
+	 * @return Exit value of the process
+	 */
+	public int waitFor() throws Exception {
+		return process.waitFor();
+	}
+
+	/**
+	 * Kills the process and the processes it started
+	 */
+	public void destroy() {
+		process.destroy();
 	}
 
 	public BufferedReader getInputReader() {
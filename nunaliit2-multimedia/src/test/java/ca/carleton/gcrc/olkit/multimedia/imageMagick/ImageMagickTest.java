@@ -33,6 +33,8 @@ $Id$
 package ca.carleton.gcrc.olkit.multimedia.imageMagick;
 
 import java.io.File;
+import java.util.List;
+import java.util.Vector;
 
 import junit.framework.TestCase;
 import ca.carleton.gcrc.olkit.multimedia.converter.ExifData;
@@ -309,4 +311,47 @@ public class ImageMagickTest extends TestCase {
 			fail("Unexpected orientation");
 		}
 	}
+
+	// Test that a single invocation writes all outputs and reports their dimensions
+	public void testProcessImage() throws Exception {
+		if( false == TestConfiguration.isTestingConfigured() ) return;
+		
+		ImageMagickInfo imInfo = ImageMagick.getInfo();
+		if( false == imInfo.isAvailable ) {
+			// Skip test
+			System.out.println("Skipping test because ImageMagick is not present");
+			return;
+		}
+		
+		ImageMagickProcessor im = imInfo.getProcessor(new MultimediaTestingProgress());
+		
+		File file = TestConfiguration.getTestFile("portrait.jpeg");
+		ImageInfo info = im.getImageInfo(file);
+
+		ImageOutput converted = new ImageOutput(new File(file.getParentFile(),file.getName()+".processed.jpg"), 500, 500);
+		ImageOutput thumbnail = new ImageOutput(new File(file.getParentFile(),file.getName()+".processed_thumb.jpg"), 50, 50);
+		List<ImageOutput> outputs = new Vector<ImageOutput>();
+		outputs.add(converted);
+		outputs.add(thumbnail);
+
+		im.processImage(info, outputs);
+
+		ImageInfo convertedInfo = im.getImageInfo(converted.file);
+		if( convertedInfo.width != converted.width 
+		 || convertedInfo.height != converted.height ) {
+			fail("Unexpected dimensions for converted image");
+		}
+		if( convertedInfo.orientation != ImageInfo.Orientation.CORRECT ) {
+			fail("Unexpected orientation");
+		}
+
+		ImageInfo thumbnailInfo = im.getImageInfo(thumbnail.file);
+		if( thumbnailInfo.width != thumbnail.width 
+		 || thumbnailInfo.height != thumbnail.height ) {
+			fail("Unexpected dimensions for thumbnail");
+		}
+		if( thumbnail.width > 50 || thumbnail.height > 50 ) {
+			fail("Thumbnail is too large");
+		}
+	}
 }
@@ -0,0 +1,188 @@
+package ca.carleton.gcrc.search;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maintains the database indexes used when searching the content of
+ * tables. The searches filter rows with "lower(X) LIKE lower(?)", which
+ * requires a full table scan unless an index supporting substring
+ * matches exists. The trigram indexes offered by the PostgreSQL extension
+ * pg_trgm support such queries when created on the expression lower(X).
+ *
+ * The indexes are built concurrently, so that writes to the tables are
+ * not blocked while an index is built. Since the indexes are maintained
+ * by the database, they remain current as rows are inserted or modified. The search queries, the results and
+ * the ranking are the same whether the indexes exist or not.
+ */
+public class SearchIndexes {
+
+	static final public String TRIGRAM_EXTENSION = "pg_trgm";
+
+	// Maximum length of an identifier in PostgreSQL
+	static final private int MAX_IDENTIFIER_LENGTH = 63;
+
+	/**
+	 * Computes the name of the trigram index for a searched column.
+	 */
+	static public String computeTrigramIndexName(String tableName, String columnName) {
+		String name = (tableName + "_" + columnName + "_trgm_idx").toLowerCase();
+
+		StringBuilder sb = new StringBuilder();
+		for(int loop=0; loop<name.length(); ++loop) {
+			char c = name.charAt(loop);
+			if( (c >= 'a' && c <= 'z')
+			 || (c >= '0' && c <= '9')
+			 || c == '_' ) {
+				sb.append(c);
+			} else {
+				sb.append('_');
+			}
+		}
+
+		// Names longer than the limit are truncated by the database, which
+		// would prevent us from finding the index
+		if( sb.length() > MAX_IDENTIFIER_LENGTH ) {
+			sb.setLength(MAX_IDENTIFIER_LENGTH);
+		}
+
+		return sb.toString();
+	}
+
+	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private Connection connection;
+
+	public SearchIndexes(Connection connection) {
+		this.connection = connection;
+	}
+
+	/**
+	 * Verifies that the trigram extension is installed, installing it
+	 * if possible.
+	 * @return True if the extension is available
+	 */
+	public boolean isTrigramExtensionAvailable() throws Exception {
+		if( isExtensionInstalled(TRIGRAM_EXTENSION) ) {
+			return true;
+		}
+
+		try {
+			Statement stmt = connection.createStatement();
+			try {
+				stmt.execute("CREATE EXTENSION IF NOT EXISTS "+TRIGRAM_EXTENSION);
+			} finally {
+				stmt.close();
+			}
+			logger.info("Installed database extension "+TRIGRAM_EXTENSION);
+			return true;
+		} catch(Exception e) {
+			logger.error("Unable to install database extension "+TRIGRAM_EXTENSION
+					+". Searches will not be indexed.",e);
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the trigram indexes for the searched columns of a table, if
+	 * they do not already exist. An index left invalid by an interrupted
+	 * build is dropped and built again.
+	 * @param tableName Name of searched table
+	 * @param searchFields Columns that are searched
+	 * @return Number of indexes created
+	 */
+	public int createTrigramIndexes(String tableName, List<String> searchFields) throws Exception {
+		// Indexes can not be built concurrently within a transaction
+		boolean autoCommit = connection.getAutoCommit();
+		if( false == autoCommit ) {
+			connection.setAutoCommit(true);
+		}
+
+		try {
+			int count = 0;
+			for(String searchField : searchFields) {
+				String indexName = computeTrigramIndexName(tableName, searchField);
+				Boolean valid = isIndexValid(indexName);
+				if( null != valid && valid.booleanValue() ) {
+					continue;
+				}
+
+				try {
+					if( null != valid ) {
+						logger.info("Dropping invalid search index: "+indexName);
+						execute("DROP INDEX CONCURRENTLY IF EXISTS "+indexName);
+					}
+
+					String sql = "CREATE INDEX CONCURRENTLY IF NOT EXISTS "+indexName
+							+" ON "+tableName
+							+" USING gin (lower("+searchField+") gin_trgm_ops)";
+					logger.info("Creating search index: "+sql);
+					execute(sql);
+
+				} catch(Exception e) {
+					throw new Exception("Unable to create index "+indexName+" on "+tableName,e);
+				}
+				++count;
+			}
+			return count;
+
+		} finally {
+			if( false == autoCommit ) {
+				connection.setAutoCommit(false);
+			}
+		}
+	}
+
+	private void execute(String sql) throws Exception {
+		Statement stmt = connection.createStatement();
+		try {
+			stmt.execute(sql);
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private boolean isExtensionInstalled(String extensionName) throws Exception {
+		PreparedStatement pstmt = connection.prepareStatement(
+				"SELECT extname FROM pg_extension WHERE extname = ?");
+		try {
+			pstmt.setString(1, extensionName);
+			ResultSet rs = pstmt.executeQuery();
+			boolean found = rs.next();
+			rs.close();
+			return found;
+		} finally {
+			pstmt.close();
+		}
+	}
+
+	/**
+	 * Returns null if the index does not exist. Otherwise, returns
+	 * whether the index can be used by queries. A concurrent build that
+	 * fails leaves an invalid index behind.
+	 */
+	private Boolean isIndexValid(String indexName) throws Exception {
+		PreparedStatement pstmt = connection.prepareStatement(
+				"SELECT i.indisvalid FROM pg_index i"
+				+" JOIN pg_class c ON c.oid = i.indexrelid"
+				+" WHERE c.relname = ? AND pg_catalog.pg_table_is_visible(c.oid)");
+		try {
+			pstmt.setString(1, indexName);
+			ResultSet rs = pstmt.executeQuery();
+			Boolean valid = null;
+			if( rs.next() ) {
+				valid = rs.getBoolean(1);
+			}
+			rs.close();
+			return valid;
+		} finally {
+			pstmt.close();
+		}
+	}
+}
@@ -35,6 +35,7 @@ package ca.carleton.gcrc.search;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Date;
 import java.util.Properties;
 
@@ -59,8 +60,7 @@ public class SearchServlet extends HttpServlet {
 	final protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	private JdbcConnections connections = null;
-	Connection connection = null;
-	Searches searches = null;
+	private Properties searchProperties = null;
 	
 	public SearchServlet() {
 		
@@ -73,7 +73,6 @@ public class SearchServlet extends HttpServlet {
 
 		try {
 			connections = JdbcConnections.connectionsFromServletContext(servletContext);
-			connection = connections.getDb();
 		} catch (Exception e) {
 			throw new ServletException("Error while connecting to database",e);
 		}
@@ -90,7 +89,41 @@ public class SearchServlet extends HttpServlet {
 			}
 		}
 		
-		searches = new Searches(props,connection);
+		searchProperties = props;
+		
+		// Create search indexes, if requested. Building an index on a large
+		// table takes a while: do not hold up the start of the server.
+		String indexMode = searchProperties.getProperty(Searches.PROPERTIES_KEY_SEARCH_INDEX_MODE);
+		if( null != indexMode
+		 && false == Searches.SEARCH_INDEX_MODE_NONE.equalsIgnoreCase(indexMode.trim()) ) {
+			Thread indexThread = new Thread("Search index builder"){
+				@Override
+				public void run() {
+					createSearchIndexes();
+				}
+			};
+			indexThread.setDaemon(true);
+			indexThread.start();
+		}
+	}
+	
+	private void createSearchIndexes() {
+		Connection connection = null;
+		try {
+			connection = connections.borrowDb();
+			Searches searches = new Searches(searchProperties, connection);
+			int count = searches.createSearchIndexes();
+			logger.info("Search indexes created: "+count);
+		} catch (Exception e) {
+			// Searches still work without the indexes
+			logger.error("Unable to create search indexes",e);
+		} finally {
+			if( null != connection ) {
+				try {
+					connection.close();
+				} catch(SQLException ignored) { }
+			}
+		}
 	}
 
 	public void destroy() {
@@ -107,21 +140,26 @@ public class SearchServlet extends HttpServlet {
 		
 		logger.info(this.getClass().getName()+" "+path);
 
+		Connection connection = null;
 		try {
+			// Connection is returned to the pool once the request is served
+			connection = connections.borrowDb();
+			Searches searches = new Searches(searchProperties, connection);
+			
 			if( "findGeometryCentroid".equalsIgnoreCase(path) ) {
-				performFindGeometryCentroid(request, response);
+				performFindGeometryCentroid(request, response, searches);
 
 			} else if( "searchContributions".equalsIgnoreCase(path) ) {
-				performSearchContributions(request, response);
+				performSearchContributions(request, response, searches);
 
 			} else if( "searchFeatures".equalsIgnoreCase(path) ) {
-				performSearchFeatures(request, response);
+				performSearchFeatures(request, response, searches);
 					
 			} else if( "getHoverMedia".equalsIgnoreCase(path) ) {
-				performHoverMedia(request, response);
+				performHoverMedia(request, response, searches);
 				
 			} else if( "getAudioMedia".equalsIgnoreCase(path) ) {
-				performGetAudioMedia(request, response);
+				performGetAudioMedia(request, response, searches);
 					
 			} else {
 				throw new Exception("Unknown request: "+path);
@@ -129,10 +167,16 @@ public class SearchServlet extends HttpServlet {
 		} catch(Exception e) {
 			sendErrorResponse(response, e);
 			logger.error("Error while performing search",e);
+		} finally {
+			if( null != connection ) {
+				try {
+					connection.close();
+				} catch(SQLException ignored) { }
+			}
 		}
 	}
 	
-	protected void performFindGeometryCentroid(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	protected void performFindGeometryCentroid(HttpServletRequest request, HttpServletResponse response, Searches searches) throws Exception {
 		String[] ids = request.getParameterValues("id");
 		String[] types = request.getParameterValues("type");
 		
@@ -166,7 +210,7 @@ public class SearchServlet extends HttpServlet {
 		sendJsonResponse(response, result);
 	}
 	
-	protected void performSearchContributions(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	protected void performSearchContributions(HttpServletRequest request, HttpServletResponse response, Searches searches) throws Exception {
 		String[] contents = request.getParameterValues("content");
 		
 		if( null == contents || contents.length < 1 ) {
@@ -183,7 +227,7 @@ public class SearchServlet extends HttpServlet {
 		sendJsonResponse(response, result);
 	}
 	
-	protected void performSearchFeatures(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	protected void performSearchFeatures(HttpServletRequest request, HttpServletResponse response, Searches searches) throws Exception {
 		String[] contents = request.getParameterValues("content");
 		
 		if( null == contents || contents.length < 1 ) {
@@ -200,7 +244,7 @@ public class SearchServlet extends HttpServlet {
 		sendJsonResponse(response, result);
 	}
 	
-	protected void performHoverMedia(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	protected void performHoverMedia(HttpServletRequest request, HttpServletResponse response, Searches searches) throws Exception {
 		String[] ids = request.getParameterValues("id");
 		
 		if( null == ids || ids.length < 1 ) {
@@ -217,7 +261,7 @@ public class SearchServlet extends HttpServlet {
 		sendJsonResponse(response, result);
 	}
 	
-	protected void performGetAudioMedia(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	protected void performGetAudioMedia(HttpServletRequest request, HttpServletResponse response, Searches searches) throws Exception {
 		String[] ids = request.getParameterValues("id");
 		
 		if( null == ids || ids.length < 1 ) {
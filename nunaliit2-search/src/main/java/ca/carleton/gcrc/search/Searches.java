@@ -66,6 +66,7 @@ public class Searches {
 	static final public String PROPERTIES_KEY_FEATURES_SELECT_FIELDS = "features.selectFields";
 	static final public String PROPERTIES_KEY_FEATURES_SELECT_TYPES = "features.selectTypes";
 	static final public String PROPERTIES_KEY_FEATURES_SEARCH_FIELDS = "features.searchFields";
+	static final public String PROPERTIES_KEY_SEARCH_INDEX_MODE = "search.indexMode";
 
 	static final public String DEFAULT_CONTRIBUTIONS_TABLE_NAME = "contributions";
 	static final public String DEFAULT_CONTRIBUTIONS_ID_COLUMN_NAME = "id";
@@ -77,6 +78,9 @@ public class Searches {
 	static final public String DEFAULT_KEY_FEATURES_SELECT_FIELDS = "";
 	static final public String DEFAULT_KEY_FEATURES_SELECT_TYPES = "";
 	static final public String DEFAULT_KEY_FEATURES_SEARCH_FIELDS = "placename,syllabics,meaning,alt_name,moreinfo,questions,entity,source";
+
+	static final public String SEARCH_INDEX_MODE_NONE = "none";
+	static final public String SEARCH_INDEX_MODE_TRIGRAM = "trigram";
 	
 	private Connection connection;
 	static private SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
@@ -93,6 +97,8 @@ public class Searches {
 	private List<String> featuresSelectTypes = new Vector<String>();
 	private List<String> featuresSearchFields = new Vector<String>();
 	
+	private String searchIndexMode;
+	
 	public Searches(Properties props, Connection connection) {
 		this.connection = connection;
 
@@ -105,6 +111,13 @@ public class Searches {
 		featuresTableName = props.getProperty(PROPERTIES_KEY_FEATURES_TABLE_NAME, DEFAULT_FEATURES_TABLE_NAME);
 		featuresIdColumnName = props.getProperty(PROPERTIES_KEY_CONTRIBUTIONS_ID_COLUMN_NAME, DEFAULT_CONTRIBUTIONS_ID_COLUMN_NAME);
 		
+		searchIndexMode = props.getProperty(PROPERTIES_KEY_SEARCH_INDEX_MODE, SEARCH_INDEX_MODE_NONE).trim();
+		if( false == SEARCH_INDEX_MODE_NONE.equalsIgnoreCase(searchIndexMode)
+		 && false == SEARCH_INDEX_MODE_TRIGRAM.equalsIgnoreCase(searchIndexMode) ) {
+			logger.error("Invalid value for "+PROPERTIES_KEY_SEARCH_INDEX_MODE+": "+searchIndexMode);
+			searchIndexMode = SEARCH_INDEX_MODE_NONE;
+		}
+		
 		// Load search and select fields
 		{
 			String selectFieldsParams = props.getProperty(PROPERTIES_KEY_CONTRIBUTIONS_SELECT_FIELDS, DEFAULT_KEY_CONTRIBUTIONS_SELECT_FIELDS);
@@ -168,6 +181,32 @@ public class Searches {
 		}
 	}
 
+	public boolean isSearchIndexed() {
+		return SEARCH_INDEX_MODE_TRIGRAM.equalsIgnoreCase(searchIndexMode);
+	}
+
+	/**
+	 * Creates the database indexes used to search the features and the
+	 * contributions, according to the configured index mode. Indexes
+	 * that already exist are left untouched.
+	 * @return Number of indexes created
+	 */
+	public int createSearchIndexes() throws Exception {
+		if( false == isSearchIndexed() ) {
+			return 0;
+		}
+		
+		SearchIndexes searchIndexes = new SearchIndexes(connection);
+		if( false == searchIndexes.isTrigramExtensionAvailable() ) {
+			return 0;
+		}
+		
+		int count = 0;
+		count += searchIndexes.createTrigramIndexes(getFeaturesTableName(), featuresSearchFields);
+		count += searchIndexes.createTrigramIndexes(getContributionsTableName(), contributionsSearchFields);
+		return count;
+	}
+
 	private String getContributionsTableName() {
 		return contributionsTableName;
 	}
@@ -355,8 +394,11 @@ public class Searches {
 			}
 
 			if( searchFields.size() > 0 ) {
-				String orderString = computeOrderFragment(searchFields);
-				pw.print(orderString);
+				// Order on the computed score instead of computing it again.
+				// The score is referred to by its position since a selected
+				// field could also be named score.
+				int scorePosition = searchFieldsList.size() + selectFieldsList.size() + 1;
+				pw.print(" ORDER BY "+scorePosition);
 			}
 			
 			pw.print(";");
@@ -377,10 +419,6 @@ public class Searches {
 			stmt.setString(index, "%"+searchString+"%");
 			++index;
 		}
-		for(int loop=0; loop<searchFields.size(); ++loop) { // parameters in order by
-			stmt.setString(index, searchString);
-			++index;
-		}
 		
 		searchFieldsList.addAll(selectFieldsList);
 		searchFieldsList.addAll(scoreFieldsList);		
@@ -456,6 +494,9 @@ public class Searches {
 	 * WHERE lower(X) LIKE lower(?)
 	 *   OR lower(Y) LIKE lower(?)...
 	 * 
+	 * The expression lower(X) is matched by the trigram indexes created
+	 * by SearchIndexes, when the search index mode is enabled.
+	 * 
 	 * @param searchFields Columns to search 
 	 * @return
 	 * @throws Exception 
@@ -481,25 +522,6 @@ public class Searches {
 		return sw.toString();
 	}
 
-	/**
-	 * Given a number of search fields, compute the SQL fragment
-	 * used to order the searched/found rows
-	 * 
-	 * ORDER BY least(coalesce(nullif(position(lower(?) IN lower(title)), 0), 9999),
-				    coalesce(nullif(position(lower(?) IN lower(notes)), 0), 9999)...
-	 * 
-	 * @param searchFields Columns to search 
-	 * @return
-	 * @throws Exception 
-	 */
-	private String computeOrderFragment(List<String> searchFields) throws Exception {
-		if( 0 == searchFields.size() ) {
-			return "";
-		}
-		
-		return " ORDER BY " + computeSelectScore(searchFields);
-	}
-
 	/**
 	 * This method executes a prepared SQL statement and returns a JSON
 	 * array that contains the result.
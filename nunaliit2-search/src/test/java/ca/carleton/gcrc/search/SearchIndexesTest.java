@@ -0,0 +1,31 @@
+package ca.carleton.gcrc.search;
+
+import junit.framework.TestCase;
+
+public class SearchIndexesTest extends TestCase {
+
+	public void testTrigramIndexName() throws Exception {
+		String name = SearchIndexes.computeTrigramIndexName("names", "placename");
+		if( false == "names_placename_trgm_idx".equals(name) ) {
+			fail("Unexpected name: "+name);
+		}
+	}
+
+	public void testTrigramIndexNameQualified() throws Exception {
+		String name = SearchIndexes.computeTrigramIndexName("public.Names", "alt_name");
+		if( false == "public_names_alt_name_trgm_idx".equals(name) ) {
+			fail("Unexpected name: "+name);
+		}
+	}
+
+	public void testTrigramIndexNameLength() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int loop=0; loop<100; ++loop) {
+			sb.append('a');
+		}
+		String name = SearchIndexes.computeTrigramIndexName(sb.toString(), "b");
+		if( 63 != name.length() ) {
+			fail("Name should be truncated: "+name);
+		}
+	}
+}
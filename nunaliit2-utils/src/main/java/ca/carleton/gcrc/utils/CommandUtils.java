@@ -11,6 +11,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -133,8 +134,7 @@ public class CommandUtils {
 
 			logger.trace("Executing command ("+commandStr+")");
 
-			ProcessBuilder pb = new ProcessBuilder(commandTokens);
-			Process p = pb.start();
+			ManagedProcess p = ProcessExecutor.getDefault().start(commandTokens);
 
 			OutputStream os = p.getOutputStream();
 			if( null != content ){
@@ -148,20 +148,27 @@ public class CommandUtils {
 			InputStream err = p.getErrorStream();
 			InputStreamReader errReader = new InputStreamReader(err,"UTF-8");
 			StringWriter errWriter = new StringWriter();
-			ReadGobbler errGobbler = new ReadGobbler(errReader, errWriter);
-			errGobbler.start();
+			Future<?> errGobbler = ProcessExecutor.drain(errReader, errWriter);
 
 			InputStream is = p.getInputStream();
 			InputStreamReader isr = new InputStreamReader(is,"UTF-8");
 			
 			if( null != writer ){
-				StreamUtils.copyStream(isr, writer);
-				writer.flush();
+				try {
+					StreamUtils.copyStream(isr, writer);
+					writer.flush();
+				} catch(IOException e) {
+					// Streams are closed when a process is killed. Report
+					// the timeout instead.
+					if( false == p.isTimedOut() ){
+						throw e;
+					}
+				}
 			}
 
 			int exitValue = p.waitFor();
 			
-			errGobbler.join();
+			errGobbler.get();
 			
 			if( 0 != exitValue ){
 				logger.info("Command ("+commandStr+") exited with value "+exitValue+": "+errWriter.toString());
@@ -210,14 +217,12 @@ public class CommandUtils {
 
 			logger.debug("Executing command ("+commandStr+")");
 
-			ProcessBuilder pb = new ProcessBuilder(commandTokens);
-			Process p = pb.start();
+			ManagedProcess p = ProcessExecutor.getDefault().start(commandTokens);
 
 			InputStream err = p.getErrorStream();
 			InputStreamReader errReader = new InputStreamReader(err,"UTF-8");
 			StringWriter errWriter = new StringWriter();
-			ReadGobbler errGobbler = new ReadGobbler(errReader, errWriter);
-			errGobbler.start();
+			Future<?> errGobbler = ProcessExecutor.drain(errReader, errWriter);
 
 			InputStream std = p.getInputStream();
 			InputStreamReader stdReader = new InputStreamReader(std,"UTF-8");
@@ -233,12 +238,20 @@ public class CommandUtils {
 			
 			
 			StringWriter stdWriter = new StringWriter();
-			StreamUtils.copyStream(stdReader, stdWriter);
-			stdWriter.flush();
+			try {
+				StreamUtils.copyStream(stdReader, stdWriter);
+				stdWriter.flush();
+			} catch(IOException e) {
+				// Streams are closed when a process is killed. Report
+				// the timeout instead.
+				if( false == p.isTimedOut() ){
+					throw e;
+				}
+			}
 
 			int exitValue = p.waitFor();
 			
-			errGobbler.join();
+			errGobbler.get();
 			
 			if( 0 != exitValue ){
 				if( errWriter.toString().isEmpty() ) {
@@ -0,0 +1,152 @@
+package ca.carleton.gcrc.utils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A process started by a ProcessExecutor. The permit held by the process
+ * is released when the process terminates, whether or not the caller
+ * waits for it.
+ */
+public class ManagedProcess {
+
+	private ProcessExecutor executor;
+	private String toolName;
+	private Semaphore semaphore;
+	private Process process;
+	private long timeoutMs;
+	private Future<Integer> exitFuture = null;
+	private Future<?> timeoutFuture = null;
+	private boolean ended = false;
+	private boolean timedOut = false;
+
+	ManagedProcess(
+			ProcessExecutor executor
+			,String toolName
+			,Semaphore semaphore
+			,Process process
+			,long timeoutMs
+			) {
+		this.executor = executor;
+		this.toolName = toolName;
+		this.semaphore = semaphore;
+		this.process = process;
+		this.timeoutMs = timeoutMs;
+	}
+
+	public String getToolName() {
+		return toolName;
+	}
+
+	public Process getProcess() {
+		return process;
+	}
+
+	public InputStream getInputStream() {
+		return process.getInputStream();
+	}
+
+	public InputStream getErrorStream() {
+		return process.getErrorStream();
+	}
+
+	public OutputStream getOutputStream() {
+		return process.getOutputStream();
+	}
+
+	synchronized public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * Waits for the process to terminate.
+	 * @return Exit value of the process
+	 * @throws Exception If the process was killed because it ran longer
+	 * than its timeout, or if the waiting thread is interrupted. In the
+	 * latter case, the process is killed.
+	 */
+	public int waitFor() throws Exception {
+		int exitValue = 0;
+		try {
+			exitValue = exitFuture.get();
+		} catch(InterruptedException e) {
+			destroy();
+			throw new Exception("Interrupted while waiting for process: "+toolName,e);
+		} catch(ExecutionException e) {
+			throw new Exception("Error while waiting for process: "+toolName,e.getCause());
+		}
+
+		if( isTimedOut() ){
+			throw new Exception("Process "+toolName+" killed after running for "+timeoutMs+"ms");
+		}
+
+		return exitValue;
+	}
+
+	/**
+	 * Kills the process and the processes it started
+	 */
+	public void destroy() {
+		synchronized(this) {
+			if( ended ){
+				return;
+			}
+		}
+		executor.killProcessTree(process);
+	}
+
+	void setExitFuture(Future<Integer> exitFuture) {
+		this.exitFuture = exitFuture;
+	}
+
+	void setTimeoutFuture(Future<?> timeoutFuture) {
+		boolean cancel = false;
+		synchronized(this) {
+			this.timeoutFuture = timeoutFuture;
+			cancel = ended;
+		}
+		if( cancel ){
+			timeoutFuture.cancel(false);
+		}
+	}
+
+	/**
+	 * Called on a pooled thread to wait for the process and release its
+	 * permit
+	 */
+	int waitForExit() throws Exception {
+		int exitValue = -1;
+		try {
+			exitValue = process.waitFor();
+		} finally {
+			Future<?> timeout = null;
+			boolean wasTimedOut = false;
+			synchronized(this) {
+				ended = true;
+				timeout = timeoutFuture;
+				wasTimedOut = timedOut;
+			}
+			if( null != timeout ){
+				timeout.cancel(false);
+			}
+			executor.processEnded(toolName, semaphore, wasTimedOut, 0 != exitValue);
+		}
+		return exitValue;
+	}
+
+	/**
+	 * Called by the watchdog when the process exceeds its timeout
+	 */
+	void timeout() {
+		synchronized(this) {
+			if( ended ){
+				return;
+			}
+			timedOut = true;
+		}
+		executor.killProcessTree(process);
+	}
+}
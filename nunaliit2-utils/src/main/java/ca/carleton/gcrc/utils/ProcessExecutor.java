@@ -0,0 +1,490 @@
+package ca.carleton.gcrc.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Launches external processes (ImageMagick, ffmpeg, ...) under supervision.
+ *
+ * Processes are grouped by tool, which is the name of the executable. For
+ * each tool, the number of processes running at once can be limited; a
+ * caller starting a process waits until a permit is available. A process
+ * that runs longer than the timeout configured for its tool is killed,
+ * along with the processes it spawned.
+ *
+ * Threads used to wait for processes and to drain their output are
+ * taken from a shared pool instead of being created for each command.
+ *
+ * Most callers use the shared instance returned by getDefault(), so that
+ * the limits apply to the whole application.
+ */
+public class ProcessExecutor {
+
+	static final public long DEFAULT_TIMEOUT_MS = 60L * 60L * 1000L; // 1 hour
+
+	static final protected Logger logger = LoggerFactory.getLogger(ProcessExecutor.class);
+
+	static private ProcessExecutor defaultExecutor = null;
+
+	synchronized static public ProcessExecutor getDefault() {
+		if( null == defaultExecutor ){
+			defaultExecutor = new ProcessExecutor();
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Returns the name of the tool invoked by a command: the name of the
+	 * executable, without its path.
+	 */
+	static public String getToolName(List<String> commandTokens) {
+		if( null == commandTokens || commandTokens.size() < 1 ){
+			return "";
+		}
+		String executable = commandTokens.get(0);
+		return new File(executable).getName();
+	}
+
+	static private ThreadFactory createDaemonFactory(final String prefix) {
+		return new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			synchronized public Thread newThread(Runnable r) {
+				++count;
+				Thread t = new Thread(r, prefix+"-"+count);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	static private ExecutorService workerPool = Executors.newCachedThreadPool(
+			createDaemonFactory("ProcessWorker"));
+	static private ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+			createDaemonFactory("ProcessWatchdog"));
+
+	/**
+	 * Copies a reader to a writer on a pooled thread. The returned future
+	 * completes when the end of the reader is reached.
+	 */
+	static public Future<?> drain(final Reader reader, final Writer writer) {
+		return workerPool.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				StreamUtils.copyStream(reader, writer);
+				writer.flush();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Semaphore whose number of permits can be lowered while permits
+	 * are held.
+	 */
+	static private class ToolSemaphore extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		public ToolSemaphore(int permits) {
+			super(permits, true);
+		}
+
+		public void reduce(int reduction) {
+			reducePermits(reduction);
+		}
+	}
+
+	// Permits of a tool without limit
+	static final private int UNLIMITED_PERMITS = Integer.MAX_VALUE / 2;
+
+	/**
+	 * Limits and counters for one tool. Every process holds a permit of
+	 * the tool's semaphore, even when the tool has no limit, so that the
+	 * permits can be adjusted while processes are running.
+	 */
+	static private class Tool {
+		private String name;
+		private int limit = 0;
+		private boolean limitSet = false;
+		private ToolSemaphore semaphore = new ToolSemaphore(UNLIMITED_PERMITS);
+		private Long timeoutMs = null;
+		private int queuedCount = 0;
+		private int runningCount = 0;
+		private long startedCount = 0;
+		private long timeoutCount = 0;
+		private long failedCount = 0;
+
+		public Tool(String name) {
+			this.name = name;
+		}
+	}
+
+	private long defaultTimeoutMs = DEFAULT_TIMEOUT_MS;
+	private int defaultToolLimit = Runtime.getRuntime().availableProcessors();
+	private Map<String,Tool> tools = new HashMap<String,Tool>();
+
+	public ProcessExecutor() {
+	}
+
+	synchronized public long getDefaultTimeoutMs() {
+		return defaultTimeoutMs;
+	}
+
+	/**
+	 * Sets the timeout for tools that do not have their own.
+	 * @param defaultTimeoutMs Timeout in milliseconds. 0 to disable.
+	 */
+	synchronized public void setDefaultTimeoutMs(long defaultTimeoutMs) {
+		this.defaultTimeoutMs = defaultTimeoutMs;
+	}
+
+	synchronized public long getToolTimeoutMs(String toolName) {
+		Tool tool = tools.get(toolName);
+		if( null == tool || null == tool.timeoutMs ){
+			return defaultTimeoutMs;
+		}
+		return tool.timeoutMs;
+	}
+
+	/**
+	 * Sets the wall-clock time a tool can run before it is killed.
+	 * @param timeoutMs Timeout in milliseconds. 0 to disable.
+	 */
+	synchronized public void setToolTimeoutMs(String toolName, long timeoutMs) {
+		getTool(toolName).timeoutMs = timeoutMs;
+	}
+
+	synchronized public int getDefaultToolLimit() {
+		return defaultToolLimit;
+	}
+
+	/**
+	 * Sets the number of processes that can run at once for tools that do
+	 * not have their own limit.
+	 * @param limit Maximum number of processes. 0 for no limit.
+	 */
+	synchronized public void setDefaultToolLimit(int limit) {
+		if( limit < 0 ){
+			limit = 0;
+		}
+		defaultToolLimit = limit;
+		for(Tool tool : tools.values()){
+			if( false == tool.limitSet ){
+				applyLimit(tool, limit);
+			}
+		}
+	}
+
+	synchronized public int getToolLimit(String toolName) {
+		return getTool(toolName).limit;
+	}
+
+	/**
+	 * Sets the number of processes of a tool that can run at once. Processes
+	 * already running count against the new limit.
+	 * @param limit Maximum number of processes. 0 for no limit.
+	 */
+	synchronized public void setToolLimit(String toolName, int limit) {
+		if( limit < 0 ){
+			limit = 0;
+		}
+		Tool tool = getTool(toolName);
+		tool.limitSet = true;
+		applyLimit(tool, limit);
+	}
+
+	private void applyLimit(Tool tool, int limit) {
+		if( tool.limit == limit ){
+			return;
+		}
+		int previousPermits = tool.limit > 0 ? tool.limit : UNLIMITED_PERMITS;
+		int permits = limit > 0 ? limit : UNLIMITED_PERMITS;
+		tool.limit = limit;
+
+		// The semaphore is adjusted rather than replaced, since running
+		// processes release their permits to it
+		if( permits > previousPermits ){
+			tool.semaphore.release(permits - previousPermits);
+		} else if( permits < previousPermits ){
+			tool.semaphore.reduce(previousPermits - permits);
+		}
+	}
+
+	/**
+	 * Starts a process, waiting if the tool is at its limit.
+	 * @param commandTokens Command and its arguments
+	 * @return The running process
+	 */
+	public ManagedProcess start(List<String> commandTokens) throws Exception {
+		String toolName = getToolName(commandTokens);
+
+		Semaphore semaphore = null;
+		long timeoutMs = 0;
+		synchronized(this) {
+			Tool tool = getTool(toolName);
+			semaphore = tool.semaphore;
+			timeoutMs = getToolTimeoutMs(toolName);
+			++tool.queuedCount;
+		}
+
+		boolean acquired = false;
+		try {
+			semaphore.acquire();
+			acquired = true;
+		} finally {
+			synchronized(this) {
+				Tool tool = getTool(toolName);
+				--tool.queuedCount;
+				if( acquired ){
+					++tool.runningCount;
+					++tool.startedCount;
+				}
+			}
+		}
+
+		Process process = null;
+		try {
+			ProcessBuilder pb = new ProcessBuilder(commandTokens);
+			process = pb.start();
+		} catch(Exception e) {
+			processEnded(toolName, semaphore, false, true);
+			throw new Exception("Unable to start process: "+toolName,e);
+		}
+
+		final ManagedProcess managedProcess =
+				new ManagedProcess(this, toolName, semaphore, process, timeoutMs);
+
+		// Wait for the process on a pooled thread so that the permit is
+		// released even if the caller never waits for the process
+		try {
+			Future<Integer> exitFuture = workerPool.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return managedProcess.waitForExit();
+				}
+			});
+			managedProcess.setExitFuture(exitFuture);
+		} catch(RuntimeException e) {
+			killProcessTree(process);
+			processEnded(toolName, semaphore, false, true);
+			throw new Exception("Unable to monitor process: "+toolName,e);
+		}
+
+		if( timeoutMs > 0 ){
+			managedProcess.setTimeoutFuture( watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					managedProcess.timeout();
+				}
+			}, timeoutMs, TimeUnit.MILLISECONDS) );
+		}
+
+		return managedProcess;
+	}
+
+	/**
+	 * Called once when a process terminates, to release its permit
+	 */
+	void processEnded(String toolName, Semaphore semaphore, boolean timedOut, boolean failed) {
+		synchronized(this) {
+			Tool tool = getTool(toolName);
+			--tool.runningCount;
+			if( timedOut ){
+				++tool.timeoutCount;
+			}
+			if( failed ){
+				++tool.failedCount;
+			}
+		}
+		semaphore.release();
+	}
+
+	/**
+	 * Kills a process and all its descendants. On systems where the process
+	 * identifiers are not available, only the process is killed.
+	 */
+	void killProcessTree(Process process) {
+		Long pid = getPid(process);
+		List<Long> descendants = new ArrayList<Long>();
+		if( null != pid ){
+			try {
+				collectDescendants(pid, descendants);
+			} catch(Exception e) {
+				logger.debug("Unable to list children of process "+pid,e);
+			}
+		}
+
+		destroyProcess(process);
+
+		for(Long descendant : descendants){
+			try {
+				Process kill = new ProcessBuilder("kill", "-KILL", ""+descendant).start();
+				kill.waitFor();
+			} catch(Exception e) {
+				logger.debug("Unable to kill process "+descendant,e);
+			}
+		}
+	}
+
+	private void collectDescendants(long pid, List<Long> descendants) throws Exception {
+		Process pgrep = new ProcessBuilder("pgrep", "-P", ""+pid).start();
+		pgrep.getOutputStream().close();
+		pgrep.getErrorStream().close();
+		BufferedReader br = new BufferedReader(new InputStreamReader(pgrep.getInputStream(), "UTF-8"));
+		List<Long> children = new ArrayList<Long>();
+		String line = br.readLine();
+		while( null != line ){
+			line = line.trim();
+			if( line.length() > 0 ){
+				children.add( Long.parseLong(line) );
+			}
+			line = br.readLine();
+		}
+		br.close();
+		pgrep.waitFor();
+
+		for(Long child : children){
+			descendants.add(child);
+			collectDescendants(child, descendants);
+		}
+	}
+
+	private Long getPid(Process process) {
+		// Process.pid() is available from Java 9
+		try {
+			Method method = Process.class.getMethod("pid");
+			return ((Number)method.invoke(process)).longValue();
+		} catch(NoSuchMethodException e) {
+			// Java 8 and earlier
+		} catch(Exception e) {
+			return null;
+		}
+
+		// Before Java 9, the identifier is only available on the
+		// implementation class
+		try {
+			Field field = process.getClass().getDeclaredField("pid");
+			field.setAccessible(true);
+			return field.getLong(process);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+
+	private void destroyProcess(Process process) {
+		// Process.destroyForcibly() is available from Java 8
+		try {
+			Method method = Process.class.getMethod("destroyForcibly");
+			method.invoke(process);
+			return;
+		} catch(Exception e) {
+			// Fall back to destroy()
+		}
+		process.destroy();
+	}
+
+	synchronized public int getQueuedCount() {
+		int count = 0;
+		for(Tool tool : tools.values()){
+			count += tool.queuedCount;
+		}
+		return count;
+	}
+
+	synchronized public int getQueuedCount(String toolName) {
+		return getTool(toolName).queuedCount;
+	}
+
+	synchronized public int getRunningCount() {
+		int count = 0;
+		for(Tool tool : tools.values()){
+			count += tool.runningCount;
+		}
+		return count;
+	}
+
+	synchronized public int getRunningCount(String toolName) {
+		return getTool(toolName).runningCount;
+	}
+
+	synchronized public long getStartedCount() {
+		long count = 0;
+		for(Tool tool : tools.values()){
+			count += tool.startedCount;
+		}
+		return count;
+	}
+
+	synchronized public long getTimeoutCount() {
+		long count = 0;
+		for(Tool tool : tools.values()){
+			count += tool.timeoutCount;
+		}
+		return count;
+	}
+
+	synchronized public long getTimeoutCount(String toolName) {
+		return getTool(toolName).timeoutCount;
+	}
+
+	synchronized public long getFailedCount() {
+		long count = 0;
+		for(Tool tool : tools.values()){
+			count += tool.failedCount;
+		}
+		return count;
+	}
+
+	synchronized public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Processes(");
+		boolean first = true;
+		for(Tool tool : tools.values()){
+			if( first ){
+				first = false;
+			} else {
+				sb.append(" ");
+			}
+			sb.append(tool.name);
+			sb.append("[queued:"+tool.queuedCount);
+			sb.append(" running:"+tool.runningCount);
+			sb.append(" started:"+tool.startedCount);
+			sb.append(" timeouts:"+tool.timeoutCount);
+			sb.append(" failed:"+tool.failedCount);
+			sb.append("]");
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+
+	private Tool getTool(String toolName) {
+		Tool tool = tools.get(toolName);
+		if( null == tool ){
+			tool = new Tool(toolName);
+			applyLimit(tool, defaultToolLimit);
+			tools.put(toolName, tool);
+		}
+		return tool;
+	}
+}
@@ -0,0 +1,152 @@
+package ca.carleton.gcrc.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ProcessExecutorTest extends TestCase {
+
+	static private boolean isShellAvailable() {
+		return new File("/bin/sh").exists();
+	}
+
+	/**
+	 * A killed process whose parent is gone may remain as a zombie until
+	 * it is reaped. It is not considered running.
+	 */
+	static private boolean isProcessRunning(String pid) throws Exception {
+		File statFile = new File("/proc/"+pid+"/stat");
+		if( false == statFile.exists() ){
+			return false;
+		}
+		String stat = TextFileUtils.readTextFile(statFile);
+		String state = stat.substring(stat.lastIndexOf(')')+1).trim();
+		return false == state.startsWith("Z");
+	}
+
+	public void testToolName() throws Exception {
+		String name = ProcessExecutor.getToolName(Arrays.asList("/usr/bin/convert", "a.jpg", "b.jpg"));
+		if( false == "convert".equals(name) ){
+			fail("Unexpected tool name: "+name);
+		}
+	}
+
+	public void testExitValue() throws Exception {
+		if( false == isShellAvailable() ) return;
+
+		ProcessExecutor executor = new ProcessExecutor();
+		ManagedProcess p = executor.start(Arrays.asList("sh", "-c", "exit 3"));
+		int exitValue = p.waitFor();
+		if( 3 != exitValue ){
+			fail("Unexpected exit value: "+exitValue);
+		}
+
+		// Counters are updated by the thread waiting on the process
+		Thread.sleep(50);
+		if( 0 != executor.getRunningCount() || 1 != executor.getFailedCount() ){
+			fail("Unexpected counters: "+executor);
+		}
+	}
+
+	public void testTimeout() throws Exception {
+		if( false == isShellAvailable() ) return;
+
+		ProcessExecutor executor = new ProcessExecutor();
+		executor.setToolTimeoutMs("sh", 500);
+
+		// The shell starts a child that would outlive the shell if only
+		// the shell was killed
+		ManagedProcess p = executor.start(Arrays.asList("sh", "-c", "sleep 30 & echo $!; wait"));
+		BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
+		String childPid = br.readLine().trim();
+		try {
+			p.waitFor();
+			fail("Process should time out");
+		} catch(Exception e) {
+			// OK
+		}
+		if( false == p.isTimedOut() ){
+			fail("Process should be marked as timed out");
+		}
+
+		Thread.sleep(100);
+		if( isProcessRunning(childPid) ){
+			fail("Child process should be killed");
+		}
+		if( 1 != executor.getTimeoutCount("sh") ){
+			fail("Unexpected timeout count: "+executor);
+		}
+	}
+
+	public void testLimit() throws Exception {
+		if( false == isShellAvailable() ) return;
+
+		final ProcessExecutor executor = new ProcessExecutor();
+		executor.setToolLimit("sh", 1);
+
+		ManagedProcess p1 = executor.start(Arrays.asList("sh", "-c", "sleep 0.3"));
+
+		final ManagedProcess[] p2 = new ManagedProcess[1];
+		Thread thread = new Thread(){
+			public void run() {
+				try {
+					p2[0] = executor.start(Arrays.asList("sh", "-c", "exit 0"));
+				} catch(Exception e) {
+					// Reported below
+				}
+			}
+		};
+		thread.start();
+
+		Thread.sleep(100);
+		if( 1 != executor.getQueuedCount("sh") || 1 != executor.getRunningCount("sh") ){
+			fail("Second process should be queued: "+executor);
+		}
+
+		p1.waitFor();
+		thread.join();
+		if( null == p2[0] ){
+			fail("Second process should start");
+		}
+		p2[0].waitFor();
+	}
+
+	public void testLimitChangedWhileRunning() throws Exception {
+		if( false == isShellAvailable() ) return;
+
+		final ProcessExecutor executor = new ProcessExecutor();
+		executor.setToolLimit("sh", 0);
+
+		ManagedProcess p1 = executor.start(Arrays.asList("sh", "-c", "sleep 0.3"));
+
+		// The running process counts against the new limit
+		executor.setToolLimit("sh", 1);
+
+		final ManagedProcess[] p2 = new ManagedProcess[1];
+		Thread thread = new Thread(){
+			public void run() {
+				try {
+					p2[0] = executor.start(Arrays.asList("sh", "-c", "exit 0"));
+				} catch(Exception e) {
+					// Reported below
+				}
+			}
+		};
+		thread.start();
+
+		Thread.sleep(100);
+		if( 1 != executor.getQueuedCount("sh") || 1 != executor.getRunningCount("sh") ){
+			fail("Second process should be queued: "+executor);
+		}
+
+		p1.waitFor();
+		thread.join();
+		if( null == p2[0] ){
+			fail("Second process should start");
+		}
+		p2[0].waitFor();
+	}
+}